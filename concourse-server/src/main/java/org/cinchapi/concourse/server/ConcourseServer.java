@@ -491,6 +491,12 @@ public class ConcourseServer implements
         }
     }
 
+    @Override
+    @ManagedOperation
+    public void compact(String env) {
+        getEngine(env).compact();
+    }
+
     @Override
     public Set<String> describe(long record, long timestamp, AccessToken creds,
             TransactionToken transaction, String env) throws TException {
@@ -577,6 +583,36 @@ public class ConcourseServer implements
         }
     }
 
+    @Override
+    @ManagedOperation
+    public String getBlockFileCacheStats(String env) {
+        return getEngine(env).getBlockFileCacheStats();
+    }
+
+    @Override
+    @ManagedOperation
+    public String getBloomFilterStats(String env) {
+        return getEngine(env).getBloomFilterStats();
+    }
+
+    @Override
+    @ManagedOperation
+    public String getCompactionStatus(String env) {
+        return getEngine(env).getCompactionStatus();
+    }
+
+    @Override
+    @ManagedOperation
+    public String getRecordCacheStats(String env) {
+        return getEngine(env).getRecordCacheStats();
+    }
+
+    @Override
+    @ManagedOperation
+    public String getScrubberStatus(String env) {
+        return getEngine(env).getScrubberStatus();
+    }
+
     @Override
     @ManagedOperation
     @Deprecated
@@ -831,6 +867,12 @@ public class ConcourseServer implements
         return token;
     }
 
+    @Override
+    @ManagedOperation
+    public void syncBuffer(String env) {
+        getEngine(env).syncBuffer();
+    }
+
     /**
      * Start the server.
      * 
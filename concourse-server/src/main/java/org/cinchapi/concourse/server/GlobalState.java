@@ -27,14 +27,19 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.cinchapi.concourse.annotate.NonPreference;
 import org.cinchapi.concourse.config.ConcourseConfiguration;
+import org.cinchapi.concourse.server.storage.db.Compression;
+import org.cinchapi.concourse.server.storage.temp.Durability;
 
 import ch.qos.logback.classic.Level;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -95,6 +100,63 @@ public final class GlobalState {
      */
     public static int BUFFER_PAGE_SIZE = 8192;
 
+    /**
+     * <p>
+     * The policy that determines when the Buffer forces writes to disk.
+     * </p>
+     * <p>
+     * <ul>
+     * <li><strong>PER_WRITE</strong>: each write is durable before it is
+     * acknowledged. Concurrent writers share a single fsync.</li>
+     * <li><strong>INTERVAL</strong>: writes are forced to disk in the
+     * background every buffer_sync_interval or after buffer_sync_size bytes
+     * have accumulated, whichever comes first.</li>
+     * <li><strong>OS</strong>: writes are never explicitly forced to disk
+     * except when the server shuts down or a sync is requested via JMX.</li>
+     * </ul>
+     * </p>
+     * <p>
+     * The INTERVAL and OS policies trade the possibility of losing the most
+     * recent writes in a crash for much higher write throughput. The policy
+     * can be overridden for an individual environment using a
+     * buffer_durability.{environment} preference.
+     * </p>
+     */
+    public static Durability BUFFER_DURABILITY = Durability.PER_WRITE;
+
+    /**
+     * The maximum number of milliseconds between Buffer syncs when the
+     * buffer_durability is INTERVAL.
+     */
+    public static int BUFFER_SYNC_INTERVAL = 100;
+
+    /**
+     * The maximum number of bytes that can be appended to the Buffer between
+     * syncs when the buffer_durability is INTERVAL.
+     */
+    public static long BUFFER_SYNC_SIZE = 1024 * 1024;
+
+    /**
+     * The codec that is used to compress the content of Database blocks when
+     * they are synced. This only affects blocks that are synced after it is
+     * changed.
+     */
+    public static Compression BLOCK_COMPRESSION = Compression.NONE;
+
+    /**
+     * The maximum number of bytes from immutable Database block files that are
+     * kept mapped into memory for seeks. The least recently used mappings are
+     * released once this limit is reached.
+     */
+    public static long BLOCK_FILE_CACHE_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes per second that the background block
+     * scrubber reads when it verifies the checksums of Database block files.
+     * Set this to 0 to disable throttling.
+     */
+    public static long BLOCK_SCRUBBER_THROUGHPUT = 4 * 1024 * 1024;
+
     /**
      * The listener port (1-65535) for client connections. Choose a port between
      * 49152 and 65535 to minimize the possibility of conflicts with other
@@ -102,6 +164,114 @@ public final class GlobalState {
      */
     public static int CLIENT_PORT = 1717;
 
+    /**
+     * The number of milliseconds between the checks that the background
+     * compactor makes for runs of Database blocks that can be merged.
+     */
+    public static int COMPACTION_INTERVAL = 60000;
+
+    /**
+     * The maximum size of a block that is produced by merging smaller Database
+     * blocks during compaction. The blocks that are being merged are streamed
+     * from disk one locator at a time, so a merge only holds the index, filter
+     * and dictionary of the merged block in memory.
+     */
+    public static long COMPACTION_MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The maximum number of Database blocks that are merged in a single
+     * compaction.
+     */
+    public static int COMPACTION_MAX_BLOCKS = 16;
+
+    /**
+     * The minimum number of consecutive, similarly sized Database blocks that
+     * must accumulate before they are merged into a single block. Set this to
+     * 0 to disable compaction.
+     */
+    public static int COMPACTION_MIN_BLOCKS = 4;
+
+    /**
+     * Consecutive Database blocks are considered to be similarly sized (and
+     * therefore in the same tier) if the largest block is no more than
+     * compaction_size_ratio times the size of the smallest one.
+     */
+    public static int COMPACTION_SIZE_RATIO = 4;
+
+    /**
+     * The maximum number of bytes per second that the compactor reads from the
+     * blocks that it merges. Set this to 0 to disable throttling.
+     */
+    public static long COMPACTION_THROUGHPUT = 16 * 1024 * 1024;
+
+    /**
+     * The minimum number of Database blocks for which a record that is not
+     * cached is loaded by seeking the blocks in parallel instead of one after
+     * another. Set this to 0 to always seek the blocks serially.
+     */
+    public static int PARALLEL_SEEK_THRESHOLD = 64;
+
+    /**
+     * The minimum number of revisions to a field between each set of values
+     * that a record materializes for point in time reads. A field with more
+     * values than this waits for as many revisions as it has values, so the
+     * sets never hold more values than the field has revisions. A historical
+     * read replays at most the larger of the two, so a smaller interval makes
+     * those reads faster at the cost of more memory for cached records. Set
+     * this to 0 to disable checkpoints.
+     */
+    public static int RECORD_CHECKPOINT_INTERVAL = 64;
+
+    /**
+     * The maximum total number of revisions in the full PrimaryRecords that
+     * each Database caches. Each cached revision takes roughly 60 bytes of
+     * heap.
+     */
+    public static long PRIMARY_RECORD_CACHE_SIZE = 2000000;
+
+    /**
+     * The maximum total number of revisions in the partial PrimaryRecords
+     * (i.e. a single key in a record) that each Database caches.
+     */
+    public static long PARTIAL_PRIMARY_RECORD_CACHE_SIZE = 1000000;
+
+    /**
+     * The maximum total number of revisions in the SecondaryRecords that each
+     * Database caches.
+     */
+    public static long SECONDARY_RECORD_CACHE_SIZE = 2000000;
+
+    /**
+     * The maximum total number of revisions in the partial SecondaryRecords
+     * (i.e. the values within a range for a key) that each Database caches
+     * for find queries that only need a range of values.
+     */
+    public static long PARTIAL_SECONDARY_RECORD_CACHE_SIZE = 1000000;
+
+    /**
+     * The maximum number of bytes of direct memory that each Database uses to
+     * hold the full records that are evicted from its record caches, split
+     * evenly between the PrimaryRecords and the SecondaryRecords. A record in
+     * this tier is serialized, so it is much cheaper to promote than to load
+     * from disk. Set this to 0 to disable the tier. The JVM's
+     * MaxDirectMemorySize must leave room for this in every environment.
+     */
+    public static long OFF_HEAP_RECORD_CACHE_SIZE = 0;
+
+    /**
+     * Whether the Database should keep a directory of the primary and
+     * secondary blocks that contain each locator so that a record that is not
+     * cached is loaded by seeking exactly those blocks instead of checking the
+     * bloom filter of every block.
+     */
+    public static boolean ENABLE_BLOCK_DIRECTORY = true;
+
+    /**
+     * Whether the Database should periodically verify the checksums of its
+     * block files in the background and report any corruption via JMX.
+     */
+    public static boolean ENABLE_BLOCK_SCRUBBER = false;
+
     /**
      * The port on which the ShutdownRunner listens. Choose a port between
      * 49152 and 65535 to minimize the possibility of conflicts with other
@@ -169,6 +339,14 @@ public final class GlobalState {
     public static boolean ENABLE_CONSOLE_LOGGING = RUNNING_FROM_ECLIPSE ? true
             : false;
 
+    /**
+     * The buffer_durability policies that are specified for individual
+     * environments, which take precedence over {@link #BUFFER_DURABILITY}.
+     */
+    @NonPreference
+    private static final Map<String, Durability> BUFFER_DURABILITY_OVERRIDES = Maps
+            .newHashMap();
+
     static {
         ConcourseConfiguration config;
         try {
@@ -189,8 +367,85 @@ public final class GlobalState {
             BUFFER_PAGE_SIZE = (int) config.getSize("buffer_page_size",
                     BUFFER_PAGE_SIZE);
 
+            BUFFER_DURABILITY = Durability.valueOf(config.getString(
+                    "buffer_durability", BUFFER_DURABILITY.toString())
+                    .toUpperCase());
+            Iterator<String> keys = config.getKeys("buffer_durability");
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if(key.startsWith("buffer_durability.")) {
+                    BUFFER_DURABILITY_OVERRIDES.put(
+                            key.substring("buffer_durability.".length()),
+                            Durability.valueOf(config.getString(key)
+                                    .toUpperCase()));
+                }
+            }
+
+            BUFFER_SYNC_INTERVAL = config.getInt("buffer_sync_interval",
+                    BUFFER_SYNC_INTERVAL);
+
+            BUFFER_SYNC_SIZE = config.getSize("buffer_sync_size",
+                    BUFFER_SYNC_SIZE);
+
+            BLOCK_COMPRESSION = Compression.valueOf(config.getString(
+                    "block_compression", BLOCK_COMPRESSION.toString())
+                    .toUpperCase());
+
+            BLOCK_FILE_CACHE_SIZE = config.getSize("block_file_cache_size",
+                    BLOCK_FILE_CACHE_SIZE);
+
+            BLOCK_SCRUBBER_THROUGHPUT = config.getSize(
+                    "block_scrubber_throughput", BLOCK_SCRUBBER_THROUGHPUT);
+
             CLIENT_PORT = config.getInt("client_port", CLIENT_PORT);
 
+            COMPACTION_INTERVAL = config.getInt("compaction_interval",
+                    COMPACTION_INTERVAL);
+
+            COMPACTION_MAX_BLOCK_SIZE = config.getSize(
+                    "compaction_max_block_size", COMPACTION_MAX_BLOCK_SIZE);
+
+            COMPACTION_MAX_BLOCKS = config.getInt("compaction_max_blocks",
+                    COMPACTION_MAX_BLOCKS);
+
+            COMPACTION_MIN_BLOCKS = config.getInt("compaction_min_blocks",
+                    COMPACTION_MIN_BLOCKS);
+
+            COMPACTION_SIZE_RATIO = config.getInt("compaction_size_ratio",
+                    COMPACTION_SIZE_RATIO);
+
+            COMPACTION_THROUGHPUT = config.getSize("compaction_throughput",
+                    COMPACTION_THROUGHPUT);
+
+            PARALLEL_SEEK_THRESHOLD = config.getInt("parallel_seek_threshold",
+                    PARALLEL_SEEK_THRESHOLD);
+
+            RECORD_CHECKPOINT_INTERVAL = config.getInt(
+                    "record_checkpoint_interval", RECORD_CHECKPOINT_INTERVAL);
+
+            PRIMARY_RECORD_CACHE_SIZE = config.getLong(
+                    "primary_record_cache_size", PRIMARY_RECORD_CACHE_SIZE);
+
+            PARTIAL_PRIMARY_RECORD_CACHE_SIZE = config.getLong(
+                    "partial_primary_record_cache_size",
+                    PARTIAL_PRIMARY_RECORD_CACHE_SIZE);
+
+            SECONDARY_RECORD_CACHE_SIZE = config.getLong(
+                    "secondary_record_cache_size", SECONDARY_RECORD_CACHE_SIZE);
+
+            PARTIAL_SECONDARY_RECORD_CACHE_SIZE = config.getLong(
+                    "partial_secondary_record_cache_size",
+                    PARTIAL_SECONDARY_RECORD_CACHE_SIZE);
+
+            OFF_HEAP_RECORD_CACHE_SIZE = config.getSize(
+                    "off_heap_record_cache_size", OFF_HEAP_RECORD_CACHE_SIZE);
+
+            ENABLE_BLOCK_DIRECTORY = config.getBoolean(
+                    "enable_block_directory", ENABLE_BLOCK_DIRECTORY);
+
+            ENABLE_BLOCK_SCRUBBER = config.getBoolean("enable_block_scrubber",
+                    ENABLE_BLOCK_SCRUBBER);
+
             SHUTDOWN_PORT = config.getInt("shutdown_port", SHUTDOWN_PORT);
 
             JMX_PORT = config.getInt("jmx_port", JMX_PORT);
@@ -240,4 +495,16 @@ public final class GlobalState {
 
     // ========================================================================
 
+    /**
+     * Return the {@link Durability} policy that the Buffer in
+     * {@code environment} should use.
+     * 
+     * @param environment
+     * @return the Durability policy
+     */
+    public static Durability getBufferDurability(String environment) {
+        Durability durability = BUFFER_DURABILITY_OVERRIDES.get(environment);
+        return durability != null ? durability : BUFFER_DURABILITY;
+    }
+
 }
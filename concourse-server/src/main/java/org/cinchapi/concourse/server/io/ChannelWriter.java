@@ -0,0 +1,267 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+
+/**
+ * A {@link ChannelWriter} streams data to a channel through a fixed size
+ * direct buffer, so that large files can be written without first
+ * serializing them into a heap buffer of the same size.
+ * <p>
+ * The direct buffers are pooled and reused across writers. A writer must be
+ * {@link #release() released} when it is no longer needed, which flushes any
+ * buffered data and returns the buffer to the pool. The channel itself is not
+ * closed.
+ * </p>
+ * <p>
+ * A writer can optionally feed everything that it writes to a {@link Hasher}
+ * so that the checksum of a file is known as soon as it is written.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@NotThreadSafe
+public final class ChannelWriter {
+
+    /**
+     * The size of each direct buffer.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The direct buffers that are not in use.
+     */
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<ByteBuffer>(
+            8);
+
+    /**
+     * The buffer that data is staged in before it is written to the
+     * {@link #channel}, or {@code null} if the writer has been released.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The channel that data is written to.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The hasher that is fed all the data that is written to the
+     * {@link #channel}, if any.
+     */
+    @Nullable
+    private final Hasher hasher;
+
+    /**
+     * A heap copy of the {@link #buffer} that is used to feed the
+     * {@link #hasher}, which can't read from a direct buffer.
+     */
+    @Nullable
+    private byte[] scratch;
+
+    /**
+     * The number of bytes that have been written to this writer.
+     */
+    private long position = 0;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param channel
+     */
+    public ChannelWriter(WritableByteChannel channel) {
+        this(channel, null);
+    }
+
+    /**
+     * Construct a new instance that feeds all the data that it writes to
+     * {@code hasher}.
+     * 
+     * @param channel
+     * @param hasher
+     */
+    public ChannelWriter(WritableByteChannel channel, @Nullable Hasher hasher) {
+        this.channel = channel;
+        this.hasher = hasher;
+        ByteBuffer buffer = POOL.poll();
+        this.buffer = buffer != null ? buffer : ByteBuffer
+                .allocateDirect(BUFFER_SIZE);
+        this.buffer.clear();
+    }
+
+    /**
+     * Write all the buffered data to the channel.
+     */
+    public void flush() {
+        Preconditions.checkState(buffer != null, "The writer was released");
+        buffer.flip();
+        if(hasher != null) {
+            if(scratch == null) {
+                scratch = new byte[BUFFER_SIZE];
+            }
+            int length = buffer.remaining();
+            buffer.duplicate().get(scratch, 0, length);
+            hasher.putBytes(scratch, 0, length);
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Return the number of bytes that have been written to this writer,
+     * including those that are still buffered.
+     * 
+     * @return the position
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Write {@code b}.
+     * 
+     * @param b
+     */
+    public void put(byte b) {
+        ensureRemaining(1);
+        buffer.put(b);
+        position++;
+    }
+
+    /**
+     * Write {@code length} bytes from {@code bytes} starting at
+     * {@code offset}.
+     * 
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    public void put(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ensureRemaining(1);
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Write {@code byteable}.
+     * 
+     * @param byteable
+     */
+    public void put(Byteable byteable) {
+        int size = byteable.size();
+        if(size <= BUFFER_SIZE) {
+            ensureRemaining(size);
+            byteable.copyTo(buffer);
+            position += size;
+        }
+        else {
+            ByteBuffer bytes = byteable.getBytes();
+            while (bytes.hasRemaining()) {
+                ensureRemaining(1);
+                int limit = bytes.limit();
+                bytes.limit(bytes.position()
+                        + Math.min(bytes.remaining(), buffer.remaining()));
+                position += bytes.remaining();
+                buffer.put(bytes);
+                bytes.limit(limit);
+            }
+        }
+    }
+
+    /**
+     * Write {@code value}.
+     * 
+     * @param value
+     */
+    public void putInt(int value) {
+        ensureRemaining(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    /**
+     * Write {@code value}.
+     * 
+     * @param value
+     */
+    public void putLong(long value) {
+        ensureRemaining(8);
+        buffer.putLong(value);
+        position += 8;
+    }
+
+    /**
+     * Flush any buffered data and return the direct buffer to the pool. The
+     * writer cannot be used afterwards.
+     */
+    public void release() {
+        if(buffer != null) {
+            try {
+                flush();
+            }
+            finally {
+                buffer.clear();
+                POOL.offer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Flush the buffer if it does not have room for {@code count} more bytes.
+     * 
+     * @param count
+     */
+    private void ensureRemaining(int count) {
+        Preconditions.checkState(buffer != null, "The writer was released");
+        if(buffer.remaining() < count) {
+            flush();
+        }
+    }
+
+}
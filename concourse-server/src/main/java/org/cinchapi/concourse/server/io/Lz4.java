@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.io;
+
+import java.util.Arrays;
+
+/**
+ * A pure Java implementation of the <a
+ * href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4
+ * block format</a>. LZ4 trades some compression ratio for very fast
+ * compression and decompression, which makes it a good fit for data that is
+ * decompressed on the read path.
+ * <p>
+ * The compressed form does not record the length of the original data, so
+ * the caller must store it alongside the compressed bytes.
+ * </p>
+ * 
+ * @author jnelson
+ */
+public final class Lz4 {
+
+    /**
+     * Return the LZ4 compressed form of the {@code length} bytes in
+     * {@code src} starting at {@code offset}.
+     * 
+     * @param src
+     * @param offset
+     * @param length
+     * @return the compressed bytes
+     */
+    public static byte[] compress(byte[] src, int offset, int length) {
+        byte[] dest = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << HASH_LOG]; // positions are stored + 1 so
+                                              // that 0 means empty
+        int end = offset + length;
+        int limit = end - MF_LIMIT;
+        int anchor = offset;
+        int ip = offset;
+        int dp = 0;
+        while (ip < limit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int ref = table[hash] - 1;
+            table[hash] = ip + 1;
+            if(ref >= offset && ip - ref <= MAX_DISTANCE
+                    && readInt(src, ref) == sequence) {
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < end - LAST_LITERALS
+                        && src[ref + matchLength] == src[ip + matchLength]) {
+                    matchLength++;
+                }
+                dp = writeLiterals(dest, dp, src, anchor, ip - anchor,
+                        matchLength - MIN_MATCH);
+                dest[dp++] = (byte) (ip - ref);
+                dest[dp++] = (byte) ((ip - ref) >>> 8);
+                dp = writeLength(dest, dp, matchLength - MIN_MATCH);
+                ip += matchLength;
+                anchor = ip;
+            }
+            else {
+                ip++;
+            }
+        }
+        dp = writeLiterals(dest, dp, src, anchor, end - anchor, 0);
+        return Arrays.copyOf(dest, dp);
+    }
+
+    /**
+     * Decompress the {@code length} LZ4 compressed bytes in {@code src}
+     * starting at {@code offset} into {@code dest}, which must be exactly as
+     * long as the original data.
+     * 
+     * @param src
+     * @param offset
+     * @param length
+     * @param dest
+     * @throws IllegalArgumentException if the compressed bytes are malformed
+     */
+    public static void decompress(byte[] src, int offset, int length,
+            byte[] dest) throws IllegalArgumentException {
+        int sp = offset;
+        int end = offset + length;
+        int dp = 0;
+        try {
+            while (sp < end) {
+                int token = src[sp++] & 0xFF;
+                int literals = token >>> 4;
+                if(literals == 0x0F) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        literals += b;
+                    }
+                    while (b == 0xFF);
+                }
+                System.arraycopy(src, sp, dest, dp, literals);
+                sp += literals;
+                dp += literals;
+                if(sp >= end) {
+                    break; // the last sequence only has literals
+                }
+                int distance = (src[sp++] & 0xFF) | ((src[sp++] & 0xFF) << 8);
+                int matchLength = token & 0x0F;
+                if(matchLength == 0x0F) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        matchLength += b;
+                    }
+                    while (b == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                int ref = dp - distance;
+                if(distance == 0 || ref < 0) {
+                    throw new IllegalArgumentException(
+                            "Malformed LZ4 data: invalid match distance "
+                                    + distance);
+                }
+                for (int i = 0; i < matchLength; i++) { // the match may
+                                                        // overlap the output
+                    dest[dp++] = dest[ref++];
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed LZ4 data", e);
+        }
+        if(dp != dest.length) {
+            throw new IllegalArgumentException("Malformed LZ4 data: expected "
+                    + dest.length + " bytes, but got " + dp);
+        }
+    }
+
+    /**
+     * Read the little endian int at {@code position} in {@code bytes}.
+     * 
+     * @param bytes
+     * @param position
+     * @return the int
+     */
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | ((bytes[position + 1] & 0xFF) << 8)
+                | ((bytes[position + 2] & 0xFF) << 16)
+                | ((bytes[position + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Write the extra bytes for a literal or match {@code length} that does
+     * not fit in its token nibble.
+     * 
+     * @param dest
+     * @param dp
+     * @param length
+     * @return the new position in {@code dest}
+     */
+    private static int writeLength(byte[] dest, int dp, int length) {
+        if(length >= 0x0F) {
+            length -= 0x0F;
+            while (length >= 0xFF) {
+                dest[dp++] = (byte) 0xFF;
+                length -= 0xFF;
+            }
+            dest[dp++] = (byte) length;
+        }
+        return dp;
+    }
+
+    /**
+     * Write the token and the {@code count} literals from {@code src}
+     * starting at {@code anchor} for a sequence whose match is
+     * {@code matchLength} bytes longer than {@link #MIN_MATCH}.
+     * 
+     * @param dest
+     * @param dp
+     * @param src
+     * @param anchor
+     * @param count
+     * @param matchLength
+     * @return the new position in {@code dest}
+     */
+    private static int writeLiterals(byte[] dest, int dp, byte[] src,
+            int anchor, int count, int matchLength) {
+        dest[dp++] = (byte) ((Math.min(count, 0x0F) << 4) | Math.min(
+                matchLength, 0x0F));
+        dp = writeLength(dest, dp, count);
+        System.arraycopy(src, anchor, dest, dp, count);
+        return dp + count;
+    }
+
+    /**
+     * The number of bits in the hash of a 4 byte sequence.
+     */
+    private static final int HASH_LOG = 12;
+
+    /**
+     * The last bytes of the input are always encoded as literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * The largest distance that a match can reference.
+     */
+    private static final int MAX_DISTANCE = 0xFFFF;
+
+    /**
+     * A match cannot start within this many bytes of the end of the input.
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * The smallest match that is encoded.
+     */
+    private static final int MIN_MATCH = 4;
+
+    private Lz4() {/* noop */}
+
+}
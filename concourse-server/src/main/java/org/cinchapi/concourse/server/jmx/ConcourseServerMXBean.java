@@ -41,6 +41,17 @@ public interface ConcourseServerMXBean {
     public static final String JMX_SERVICE_URL = "service:jmx:rmi:///jndi/rmi://localhost:"
             + GlobalState.JMX_PORT + "/jmxrmi";
 
+    /**
+     * Merge the runs of Database blocks in {@code environment} that are
+     * eligible for compaction and block until there are no more. Compaction
+     * happens periodically in the background, so this is only necessary to
+     * force one.
+     * 
+     * @param environment
+     */
+    @ManagedOperation
+    public void compact(String environment);
+
     /**
      * Return a string that contains the dumps for all the storage units (i.e.
      * buffer, primary, secondary, search) identified by {@code id}.
@@ -66,6 +77,59 @@ public interface ConcourseServerMXBean {
     @ManagedOperation
     public String dump(String id, String environment);
 
+    /**
+     * Return a description of the cache of block file mappings that the
+     * Database in {@code environment} uses for disk seeks. The cache is shared
+     * by all environments, so the stats are the same for each.
+     * 
+     * @param environment
+     * @return the block file cache stats
+     */
+    @ManagedOperation
+    public String getBlockFileCacheStats(String environment);
+
+    /**
+     * Return a description of the observed false positive rate of the bloom
+     * filters for each type of Database block in {@code environment}.
+     * 
+     * @param environment
+     * @return the bloom filter stats
+     */
+    @ManagedOperation
+    public String getBloomFilterStats(String environment);
+
+    /**
+     * Return a description of the progress that the background compactor for
+     * {@code environment} has made merging Database blocks.
+     * 
+     * @param environment
+     * @return the compaction status
+     */
+    @ManagedOperation
+    public String getCompactionStatus(String environment);
+
+    /**
+     * Return a description of the size and the hit, miss, eviction, rejection
+     * and load time stats for each of the record caches (full records, partial
+     * records and indexes) of the Database in {@code environment}.
+     * 
+     * @param environment
+     * @return the record cache stats
+     */
+    @ManagedOperation
+    public String getRecordCacheStats(String environment);
+
+    /**
+     * Return a description of the progress that the background block scrubber
+     * for {@code environment} has made verifying the checksums of Database
+     * blocks, including any blocks that are corrupt.
+     * 
+     * @param environment
+     * @return the scrubber status
+     */
+    @ManagedOperation
+    public String getScrubberStatus(String environment);
+
     /**
      * Return a string that contains a list of the ids for all the blocks that
      * can be dumped using {@link #dump(String)}.
@@ -147,6 +211,16 @@ public interface ConcourseServerMXBean {
     @ManagedOperation
     public boolean login(byte[] username, byte[] password);
 
+    /**
+     * Force all the data in the Buffer for {@code environment} to disk. This
+     * is only necessary if the environment is configured with a
+     * buffer_durability other than PER_WRITE.
+     * 
+     * @param environment
+     */
+    @ManagedOperation
+    public void syncBuffer(String environment);
+
     /**
      * Remove the user identified by {@code username}.
      * 
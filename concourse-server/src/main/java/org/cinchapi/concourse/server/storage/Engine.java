@@ -59,6 +59,7 @@ import org.cinchapi.concourse.server.model.Text;
 import org.cinchapi.concourse.server.model.Value;
 import org.cinchapi.concourse.server.storage.db.Database;
 import org.cinchapi.concourse.server.storage.temp.Buffer;
+import org.cinchapi.concourse.server.storage.temp.Durability;
 import org.cinchapi.concourse.server.storage.temp.Write;
 import org.cinchapi.concourse.thrift.Operator;
 import org.cinchapi.concourse.thrift.TObject;
@@ -305,6 +306,7 @@ public final class Engine extends BufferedStore implements
                 + File.separator + "meta" + File.separator + "inventory");
         buffer.setInventory(inventory);
         buffer.setThreadNamePrefix(environment + "-buffer");
+        buffer.setDurability(GlobalState.getBufferDurability(environment));
     }
 
     /**
@@ -474,6 +476,23 @@ public final class Engine extends BufferedStore implements
         return ((Database) destination).dump(id);
     }
 
+    /**
+     * Merge runs of Database blocks that are eligible for compaction.
+     */
+    @ManagedOperation
+    public void compact() {
+        ((Database) destination).compact();
+    }
+
+    /**
+     * Force all the data in the Buffer to disk. This is only necessary if the
+     * Buffer is not configured with {@link Durability#PER_WRITE} durability.
+     */
+    @ManagedOperation
+    public void syncBuffer() {
+        ((Buffer) buffer).sync();
+    }
+
     @Override
     public Set<TObject> fetch(String key, long record) {
         transportLock.readLock().lock();
@@ -499,6 +518,62 @@ public final class Engine extends BufferedStore implements
         }
     }
 
+    /**
+     * Return a description of the cache of block file mappings that the
+     * Database uses for disk seeks.
+     * 
+     * @return the block file cache stats
+     */
+    @ManagedOperation
+    public String getBlockFileCacheStats() {
+        return ((Database) destination).getBlockFileCacheStats();
+    }
+
+    /**
+     * Return a description of the observed false positive rate of the bloom
+     * filters for each type of Database block.
+     * 
+     * @return the bloom filter stats
+     */
+    @ManagedOperation
+    public String getBloomFilterStats() {
+        return ((Database) destination).getBloomFilterStats();
+    }
+
+    /**
+     * Return a description of the progress that the Database compactor has
+     * made merging blocks.
+     * 
+     * @return the compaction status
+     */
+    @ManagedOperation
+    public String getCompactionStatus() {
+        return ((Database) destination).getCompactionStatus();
+    }
+
+    /**
+     * Return a description of the size and the hit, miss, eviction, rejection
+     * and load time stats for each of the Database record caches.
+     * 
+     * @return the record cache stats
+     */
+    @ManagedOperation
+    public String getRecordCacheStats() {
+        return ((Database) destination).getRecordCacheStats();
+    }
+
+    /**
+     * Return a description of the progress that the Database block scrubber
+     * has made verifying block checksums and any corruption that it has
+     * found.
+     * 
+     * @return the scrubber status
+     */
+    @ManagedOperation
+    public String getScrubberStatus() {
+        return ((Database) destination).getScrubberStatus();
+    }
+
     /**
      * Public interface for the {@link Database#getDumpList()} method.
      * 
@@ -29,7 +29,10 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -39,16 +42,28 @@ import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.io.Serializables;
 import org.cinchapi.concourse.server.io.Syncable;
+import org.cinchapi.concourse.util.ByteBuffers;
 import org.cinchapi.vendor.jsr166e.StampedLock;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 /**
  * A wrapper around a {@link com.google.common.hash.BloomFilter} with methods to
  * make it easier to add one or more {@link Byteable} objects to the filter at a
  * time while abstracting away the notion of funnels, etc.
  * </p>
+ * <p>
+ * A BloomFilter that is created using {@link #createBlocked(String, int)} is
+ * instead backed by a <em>blocked</em> bit array: each element hashes to a
+ * single 64 byte (cache line sized) block and all of its bits are set within
+ * that block, so a probe touches exactly one cache line. A blocked filter is
+ * stored on disk as a small header followed by the raw bit array, which
+ * {@link #open(String)} maps read-only and probes in place without
+ * deserializing anything onto the heap.
+ * </p>
  * 
  * @author jnelson
  */
@@ -91,13 +106,56 @@ public class BloomFilter implements Syncable {
     }
 
     /**
-     * Return the BloomFilter that is stored on disk in {@code file}.
+     * Create a new blocked BloomFilter that is sized for exactly
+     * {@code expectedInsertions} at the standard false positive probability.
+     * Since the size is fixed at creation, this should only be used once the
+     * number of elements that will be added is known (i.e. when the owner is
+     * being sealed).
+     * 
+     * @param file
+     * @param expectedInsertions
+     * @return the BloomFilter
+     */
+    public static BloomFilter createBlocked(String file, int expectedInsertions) {
+        int n = Math.max(expectedInsertions, 1);
+        double bitsPerElement = -Math.log(FALSE_POSITIVE_PROBABILITY)
+                / (Math.log(2) * Math.log(2));
+        long numBits = (long) Math.ceil(n * bitsPerElement
+                * BLOCKING_OVERHEAD);
+        int numBlocks = (int) Math.max(1, (numBits + BLOCK_BITS - 1)
+                / BLOCK_BITS);
+        int numHashes = (int) Math.max(1,
+                Math.min(MAX_HASHES, Math.round(bitsPerElement * Math.log(2))));
+        ByteBuffer bits = ByteBuffer.allocate(HEADER_SIZE + numBlocks
+                * BLOCK_SIZE);
+        bits.putInt(MAGIC);
+        bits.putInt(numBlocks);
+        bits.putInt(numHashes);
+        bits.rewind();
+        return new BloomFilter(file, bits);
+    }
+
+    /**
+     * Return the BloomFilter that is stored on disk in {@code file}. A blocked
+     * filter is mapped read-only, whereas a filter that was written with Java
+     * serialization is deserialized onto the heap.
      * 
      * @param file
      * @return the BloomFilter
      */
     @SuppressWarnings({ "unchecked" })
     public static BloomFilter open(String file) {
+        long size = FileSystem.getFileSize(file);
+        if(size >= HEADER_SIZE) {
+            MappedByteBuffer bits = FileSystem.map(file, MapMode.READ_ONLY, 0,
+                    size);
+            if(bits.getInt(0) == MAGIC) {
+                return new BloomFilter(file, bits);
+            }
+            else {
+                FileSystem.unmap(bits);
+            }
+        }
         try {
             final AtomicBoolean upgrade = new AtomicBoolean(false);
             ObjectInput input = new ObjectInputStream(new BufferedInputStream(
@@ -136,11 +194,76 @@ public class BloomFilter implements Syncable {
         }
     }
 
+    /**
+     * The number of bits in each block of a blocked filter. This is the size
+     * of a typical cache line.
+     */
+    private static final int BLOCK_BITS = 512;
+
+    /**
+     * The number of bytes in each block of a blocked filter.
+     */
+    private static final int BLOCK_SIZE = BLOCK_BITS / 8;
+
+    /**
+     * The factor by which a blocked filter is made larger than a standard one
+     * to make up for the uneven load across blocks.
+     */
+    private static final double BLOCKING_OVERHEAD = 1.2;
+
+    /**
+     * The false positive probability that blocked filters are sized for. This
+     * matches the default for the Guava filters.
+     */
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.03;
+
+    /**
+     * The hash function for blocked filters. The low half of the hash selects
+     * the block and the high half supplies the bit positions within it.
+     */
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * The number of bytes at the beginning of a blocked filter before the bit
+     * array. The header is padded to {@link #BLOCK_SIZE} so that each block
+     * stays aligned in the mapped file.
+     */
+    private static final int HEADER_SIZE = BLOCK_SIZE;
+
+    /**
+     * The value that identifies a blocked filter file. Filters that were
+     * written with Java serialization start with a different stream magic.
+     */
+    private static final int MAGIC = 0xB100F117;
+
+    /**
+     * The maximum number of hash functions for a blocked filter. Each bit
+     * position is taken from 9 bits of a single 64 bit hash.
+     */
+    private static final int MAX_HASHES = 64 / 9;
+
+    /**
+     * The header and bit array for a blocked filter or {@code null} if this
+     * filter is backed by a Guava filter.
+     */
+    private final ByteBuffer bits;
+
     /**
      * The file where the content is stored.
      */
     private String file;
 
+    /**
+     * The number of blocks in {@link #bits}.
+     */
+    private final int numBlocks;
+
+    /**
+     * The number of bits that are set within a block for each element in
+     * {@link #bits}.
+     */
+    private final int numHashes;
+
     /**
      * Lock used to ensure the object is ThreadSafe. This lock provides access
      * to a masterLock.readLock()() and masterLock.writeLock()().
@@ -148,10 +271,25 @@ public class BloomFilter implements Syncable {
     private final StampedLock lock = new StampedLock();
 
     /**
-     * The wrapped bloom filter. This is where the data is actually stored.
+     * The wrapped bloom filter. This is where the data is actually stored
+     * unless the filter is blocked.
      */
     private final com.google.common.hash.BloomFilter<Composite> source;
 
+    /**
+     * Construct a new blocked instance.
+     * 
+     * @param file
+     * @param bits
+     */
+    private BloomFilter(String file, ByteBuffer bits) {
+        this.source = null;
+        this.bits = bits;
+        this.numBlocks = bits.getInt(4);
+        this.numHashes = bits.getInt(8);
+        this.file = file;
+    }
+
     /**
      * Construct a new instance.
      * 
@@ -161,6 +299,9 @@ public class BloomFilter implements Syncable {
     private BloomFilter(String file,
             com.google.common.hash.BloomFilter<Composite> source) {
         this.source = source;
+        this.bits = null;
+        this.numBlocks = 0;
+        this.numHashes = 0;
         this.file = file;
     }
 
@@ -174,6 +315,9 @@ public class BloomFilter implements Syncable {
                 ByteableFunnel.INSTANCE, expectedInsertions); // uses 3% false
                                                               // positive
                                                               // probability
+        this.bits = null;
+        this.numBlocks = 0;
+        this.numHashes = 0;
         this.file = file;
     }
 
@@ -259,6 +403,10 @@ public class BloomFilter implements Syncable {
     public void sync() {
         Preconditions.checkState(file != null, "Cannot sync a "
                 + "BloomFilter that does not have an associated file");
+        if(bits != null) {
+            syncBlocked();
+            return;
+        }
         FileChannel channel = FileSystem.getFileChannel(file);
         long stamp = lock.tryOptimisticRead();
         Serializables.write(source, channel); // CON-164
@@ -286,6 +434,9 @@ public class BloomFilter implements Syncable {
      * @return {@code true} if the composite might exist
      */
     private boolean mightContain(Composite composite) {
+        if(bits != null) {
+            return mightContainBlocked(composite);
+        }
         long stamp = lock.tryOptimisticRead();
         boolean mightContain = source.mightContain(composite);
         if(!lock.validate(stamp)) {
@@ -310,10 +461,136 @@ public class BloomFilter implements Syncable {
     private boolean put(Composite composite) {
         long stamp = lock.writeLock();
         try {
-            return source.put(composite);
+            if(bits != null) {
+                return putBlocked(composite);
+            }
+            else {
+                return source.put(composite);
+            }
         }
         finally {
             lock.unlockWrite(stamp);
         }
     }
+
+    /**
+     * Return the 128 bit hash of {@code composite} as two longs.
+     * 
+     * @param composite
+     * @return the hash
+     */
+    private static long[] hash(Composite composite) {
+        ByteBuffer hash = ByteBuffer.wrap(HASH_FUNCTION.hashBytes(
+                ByteBuffers.toByteArray(composite.getBytes())).asBytes());
+        return new long[] { hash.getLong(), hash.getLong() };
+    }
+
+    /**
+     * Return the position in {@link #bits} of the block that {@code hash}
+     * belongs to.
+     * 
+     * @param hash
+     * @return the block offset
+     */
+    private int block(long[] hash) {
+        return HEADER_SIZE + (int) ((hash[0] & Long.MAX_VALUE) % numBlocks)
+                * BLOCK_SIZE;
+    }
+
+    /**
+     * Check the blocked bit array to see if the composite might have been
+     * added. All the bits for {@code composite} live in the same block, so
+     * this touches a single cache line.
+     * 
+     * @param composite
+     * @return {@code true} if the composite might exist
+     */
+    private boolean mightContainBlocked(Composite composite) {
+        long[] hash = hash(composite);
+        int block = block(hash);
+        long stamp = lock.tryOptimisticRead();
+        boolean mightContain = testBits(block, hash[1]);
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                mightContain = testBits(block, hash[1]);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return mightContain;
+    }
+
+    /**
+     * Set the bits for {@code composite} in the blocked bit array.
+     * 
+     * @param composite
+     * @return {@code true} if the bits have changed as a result of the addition
+     *         of the {@code composite}
+     */
+    private boolean putBlocked(Composite composite) {
+        Preconditions.checkState(!bits.isReadOnly(),
+                "Cannot add to a BloomFilter that has been mapped from disk");
+        long[] hash = hash(composite);
+        int block = block(hash);
+        boolean changed = false;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) (hash[1] >>> (i * 9)) & (BLOCK_BITS - 1);
+            int word = block + (bit >>> 6) * 8;
+            long current = bits.getLong(word);
+            long updated = current | (1L << (bit & 63));
+            if(updated != current) {
+                bits.putLong(word, updated);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Write the header and bit array of a blocked filter to {@link #file}. A
+     * filter that was mapped from disk is already durable, so there is
+     * nothing to do in that case.
+     */
+    private void syncBlocked() {
+        if(bits instanceof MappedByteBuffer) {
+            return;
+        }
+        FileChannel channel = FileSystem.getFileChannel(file);
+        long stamp = lock.readLock();
+        try {
+            ByteBuffer bytes = bits.duplicate();
+            bytes.rewind();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            lock.unlockRead(stamp);
+            FileSystem.closeFileChannel(channel);
+        }
+    }
+
+    /**
+     * Return {@code true} if all the bits that {@code hash} selects within the
+     * {@code block} are set.
+     * 
+     * @param block
+     * @param hash
+     * @return {@code true} if all the bits are set
+     */
+    private boolean testBits(int block, long hash) {
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (int) (hash >>> (i * 9)) & (BLOCK_BITS - 1);
+            if((bits.getLong(block + (bit >>> 6) * 8) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -23,14 +23,21 @@
  */
 package org.cinchapi.concourse.server.storage.db;
 
+import gnu.trove.list.array.TLongArrayList;
+
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -45,23 +52,31 @@ import org.cinchapi.concourse.server.concurrent.Locks;
 import org.cinchapi.concourse.server.io.Byteable;
 import org.cinchapi.concourse.server.io.ByteableCollections;
 import org.cinchapi.concourse.server.io.Byteables;
+import org.cinchapi.concourse.server.io.ChannelWriter;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.io.Syncable;
 import org.cinchapi.concourse.server.storage.Action;
 import org.cinchapi.concourse.server.storage.cache.BloomFilter;
 import org.cinchapi.concourse.util.Logger;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.TreeMultiset;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.RateLimiter;
 
 /**
  * <p>
  * A Block is a sorted collection of Revisions that is used by the Database to
  * store indexed data. When a Block is initially created, it resides solely in
- * memory and is able to insert new revisions, which are sorted on the fly by a
- * {@link Sorter}. Once the Block is synced to disk it becomes immutable and all
+ * memory and is able to insert new revisions, which are sorted on the fly in a
+ * {@link RevisionSkipList}. Once the Block is synced to disk it becomes immutable and all
  * lookups are disk based. This means that writing to a block never incurs any
  * random disk I/O. A Block is not durable until the {@link #sync()} method is
  * called, so Block serialization and Buffer.Page deletion happen sequentially.
@@ -141,6 +156,64 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
         return FileSystem.getSimpleName(filename);
     }
 
+    /**
+     * Return a description of the shared cache of mappings that Blocks use
+     * for disk seeks.
+     * 
+     * @return the file cache stats
+     */
+    @PackagePrivate
+    static String getFileCacheStats() {
+        return FILE_CACHE.getStats();
+    }
+
+    /**
+     * Return a view that lazily merges the {@code sorted} revision streams
+     * (i.e. from {@link #scan(RateLimiter)}) into a single sorted stream
+     * without duplicates. Only the next revision from each stream is held in
+     * memory while the view is iterated.
+     * 
+     * @param sorted
+     * @return the merged revisions
+     */
+    @PackagePrivate
+    static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> Iterable<Revision<L, K, V>> merge(
+            final List<? extends Iterable<Revision<L, K, V>>> sorted) {
+        return new Iterable<Revision<L, K, V>>() {
+
+            @Override
+            public Iterator<Revision<L, K, V>> iterator() {
+                List<Iterator<Revision<L, K, V>>> iterators = Lists
+                        .newArrayListWithCapacity(sorted.size());
+                for (Iterable<Revision<L, K, V>> revisions : sorted) {
+                    iterators.add(revisions.iterator());
+                }
+                final PeekingIterator<Revision<L, K, V>> it = Iterators
+                        .peekingIterator(Iterators.mergeSorted(iterators,
+                                RevisionSorter.INSTANCE));
+                return new AbstractIterator<Revision<L, K, V>>() {
+
+                    @Override
+                    protected Revision<L, K, V> computeNext() {
+                        if(!it.hasNext()) {
+                            return endOfData();
+                        }
+                        Revision<L, K, V> next = it.next();
+                        while (it.hasNext()
+                                && RevisionSorter.INSTANCE.compare(it.peek(),
+                                        next) == 0) {
+                            it.next(); // the same revision may be in more
+                                       // than one block
+                        }
+                        return next;
+                    }
+
+                };
+            }
+
+        };
+    }
+
     /**
      * The extension for the block file.
      */
@@ -149,13 +222,20 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
 
     /**
      * The expected number of Block insertions. This number is used to size the
-     * Block's internal data structures. This value should be large enough to
-     * reflect the fact that, for each revision, we make 3 inserts into the
-     * bloom filter, but no larger than necessary since we must keep all bloom
-     * filters in memory.
+     * Block's internal data structures while it is mutable. The bloom filter
+     * that is stored on disk is sized from the actual content when the Block
+     * is synced, so this only needs to be large enough to keep in memory seeks
+     * reasonably selective.
      */
     private static final int EXPECTED_INSERTIONS = GlobalState.BUFFER_PAGE_SIZE;
 
+    /**
+     * The cache of mappings for immutable block files that is shared by all
+     * Blocks for disk seeks.
+     */
+    private static final BlockFileCache FILE_CACHE = new BlockFileCache(
+            GlobalState.BLOCK_FILE_CACHE_SIZE);
+
     /**
      * The extension for the {@link BloomFilter} file.
      */
@@ -166,11 +246,45 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
      */
     private static final String INDEX_NAME_EXTENSION = ".indx";
 
+    /**
+     * The extension for the file that contains the sorted
+     * {@link LocatorDirectory#key(Byteable) directory keys} for the locators
+     * in the Block.
+     */
+    private static final String LOCATOR_NAME_EXTENSION = ".lctr";
+
+    /**
+     * The extension for the {@link BlockSegments} file that describes the
+     * segments of a compressed block file. A block file without one is not
+     * compressed.
+     */
+    private static final String SEGMENT_NAME_EXTENSION = ".sgmt";
+
+    /**
+     * The {@link #dictionaryPosition} for a block file that has not been
+     * inspected yet.
+     */
+    private static final int DICTIONARY_UNKNOWN = -2;
+
+    /**
+     * The {@link #dictionaryPosition} for a block file that uses the original
+     * encoding, where each revision is stored in full.
+     */
+    private static final int NO_DICTIONARY = -1;
+
     /**
      * The flag that indicates whether the Block is mutable or not. A Block is
      * mutable until a call to {@link #sync()} stores it to disk.
      */
-    protected transient boolean mutable;
+    protected transient volatile boolean mutable;
+
+    /**
+     * The flag that indicates whether the Block has been sealed by a call to
+     * {@link #sync()}. A sealed Block does not accept any more inserts, but it
+     * remains mutable (and is therefore read from memory) until its content
+     * is durable on disk.
+     */
+    private transient boolean sealed = false;
 
     /**
      * The master lock for {@link #write} and {@link #read}. DO NOT use this
@@ -180,15 +294,15 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
 
     /**
      * A shared lock that permits many readers and no writer. Use this lock to
-     * ensure that no data insert occurs while a seek is happening within the
-     * Block.
+     * ensure that no data insert occurs while the Block is being serialized or
+     * its size is read. Seeks do not need this lock.
      */
     protected final ReadLock read = master.readLock();
 
     /**
      * An exclusive lock that permits only one writer and no reader. Use this
-     * lock to ensure that no seek occurs while data is being inserted into the
-     * Block.
+     * lock to ensure that data is inserted by one writer at a time and not
+     * while the Block is being serialized.
      */
     protected final WriteLock write = master.writeLock();
 
@@ -198,10 +312,64 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
     private final String file;
 
     /**
-     * A fixed size filter that is used to test whether elements are contained
-     * in the Block without actually looking through the Block.
+     * A filter that is used to test whether elements are contained in the
+     * Block without actually looking through the Block. While the Block is
+     * mutable, this is a fixed size filter in memory. When the Block is
+     * synced, it is replaced with a filter that is sized for the Block's
+     * actual content and mapped from disk.
+     */
+    private volatile BloomFilter filter;
+
+    /**
+     * The segments of the block file if it is compressed, or {@code null} if
+     * the Block is mutable or the block file is not compressed.
+     */
+    @Nullable
+    private transient volatile BlockSegments segments;
+
+    /**
+     * The id, size and checksum of the block file, which are computed while
+     * it is written in {@link #sync()}, or {@code null} if the Block was not
+     * synced by this instance.
      */
-    private final BloomFilter filter;
+    @Nullable
+    private transient volatile BlockManifest.Entry manifestEntry;
+
+    /**
+     * The sorted locator keys, which are mapped from the locator file the
+     * first time that {@link #getLocatorKeys()} is called for an immutable
+     * Block, so that the file isn't mapped again when the Block is removed
+     * from the {@link LocatorDirectory}.
+     */
+    @Nullable
+    private transient volatile LongBuffer locatorKeys;
+
+    /**
+     * The position of the value dictionary in the block file, which is
+     * {@link #NO_DICTIONARY} if the block file uses the original encoding or
+     * {@link #DICTIONARY_UNKNOWN} if the header has not been read yet. See
+     * {@link BlockFormat}.
+     */
+    private transient volatile int dictionaryPosition = DICTIONARY_UNKNOWN;
+
+    /**
+     * A soft reference to the value dictionary for an immutable Block so that
+     * it does not have to be reloaded for each seek.
+     */
+    private transient volatile SoftReference<BlockFormat.Dictionary<V>> dictionary = new SoftReference<BlockFormat.Dictionary<V>>(
+            null);
+
+    /**
+     * The number of seeks where the {@link #filter} indicated that relevant
+     * revisions <em>might</em> exist in the Block.
+     */
+    private final AtomicLong filterPositives = new AtomicLong();
+
+    /**
+     * The number of seeks where the {@link #filter} indicated that relevant
+     * revisions <em>might</em> exist in the Block, but there were none.
+     */
+    private final AtomicLong filterFalsePositives = new AtomicLong();
 
     /**
      * The unique id for the block. Each component of the block is named after
@@ -216,17 +384,20 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
      */
     private final BlockIndex index; // Since the index is only used for
                                     // immutable blocks, it is only populated
-                                    // during the call to #getBytes()
+                                    // when the Block is encoded in
+                                    // #sync() or #getBytes()
 
     /**
      * A collection that contains all the Revisions that have been inserted into
-     * the Block. This collection is sorted on the fly as elements are inserted.
-     * This collection is only maintained for a mutable Block. A Block that is
+     * the Block. This collection is sorted on the fly as elements are inserted
+     * and can be seeked without holding any lock, so reads from a mutable
+     * Block are not blocked by concurrent inserts. This collection is only
+     * maintained for a mutable Block. A Block that is
      * synced and subsequently read from disk does not rely on this collection
      * at all.
      */
     @Nullable
-    private TreeMultiset<Revision<L, K, V>> revisions;
+    private RevisionSkipList<L, K, V> revisions;
 
     /**
      * A soft reference to the {@link #revisions} that <em>may</em> stay in
@@ -234,7 +405,20 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
      * this reference in response to memory pressure at which point disk seeks
      * will be performed in the {@link #seek(Record, Byteable...)} method.
      */
-    private final SoftReference<TreeMultiset<Revision<L, K, V>>> softRevisions;
+    private final SoftReference<RevisionSkipList<L, K, V>> softRevisions;
+
+    /**
+     * The smallest version of any revision that has been inserted into this
+     * Block while it is mutable. Once the Block is synced, the version range
+     * is read from the {@link #index}.
+     */
+    private transient long minVersion = Long.MAX_VALUE;
+
+    /**
+     * The largest version of any revision that has been inserted into this
+     * Block while it is mutable.
+     */
+    private transient long maxVersion = Long.MIN_VALUE;
 
     /**
      * The running size of the Block. This number only refers to the size of the
@@ -257,7 +441,12 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
         this.file = directory + File.separator + id + BLOCK_NAME_EXTENSION;
         if(diskLoad) {
             this.mutable = false;
-            this.size = (int) FileSystem.getFileSize(this.file);
+            String segmentFile = directory + File.separator + id
+                    + SEGMENT_NAME_EXTENSION;
+            this.segments = FileSystem.hasFile(segmentFile) ? BlockSegments
+                    .open(segmentFile) : null;
+            this.size = segments != null ? segments.getUncompressedSize()
+                    : (int) FileSystem.getFileSize(this.file);
             this.filter = BloomFilter.open(directory + File.separator + id
                     + FILTER_NAME_EXTENSION);
             this.index = BlockIndex.open(directory + File.separator + id
@@ -267,14 +456,12 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
         else {
             this.mutable = true;
             this.size = 0;
-            this.revisions = TreeMultiset.create(Sorter.INSTANCE);
-            this.filter = BloomFilter.create(
-                    (directory + File.separator + id + FILTER_NAME_EXTENSION),
-                    EXPECTED_INSERTIONS);
+            this.revisions = new RevisionSkipList<L, K, V>();
+            this.filter = BloomFilter.create(EXPECTED_INSERTIONS);
             this.index = BlockIndex.create(directory + File.separator + id
                     + INDEX_NAME_EXTENSION, EXPECTED_INSERTIONS);
         }
-        this.softRevisions = new SoftReference<TreeMultiset<Revision<L, K, V>>>(
+        this.softRevisions = new SoftReference<RevisionSkipList<L, K, V>>(
                 revisions);
     }
 
@@ -294,10 +481,7 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
     public ByteBuffer getBytes() {
         read.lock();
         try {
-            ByteBuffer bytes = ByteBuffer.allocate(size);
-            copyTo(bytes);
-            bytes.rewind();
-            return bytes;
+            return BlockFormat.encode(revisions, index);
         }
         finally {
             read.unlock();
@@ -313,6 +497,112 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
         return id;
     }
 
+    /**
+     * Return the largest version of any revision in this Block or
+     * {@link Long#MAX_VALUE} if it is not known.
+     * 
+     * @return the max version
+     */
+    @PackagePrivate
+    long getMaxVersion() {
+        Locks.lockIfCondition(read, mutable);
+        try {
+            return mutable ? maxVersion : index.getMaxVersion();
+        }
+        finally {
+            Locks.unlockIfCondition(read, mutable);
+        }
+    }
+
+    /**
+     * Return {@code true} if this Block is mutable and therefore only exists
+     * in memory.
+     * 
+     * @return {@code true} if the Block is mutable
+     */
+    @PackagePrivate
+    boolean isMutable() {
+        return mutable;
+    }
+
+    /**
+     * Return the smallest version of any revision in this Block or
+     * {@link Long#MIN_VALUE} if it is not known. A Block without any
+     * revisions returns {@link Long#MAX_VALUE}.
+     * 
+     * @return the min version
+     */
+    @PackagePrivate
+    long getMinVersion() {
+        Locks.lockIfCondition(read, mutable);
+        try {
+            return mutable ? minVersion : index.getMinVersion();
+        }
+        finally {
+            Locks.unlockIfCondition(read, mutable);
+        }
+    }
+
+    /**
+     * Return the number of seeks where the filter indicated that relevant
+     * revisions might exist in this Block, but there were none.
+     * 
+     * @return the number of false positives
+     */
+    @PackagePrivate
+    long getFilterFalsePositives() {
+        return filterFalsePositives.get();
+    }
+
+    /**
+     * Return the {@link BlockManifest} entry for the block file if it was
+     * written by {@link #sync()} on this instance.
+     * 
+     * @return the manifest entry or {@code null}
+     */
+    @PackagePrivate
+    @Nullable
+    BlockManifest.Entry getManifestEntry() {
+        return manifestEntry;
+    }
+
+    /**
+     * Return the sorted {@link LocatorDirectory#key(Byteable) directory keys}
+     * for the locators in this Block, or {@code null} if the Block is mutable
+     * or was synced without a locator file.
+     * 
+     * @return the locator keys
+     */
+    @PackagePrivate
+    @Nullable
+    LongBuffer getLocatorKeys() {
+        LongBuffer keys = locatorKeys;
+        if(keys == null && !mutable) {
+            String locators = file.substring(0,
+                    file.length() - BLOCK_NAME_EXTENSION.length())
+                    + LOCATOR_NAME_EXTENSION;
+            if(FileSystem.hasFile(locators)) {
+                // Racing threads may both map the file, but the extra mapping
+                // is released when it is garbage collected.
+                keys = FileSystem.map(locators, MapMode.READ_ONLY, 0,
+                        FileSystem.getFileSize(locators)).asLongBuffer();
+                locatorKeys = keys;
+            }
+        }
+        return keys != null ? keys.duplicate() : null;
+    }
+
+    /**
+     * Return the number of seeks where the filter indicated that relevant
+     * revisions might exist in this Block.
+     * 
+     * @return the number of positives
+     */
+    @PackagePrivate
+    long getFilterPositives() {
+        return filterPositives.get();
+    }
+
     @Override
     public int hashCode() {
         return id.hashCode();
@@ -333,21 +623,11 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
             Action type) throws IllegalStateException {
         Locks.lockIfCondition(write, mutable);
         try {
-            Preconditions.checkState(mutable,
+            Preconditions.checkState(mutable && !sealed,
                     "Cannot modify a block that is not mutable");
             Revision<L, K, V> revision = makeRevision(locator, key, value,
                     version, type);
-            revisions.add(revision);
-            filter.put(revision.getLocator());
-            filter.put(revision.getLocator(), revision.getKey());
-            filter.put(revision.getLocator(), revision.getKey(),
-                    revision.getValue()); // NOTE: The entire revision is added
-                                          // to the filter so that we can
-                                          // quickly verify that a revision
-                                          // DOES NOT exist using
-                                          // #mightContain(L,K,V) without
-                                          // seeking
-            size += revision.size() + 4;
+            doInsert(revision);
             return revision;
         }
         finally {
@@ -355,6 +635,80 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
         }
     }
 
+    /**
+     * Insert all of the {@code revisions} into this Block while only grabbing
+     * the write lock once.
+     * 
+     * @param revisions
+     * @throws IllegalStateException if the Block is not mutable
+     */
+    public void insert(List<? extends Revision<L, K, V>> revisions)
+            throws IllegalStateException {
+        Locks.lockIfCondition(write, mutable);
+        try {
+            Preconditions.checkState(mutable && !sealed,
+                    "Cannot modify a block that is not mutable");
+            for (Revision<L, K, V> revision : revisions) {
+                doInsert(revision);
+            }
+        }
+        finally {
+            Locks.unlockIfCondition(write, mutable);
+        }
+    }
+
+    /**
+     * Delete the block, filter, index, locator and segment files for this
+     * Block. This should only be called once the Block is no longer reachable
+     * by readers.
+     */
+    @PackagePrivate
+    void delete() {
+        FILE_CACHE.invalidate(file);
+        locatorKeys = null;
+        BlockSegments.invalidate(file);
+        String base = file.substring(0,
+                file.length() - BLOCK_NAME_EXTENSION.length());
+        for (String path : new String[] { file,
+                base + FILTER_NAME_EXTENSION, base + INDEX_NAME_EXTENSION,
+                base + LOCATOR_NAME_EXTENSION, base + SEGMENT_NAME_EXTENSION }) {
+            if(FileSystem.hasFile(path)) { // an empty Block is never synced
+                FileSystem.deleteFile(path);
+            }
+        }
+    }
+
+    /**
+     * Move the block, filter, index, locator and segment files for this synced
+     * Block into {@code directory}. The block file is moved last so that a
+     * crash never leaves a block file behind without its filter and index. The
+     * Block should not be used after this method returns; instead, load a new
+     * instance from {@code directory}.
+     * 
+     * @param directory
+     */
+    @PackagePrivate
+    void moveTo(String directory) {
+        Preconditions.checkState(!mutable,
+                "Cannot move a block that is mutable");
+        String base = file.substring(0,
+                file.length() - BLOCK_NAME_EXTENSION.length());
+        String target = directory + File.separator + id;
+        FILE_CACHE.invalidate(file);
+        BlockSegments.invalidate(file);
+        FileSystem.replaceFile(target + FILTER_NAME_EXTENSION, base
+                + FILTER_NAME_EXTENSION);
+        FileSystem.replaceFile(target + INDEX_NAME_EXTENSION, base
+                + INDEX_NAME_EXTENSION);
+        for (String extension : new String[] { LOCATOR_NAME_EXTENSION,
+                SEGMENT_NAME_EXTENSION }) {
+            if(FileSystem.hasFile(base + extension)) {
+                FileSystem.replaceFile(target + extension, base + extension);
+            }
+        }
+        FileSystem.replaceFile(target + BLOCK_NAME_EXTENSION, file);
+    }
+
     /**
      * Return {@code true} if this Block might contain revisions involving
      * {@code key} as {@code value} in {@code locator}. This method <em>may</em>
@@ -419,97 +773,302 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
     /**
      * Flush the content to disk in a block file, sync the filter and index and
      * finally make the Block immutable.
+     * <p>
+     * The Block is sealed under the write lock, but it is encoded and written
+     * outside of it so that concurrent seeks continue to be served from memory
+     * until the files are durable. The encoding is streamed to disk through a
+     * small reusable buffer (and compressed one segment at a time if
+     * {@link GlobalState#BLOCK_COMPRESSION} is enabled), so the Block is never
+     * serialized into a heap buffer of its full size.
+     * </p>
+     * <p>
+     * The filter that is stored on disk is rebuilt from the sealed revisions
+     * so that it is sized for the number of distinct elements in the Block
+     * instead of the {@link #EXPECTED_INSERTIONS} that the in memory filter
+     * was created with.
+     * </p>
      */
     @Override
     public void sync() {
+        RevisionSkipList<L, K, V> content = null;
         Locks.lockIfCondition(write, mutable);
         try {
             if(size > 0) {
-                Preconditions.checkState(mutable,
+                Preconditions.checkState(mutable && !sealed,
                         "Cannot sync a block that is not mutable");
-                mutable = false;
-                FileChannel channel = FileSystem.getFileChannel(file);
-                channel.write(getBytes());
-                channel.force(false);
-                filter.sync();
-                index.sync();
-                FileSystem.closeFileChannel(channel);
-                revisions = null; // Set to NULL so that the Set is eligible for
-                                  // GC while the Block stays in memory.
+                sealed = true;
+                content = revisions;
             }
         }
-        catch (IOException e) {
-            throw Throwables.propagate(e);
-        }
         finally {
             Locks.unlockIfCondition(write, mutable);
         }
-
+        if(content != null) {
+            flush(content);
+        }
     }
 
-    @Override
-    public String toString() {
-        return getClass().getSimpleName() + " " + id;
+    /**
+     * Write the sorted, distinct {@code revisions}, which are streamed from
+     * other Blocks instead of being inserted, to disk as the content of this
+     * empty Block and make it immutable. This is used to merge several smaller
+     * blocks into a larger one during compaction without holding all of their
+     * revisions in memory.
+     * <p>
+     * The encoding takes several passes over the {@code revisions}, so each
+     * iteration must return the same sequence. If there are no revisions,
+     * nothing is written and the Block stays empty.
+     * </p>
+     * 
+     * @param revisions
+     * @throws IllegalStateException if this Block is not mutable and empty
+     */
+    @PackagePrivate
+    void sync(Iterable<Revision<L, K, V>> revisions)
+            throws IllegalStateException {
+        Locks.lockIfCondition(write, mutable);
+        try {
+            Preconditions.checkState(mutable && !sealed && size == 0,
+                    "Cannot merge into a block that is not empty and mutable");
+            sealed = true;
+        }
+        finally {
+            Locks.unlockIfCondition(write, mutable);
+        }
+        if(revisions.iterator().hasNext()) {
+            flush(revisions);
+        }
     }
 
-    @Override
-    public void copyTo(ByteBuffer buffer) {
-        Locks.lockIfCondition(read, mutable);
-        try {
-            L locator = null;
-            K key = null;
-            int position = 0;
-            for (Revision<L, K, V> revision : revisions) {
-                buffer.putInt(revision.size());
-                revision.copyTo(buffer);
-                position = buffer.position() - revision.size() - 4;
-                /*
-                 * States that trigger this condition to be true:
-                 * 1. This is the first locator we've seen
-                 * 2. This locator is different than the last one we've seen
-                 */
-                if(locator == null || !locator.equals(revision.getLocator())) {
-                    index.putStart(position, revision.getLocator());
-                    if(locator != null) {
-                        // There was a locator before us (we are not the first!)
-                        // and we need to record the end index.
-                        index.putEnd(position - 1, locator);
+    /**
+     * Return the revisions in this immutable Block in the order that they are
+     * stored. Each iteration streams the block file from disk one locator at
+     * a time, so only the revisions for a single locator are on the heap at
+     * once, unless the revisions are still in memory from when the Block was
+     * synced. Block files that use the original encoding can't be read one
+     * locator at a time, so they are read all at once.
+     * <p>
+     * If a {@code limiter} is given, a permit is acquired for each byte that
+     * is read from disk by the first iteration. Syncing a merge iterates the
+     * inputs more than once, but it is throttled by the size of the inputs,
+     * so later iterations are not charged again.
+     * </p>
+     * 
+     * @param limiter
+     * @return the revisions
+     */
+    @PackagePrivate
+    Iterable<Revision<L, K, V>> scan(@Nullable final RateLimiter limiter) {
+        Preconditions.checkState(!mutable, "Cannot scan %s because it is "
+                + "mutable", this);
+        return new Iterable<Revision<L, K, V>>() {
+
+            private boolean charged = false;
+
+            @Override
+            public Iterator<Revision<L, K, V>> iterator() {
+                RevisionSkipList<L, K, V> revisions = softRevisions.get();
+                if(revisions != null) {
+                    return revisions.iterator();
+                }
+                final RateLimiter charge = charged ? null : limiter;
+                charged = true;
+                final int end = getDictionaryPosition();
+                if(end == NO_DICTIONARY) {
+                    if(charge != null && size > 0) {
+                        charge.acquire(size);
                     }
+                    return readAllFromDisk().iterator();
                 }
-                /*
-                 * NOTE: IF key == null, then it must be the case that locator
-                 * == null since they are set at the same time. Therefore we do
-                 * not need to explicitly check for that condition below
-                 * 
-                 * States that trigger this condition to be true:
-                 * 1. This is the first key we've seen
-                 * 2. This key is different than the last one we've seen
-                 * (regardless of whether the locator is different or the same!)
-                 * 3. This key is the same as the last one we've seen, but the
-                 * locator is different.
-                 */
-                if(key == null || !key.equals(revision.getKey())
-                        || !locator.equals(revision.getLocator())) {
-                    index.putStart(position, revision.getLocator(),
-                            revision.getKey());
-                    if(key != null) {
-                        // There was a locator, key before us (we are not the
-                        // first!) and we need to record the end index.
-                        index.putEnd(position - 1, locator, key);
+                return new AbstractIterator<Revision<L, K, V>>() {
+
+                    private int position = BlockFormat.HEADER_SIZE;
+                    private Iterator<Revision<L, K, V>> run = Iterators
+                            .emptyIterator();
+
+                    @Override
+                    protected Revision<L, K, V> computeNext() {
+                        while (!run.hasNext()) {
+                            if(position >= end) {
+                                return endOfData();
+                            }
+                            int length = BlockFormat
+                                    .getSizePrefixedLength(readFromDisk(
+                                            position, Math.min(
+                                                    BlockFormat.MAX_VARINT_SIZE,
+                                                    end - position)));
+                            L locator = BlockFormat.readSizePrefixed(
+                                    readFromDisk(position, length),
+                                    xLocatorClass());
+                            length = index.getEnd(locator) - position + 1;
+                            if(charge != null) {
+                                charge.acquire(length);
+                            }
+                            List<Revision<L, K, V>> revisions = Lists
+                                    .newArrayList();
+                            decode(readFromDisk(position, length), null,
+                                    getDictionary(), revisions);
+                            position += length;
+                            run = revisions.iterator();
+                        }
+                        return run.next();
                     }
+
+                };
+            }
+
+        };
+    }
+
+    /**
+     * Encode the sorted {@code content} to disk, sync the filter and index
+     * and make the Block immutable.
+     * <p>
+     * {@code content} is iterated three times: once to count the filter
+     * insertions and gather the locator keys and value hashes, and twice by
+     * {@link BlockFormat#encode(Iterable, BlockFormat.ValueHashes, BlockIndex, BlockFormat.Output)
+     * encode}, the first of which also fills the filter. Sealed revisions are
+     * never modified, so no lock is needed.
+     * </p>
+     * 
+     * @param content
+     */
+    private void flush(final Iterable<Revision<L, K, V>> content) {
+        String filterFile = file.substring(0, file.length()
+                - BLOCK_NAME_EXTENSION.length())
+                + FILTER_NAME_EXTENSION;
+        int insertions = 0;
+        TLongArrayList keys = new TLongArrayList();
+        BlockFormat.ValueHashes hashes = new BlockFormat.ValueHashes();
+        L locator = null;
+        K key = null;
+        for (Revision<L, K, V> revision : content) {
+            if(locator == null || !locator.equals(revision.getLocator())) {
+                insertions += 2;
+                keys.add(LocatorDirectory.key(revision.getLocator()));
+            }
+            else if(!key.equals(revision.getKey())) {
+                insertions += 1;
+            }
+            insertions += 1;
+            hashes.add(revision.getValue());
+            locator = revision.getLocator();
+            key = revision.getKey();
+        }
+        final BloomFilter sized = BloomFilter.createBlocked(filterFile,
+                insertions);
+        Iterable<Revision<L, K, V>> filling = new Iterable<Revision<L, K, V>>() {
+
+            private boolean filled = false;
+
+            @Override
+            public Iterator<Revision<L, K, V>> iterator() {
+                if(filled) {
+                    return content.iterator();
                 }
-                locator = revision.getLocator();
-                key = revision.getKey();
+                filled = true;
+                return Iterators.transform(content.iterator(),
+                        new Function<Revision<L, K, V>, Revision<L, K, V>>() {
+
+                            @Override
+                            public Revision<L, K, V> apply(
+                                    Revision<L, K, V> input) {
+                                putInFilter(sized, input);
+                                return input;
+                            }
+
+                        });
             }
-            if(revisions.size() > 0) {
-                position = buffer.position() - 1;
-                index.putEnd(position, locator);
-                index.putEnd(position, locator, key);
+
+        };
+        ByteBuffer locators = serializeLocatorKeys(keys);
+        String base = file.substring(0, file.length()
+                - BLOCK_NAME_EXTENSION.length());
+        BlockSegments compressed = null;
+        int encodedSize;
+        int encodedDictionaryPosition;
+        FileChannel channel = FileSystem.getFileChannel(file);
+        FileChannel locatorChannel = FileSystem.getFileChannel(base
+                + LOCATOR_NAME_EXTENSION);
+        Hasher checksum = BlockManifest.CHECKSUM.newHasher();
+        ChannelWriter writer = new ChannelWriter(channel, checksum);
+        BlockManifest.Entry entry;
+        try {
+            if(GlobalState.BLOCK_COMPRESSION != Compression.NONE) {
+                BlockSegments.Writer out = new BlockSegments.Writer(
+                        GlobalState.BLOCK_COMPRESSION, writer,
+                        BlockSegments.SEGMENT_SIZE);
+                encodedDictionaryPosition = BlockFormat.encode(filling,
+                        hashes, index, out);
+                compressed = out.finish();
+                encodedSize = compressed.getUncompressedSize();
+                writer.flush();
+                entry = new BlockManifest.Entry(id, writer.position(),
+                        checksum.hash());
+                channel.force(false);
+                FileChannel segmentChannel = FileSystem
+                        .getFileChannel(base + SEGMENT_NAME_EXTENSION);
+                try {
+                    segmentChannel.write(compressed.getBytes());
+                    segmentChannel.force(false);
+                }
+                finally {
+                    FileSystem.closeFileChannel(segmentChannel);
+                }
+            }
+            else {
+                BlockFormat.Output out = BlockFormat.output(writer);
+                encodedDictionaryPosition = BlockFormat.encode(filling,
+                        hashes, index, out);
+                encodedSize = out.position();
+                writer.flush();
+                entry = new BlockManifest.Entry(id, writer.position(),
+                        checksum.hash());
+                channel.force(false);
             }
+            sized.sync();
+            index.sync();
+            locatorChannel.write(locators);
+            locatorChannel.force(false);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
         }
         finally {
-            Locks.unlockIfCondition(read, mutable);
+            writer.release();
+            FileSystem.closeFileChannel(channel);
+            FileSystem.closeFileChannel(locatorChannel);
+        }
+        BloomFilter opened = BloomFilter.open(filterFile);
+        write.lock();
+        try {
+            filter = opened;
+            segments = compressed;
+            manifestEntry = entry;
+            dictionaryPosition = encodedDictionaryPosition;
+            size = encodedSize;
+            mutable = false;
+            revisions = null; // Set to NULL so that the Set is eligible for
+                              // GC while the Block stays in memory.
+            if(content != softRevisions.get()) {
+                // The content was streamed from other blocks, so the empty
+                // in-memory revisions must not shadow the file.
+                softRevisions.clear();
+            }
         }
+        finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + id;
+    }
+
+    @Override
+    public void copyTo(ByteBuffer buffer) {
+        buffer.put(getBytes());
     }
 
     /**
@@ -537,12 +1096,7 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
                 }
             }
             else {
-                ByteBuffer bytes = FileSystem.map(file, MapMode.READ_ONLY, 0,
-                        FileSystem.getFileSize(file));
-                Iterator<ByteBuffer> it = ByteableCollections.iterator(bytes);
-                while (it.hasNext()) {
-                    Revision<L, K, V> revision = Byteables.read(it.next(),
-                            xRevisionClass());
+                for (Revision<L, K, V> revision : readAllFromDisk()) {
                     sb.append(revision);
                     sb.append("\n");
                 }
@@ -577,78 +1131,369 @@ abstract class Block<L extends Byteable & Comparable<L>, K extends Byteable & Co
     protected abstract Class<? extends Revision<L, K, V>> xRevisionClass();
 
     /**
-     * Seek revisions that contain components from {@code byteables} and append
-     * them to {@code record}. The seek will be perform in memory iff this block
-     * is mutable, otherwise, the seek happens on disk.
+     * Return the class of the {@code key} type.
+     * 
+     * @return the key class
+     */
+    protected abstract Class<K> xKeyClass();
+
+    /**
+     * Return the class of the {@code locator} type.
+     * 
+     * @return the locator class
+     */
+    protected abstract Class<L> xLocatorClass();
+
+    /**
+     * Return the class of the {@code value} type.
+     * 
+     * @return the value class
+     */
+    protected abstract Class<V> xValueClass();
+
+    /**
+     * Add {@code revision} to the {@link #revisions} and the {@link #filter}.
+     * 
+     * @param revision
+     */
+    @GuardedBy("write")
+    private void doInsert(Revision<L, K, V> revision) {
+        revisions.add(revision);
+        putInFilter(filter, revision);
+        minVersion = Math.min(minVersion, revision.getVersion());
+        maxVersion = Math.max(maxVersion, revision.getVersion());
+        size += revision.size() + 4;
+    }
+
+    /**
+     * Return the sorted, distinct {@link LocatorDirectory#key(Byteable)
+     * directory keys} in {@code keys}, serialized for the locator file.
+     * 
+     * @param keys
+     * @return the serialized locator keys
+     */
+    private ByteBuffer serializeLocatorKeys(TLongArrayList keys) {
+        keys.sort();
+        int count = keys.size();
+        ByteBuffer bytes = ByteBuffer.allocate(count * 8);
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            long key = keys.get(i);
+            if(i == 0 || key != last) { // hashed keys may collide
+                bytes.putLong(key);
+                last = key;
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Add the elements that identify {@code revision} to {@code filter}.
+     * 
+     * @param filter
+     * @param revision
+     */
+    private void putInFilter(BloomFilter filter, Revision<L, K, V> revision) {
+        filter.put(revision.getLocator());
+        filter.put(revision.getLocator(), revision.getKey());
+        filter.put(revision.getLocator(), revision.getKey(),
+                revision.getValue()); // NOTE: The entire revision is added
+                                      // to the filter so that we can
+                                      // quickly verify that a revision
+                                      // DOES NOT exist using
+                                      // #mightContain(L,K,V) without
+                                      // seeking
+    }
+
+    /**
+     * Decode the revisions in {@code bytes} and add them to {@code revisions}.
+     * If {@code locator} is {@code null}, {@code bytes} must contain whole
+     * locators; otherwise {@code bytes} must contain keys in {@code locator}.
+     * 
+     * @param bytes
+     * @param locator
+     * @param dictionary the value dictionary, which is ignored if the block
+     *            file uses the original encoding
+     * @param revisions
+     */
+    private void decode(ByteBuffer bytes, @Nullable L locator,
+            @Nullable BlockFormat.Dictionary<V> dictionary,
+            Collection<Revision<L, K, V>> revisions) {
+        if(dictionary != null) {
+            BlockFormat.decode(this, bytes, locator, dictionary, revisions);
+        }
+        else {
+            Iterator<ByteBuffer> it = ByteableCollections.iterator(bytes);
+            while (it.hasNext()) {
+                revisions.add(Byteables.read(it.next(), xRevisionClass()));
+            }
+        }
+    }
+
+    /**
+     * Return the index of the first of the {@code nested} entries for keys in
+     * {@code locator} whose key is greater than or equal to {@code key} (or
+     * greater than {@code key} if {@code after} is {@code true}), or the
+     * number of entries if there is none.
+     * 
+     * @param nested
+     * @param locator
+     * @param key
+     * @param after
+     * @return the index of the entry
+     */
+    private int search(BlockIndex.Nested nested, L locator, K key,
+            boolean after) {
+        int low = 0;
+        int high = nested.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            ByteBuffer bytes = nested.getKey(mid);
+            bytes.position(locator.size());
+            int cmp = Byteables.readStatic(bytes.slice(), xKeyClass())
+                    .compareTo(key);
+            if(cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Return the value dictionary for the block file, or {@code null} if the
+     * block file uses the original encoding.
+     * 
+     * @return the dictionary
+     */
+    @Nullable
+    private BlockFormat.Dictionary<V> getDictionary() {
+        int position = getDictionaryPosition();
+        if(position == NO_DICTIONARY) {
+            return null;
+        }
+        else {
+            BlockFormat.Dictionary<V> dictionary = this.dictionary.get();
+            if(dictionary == null) {
+                dictionary = new BlockFormat.Dictionary<V>(readFromDisk(
+                        position, size - position), xValueClass());
+                this.dictionary = new SoftReference<BlockFormat.Dictionary<V>>(
+                        dictionary);
+            }
+            return dictionary;
+        }
+    }
+
+    /**
+     * Return the position of the value dictionary in the block file, or
+     * {@link #NO_DICTIONARY} if the block file uses the original encoding.
+     * 
+     * @return the dictionary position
+     */
+    private int getDictionaryPosition() {
+        int position = dictionaryPosition;
+        if(position == DICTIONARY_UNKNOWN) {
+            ByteBuffer header = size >= BlockFormat.HEADER_SIZE ? readFromDisk(
+                    0, BlockFormat.HEADER_SIZE) : null;
+            position = header != null && BlockFormat.isVersion2(header) ? BlockFormat
+                    .getDictionaryPosition(header) : NO_DICTIONARY;
+            dictionaryPosition = position;
+        }
+        return position;
+    }
+
+    /**
+     * Return all of the revisions in the block file. This does not use or
+     * populate the caches that are used for seeks.
+     * 
+     * @return the revisions
+     */
+    private List<Revision<L, K, V>> readAllFromDisk() {
+        ByteBuffer bytes = FileSystem.map(file, MapMode.READ_ONLY, 0,
+                FileSystem.getFileSize(file));
+        BlockSegments segments = this.segments;
+        bytes = segments != null ? segments.decompress(bytes) : bytes;
+        List<Revision<L, K, V>> revisions = Lists.newArrayList();
+        BlockFormat.Dictionary<V> dictionary = null;
+        if(BlockFormat.isVersion2(bytes)) {
+            int position = BlockFormat.getDictionaryPosition(bytes);
+            bytes.position(position);
+            dictionary = new BlockFormat.Dictionary<V>(bytes.slice(),
+                    xValueClass());
+            bytes.position(BlockFormat.HEADER_SIZE);
+            bytes.limit(position);
+        }
+        decode(bytes.slice(), null, dictionary, revisions);
+        return revisions;
+    }
+
+    /**
+     * Return {@code length} bytes of the (uncompressed) content of the block
+     * file, starting at {@code position}.
+     * 
+     * @param position
+     * @param length
+     * @return the content
+     */
+    private ByteBuffer readFromDisk(int position, int length) {
+        BlockSegments segments = this.segments;
+        return segments != null ? segments.read(file, FILE_CACHE, position,
+                length) : FILE_CACHE.read(file, position, length);
+    }
+
+    /**
+     * Return the revisions that contain components from {@code byteables} if
+     * it is <em>likely</em> that those revisions exist in this Block. The
+     * revisions are returned in the order that they are stored in the Block,
+     * so they can be appended to a {@link Record} exactly as
+     * {@link #seek(Record, Byteable...)} would. The seek will be perform in
+     * memory iff this block is mutable, otherwise, the seek happens on disk.
      * 
-     * @param record
      * @param byteables
+     * @return the revisions
      */
-    private void seek(Record<L, K, V> record, Byteable... byteables) {
-        Locks.lockIfCondition(read, mutable);
-        try {
-            if(filter.mightContain(byteables)) {
-                TreeMultiset<Revision<L, K, V>> revisions = softRevisions.get();
-                if(revisions != null) {
-                    Iterator<Revision<L, K, V>> it = revisions.iterator();
-                    boolean processing = false; // Since the revisions are
-                                                // sorted, I can toggle this
-                                                // flag on once I reach a
-                                                // revision that I care about so
-                                                // that I can break out of the
-                                                // loop once I reach a revision
-                                                // I don't care about again.
-                    boolean checkSecond = byteables.length > 1;
-                    while (it.hasNext()) {
-                        Revision<L, K, V> revision = it.next();
-                        if(revision.getLocator().equals(byteables[0])
-                                && ((checkSecond && revision.getKey().equals(
-                                        byteables[1])) || !checkSecond)) {
-                            processing = true;
-                            record.append(revision);
-                        }
-                        else if(processing) {
-                            break;
-                        }
-                    }
+    @PackagePrivate
+    @SuppressWarnings("unchecked")
+    List<Revision<L, K, V>> collect(Byteable... byteables) {
+        List<Revision<L, K, V>> collected = Collections.emptyList();
+        if(filter.mightContain(byteables)) {
+            filterPositives.incrementAndGet();
+            collected = Lists.newArrayList();
+            RevisionSkipList<L, K, V> revisions = softRevisions.get();
+            if(revisions != null) {
+                Iterables.addAll(collected, byteables.length > 1 ? revisions
+                        .get((L) byteables[0], (K) byteables[1]) : revisions
+                        .get((L) byteables[0]));
+            }
+            else {
+                int start = index.getStart(byteables);
+                int length = index.getEnd(byteables) - (start - 1);
+                if(start != BlockIndex.NO_ENTRY && length > 0) {
+                    decode(readFromDisk(start, length),
+                            byteables.length > 1 ? (L) byteables[0] : null,
+                            getDictionary(), collected);
                 }
-                else {
-                    int start = index.getStart(byteables);
-                    int length = index.getEnd(byteables) - (start - 1);
-                    if(start != BlockIndex.NO_ENTRY && length > 0) {
-                        ByteBuffer bytes = FileSystem.map(file,
-                                MapMode.READ_ONLY, start, length);
-                        Iterator<ByteBuffer> it = ByteableCollections
-                                .iterator(bytes);
-                        while (it.hasNext()) {
-                            Revision<L, K, V> revision = Byteables.read(
-                                    it.next(), xRevisionClass());
-                            Logger.debug("Attempting to append {} from {} to "
-                                    + "{}", revision, this, record);
-                            record.append(revision);
-                        }
-                    }
+            }
+            if(collected.isEmpty()) {
+                filterFalsePositives.incrementAndGet();
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * Return the revisions that contain components from {@code byteables}
+     * like {@link #collect(Byteable...)}, unless the {@link #index} shows that
+     * all of those revisions are newer than {@code timestamp}, in which case
+     * they can't contribute to a read at {@code timestamp} and nothing is
+     * returned.
+     * 
+     * @param timestamp
+     * @param byteables
+     * @return the revisions
+     */
+    @PackagePrivate
+    List<Revision<L, K, V>> collect(long timestamp, Byteable... byteables) {
+        if(!mutable && timestamp < index.getMaxVersion()
+                && index.getMinVersion(byteables) > timestamp) {
+            return Collections.emptyList();
+        }
+        else {
+            return collect(byteables);
+        }
+    }
+
+    /**
+     * Return the revisions for the keys in {@code locator} that are between
+     * {@code low} and {@code high} (both inclusive) in the order that they are
+     * stored in the Block, unless the {@link #index} shows that all of the
+     * revisions in {@code locator} are newer than {@code timestamp}.
+     * <p>
+     * The keys within a locator are stored in sorted order, so if the
+     * revisions are not in memory, the {@link BlockIndex#getNested(Byteable...)
+     * nested} index entries for the locator are binary searched for the first
+     * and last keys in the range and only the bytes between them are read
+     * from disk. If the index can't provide those entries, the entire locator
+     * is read and the revisions outside of the range are discarded.
+     * </p>
+     * 
+     * @param timestamp
+     * @param locator
+     * @param low
+     * @param high
+     * @return the revisions
+     */
+    @PackagePrivate
+    @SuppressWarnings("unchecked")
+    List<Revision<L, K, V>> collect(long timestamp, L locator, K low, K high) {
+        if((!mutable && timestamp < index.getMaxVersion() && index
+                .getMinVersion(locator) > timestamp)
+                || !filter.mightContain(locator)) {
+            return Collections.emptyList();
+        }
+        List<Revision<L, K, V>> collected = Lists.newArrayList();
+        RevisionSkipList<L, K, V> revisions = softRevisions.get();
+        if(revisions != null) {
+            Iterables.addAll(collected, revisions.get(locator, low, high));
+            return collected;
+        }
+        BlockIndex.Nested nested = index.getNested(locator);
+        if(nested != null) {
+            int first = search(nested, locator, low, false);
+            int last = search(nested, locator, high, true) - 1;
+            if(first <= last) {
+                int start = nested.getStart(first);
+                int length = nested.getEnd(last) - (start - 1);
+                decode(readFromDisk(start, length), locator, getDictionary(),
+                        collected);
+            }
+        }
+        else {
+            List<Revision<L, K, V>> all = Lists.newArrayList();
+            int start = index.getStart(locator);
+            int length = index.getEnd(locator) - (start - 1);
+            if(start != BlockIndex.NO_ENTRY && length > 0) {
+                decode(readFromDisk(start, length), null, getDictionary(), all);
+            }
+            for (Revision<L, K, V> revision : all) {
+                if(revision.getKey().compareTo(low) >= 0
+                        && revision.getKey().compareTo(high) <= 0) {
+                    collected.add(revision);
                 }
             }
         }
-        finally {
-            Locks.unlockIfCondition(read, mutable);
+        return collected;
+    }
+
+    /**
+     * Seek revisions that contain components from {@code byteables} and append
+     * them to {@code record}.
+     * 
+     * @param record
+     * @param byteables
+     */
+    private void seek(Record<L, K, V> record, Byteable... byteables) {
+        for (Revision<L, K, V> revision : collect(byteables)) {
+            Logger.debug("Attempting to append {} from {} to {}", revision,
+                    this, record);
+            record.append(revision);
         }
     }
 
     /**
-     * A Comparator that sorts Revisions in a block. The sort order is
-     * {@code locator} followed by {@code key} followed by {@code version}.
+     * A Comparator that sorts revisions in the order that they are stored in
+     * a Block: by {@code locator}, {@code key}, {@code version} and then
+     * {@code value}.
      * 
      * @author jnelson
      */
-    @SuppressWarnings("rawtypes")
-    private enum Sorter implements Comparator<Revision> {
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private enum RevisionSorter implements Comparator<Revision> {
         INSTANCE;
 
-        /**
-         * Sorts by locator followed by key followed by version.
-         */
         @Override
         public int compare(Revision o1, Revision o2) {
             return ComparisonChain.start()
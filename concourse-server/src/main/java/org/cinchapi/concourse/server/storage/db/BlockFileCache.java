@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+
+/**
+ * A {@link BlockFileCache} keeps one long-lived, read-only mapping for each
+ * immutable block file and hands out slices of it for seeks, so that a seek
+ * does not open a file channel and create a new mapping every time.
+ * <p>
+ * The total number of bytes that are mapped is bounded. Once the limit is
+ * reached, the mappings for the least recently used files are released. A
+ * released mapping is never explicitly unmapped because a concurrent seek may
+ * still be reading from a slice of it; instead, the mapping is reclaimed by the
+ * garbage collector once it is no longer reachable.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class BlockFileCache {
+
+    /**
+     * The mappings, keyed by the path of the block file.
+     */
+    private final LoadingCache<String, MappedByteBuffer> mappings;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param maxBytes the maximum number of bytes that may be mapped at once
+     */
+    BlockFileCache(long maxBytes) {
+        this.mappings = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+                .weigher(new Weigher<String, MappedByteBuffer>() {
+
+                    @Override
+                    public int weigh(String key, MappedByteBuffer value) {
+                        return value.capacity();
+                    }
+
+                }).recordStats()
+                .build(new CacheLoader<String, MappedByteBuffer>() {
+
+                    @Override
+                    public MappedByteBuffer load(String file) throws Exception {
+                        return FileSystem.map(file, MapMode.READ_ONLY, 0,
+                                FileSystem.getFileSize(file));
+                    }
+
+                });
+    }
+
+    /**
+     * Return a description of the number of files that are mapped and the
+     * hit and miss counts.
+     * 
+     * @return the stats
+     */
+    public String getStats() {
+        CacheStats stats = mappings.stats();
+        long bytes = 0;
+        for (MappedByteBuffer mapping : mappings.asMap().values()) {
+            bytes += mapping.capacity();
+        }
+        return String.format("%d files (%d bytes) mapped, %d hits, "
+                + "%d misses (%.2f%% hit rate), %d evictions",
+                mappings.size(), bytes, stats.hitCount(), stats.missCount(),
+                stats.hitRate() * 100, stats.evictionCount());
+    }
+
+    /**
+     * Release the mapping for {@code file}, if it exists. This must be called
+     * whenever a block file is moved or deleted.
+     * 
+     * @param file
+     */
+    public void invalidate(String file) {
+        mappings.invalidate(file);
+    }
+
+    /**
+     * Return a read-only view of all the bytes in {@code file}.
+     * 
+     * @param file
+     * @return the bytes
+     */
+    public ByteBuffer read(String file) {
+        return mappings.getUnchecked(file).duplicate();
+    }
+
+    /**
+     * Return a read-only view of {@code length} bytes in {@code file},
+     * starting at {@code position}.
+     * 
+     * @param file
+     * @param position
+     * @param length
+     * @return the bytes
+     */
+    public ByteBuffer read(String file, int position, int length) {
+        ByteBuffer bytes = read(file);
+        bytes.position(position);
+        bytes.limit(position + length);
+        return bytes.slice();
+    }
+
+}
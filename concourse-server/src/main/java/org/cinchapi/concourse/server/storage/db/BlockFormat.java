@@ -0,0 +1,705 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.Byteable;
+import org.cinchapi.concourse.server.io.Byteables;
+import org.cinchapi.concourse.server.io.ChannelWriter;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.util.ByteBuffers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * The encoding of the revisions in a {@link Block} file (version 2).
+ * <p>
+ * The sorted revisions are stored as runs: each locator is written once,
+ * followed by one run for each of its keys, and each key is written once,
+ * followed by its revisions. Within a key run, the revisions are sorted by
+ * version, so each version is stored as a varint delta from the previous one.
+ * Values that occur more than once in the Block are stored once in a
+ * dictionary at the end of the file and referenced by number.
+ * </p>
+ * 
+ * <pre>
+ * file    := MAGIC(int) dictionaryPosition(int) locator* dictionary
+ * locator := size(varint) bytes keyCount(varint) key*
+ * key     := size(varint) bytes count(varint) revision*
+ * revision:= action(byte) versionDelta(zigzag varint) value
+ * value   := 0 size(varint) bytes | id + 1 (varint)
+ * dictionary := count(int) offset(int)* (count + 1) bytes
+ * </pre>
+ * <p>
+ * The {@link BlockIndex} points to the start and end of each locator and
+ * key run, so a seek only decodes the runs that it asks for. A file that does
+ * not start with {@link #MAGIC} uses the original encoding, where each
+ * revision is stored in full and prefixed with its size.
+ * </p>
+ * 
+ * @author jnelson
+ */
+final class BlockFormat {
+
+    /**
+     * Return {@code true} if {@code header}, which contains at least the first
+     * {@link #HEADER_SIZE} bytes of a block file, is for this encoding.
+     * 
+     * @param header
+     * @return {@code true} if the block file is version 2
+     */
+    public static boolean isVersion2(ByteBuffer header) {
+        return header.remaining() >= HEADER_SIZE
+                && header.getInt(header.position()) == MAGIC;
+    }
+
+    /**
+     * Return the position of the dictionary in a version 2 block file, given
+     * its {@code header}.
+     * 
+     * @param header
+     * @return the dictionary position
+     */
+    public static int getDictionaryPosition(ByteBuffer header) {
+        return header.getInt(header.position() + 4);
+    }
+
+    /**
+     * Return the total length of the size prefixed {@link Byteable} (i.e. a
+     * locator or key) at the start of {@code bytes}, including its prefix.
+     * {@code bytes} only needs to contain the prefix, which is at most
+     * {@link #MAX_VARINT_SIZE} bytes.
+     * 
+     * @param bytes
+     * @return the length
+     */
+    public static int getSizePrefixedLength(ByteBuffer bytes) {
+        int start = bytes.position();
+        int size = readVarInt(bytes);
+        return bytes.position() - start + size;
+    }
+
+    /**
+     * Read the size prefixed {@link Byteable} of type {@code clazz} at the
+     * start of {@code bytes}.
+     * 
+     * @param bytes
+     * @param clazz
+     * @return the Byteable
+     */
+    public static <T> T readSizePrefixed(ByteBuffer bytes, Class<T> clazz) {
+        return readByteable(bytes, clazz);
+    }
+
+    /**
+     * Return an {@link Output} that streams to {@code writer}.
+     * 
+     * @param writer
+     * @return the Output
+     */
+    public static Output output(final ChannelWriter writer) {
+        return new Output() {
+
+            @Override
+            protected void put(byte[] b, int offset, int length) {
+                writer.put(b, offset, length);
+            }
+
+            @Override
+            protected void put(int b) {
+                writer.put((byte) b);
+            }
+
+        };
+    }
+
+    /**
+     * Encode the sorted {@code revisions} into a heap buffer and record the
+     * position and version range of each locator and key run in
+     * {@code index}.
+     * 
+     * @param revisions
+     * @param index
+     * @return the encoded bytes
+     */
+    public static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> ByteBuffer encode(
+            Collection<Revision<L, K, V>> revisions, BlockIndex index) {
+        ValueHashes hashes = new ValueHashes();
+        for (Revision<L, K, V> revision : revisions) {
+            hashes.add(revision.getValue());
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode(revisions, hashes, index, new Output() {
+
+            @Override
+            protected void put(byte[] b, int offset, int length) {
+                bytes.write(b, offset, length);
+            }
+
+            @Override
+            protected void put(int b) {
+                bytes.write(b);
+            }
+
+        });
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /**
+     * Stream the encoding of the sorted {@code revisions} to {@code out} and
+     * record the position and version range of each locator and key run in
+     * {@code index}.
+     * <p>
+     * The size of the runs is computed in a first pass that does not write
+     * anything, so that the header can be written up front and the encoding
+     * never needs to be buffered. The first pass also assigns the dictionary
+     * ids, in the order that the values are first seen, to the values that
+     * {@code hashes} says might repeat. So {@code revisions} is iterated
+     * exactly twice and, apart from the dictionary, only the revisions for one
+     * locator are held at a time; it may be streamed from disk as long as each
+     * iteration returns the same sequence.
+     * </p>
+     * 
+     * @param revisions
+     * @param hashes the value hashes for {@code revisions}, which the caller
+     *            gathers in its own pass
+     * @param index
+     * @param out
+     * @return the position of the dictionary
+     */
+    public static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> int encode(
+            Iterable<Revision<L, K, V>> revisions, ValueHashes hashes,
+            BlockIndex index, Output out) {
+        Map<V, Integer> dictionary = Maps.newHashMap();
+        Output counter = new Output() {
+
+            @Override
+            protected void put(byte[] b, int offset, int length) {}
+
+            @Override
+            protected void put(int b) {}
+
+            @Override
+            public void writeByteable(Byteable byteable) {
+                writeVarInt(byteable.size());
+                position += byteable.size();
+            }
+
+        };
+        counter.position = HEADER_SIZE;
+        writeRuns(revisions, dictionary, hashes, null, counter);
+        int dictionaryPosition = counter.position;
+        out.writeInt(MAGIC);
+        out.writeInt(dictionaryPosition);
+        writeRuns(revisions, dictionary, null, index, out);
+        Preconditions.checkState(out.position() == dictionaryPosition);
+        out.startRun();
+        out.writeInt(dictionary.size());
+        byte[][] values = new byte[dictionary.size()][];
+        for (Map.Entry<V, Integer> entry : dictionary.entrySet()) {
+            values[entry.getValue()] = toByteArray(entry.getKey());
+        }
+        int offset = 0;
+        for (byte[] value : values) {
+            out.writeInt(offset);
+            offset += value.length;
+        }
+        out.writeInt(offset);
+        for (byte[] value : values) {
+            out.write(value, 0, value.length);
+        }
+        return dictionaryPosition;
+    }
+
+    /**
+     * Decode the runs in {@code bytes} for {@code block}, using the values in
+     * {@code dictionary}, and add the revisions to {@code revisions}. If
+     * {@code locator} is {@code null}, {@code bytes} must contain whole locator
+     * runs; otherwise {@code bytes} must contain key runs for
+     * {@code locator}.
+     * 
+     * @param block
+     * @param bytes
+     * @param locator
+     * @param dictionary
+     * @param revisions
+     */
+    public static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> void decode(
+            Block<L, K, V> block, ByteBuffer bytes, @Nullable L locator,
+            Dictionary<V> dictionary, Collection<Revision<L, K, V>> revisions) {
+        bytes = bytes.duplicate();
+        while (bytes.hasRemaining()) {
+            if(locator != null) {
+                decodeKeyRun(block, bytes, locator, dictionary, revisions);
+            }
+            else {
+                L current = readByteable(bytes, block.xLocatorClass());
+                int keys = readVarInt(bytes);
+                for (int i = 0; i < keys; i++) {
+                    decodeKeyRun(block, bytes, current, dictionary, revisions);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the key run at the current position of {@code bytes} for
+     * {@code locator} and add the revisions to {@code revisions}.
+     * 
+     * @param block
+     * @param bytes
+     * @param locator
+     * @param dictionary
+     * @param revisions
+     */
+    private static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> void decodeKeyRun(
+            Block<L, K, V> block, ByteBuffer bytes, L locator,
+            Dictionary<V> dictionary, Collection<Revision<L, K, V>> revisions) {
+        K key = readByteable(bytes, block.xKeyClass());
+        int count = readVarInt(bytes);
+        long version = 0;
+        for (int i = 0; i < count; i++) {
+            Action type = Action.values()[bytes.get()];
+            version += unzigzag(readVarLong(bytes));
+            int id = readVarInt(bytes);
+            V value = id > 0 ? dictionary.get(id - 1) : readByteable(bytes,
+                    block.xValueClass());
+            revisions.add(block.makeRevision(locator, key, value, version,
+                    type));
+        }
+    }
+
+    /**
+     * Read a size prefixed {@link Byteable} of type {@code clazz} from
+     * {@code bytes}.
+     * 
+     * @param bytes
+     * @param clazz
+     * @return the Byteable
+     */
+    private static <T> T readByteable(ByteBuffer bytes, Class<T> clazz) {
+        return Byteables.readStatic(
+                ByteBuffers.get(bytes, readVarInt(bytes)), clazz);
+    }
+
+    /**
+     * Read a varint from {@code bytes}.
+     * 
+     * @param bytes
+     * @return the int
+     */
+    private static int readVarInt(ByteBuffer bytes) {
+        return (int) readVarLong(bytes);
+    }
+
+    /**
+     * Read a varlong from {@code bytes}.
+     * 
+     * @param bytes
+     * @return the long
+     */
+    private static long readVarLong(ByteBuffer bytes) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        return value;
+    }
+
+    /**
+     * Return the serialized form of {@code byteable}.
+     * 
+     * @param byteable
+     * @return the bytes
+     */
+    private static byte[] toByteArray(Byteable byteable) {
+        ByteBuffer bytes = ByteBuffer.allocate(byteable.size());
+        byteable.copyTo(bytes);
+        return bytes.array();
+    }
+
+    /**
+     * Return the value that was encoded by {@link #zigzag(long)}.
+     * 
+     * @param value
+     * @return the decoded value
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write the locator and key runs for the sorted {@code revisions} to
+     * {@code out}, using the ids in {@code dictionary} for values, and record
+     * the position and version range of each run in {@code index} unless it
+     * is {@code null}. If {@code define} is not {@code null}, each value that
+     * it says might repeat and that is not in {@code dictionary} yet is added
+     * with the next id.
+     * 
+     * @param revisions
+     * @param dictionary
+     * @param define
+     * @param index
+     * @param out
+     */
+    private static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> void writeRuns(
+            Iterable<Revision<L, K, V>> revisions,
+            Map<V, Integer> dictionary, @Nullable ValueHashes define,
+            @Nullable BlockIndex index, Output out) {
+        PeekingIterator<Revision<L, K, V>> it = Iterators
+                .peekingIterator(revisions.iterator());
+        List<Revision<L, K, V>> run = Lists.newArrayList();
+        while (it.hasNext()) {
+            L locator = it.peek().getLocator();
+            run.clear();
+            int keys = 0;
+            K key = null;
+            while (it.hasNext() && it.peek().getLocator().equals(locator)) {
+                Revision<L, K, V> revision = it.next();
+                if(key == null || !key.equals(revision.getKey())) {
+                    key = revision.getKey();
+                    keys++;
+                }
+                run.add(revision);
+            }
+            out.startRun();
+            if(index != null) {
+                index.putStart(out.position(), locator);
+            }
+            out.writeByteable(locator);
+            out.writeVarInt(keys);
+            int i = 0;
+            while (i < run.size()) {
+                key = run.get(i).getKey();
+                int end = i;
+                while (end < run.size() && run.get(end).getKey().equals(key)) {
+                    end++;
+                }
+                out.startRun();
+                if(index != null) {
+                    index.putStart(out.position(), locator, key);
+                }
+                out.writeByteable(key);
+                out.writeVarInt(end - i);
+                long version = 0;
+                for (; i < end; i++) {
+                    Revision<L, K, V> revision = run.get(i);
+                    out.write(revision.getType().ordinal());
+                    out.writeVarLong(zigzag(revision.getVersion() - version));
+                    version = revision.getVersion();
+                    Integer id = dictionary.get(revision.getValue());
+                    if(id == null && define != null
+                            && define.mightRepeat(revision.getValue())) {
+                        id = dictionary.size();
+                        dictionary.put(revision.getValue(), id);
+                    }
+                    if(id != null) {
+                        out.writeVarInt(id + 1);
+                    }
+                    else {
+                        out.writeVarInt(0);
+                        out.writeByteable(revision.getValue());
+                    }
+                    if(index != null) {
+                        index.putVersion(version, locator);
+                        index.putVersion(version, locator, key);
+                    }
+                }
+                if(index != null) {
+                    index.putEnd(out.position() - 1, locator, key);
+                }
+            }
+            if(index != null) {
+                index.putEnd(out.position() - 1, locator);
+            }
+        }
+    }
+
+    /**
+     * Map {@code value} so that numbers with a small absolute value have a
+     * short varint encoding.
+     * 
+     * @param value
+     * @return the encoded value
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * The size of the header at the start of a version 2 block file.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * The maximum number of bytes in the varint size prefix of a locator or
+     * key.
+     */
+    public static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * The first int in a version 2 block file. A version 1 block file starts
+     * with the size of its first revision, which is never negative.
+     */
+    private static final int MAGIC = 0xB10C0002;
+
+    private BlockFormat() {/* noop */}
+
+    /**
+     * A read-only view of the values that are stored once in a block file
+     * and referenced by number. Values are deserialized the first time they
+     * are requested.
+     * 
+     * @author jnelson
+     */
+    @ThreadSafe
+    static final class Dictionary<V> {
+
+        /**
+         * The dictionary section of the block file.
+         */
+        private final ByteBuffer bytes;
+
+        /**
+         * The class of the values.
+         */
+        private final Class<V> clazz;
+
+        /**
+         * The values that have been deserialized. Racing threads may
+         * deserialize the same value, but they always produce an equal value.
+         */
+        private final Object[] values;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param bytes the dictionary section of the block file
+         * @param clazz the class of the values
+         */
+        Dictionary(ByteBuffer bytes, Class<V> clazz) {
+            this.bytes = bytes.duplicate();
+            this.clazz = clazz;
+            this.values = new Object[this.bytes.getInt(0)];
+        }
+
+        /**
+         * Return the value with {@code id}.
+         * 
+         * @param id
+         * @return the value
+         */
+        @SuppressWarnings("unchecked")
+        public V get(int id) {
+            V value = (V) values[id];
+            if(value == null) {
+                int data = 4 + (values.length + 1) * 4;
+                int start = bytes.getInt(4 + id * 4);
+                int end = bytes.getInt(4 + (id + 1) * 4);
+                ByteBuffer slice = bytes.duplicate();
+                slice.position(data + start);
+                slice.limit(data + end);
+                value = Byteables.readStatic(ByteBuffers.get(slice, end - start),
+                        clazz);
+                values[id] = value;
+            }
+            return value;
+        }
+
+    }
+
+    /**
+     * A count of the hash codes of the values in a block, which the caller of
+     * {@link BlockFormat#encode(Iterable, ValueHashes, BlockIndex, Output)}
+     * gathers in the same pass that it makes over the revisions for its own
+     * purposes. A value goes in the dictionary if its hash code is seen more
+     * than once, so the distinct values never have to be counted exactly; a
+     * collision just puts a value that occurs once in the dictionary.
+     * 
+     * @author jnelson
+     */
+    static final class ValueHashes {
+
+        /**
+         * The number of times that each hash code has been seen.
+         */
+        private final TIntIntHashMap counts = new TIntIntHashMap();
+
+        /**
+         * Count the hash code of {@code value}.
+         * 
+         * @param value
+         */
+        public void add(Object value) {
+            counts.adjustOrPutValue(value.hashCode(), 1, 1);
+        }
+
+        /**
+         * Return {@code true} if a value with the hash code of {@code value}
+         * has been seen more than once.
+         * 
+         * @param value
+         * @return {@code true} if {@code value} might repeat
+         */
+        public boolean mightRepeat(Object value) {
+            return counts.get(value.hashCode()) > 1;
+        }
+
+    }
+
+    /**
+     * A destination for an encoded block. The position of each run start is
+     * announced with {@link #startRun()} so that the destination can choose
+     * where to split the encoding (i.e. for compression).
+     * 
+     * @author jnelson
+     */
+    abstract static class Output {
+
+        /**
+         * The number of bytes that have been written.
+         */
+        protected int position = 0;
+
+        /**
+         * Return the number of bytes that have been written.
+         * 
+         * @return the position
+         */
+        public int position() {
+            return position;
+        }
+
+        /**
+         * Called before a locator, key or dictionary run is written.
+         */
+        public void startRun() {}
+
+        /**
+         * Write the low order byte of {@code b}.
+         * 
+         * @param b
+         */
+        public void write(int b) {
+            put(b);
+            position++;
+        }
+
+        /**
+         * Write {@code length} bytes from {@code b} starting at
+         * {@code offset}.
+         * 
+         * @param b
+         * @param offset
+         * @param length
+         */
+        public void write(byte[] b, int offset, int length) {
+            put(b, offset, length);
+            position += length;
+        }
+
+        /**
+         * Write {@code byteable} prefixed with its size.
+         * 
+         * @param byteable
+         */
+        public void writeByteable(Byteable byteable) {
+            byte[] bytes = toByteArray(byteable);
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Write a big endian int.
+         * 
+         * @param value
+         */
+        public void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        /**
+         * Write {@code value}, which must not be negative, as a varint.
+         * 
+         * @param value
+         */
+        public void writeVarInt(int value) {
+            writeVarLong(value);
+        }
+
+        /**
+         * Write {@code value} as a varint.
+         * 
+         * @param value
+         */
+        public void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        /**
+         * Put {@code length} bytes from {@code b} starting at {@code offset}
+         * in the destination.
+         * 
+         * @param b
+         * @param offset
+         * @param length
+         */
+        protected abstract void put(byte[] b, int offset, int length);
+
+        /**
+         * Put the low order byte of {@code b} in the destination.
+         * 
+         * @param b
+         */
+        protected abstract void put(int b);
+
+    }
+
+}
@@ -23,24 +23,30 @@
  */
 package org.cinchapi.concourse.server.storage.db;
 
-import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.MappedByteBuffer;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nullable;
+
 import org.cinchapi.concourse.server.io.Byteable;
 import org.cinchapi.concourse.server.io.ByteableCollections;
+import org.cinchapi.concourse.server.io.ChannelWriter;
 import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.io.Syncable;
 import org.cinchapi.concourse.util.ByteBuffers;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
@@ -49,6 +55,29 @@ import com.google.common.collect.Maps;
  * objects. A BlockIndex is associated with each {@link Block} to determine
  * where to look on disk for a particular {@code locator} or {@code locator}/
  * {@code key} pair.
+ * <p>
+ * When a BlockIndex is synced, its entries are written in a format that can be
+ * searched directly from a read-only memory mapping of the file:
+ * 
+ * <pre>
+ * | MAGIC (4) | count (4) | minVersion (8) | maxVersion (8) |
+ * | fence 0 ... fence count-1 | key 0 ... key count-1 |
+ * | position 0 ... position count-1 |
+ * </pre>
+ * 
+ * Each fence is fixed-width (the offset and length of its key within the file
+ * followed by the start and end positions and the range of revision versions
+ * for the key) and the fences are sorted by their key bytes, so a lookup is a
+ * binary search over the mapping that does not materialize any entries on the
+ * heap. The header holds the range of revision versions for the entire block.
+ * The positions are the fence numbers in the order of their start positions
+ * (wider entries first), so the entries that are {@link #getNested(Byteable...)
+ * nested} within another entry, like the keys within a locator, are adjacent
+ * and are in the order that they are stored in the block. Index files written
+ * in the legacy format (a sequence of entries with no header) are still
+ * supported by loading their entries into memory, but they do not have
+ * version ranges or positions.
+ * </p>
  * 
  * @author jnelson
  */
@@ -80,6 +109,67 @@ public class BlockIndex implements Byteable, Syncable {
      */
     public static final int NO_ENTRY = -1;
 
+    /**
+     * The first four bytes of an index file that is written in the searchable
+     * format. This is negative so that it can't be confused with the size of
+     * the first entry in a legacy index file.
+     */
+    private static final int MAGIC = 0xB10C1D02;
+
+    /**
+     * The number of bytes before the first fence: MAGIC(4), count(4),
+     * minVersion(8), maxVersion(8).
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * The number of bytes in each fence: keyOffset(4), keyLength(4), start(4),
+     * end(4), minVersion(8), maxVersion(8).
+     */
+    private static final int FENCE_SIZE = 32;
+
+    /**
+     * The number of bytes in each position: fence(4).
+     */
+    private static final int POSITION_SIZE = 4;
+
+    /**
+     * The minimum version that is reported when the version range is not
+     * known because the index file is in the legacy format.
+     */
+    private static final long UNKNOWN_MIN_VERSION = Long.MIN_VALUE;
+
+    /**
+     * The maximum version that is reported when the version range is not
+     * known because the index file is in the legacy format.
+     */
+    private static final long UNKNOWN_MAX_VERSION = Long.MAX_VALUE;
+
+    /**
+     * Sorts entries by their start positions, with wider entries first.
+     */
+    private static final Comparator<Entry> POSITION_SORTER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            int cmp = Integer.compare(o1.getStart(), o2.getStart());
+            return cmp != 0 ? cmp : Integer.compare(o2.getEnd(), o1.getEnd());
+        }
+
+    };
+
+    /**
+     * Sorts entries by the lexicographic order of their key bytes.
+     */
+    private static final Comparator<Entry> ENTRY_SORTER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return o1.getKey().getBytes().compareTo(o2.getKey().getBytes());
+        }
+
+    };
+
     /**
      * The entries contained in the index.
      */
@@ -105,7 +195,32 @@ public class BlockIndex implements Byteable, Syncable {
     /**
      * The running size of the index in bytes.
      */
-    private transient int size = 0;
+    private transient int size = HEADER_SIZE;
+
+    /**
+     * A read-only mapping of an index {@link #file} that is in the searchable
+     * format. The mapping is established on the first lookup and is not held
+     * on the heap.
+     */
+    private volatile MappedByteBuffer mapped = null;
+
+    /**
+     * A flag that indicates whether the index {@link #file} is in the legacy
+     * format, in which case lookups use the {@link #entries()}.
+     */
+    private volatile boolean legacy = false;
+
+    /**
+     * The smallest version that has been recorded with
+     * {@link #putVersion(long, Byteable...)}.
+     */
+    private long minVersion = Long.MAX_VALUE;
+
+    /**
+     * The largest version that has been recorded with
+     * {@link #putVersion(long, Byteable...)}.
+     */
+    private long maxVersion = Long.MIN_VALUE;
 
     /**
      * A {@link SoftReference} to the entries contained in the index that is
@@ -160,6 +275,10 @@ public class BlockIndex implements Byteable, Syncable {
      * @return the end position
      */
     public int getEnd(Byteable... byteables) {
+        if(!mutable && mapped() != null) {
+            int fence = find(Composite.create(byteables));
+            return fence != NO_ENTRY ? mapped.getInt(fence + 12) : NO_ENTRY;
+        }
         masterLock.readLock().lock();
         try {
             Composite composite = Composite.create(byteables);
@@ -176,6 +295,94 @@ public class BlockIndex implements Byteable, Syncable {
         }
     }
 
+    /**
+     * Return the largest version of any revision in the block. If the index
+     * does not know its version range, this returns {@link Long#MAX_VALUE}.
+     * 
+     * @return the max version
+     */
+    public long getMaxVersion() {
+        if(!mutable && mapped() != null) {
+            return mapped.getLong(16);
+        }
+        masterLock.readLock().lock();
+        try {
+            return mutable ? maxVersion : UNKNOWN_MAX_VERSION;
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the largest version of any revision for {@code byteables}. If
+     * there is no entry for {@code byteables}, this returns
+     * {@link Long#MIN_VALUE} and if the index does not know the version range
+     * for the entry, this returns {@link Long#MAX_VALUE}.
+     * 
+     * @param byteables
+     * @return the max version
+     */
+    public long getMaxVersion(Byteable... byteables) {
+        if(!mutable && mapped() != null) {
+            int fence = find(Composite.create(byteables));
+            return fence == NO_ENTRY ? Long.MIN_VALUE : mapped
+                    .getLong(fence + 24);
+        }
+        masterLock.readLock().lock();
+        try {
+            Entry entry = entries().get(Composite.create(byteables));
+            return entry != null ? entry.getMaxVersion() : Long.MIN_VALUE;
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the smallest version of any revision in the block. If the index
+     * does not know its version range, this returns {@link Long#MIN_VALUE}.
+     * 
+     * @return the min version
+     */
+    public long getMinVersion() {
+        if(!mutable && mapped() != null) {
+            return mapped.getLong(8);
+        }
+        masterLock.readLock().lock();
+        try {
+            return mutable ? minVersion : UNKNOWN_MIN_VERSION;
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the smallest version of any revision for {@code byteables}. If
+     * there is no entry for {@code byteables}, this returns
+     * {@link Long#MAX_VALUE} and if the index does not know the version range
+     * for the entry, this returns {@link Long#MIN_VALUE}.
+     * 
+     * @param byteables
+     * @return the min version
+     */
+    public long getMinVersion(Byteable... byteables) {
+        if(!mutable && mapped() != null) {
+            int fence = find(Composite.create(byteables));
+            return fence == NO_ENTRY ? Long.MAX_VALUE : mapped
+                    .getLong(fence + 16);
+        }
+        masterLock.readLock().lock();
+        try {
+            Entry entry = entries().get(Composite.create(byteables));
+            return entry != null ? entry.getMinVersion() : Long.MAX_VALUE;
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
     /**
      * Return the start position for {@code byteables} if it exists, otherwise
      * return {@code #NO_ENTRY}.
@@ -184,6 +391,10 @@ public class BlockIndex implements Byteable, Syncable {
      * @return the start position
      */
     public int getStart(Byteable... byteables) {
+        if(!mutable && mapped() != null) {
+            int fence = find(Composite.create(byteables));
+            return fence != NO_ENTRY ? mapped.getInt(fence + 8) : NO_ENTRY;
+        }
         masterLock.readLock().lock();
         try {
             Composite composite = Composite.create(byteables);
@@ -200,6 +411,36 @@ public class BlockIndex implements Byteable, Syncable {
         }
     }
 
+    /**
+     * Return the other entries whose start positions are within the start
+     * and end positions of the entry for {@code byteables} (i.e. the entries
+     * for the keys within a locator), in the order that they are stored in
+     * the block. This returns {@code null} if the index can't find the nested
+     * entries because it is mutable or because its file was written in the
+     * legacy format.
+     * 
+     * @param byteables
+     * @return the nested entries
+     */
+    @Nullable
+    public Nested getNested(Byteable... byteables) {
+        if(mutable || mapped() == null) {
+            return null;
+        }
+        int fence = find(Composite.create(byteables));
+        if(fence == NO_ENTRY) {
+            return new Nested(0, 0, 0);
+        }
+        int start = mapped.getInt(fence + 8);
+        int end = mapped.getInt(fence + 12);
+        int from = search(start);
+        int outer = from;
+        while (fence(outer) != fence) { // ties have the same start
+            ++outer;
+        }
+        return new Nested(from, search(end + 1), outer);
+    }
+
     /**
      * Record the end position for the {@code byteables}.
      * 
@@ -241,7 +482,7 @@ public class BlockIndex implements Byteable, Syncable {
             if(entry == null) {
                 entry = new Entry(composite);
                 entries.put(composite, entry);
-                size += entry.size() + 4;
+                size += FENCE_SIZE + composite.size() + POSITION_SIZE;
             }
             entry.setStart(start);
         }
@@ -250,6 +491,32 @@ public class BlockIndex implements Byteable, Syncable {
         }
     }
 
+    /**
+     * Record that there is a revision for the {@code byteables} at
+     * {@code version}. This must be called after the start position for the
+     * {@code byteables} has been recorded.
+     * 
+     * @param version
+     * @param byteables
+     */
+    public void putVersion(long version, Byteable... byteables) {
+        Preconditions.checkState(mutable);
+        masterLock.writeLock().lock();
+        try {
+            Composite composite = Composite.create(byteables);
+            Entry entry = entries().get(composite);
+            Preconditions.checkState(entry != null,
+                    "Cannot set the version before setting "
+                            + "the start position. Tried to put %s", version);
+            entry.putVersion(version);
+            minVersion = Math.min(minVersion, version);
+            maxVersion = Math.max(maxVersion, version);
+        }
+        finally {
+            masterLock.writeLock().unlock();
+        }
+    }
+
     @Override
     public int size() {
         masterLock.readLock().lock();
@@ -266,16 +533,36 @@ public class BlockIndex implements Byteable, Syncable {
         Preconditions.checkState(mutable);
         masterLock.readLock().lock();
         FileChannel channel = FileSystem.getFileChannel(file);
+        ChannelWriter writer = new ChannelWriter(channel);
         try {
-            channel.write(getBytes());
-            softEntries = new SoftReference<Map<Composite, Entry>>(entries);
+            List<Entry> sorted = sort();
+            writer.putInt(MAGIC);
+            writer.putInt(sorted.size());
+            writer.putLong(minVersion);
+            writer.putLong(maxVersion);
+            int keyOffset = HEADER_SIZE + (FENCE_SIZE * sorted.size());
+            for (Entry entry : sorted) {
+                writer.putInt(keyOffset);
+                writer.putInt(entry.getKey().size());
+                writer.putInt(entry.getStart());
+                writer.putInt(entry.getEnd());
+                writer.putLong(entry.getMinVersion());
+                writer.putLong(entry.getMaxVersion());
+                keyOffset += entry.getKey().size();
+            }
+            for (Entry entry : sorted) {
+                writer.put(entry.getKey());
+            }
+            for (int fence : positions(sorted)) {
+                writer.putInt(fence);
+            }
+            Preconditions.checkState(writer.position() == size);
+            writer.flush();
             mutable = false;
-            entries = null;
-        }
-        catch (IOException e) {
-            throw Throwables.propagate(e);
+            entries = null; // subsequent lookups search the mapped file
         }
         finally {
+            writer.release();
             FileSystem.closeFileChannel(channel); // CON-162
             masterLock.readLock().unlock();
         }
@@ -286,10 +573,29 @@ public class BlockIndex implements Byteable, Syncable {
         Preconditions.checkState(mutable);
         masterLock.readLock().lock();
         try {
-            for (Entry entry : entries.values()) {
-                buffer.putInt(entry.size());
-                entry.copyTo(buffer);
+            List<Entry> sorted = sort();
+            int base = buffer.position();
+            int keyOffset = HEADER_SIZE + (FENCE_SIZE * sorted.size());
+            buffer.putInt(MAGIC);
+            buffer.putInt(sorted.size());
+            buffer.putLong(minVersion);
+            buffer.putLong(maxVersion);
+            for (Entry entry : sorted) {
+                buffer.putInt(keyOffset);
+                buffer.putInt(entry.getKey().size());
+                buffer.putInt(entry.getStart());
+                buffer.putInt(entry.getEnd());
+                buffer.putLong(entry.getMinVersion());
+                buffer.putLong(entry.getMaxVersion());
+                keyOffset += entry.getKey().size();
+            }
+            for (Entry entry : sorted) {
+                entry.getKey().copyTo(buffer);
             }
+            for (int fence : positions(sorted)) {
+                buffer.putInt(fence);
+            }
+            Preconditions.checkState(buffer.position() - base == size);
         }
         finally {
             masterLock.readLock().unlock();
@@ -305,7 +611,7 @@ public class BlockIndex implements Byteable, Syncable {
     protected boolean isLoaded() { // visible for testing
         masterLock.readLock().lock();
         try {
-            return mutable
+            return mutable || mapped != null
                     || (softEntries != null && softEntries.get() != null);
         }
         finally {
@@ -313,6 +619,85 @@ public class BlockIndex implements Byteable, Syncable {
         }
     }
 
+    /**
+     * Return the position of the fence for {@code composite} in the
+     * {@link #mapped} file or {@link #NO_ENTRY} if it does not exist.
+     * 
+     * @param composite
+     * @return the position of the fence
+     */
+    private int find(Composite composite) {
+        ByteBuffer key = composite.getBytes();
+        int low = 0;
+        int high = mapped.getInt(4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int fence = HEADER_SIZE + (mid * FENCE_SIZE);
+            int cmp = compare(mapped.getInt(fence), mapped.getInt(fence + 4),
+                    key);
+            if(cmp < 0) {
+                low = mid + 1;
+            }
+            else if(cmp > 0) {
+                high = mid - 1;
+            }
+            else {
+                return fence;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * Compare the {@code length} key bytes that begin at {@code offset} in the
+     * {@link #mapped} file to the remaining bytes in {@code key} using the
+     * same order as {@link ByteBuffer#compareTo(ByteBuffer)}.
+     * 
+     * @param offset
+     * @param length
+     * @param key
+     * @return a negative integer, zero, or a positive integer as the mapped key
+     *         is less than, equal to, or greater than {@code key}
+     */
+    private int compare(int offset, int length, ByteBuffer key) {
+        int remaining = key.remaining();
+        int n = Math.min(length, remaining);
+        for (int i = 0; i < n; ++i) {
+            int cmp = Byte.compare(mapped.get(offset + i),
+                    key.get(key.position() + i));
+            if(cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - remaining;
+    }
+
+    /**
+     * Return the read-only mapping of the index file if it is in the
+     * searchable format, establishing the mapping if necessary, or
+     * {@code null} if the file is in the legacy format.
+     * 
+     * @return the mapping
+     */
+    private MappedByteBuffer mapped() {
+        if(mapped == null && !legacy) {
+            synchronized (this) {
+                if(mapped == null && !legacy) {
+                    MappedByteBuffer bytes = FileSystem.map(file,
+                            MapMode.READ_ONLY, 0, FileSystem.getFileSize(file));
+                    int magic = bytes.capacity() >= 8 ? bytes.getInt(0) : 0;
+                    if(magic == MAGIC) {
+                        mapped = bytes;
+                    }
+                    else {
+                        legacy = true;
+                    }
+                }
+            }
+        }
+        return mapped;
+    }
+
     /**
      * Return the entries in this index. This method will lazily load the
      * entries on demand if they do not currently exist in memory.
@@ -349,6 +734,159 @@ public class BlockIndex implements Byteable, Syncable {
         }
     }
 
+    /**
+     * Return the fence numbers of the {@code sorted} entries in the order of
+     * their positions.
+     * 
+     * @param sorted
+     * @return the positions
+     */
+    private static int[] positions(List<Entry> sorted) {
+        List<Entry> ordered = Lists.newArrayList(sorted);
+        Collections.sort(ordered, POSITION_SORTER);
+        Map<Entry, Integer> fences = Maps.newIdentityHashMap();
+        for (int i = 0; i < sorted.size(); ++i) {
+            fences.put(sorted.get(i), i);
+        }
+        int[] positions = new int[ordered.size()];
+        for (int i = 0; i < positions.length; ++i) {
+            positions[i] = fences.get(ordered.get(i));
+        }
+        return positions;
+    }
+
+    /**
+     * Return the index of the first position in the {@link #mapped} file
+     * whose entry starts at or after {@code start}, or the number of entries
+     * if there is none.
+     * 
+     * @param start
+     * @return the index of the position
+     */
+    private int search(int start) {
+        int count = mapped.getInt(4);
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if(mapped.getInt(fence(mid) + 8) < start) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Return the offset of the fence for the entry at {@code position} in the
+     * position order of the {@link #mapped} file.
+     * 
+     * @param position
+     * @return the offset of the fence
+     */
+    private int fence(int position) {
+        int positions = mapped.capacity()
+                - (mapped.getInt(4) * POSITION_SIZE);
+        return HEADER_SIZE
+                + (mapped.getInt(positions + (position * POSITION_SIZE)) * FENCE_SIZE);
+    }
+
+    /**
+     * Return the in memory entries sorted in the order that they are written
+     * to disk.
+     * 
+     * @return the sorted entries
+     */
+    private List<Entry> sort() {
+        List<Entry> sorted = Lists.newArrayList(entries.values());
+        Collections.sort(sorted, ENTRY_SORTER);
+        return sorted;
+    }
+
+    /**
+     * A view of a run of adjacent entries in the position order of the
+     * {@link #mapped} file.
+     * 
+     * @author jnelson
+     */
+    public final class Nested {
+
+        private final int from;
+        private final int to;
+        private final int outer;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param from - inclusive
+         * @param to - exclusive
+         * @param outer - the position of the enclosing entry, which is
+         *            skipped
+         */
+        private Nested(int from, int to, int outer) {
+            this.from = from;
+            this.to = to;
+            this.outer = outer;
+        }
+
+        /**
+         * Return the end position of the entry at {@code index}.
+         * 
+         * @param index
+         * @return the end position
+         */
+        public int getEnd(int index) {
+            return mapped.getInt(fence(position(index)) + 12);
+        }
+
+        /**
+         * Return a read-only view of the key bytes of the entry at
+         * {@code index}.
+         * 
+         * @param index
+         * @return the key bytes
+         */
+        public ByteBuffer getKey(int index) {
+            int fence = fence(position(index));
+            ByteBuffer key = mapped.asReadOnlyBuffer();
+            key.position(mapped.getInt(fence));
+            key.limit(key.position() + mapped.getInt(fence + 4));
+            return key.slice();
+        }
+
+        /**
+         * Return the start position of the entry at {@code index}.
+         * 
+         * @param index
+         * @return the start position
+         */
+        public int getStart(int index) {
+            return mapped.getInt(fence(position(index)) + 8);
+        }
+
+        /**
+         * Return the number of entries.
+         * 
+         * @return the size
+         */
+        public int size() {
+            return Math.max(0, to - from - 1);
+        }
+
+        /**
+         * Return the position of the entry at {@code index}.
+         * 
+         * @param index
+         * @return the position
+         */
+        private int position(int index) {
+            int position = from + index;
+            return position < outer ? position : position + 1;
+        }
+    }
+
     /**
      * Represents a single entry in the Index.
      * 
@@ -360,6 +898,8 @@ public class BlockIndex implements Byteable, Syncable {
 
         private int end = NO_ENTRY;
         private final Composite key;
+        private long maxVersion = Long.MIN_VALUE;
+        private long minVersion = Long.MAX_VALUE;
         private int start = NO_ENTRY;
 
         /**
@@ -376,6 +916,8 @@ public class BlockIndex implements Byteable, Syncable {
             this.end = bytes.getInt();
             this.key = Composite.fromByteBuffer(ByteBuffers.get(bytes,
                     bytes.remaining()));
+            this.minVersion = UNKNOWN_MIN_VERSION; // legacy entries don't
+            this.maxVersion = UNKNOWN_MAX_VERSION; // have version ranges
         }
 
         /**
@@ -413,6 +955,24 @@ public class BlockIndex implements Byteable, Syncable {
             return key;
         }
 
+        /**
+         * Return the largest version.
+         * 
+         * @return the max version
+         */
+        public long getMaxVersion() {
+            return maxVersion;
+        }
+
+        /**
+         * Return the smallest version.
+         * 
+         * @return the min version
+         */
+        public long getMinVersion() {
+            return minVersion;
+        }
+
         /**
          * Return the start position.
          * 
@@ -422,6 +982,16 @@ public class BlockIndex implements Byteable, Syncable {
             return start;
         }
 
+        /**
+         * Expand the version range to include {@code version}.
+         * 
+         * @param version
+         */
+        public void putVersion(long version) {
+            minVersion = Math.min(minVersion, version);
+            maxVersion = Math.max(maxVersion, version);
+        }
+
         /**
          * Set the end position.
          * 
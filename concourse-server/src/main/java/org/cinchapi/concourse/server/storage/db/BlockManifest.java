@@ -0,0 +1,382 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.util.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A persistent record of the id, size and checksum of every immutable
+ * {@link Block} in the {@link Database}, grouped by the type of the block
+ * (i.e. the name of the directory that it is stored in).
+ * <p>
+ * The checksum for a block file is computed while the block is synced, so
+ * when the Database starts it can detect duplicate blocks by comparing the
+ * checksums in the manifest instead of reading every block file. Only block
+ * files that are missing from the manifest, or whose size has changed, need
+ * to be read. The checksums are also used by the {@link BlockScrubber} to
+ * detect corruption in the background.
+ * </p>
+ * <p>
+ * The manifest is an append-only log of additions and removals that is
+ * {@link #compact() rewritten} in compact form whenever the Database starts.
+ * A record that was only partially written when the server crashed is
+ * discarded.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class BlockManifest {
+
+    /**
+     * The function that computes the checksum of a block file.
+     */
+    public static final HashFunction CHECKSUM = Hashing.murmur3_128();
+
+    /**
+     * Return the checksum of the content of {@code file}.
+     * 
+     * @param file
+     * @return the checksum
+     * @throws IOException
+     */
+    public static HashCode checksum(File file) throws IOException {
+        return Files.hash(file, CHECKSUM);
+    }
+
+    /**
+     * Read a string that was written by {@link #writeString(ByteBuffer, String)}.
+     * 
+     * @param bytes
+     * @return the string
+     */
+    private static String readString(ByteBuffer bytes) {
+        byte[] utf8 = new byte[bytes.getShort()];
+        bytes.get(utf8);
+        return new String(utf8, Charsets.UTF_8);
+    }
+
+    /**
+     * Return the serialized form of a record that adds {@code entry} for
+     * {@code type} or, if {@code entry} is {@code null}, removes {@code id}
+     * from {@code type}.
+     * 
+     * @param type
+     * @param id
+     * @param entry
+     * @return the record
+     */
+    private static ByteBuffer toRecord(String type, String id,
+            @Nullable Entry entry) {
+        byte[] type0 = type.getBytes(Charsets.UTF_8);
+        byte[] id0 = id.getBytes(Charsets.UTF_8);
+        byte[] checksum = entry != null ? entry.getChecksum().asBytes()
+                : new byte[0];
+        int length = 1 + 2 + type0.length + 2 + id0.length
+                + (entry != null ? 8 + 1 + checksum.length : 0);
+        ByteBuffer bytes = ByteBuffer.allocate(4 + length);
+        bytes.putInt(length);
+        bytes.put(entry != null ? ADD : REMOVE);
+        bytes.putShort((short) type0.length);
+        bytes.put(type0);
+        bytes.putShort((short) id0.length);
+        bytes.put(id0);
+        if(entry != null) {
+            bytes.putLong(entry.getSize());
+            bytes.put((byte) checksum.length);
+            bytes.put(checksum);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * The marker for a record that adds an entry.
+     */
+    private static final byte ADD = 1;
+
+    /**
+     * The marker for a record that removes an entry.
+     */
+    private static final byte REMOVE = 0;
+
+    /**
+     * The entries for each type.
+     */
+    private final Map<String, Map<String, Entry>> entries = Maps.newHashMap();
+
+    /**
+     * The location of the manifest.
+     */
+    private final String file;
+
+    /**
+     * Construct a new instance. The manifest file is not read until
+     * {@link #load()} is called.
+     * 
+     * @param file
+     */
+    BlockManifest(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Record that the block file that is described by {@code entry} belongs to
+     * {@code type}. A {@code null} entry (i.e. for a Block that was empty when
+     * it was synced) is ignored.
+     * 
+     * @param type
+     * @param entry
+     */
+    public synchronized void add(String type, @Nullable Entry entry) {
+        if(entry != null) {
+            append(toRecord(type, entry.getId(), entry));
+            get(type).put(entry.getId(), entry);
+        }
+    }
+
+    /**
+     * Rewrite the manifest file so that it only contains a record for each
+     * entry that is currently in memory.
+     */
+    public synchronized void compact() {
+        String staging = file + ".tmp";
+        if(FileSystem.hasFile(staging)) {
+            FileSystem.deleteFile(staging);
+        }
+        FileChannel channel = FileSystem.getFileChannel(staging);
+        try {
+            for (Map.Entry<String, Map<String, Entry>> group : entries
+                    .entrySet()) {
+                for (Entry entry : group.getValue().values()) {
+                    channel.write(toRecord(group.getKey(), entry.getId(),
+                            entry));
+                }
+            }
+            channel.force(true);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            FileSystem.closeFileChannel(channel);
+        }
+        FileSystem.replaceFile(file, staging);
+    }
+
+    /**
+     * Return the entry for the block file {@code id} of {@code type}, if it
+     * exists.
+     * 
+     * @param type
+     * @param id
+     * @return the entry or {@code null}
+     */
+    @Nullable
+    public synchronized Entry get(String type, String id) {
+        return get(type).get(id);
+    }
+
+    /**
+     * Replace the entries in memory with those that are stored in the manifest
+     * file, creating it if it does not exist.
+     */
+    public synchronized void load() {
+        entries.clear();
+        ByteBuffer bytes = FileSystem.readBytes(file);
+        while (bytes.remaining() >= 4) {
+            int length = bytes.getInt();
+            if(length <= 0 || length > bytes.remaining()) {
+                break;
+            }
+            ByteBuffer record = bytes.slice();
+            record.limit(length);
+            bytes.position(bytes.position() + length);
+            boolean add = record.get() == ADD;
+            String type = readString(record);
+            String id = readString(record);
+            if(add) {
+                long size = record.getLong();
+                byte[] checksum = new byte[record.get()];
+                record.get(checksum);
+                get(type).put(id,
+                        new Entry(id, size, HashCode.fromBytes(checksum)));
+            }
+            else {
+                get(type).remove(id);
+            }
+        }
+        if(bytes.hasRemaining()) {
+            Logger.warn("Discarding a partial record at the end of the "
+                    + "block manifest {}", file);
+        }
+    }
+
+    /**
+     * Record that the block file for {@code id} no longer belongs to
+     * {@code type}.
+     * 
+     * @param type
+     * @param id
+     */
+    public synchronized void remove(String type, String id) {
+        if(get(type).remove(id) != null) {
+            append(toRecord(type, id, null));
+        }
+    }
+
+    /**
+     * Remove every entry for {@code type} that is not one of the {@code ids}.
+     * The removals are not written to the manifest file until it is
+     * {@link #compact() compacted}.
+     * 
+     * @param type
+     * @param ids
+     */
+    public synchronized void retain(String type, Collection<String> ids) {
+        get(type).keySet().retainAll(ids);
+    }
+
+    /**
+     * Return the number of entries for {@code type}.
+     * 
+     * @param type
+     * @return the number of entries
+     */
+    public synchronized int size(String type) {
+        return get(type).size();
+    }
+
+    /**
+     * Append {@code record} to the manifest file.
+     * 
+     * @param record
+     */
+    private void append(ByteBuffer record) {
+        FileChannel channel = FileSystem.getFileChannel(file);
+        try {
+            channel.position(channel.size());
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(true);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            FileSystem.closeFileChannel(channel);
+        }
+    }
+
+    /**
+     * Return the entries for {@code type}, creating the map if necessary.
+     * 
+     * @param type
+     * @return the entries
+     */
+    private Map<String, Entry> get(String type) {
+        Map<String, Entry> group = entries.get(type);
+        if(group == null) {
+            group = Maps.newHashMap();
+            entries.put(type, group);
+        }
+        return group;
+    }
+
+    /**
+     * The id, size and checksum of a block file.
+     * 
+     * @author jnelson
+     */
+    @Immutable
+    static final class Entry {
+
+        private final String id;
+        private final long size;
+        private final HashCode checksum;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param id
+         * @param size
+         * @param checksum
+         */
+        Entry(String id, long size, HashCode checksum) {
+            this.id = id;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Return the checksum of the block file.
+         * 
+         * @return the checksum
+         */
+        public HashCode getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Return the block id.
+         * 
+         * @return the id
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Return the size of the block file.
+         * 
+         * @return the size
+         */
+        public long getSize() {
+            return size;
+        }
+
+    }
+
+}
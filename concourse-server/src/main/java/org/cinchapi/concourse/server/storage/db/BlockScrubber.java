@@ -0,0 +1,336 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.util.Logger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.RateLimiter;
+
+import static org.cinchapi.concourse.server.GlobalState.*;
+
+/**
+ * The {@link BlockScrubber} periodically reads every immutable {@link Block}
+ * file in the {@link Database} and compares its checksum to the one that was
+ * recorded in the {@link BlockManifest} when the block was synced.
+ * <p>
+ * Scrubbing is disabled unless {@link GlobalState#ENABLE_BLOCK_SCRUBBER} is
+ * set, and the scrubber never reads more than
+ * {@link GlobalState#BLOCK_SCRUBBER_THROUGHPUT} bytes per second, so it does
+ * not compete with foreground reads. A block file that does not match its
+ * checksum is logged and reported in the {@link #getStatus() status}, which is
+ * available via JMX. The scrubber only reports corruption; it never modifies
+ * or removes a block.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class BlockScrubber {
+
+    /**
+     * The number of milliseconds between the end of one pass over all the
+     * blocks and the start of the next.
+     */
+    private static final long PASS_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The number of bytes that are read from a block file at a time.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final String backingStore;
+    private final List<PrimaryBlock> cpb;
+    private final List<SecondaryBlock> csb;
+    private final List<SearchBlock> ctb;
+
+    /**
+     * The manifest that contains the expected checksum of each block file.
+     */
+    private final BlockManifest manifest;
+
+    /**
+     * The Database lock that guards the block collections.
+     */
+    private final ReentrantReadWriteLock masterLock;
+
+    /**
+     * A lock that ensures only one pass happens at a time.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The timer that periodically starts a pass.
+     */
+    @Nullable
+    private Timer timer;
+
+    /**
+     * A flag that indicates whether the scrubber is running. A pass that is
+     * in progress is abandoned when this flag is turned off.
+     */
+    private volatile boolean running = false;
+
+    /*
+     * STATS
+     * -----
+     * The scrubber keeps track of what it has done so that corruption can be
+     * reported via JMX.
+     */
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong blocksScrubbed = new AtomicLong();
+    private final AtomicLong bytesScrubbed = new AtomicLong();
+    private final Set<String> corrupt = new ConcurrentSkipListSet<String>();
+    private volatile String current = null;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param backingStore
+     * @param cpb
+     * @param csb
+     * @param ctb
+     * @param manifest
+     * @param masterLock
+     */
+    BlockScrubber(String backingStore, List<PrimaryBlock> cpb,
+            List<SecondaryBlock> csb, List<SearchBlock> ctb,
+            BlockManifest manifest, ReentrantReadWriteLock masterLock) {
+        this.backingStore = backingStore;
+        this.cpb = cpb;
+        this.csb = csb;
+        this.ctb = ctb;
+        this.manifest = manifest;
+        this.masterLock = masterLock;
+    }
+
+    /**
+     * Return the block files that did not match their checksum, each of which
+     * is described as {@code type/id}.
+     * 
+     * @return the corrupt block files
+     */
+    public Set<String> getCorruptBlocks() {
+        return corrupt;
+    }
+
+    /**
+     * Return a description of the scrubber's progress and any corruption that
+     * it has found.
+     * 
+     * @return the status
+     */
+    public String getStatus() {
+        StringBuilder sb = new StringBuilder();
+        String separator = System.getProperty("line.separator");
+        sb.append("Enabled: " + ENABLE_BLOCK_SCRUBBER);
+        sb.append(separator);
+        sb.append("Passes: " + passes.get());
+        sb.append(separator);
+        sb.append("Blocks scrubbed: " + blocksScrubbed.get());
+        sb.append(separator);
+        sb.append("Bytes scrubbed: " + bytesScrubbed.get());
+        sb.append(separator);
+        String current = this.current;
+        sb.append("In progress: " + (current != null ? current : "none"));
+        sb.append(separator);
+        sb.append("Corrupt blocks: " + (corrupt.isEmpty() ? "none" : corrupt));
+        sb.append(separator);
+        return sb.toString();
+    }
+
+    /**
+     * Verify the checksum of every immutable block file once. If another pass
+     * is already in progress, this method waits for it to finish first.
+     */
+    public void scrub() {
+        lock.lock();
+        try {
+            doScrub();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start the scrubber so that it periodically verifies the block files in
+     * the background if {@link GlobalState#ENABLE_BLOCK_SCRUBBER} is set.
+     */
+    public void start() {
+        if(!running) {
+            running = true;
+            if(ENABLE_BLOCK_SCRUBBER) {
+                timer = new Timer(true);
+                timer.schedule(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        if(lock.tryLock()) {
+                            try {
+                                doScrub();
+                            }
+                            catch (Exception e) {
+                                Logger.error("An error occurred while "
+                                        + "scrubbing blocks in {}",
+                                        backingStore, e);
+                            }
+                            finally {
+                                lock.unlock();
+                            }
+                        }
+                    }
+
+                }, PASS_INTERVAL, PASS_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Stop the scrubber. Any pass that is in progress is abandoned and this
+     * method blocks until it has stopped.
+     */
+    public void stop() {
+        if(running) {
+            running = false;
+            if(timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verify the checksum of every immutable block file unless the scrubber
+     * is stopped.
+     */
+    private void doScrub() {
+        Map<String, List<? extends Block<?, ?, ?>>> blocks;
+        masterLock.readLock().lock();
+        try {
+            blocks = ImmutableMap.<String, List<? extends Block<?, ?, ?>>> of(
+                    Database.PRIMARY_BLOCK_DIRECTORY, Lists.newArrayList(cpb),
+                    Database.SECONDARY_BLOCK_DIRECTORY,
+                    Lists.newArrayList(csb), Database.SEARCH_BLOCK_DIRECTORY,
+                    Lists.newArrayList(ctb));
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+        RateLimiter limiter = BLOCK_SCRUBBER_THROUGHPUT > 0 ? RateLimiter
+                .create(BLOCK_SCRUBBER_THROUGHPUT) : null;
+        try {
+            for (Map.Entry<String, List<? extends Block<?, ?, ?>>> group : blocks
+                    .entrySet()) {
+                for (Block<?, ?, ?> block : group.getValue()) {
+                    if(!running) {
+                        return;
+                    }
+                    if(!block.mutable) {
+                        scrub(group.getKey(), block.getId(), limiter);
+                    }
+                }
+            }
+            passes.incrementAndGet();
+        }
+        finally {
+            current = null;
+        }
+    }
+
+    /**
+     * Verify the checksum of the block file {@code id} of {@code type} while
+     * respecting the {@code limiter}.
+     * 
+     * @param type
+     * @param id
+     * @param limiter
+     */
+    private void scrub(String type, String id, @Nullable RateLimiter limiter) {
+        BlockManifest.Entry entry = manifest.get(type, id);
+        if(entry == null) {
+            return;
+        }
+        String name = type + File.separator + id;
+        current = name;
+        File file = new File(backingStore + File.separator + name
+                + Block.BLOCK_NAME_EXTENSION);
+        Hasher hasher = BlockManifest.CHECKSUM.newHasher();
+        long size = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while (running && (read = in.read(chunk)) != -1) {
+                if(limiter != null) {
+                    limiter.acquire(read);
+                }
+                hasher.putBytes(chunk, 0, read);
+                size += read;
+                bytesScrubbed.addAndGet(read);
+            }
+        }
+        catch (FileNotFoundException e) {
+            return; // the block was removed by compaction
+        }
+        catch (IOException e) {
+            Logger.error("Unable to scrub {}", name, e);
+            return;
+        }
+        if(running) {
+            blocksScrubbed.incrementAndGet();
+            if(size != entry.getSize()
+                    || !hasher.hash().equals(entry.getChecksum())) {
+                if(corrupt.add(name)) {
+                    Logger.error("The block file {} does not match the "
+                            + "checksum that was recorded when it was "
+                            + "synced, so it is probably corrupt", name);
+                }
+            }
+        }
+    }
+
+}
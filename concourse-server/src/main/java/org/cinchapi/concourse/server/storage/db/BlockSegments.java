@@ -0,0 +1,441 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.cinchapi.concourse.server.io.ChannelWriter;
+import org.cinchapi.concourse.server.io.FileSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * The table of contents for a {@link Block} file whose content is stored as a
+ * sequence of independently compressed segments.
+ * <p>
+ * Segments always start at a {@link BlockIndex} boundary, so a seek only
+ * needs to decompress the segments that overlap the range that the index
+ * points to, which is usually exactly one. The positions that are stored in
+ * the BlockIndex are positions in the uncompressed content, so the index does
+ * not need to know whether the Block is compressed. Recently decompressed
+ * segments are kept in a small cache that is shared by all Blocks.
+ * </p>
+ * <p>
+ * The segments are produced by a {@link Writer} while the Block is being
+ * encoded, so only one segment is ever held in memory.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@Immutable
+final class BlockSegments {
+
+    /**
+     * Invalidate the decompressed segments for {@code blockFile}. This must be
+     * called whenever a compressed block file is moved or deleted.
+     * 
+     * @param blockFile
+     */
+    public static void invalidate(String blockFile) {
+        String prefix = blockFile + SEPARATOR;
+        Iterator<String> it = CACHE.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            if(it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Load the BlockSegments that are stored in {@code file}.
+     * 
+     * @param file
+     * @return the BlockSegments
+     */
+    public static BlockSegments open(String file) {
+        ByteBuffer bytes = FileSystem.readBytes(file);
+        Compression compression = Compression.forId(bytes.getInt());
+        int size = bytes.getInt();
+        int count = bytes.getInt();
+        int[] starts = new int[count];
+        int[] positions = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            starts[i] = bytes.getInt();
+            positions[i] = bytes.getInt();
+        }
+        positions[count] = bytes.getInt();
+        return new BlockSegments(compression, size, starts, positions);
+    }
+
+    /**
+     * The number of uncompressed bytes after which a new segment is started
+     * at the next run when a Block is compressed.
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of decompressed bytes that are cached.
+     */
+    private static final long CACHE_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * The recently decompressed segments, keyed by the block file and the
+     * segment number.
+     */
+    private static final Cache<String, byte[]> CACHE = CacheBuilder
+            .newBuilder().maximumWeight(CACHE_SIZE)
+            .weigher(new Weigher<String, byte[]>() {
+
+                @Override
+                public int weigh(String key, byte[] value) {
+                    return value.length;
+                }
+
+            }).build();
+
+    /**
+     * The character that separates the block file and the segment number in
+     * a {@link #CACHE} key.
+     */
+    private static final char SEPARATOR = '#';
+
+    /**
+     * The codec that compressed each segment.
+     */
+    private final Compression compression;
+
+    /**
+     * The number of bytes in the uncompressed content.
+     */
+    private final int size;
+
+    /**
+     * The position of each segment in the uncompressed content.
+     */
+    private final int[] starts;
+
+    /**
+     * The position of each segment in the block file, followed by the size of
+     * the block file.
+     */
+    private final int[] positions;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param compression
+     * @param size
+     * @param starts
+     * @param positions
+     */
+    private BlockSegments(Compression compression, int size, int[] starts,
+            int[] positions) {
+        this.compression = compression;
+        this.size = size;
+        this.starts = starts;
+        this.positions = positions;
+    }
+
+    /**
+     * Return all the uncompressed content from the {@code compressed} bytes
+     * of the block file. This does not use or populate the cache of
+     * decompressed segments.
+     * 
+     * @param compressed
+     * @return the content
+     */
+    public ByteBuffer decompress(ByteBuffer compressed) {
+        ByteBuffer content = ByteBuffer.allocate(size);
+        for (int i = 0; i < starts.length; i++) {
+            content.put(decompress(compressed, i));
+        }
+        content.flip();
+        return content;
+    }
+
+    /**
+     * Return the serialized form of this table of contents.
+     * 
+     * @return the bytes
+     */
+    public ByteBuffer getBytes() {
+        ByteBuffer bytes = ByteBuffer.allocate(16 + starts.length * 8);
+        bytes.putInt(compression.getId());
+        bytes.putInt(size);
+        bytes.putInt(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            bytes.putInt(starts[i]);
+            bytes.putInt(positions[i]);
+        }
+        bytes.putInt(positions[starts.length]);
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Return the codec that compressed the segments.
+     * 
+     * @return the Compression
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Return the number of bytes in the uncompressed content.
+     * 
+     * @return the uncompressed size
+     */
+    public int getUncompressedSize() {
+        return size;
+    }
+
+    /**
+     * Return a read-only view of {@code length} bytes of uncompressed content,
+     * starting at {@code position}, from the compressed {@code blockFile}.
+     * 
+     * @param blockFile
+     * @param files the cache that is used to read the block file
+     * @param position
+     * @param length
+     * @return the bytes
+     */
+    public ByteBuffer read(String blockFile, BlockFileCache files,
+            int position, int length) {
+        int segment = Arrays.binarySearch(starts, position);
+        segment = segment < 0 ? -segment - 2 : segment;
+        byte[] content = getSegment(blockFile, files, segment);
+        int offset = position - starts[segment];
+        if(offset + length <= content.length) {
+            ByteBuffer bytes = ByteBuffer.wrap(content).asReadOnlyBuffer();
+            bytes.position(offset);
+            bytes.limit(offset + length);
+            return bytes.slice();
+        }
+        else { // the range spans segments, which only happens if it is for
+               // a locator that was split across segments
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            while (bytes.hasRemaining()) {
+                int count = Math.min(bytes.remaining(), content.length
+                        - offset);
+                bytes.put(content, offset, count);
+                offset = 0;
+                if(bytes.hasRemaining()) {
+                    content = getSegment(blockFile, files, ++segment);
+                }
+            }
+            bytes.flip();
+            return bytes.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Return the uncompressed content of {@code segment} from the
+     * {@code compressed} bytes of the block file.
+     * 
+     * @param compressed
+     * @param segment
+     * @return the content
+     */
+    private byte[] decompress(ByteBuffer compressed, int segment) {
+        int length = positions[segment + 1] - positions[segment];
+        byte[] src = new byte[length];
+        ByteBuffer bytes = compressed.duplicate();
+        bytes.position(positions[segment]);
+        bytes.get(src);
+        int end = segment + 1 < starts.length ? starts[segment + 1] : size;
+        byte[] content = new byte[end - starts[segment]];
+        compression.decompress(src, 0, length, content);
+        return content;
+    }
+
+    /**
+     * Return the uncompressed content of {@code segment} in
+     * {@code blockFile}, decompressing it if it is not cached.
+     * 
+     * @param blockFile
+     * @param files
+     * @param segment
+     * @return the content
+     */
+    private byte[] getSegment(String blockFile, BlockFileCache files,
+            int segment) {
+        String key = blockFile + SEPARATOR + segment;
+        byte[] content = CACHE.getIfPresent(key);
+        if(content == null) {
+            content = decompress(files.read(blockFile), segment);
+            CACHE.put(key, content);
+        }
+        return content;
+    }
+
+    /**
+     * A {@link BlockFormat.Output} that compresses the encoding of a Block one
+     * segment at a time and streams the compressed segments to a
+     * {@link ChannelWriter}.
+     * <p>
+     * A segment is cut at the first run that starts after it has grown to the
+     * segment size, so a seek usually only needs one segment. The segment
+     * buffer is bounded at twice the segment size, so a run that is larger
+     * than that is split across segments, which {@link BlockSegments#read}
+     * handles.
+     * </p>
+     * 
+     * @author jnelson
+     */
+    @NotThreadSafe
+    static final class Writer extends BlockFormat.Output {
+
+        /**
+         * The codec that compresses each segment.
+         */
+        private final Compression compression;
+
+        /**
+         * The destination for the compressed segments.
+         */
+        private final ChannelWriter out;
+
+        /**
+         * The number of uncompressed bytes after which a segment is cut at
+         * the next run.
+         */
+        private final int segmentSize;
+
+        /**
+         * The uncompressed content of the current segment.
+         */
+        private final byte[] segment;
+
+        /**
+         * The number of bytes in the current {@link #segment}.
+         */
+        private int length = 0;
+
+        /**
+         * The position of the current segment in the uncompressed content.
+         */
+        private int start = 0;
+
+        /**
+         * The number of compressed bytes that have been written.
+         */
+        private int compressed = 0;
+
+        /**
+         * The start of each segment that has been written.
+         */
+        private final List<Integer> starts = Lists.newArrayList();
+
+        /**
+         * The position in the block file of each segment that has been
+         * written.
+         */
+        private final List<Integer> positions = Lists.newArrayList();
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param compression
+         * @param out
+         * @param segmentSize
+         */
+        Writer(Compression compression, ChannelWriter out, int segmentSize) {
+            this.compression = compression;
+            this.out = out;
+            this.segmentSize = segmentSize;
+            this.segment = new byte[segmentSize * 2];
+        }
+
+        /**
+         * Compress and write the last segment and return the BlockSegments
+         * that describe everything that was written. The writer cannot be
+         * used afterwards.
+         * 
+         * @return the BlockSegments
+         */
+        public BlockSegments finish() {
+            cut();
+            positions.add(compressed);
+            return new BlockSegments(compression, start, Ints.toArray(starts),
+                    Ints.toArray(positions));
+        }
+
+        @Override
+        public void startRun() {
+            if(length >= segmentSize) {
+                cut();
+            }
+        }
+
+        @Override
+        protected void put(byte[] b, int offset, int length) {
+            while (length > 0) {
+                if(this.length == segment.length) {
+                    cut();
+                }
+                int count = Math.min(length, segment.length - this.length);
+                System.arraycopy(b, offset, segment, this.length, count);
+                this.length += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        protected void put(int b) {
+            if(length == segment.length) {
+                cut();
+            }
+            segment[length++] = (byte) b;
+        }
+
+        /**
+         * Compress and write the current segment, if it is not empty.
+         */
+        private void cut() {
+            if(length > 0) {
+                byte[] bytes = compression.compress(segment, 0, length);
+                out.put(bytes, 0, bytes.length);
+                starts.add(start);
+                positions.add(compressed);
+                compressed += bytes.length;
+                start += length;
+                length = 0;
+            }
+        }
+
+    }
+
+}
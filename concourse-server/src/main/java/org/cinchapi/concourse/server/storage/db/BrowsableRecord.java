@@ -24,6 +24,7 @@
 package org.cinchapi.concourse.server.storage.db;
 
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.cinchapi.concourse.server.io.Byteable;
@@ -80,8 +81,11 @@ abstract class BrowsableRecord<L extends Byteable & Comparable<L>, K extends Byt
         read.lock();
         try {
             Map<K, Set<V>> data = Maps.newLinkedHashMap();
-            for (K key : describe(timestamp)) {
-                data.put(key, get(key, timestamp));
+            for (Entry<K, RevisionHistory<V>> entry : history.entrySet()) { /* Authorized */
+                Set<V> values = entry.getValue().get(timestamp);
+                if(!values.isEmpty()) {
+                    data.put(entry.getKey(), values);
+                }
             }
             return data;
         }
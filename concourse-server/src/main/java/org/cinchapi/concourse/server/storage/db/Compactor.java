@@ -0,0 +1,697 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.Byteable;
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.util.Logger;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.util.concurrent.RateLimiter;
+
+import static org.cinchapi.concourse.server.GlobalState.*;
+
+/**
+ * The {@link Compactor} merges runs of consecutive immutable {@link Block
+ * Blocks} in the {@link Database} into larger blocks so that the number of
+ * blocks that must be consulted to load a record does not grow without bound.
+ * <p>
+ * The blocks for each type (primary, secondary and search) that share an id
+ * are always merged together, so the Database stays balanced. A run is
+ * eligible for compaction if it contains at least
+ * {@link GlobalState#COMPACTION_MIN_BLOCKS} blocks that are similarly sized
+ * (the largest is no more than {@link GlobalState#COMPACTION_SIZE_RATIO}
+ * times the smallest) and the merged block would be no larger than
+ * {@link GlobalState#COMPACTION_MAX_BLOCK_SIZE}. This is a tiered policy: small
+ * blocks are merged with each other until they are large enough to be merged
+ * with the blocks in the next tier.
+ * </p>
+ * <p>
+ * A merged block is named after the range of ids that it replaces (i.e.
+ * {@code first_last}) so that it sorts into the same position as its inputs.
+ * The merged blocks are written and synced in a staging directory and then
+ * moved next to the other blocks before they are swapped into the Database
+ * and the inputs are deleted. If the server crashes after the merged blocks
+ * are moved but before the inputs are deleted, the inputs are removed when the
+ * Database starts (see {@link #removeSubsumedBlocks(List)}).
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class Compactor {
+
+    /**
+     * The name of the directory, within each block directory, where merged
+     * blocks are staged until they are durable.
+     */
+    private static final String STAGING_DIRECTORY = "compaction";
+
+    /**
+     * The character that separates the first and last id in the range that is
+     * covered by a merged block.
+     */
+    private static final String ID_RANGE_SEPARATOR = "_";
+
+    /**
+     * Remove any blocks from {@code blocks} whose range of ids is covered by
+     * another block and delete their files. This happens when the server
+     * crashes after a merged block is moved into place but before its inputs
+     * are deleted.
+     * 
+     * @param blocks
+     */
+    public static void removeSubsumedBlocks(List<? extends Block<?, ?, ?>> blocks) {
+        Iterator<? extends Block<?, ?, ?>> it = blocks.iterator();
+        while (it.hasNext()) {
+            Block<?, ?, ?> block = it.next();
+            long[] range = getRange(block.getId());
+            for (Block<?, ?, ?> other : blocks) {
+                long[] covered = getRange(other.getId());
+                if(other != block && covered[0] <= range[0]
+                        && range[1] <= covered[1]) {
+                    Logger.warn("{} was merged into {} before the server "
+                            + "shutdown, so it is being deleted", block, other);
+                    it.remove();
+                    block.delete();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the staging directory within {@code directory}, which may contain
+     * the remains of a compaction that was interrupted by a shutdown.
+     * 
+     * @param directory
+     */
+    public static void removeStagedBlocks(String directory) {
+        String staging = directory + File.separator + STAGING_DIRECTORY;
+        if(FileSystem.hasDir(staging)) {
+            FileSystem.deleteDirectory(staging);
+        }
+    }
+
+    /**
+     * Return the first and last id in the range that is covered by the block
+     * identified by {@code id}.
+     * 
+     * @param id
+     * @return the range
+     */
+    private static long[] getRange(String id) {
+        String[] parts = id.split(ID_RANGE_SEPARATOR);
+        return new long[] { Long.parseLong(parts[0]),
+                Long.parseLong(parts[parts.length - 1]) };
+    }
+
+    /**
+     * Return the id for a block that merges the blocks identified by
+     * {@code ids}.
+     * 
+     * @param ids
+     * @return the merged id
+     */
+    private static String getMergedId(List<String> ids) {
+        return getRange(ids.get(0))[0] + ID_RANGE_SEPARATOR
+                + getRange(ids.get(ids.size() - 1))[1];
+    }
+
+    /**
+     * Return the blocks in {@code blocks} that are identified by {@code ids},
+     * in order.
+     * 
+     * @param blocks
+     * @param ids
+     * @return the matching blocks
+     */
+    private static <T extends Block<?, ?, ?>> List<T> select(List<T> blocks,
+            List<String> ids) {
+        List<T> selected = Lists.newArrayList();
+        for (T block : blocks) {
+            if(ids.contains(block.getId())) {
+                selected.add(block);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Return a map from id to block for all of the {@code blocks}.
+     * 
+     * @param blocks
+     * @return the map
+     */
+    private static <T extends Block<?, ?, ?>> Map<String, T> index(
+            List<T> blocks) {
+        Map<String, T> index = Maps.newHashMap();
+        for (T block : blocks) {
+            index.put(block.getId(), block);
+        }
+        return index;
+    }
+
+    /**
+     * Return {@code true} if {@code block} does not exist, is empty or has
+     * been synced to disk.
+     * 
+     * @param block
+     * @return {@code true} if the block can be merged
+     */
+    private static boolean isMergeable(@Nullable Block<?, ?, ?> block) {
+        return block == null || !block.mutable || block.size() == 0;
+    }
+
+    /**
+     * Return the size of {@code block} or 0 if it does not exist.
+     * 
+     * @param block
+     * @return the size
+     */
+    private static long sizeOf(@Nullable Block<?, ?, ?> block) {
+        return block == null ? 0 : block.size();
+    }
+
+    /**
+     * Replace the {@code inputs} in {@code blocks} with {@code merged}, which
+     * takes the position of the first input.
+     * 
+     * @param blocks
+     * @param inputs
+     * @param merged
+     */
+    private static <T extends Block<?, ?, ?>> void swap(List<T> blocks,
+            List<T> inputs, @Nullable T merged) {
+        if(!inputs.isEmpty()) {
+            int index = blocks.indexOf(inputs.get(0));
+            blocks.removeAll(inputs);
+            if(merged != null) {
+                blocks.add(index, merged);
+            }
+        }
+    }
+
+    private final String backingStore;
+    private final List<PrimaryBlock> cpb;
+    private final List<SecondaryBlock> csb;
+    private final List<SearchBlock> ctb;
+
+    /**
+     * The Database directories that map locators to the primary and secondary
+     * blocks that contain them.
+     */
+    private final LocatorDirectory primaryLocators;
+    private final LocatorDirectory secondaryLocators;
+
+    /**
+     * The Database manifest that records the checksum of each block file.
+     */
+    private final BlockManifest manifest;
+
+    /**
+     * The Database lock that guards the block collections.
+     */
+    private final ReentrantReadWriteLock masterLock;
+
+    /**
+     * A lock that ensures only one compaction happens at a time.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The timer that periodically checks for blocks to compact.
+     */
+    @Nullable
+    private Timer timer;
+
+    /**
+     * A flag that indicates whether the Compactor is running. A compaction
+     * that is in progress is abandoned when this flag is turned off.
+     */
+    private volatile boolean running = false;
+
+    /*
+     * STATS
+     * -----
+     * The Compactor keeps track of what it has done so that progress can be
+     * reported via JMX.
+     */
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong blocksMerged = new AtomicLong();
+    private final AtomicLong bytesMerged = new AtomicLong();
+    private volatile String current = null;
+    private volatile long currentBytesTotal = 0;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param backingStore
+     * @param cpb
+     * @param csb
+     * @param ctb
+     * @param primaryLocators
+     * @param secondaryLocators
+     * @param manifest
+     * @param masterLock
+     */
+    Compactor(String backingStore, List<PrimaryBlock> cpb,
+            List<SecondaryBlock> csb, List<SearchBlock> ctb,
+            LocatorDirectory primaryLocators,
+            LocatorDirectory secondaryLocators, BlockManifest manifest,
+            ReentrantReadWriteLock masterLock) {
+        this.backingStore = backingStore;
+        this.cpb = cpb;
+        this.csb = csb;
+        this.ctb = ctb;
+        this.primaryLocators = primaryLocators;
+        this.secondaryLocators = secondaryLocators;
+        this.manifest = manifest;
+        this.masterLock = masterLock;
+    }
+
+    /**
+     * Merge runs of blocks until there are no more runs that are eligible for
+     * compaction. If another compaction is already in progress, this method
+     * waits for it to finish first.
+     */
+    public void compact() {
+        lock.lock();
+        try {
+            doCompact();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a description of the Compactor's progress.
+     * 
+     * @return the status
+     */
+    public String getStatus() {
+        StringBuilder sb = new StringBuilder();
+        String separator = System.getProperty("line.separator");
+        masterLock.readLock().lock();
+        try {
+            sb.append("Blocks: " + cpb.size());
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+        sb.append(separator);
+        sb.append("Compactions: " + compactions.get());
+        sb.append(separator);
+        sb.append("Blocks merged: " + blocksMerged.get());
+        sb.append(separator);
+        sb.append("Bytes merged: " + bytesMerged.get());
+        sb.append(separator);
+        String current = this.current;
+        if(current != null) {
+            sb.append("In progress: " + current + " (" + currentBytesTotal
+                    + " bytes)");
+        }
+        else {
+            sb.append("In progress: none");
+        }
+        sb.append(separator);
+        return sb.toString();
+    }
+
+    /**
+     * Start the Compactor so that it periodically checks for blocks to merge in
+     * the background.
+     */
+    public void start() {
+        if(!running) {
+            running = true;
+            if(COMPACTION_MIN_BLOCKS > 0) {
+                timer = new Timer(true);
+                timer.scheduleAtFixedRate(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        if(lock.tryLock()) {
+                            try {
+                                doCompact();
+                            }
+                            catch (Exception e) {
+                                Logger.error("An error occurred while "
+                                        + "compacting blocks in {}",
+                                        backingStore, e);
+                            }
+                            finally {
+                                lock.unlock();
+                            }
+                        }
+                    }
+
+                }, COMPACTION_INTERVAL, COMPACTION_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Stop the Compactor. Any compaction that is in progress is abandoned and
+     * this method blocks until it has been cleaned up.
+     */
+    public void stop() {
+        if(running) {
+            running = false;
+            if(timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Merge runs of blocks until there are no more runs that are eligible for
+     * compaction or the Compactor is stopped.
+     */
+    private void doCompact() {
+        List<String> ids;
+        while (running && (ids = findRun()) != null) {
+            if(!merge(ids)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return the ids of the next run of blocks that should be merged, or
+     * {@code null} if there are none.
+     * 
+     * @return the ids in the run
+     */
+    @Nullable
+    private List<String> findRun() {
+        if(COMPACTION_MIN_BLOCKS < 2) {
+            return null;
+        }
+        List<String> ids = Lists.newArrayList();
+        List<Long> sizes = Lists.newArrayList();
+        masterLock.readLock().lock();
+        try {
+            Map<String, SecondaryBlock> secondaries = index(csb);
+            Map<String, SearchBlock> searches = index(ctb);
+            for (PrimaryBlock primary : cpb) {
+                String id = primary.getId();
+                SecondaryBlock secondary = secondaries.get(id);
+                SearchBlock search = searches.get(id);
+                if(primary.mutable || !isMergeable(secondary)
+                        || !isMergeable(search)) {
+                    // Blocks that are still mutable (i.e. the current blocks
+                    // or those that are being synced) end the run
+                    break;
+                }
+                ids.add(id);
+                sizes.add(sizeOf(primary) + sizeOf(secondary) + sizeOf(search));
+            }
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+        for (int start = 0; start < ids.size(); ++start) {
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            long total = 0;
+            int end = start;
+            while (end < ids.size() && end - start < COMPACTION_MAX_BLOCKS) {
+                long size = sizes.get(end);
+                long _min = Math.min(min, size);
+                long _max = Math.max(max, size);
+                if(_max > _min * COMPACTION_SIZE_RATIO
+                        || total + size > COMPACTION_MAX_BLOCK_SIZE) {
+                    break;
+                }
+                min = _min;
+                max = _max;
+                total += size;
+                ++end;
+            }
+            if(end - start >= COMPACTION_MIN_BLOCKS) {
+                return Lists.newArrayList(ids.subList(start, end));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Merge the blocks identified by {@code ids} into a single block of each
+     * type, swap the merged blocks into the Database and delete the inputs.
+     * 
+     * @param ids
+     * @return {@code true} if the merge completed or {@code false} if it was
+     *         abandoned because the Compactor was stopped
+     */
+    private boolean merge(List<String> ids) {
+        String id = getMergedId(ids);
+        List<PrimaryBlock> primaries;
+        List<SecondaryBlock> secondaries;
+        List<SearchBlock> searches;
+        masterLock.readLock().lock();
+        try {
+            primaries = select(cpb, ids);
+            secondaries = select(csb, ids);
+            searches = select(ctb, ids);
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+        long total = 0;
+        for (Block<?, ?, ?> block : Iterables.<Block<?, ?, ?>> concat(
+                primaries, secondaries, searches)) {
+            total += block.size();
+        }
+        current = "Merging " + ids.size() + " blocks into " + id;
+        currentBytesTotal = total;
+        Logger.info("Compaction started: merging {} into {}", ids, id);
+        try {
+            RateLimiter limiter = COMPACTION_THROUGHPUT > 0 ? RateLimiter
+                    .create(COMPACTION_THROUGHPUT) : null;
+            String primaryDirectory = backingStore + File.separator
+                    + Database.PRIMARY_BLOCK_DIRECTORY;
+            String secondaryDirectory = backingStore + File.separator
+                    + Database.SECONDARY_BLOCK_DIRECTORY;
+            String searchDirectory = backingStore + File.separator
+                    + Database.SEARCH_BLOCK_DIRECTORY;
+            PrimaryBlock primary = Block.createPrimaryBlock(id,
+                    primaryDirectory + File.separator + STAGING_DIRECTORY);
+            SecondaryBlock secondary = Block.createSecondaryBlock(id,
+                    secondaryDirectory + File.separator + STAGING_DIRECTORY);
+            SearchBlock search = Block.createSearchBlock(id, searchDirectory
+                    + File.separator + STAGING_DIRECTORY);
+            if(!sync(primary, primaries, limiter)
+                    || !sync(secondary, secondaries, limiter)
+                    || !sync(search, searches, limiter)) {
+                Logger.info("Compaction of {} was abandoned because the "
+                        + "Database stopped", ids);
+                return false;
+            }
+
+            // Move the merged blocks into place. The primary block is moved
+            // last because, on startup, the Database ignores any secondary
+            // and search blocks that do not have a primary counterpart.
+            SearchBlock search0 = publish(search, searchDirectory);
+            SecondaryBlock secondary0 = publish(secondary, secondaryDirectory);
+            PrimaryBlock primary0 = publish(primary, primaryDirectory);
+            manifest.add(Database.PRIMARY_BLOCK_DIRECTORY,
+                    primary.getManifestEntry());
+            manifest.add(Database.SECONDARY_BLOCK_DIRECTORY,
+                    secondary.getManifestEntry());
+            manifest.add(Database.SEARCH_BLOCK_DIRECTORY,
+                    search.getManifestEntry());
+
+            // The merged blocks are added to the locator directories before
+            // they are swapped in and the inputs are removed after they are
+            // swapped out, so a reader never misses a block that it needs to
+            // seek.
+            if(ENABLE_BLOCK_DIRECTORY) {
+                addToDirectory(primaryLocators, primary0);
+                addToDirectory(secondaryLocators, secondary0);
+            }
+            masterLock.writeLock().lock();
+            try {
+                swap(cpb, primaries, primary0);
+                swap(csb, secondaries, secondary0);
+                swap(ctb, searches, search0);
+            }
+            finally {
+                masterLock.writeLock().unlock();
+            }
+            for (PrimaryBlock block : primaries) {
+                primaryLocators.remove(block);
+            }
+            for (SecondaryBlock block : secondaries) {
+                secondaryLocators.remove(block);
+            }
+            for (Block<?, ?, ?> block : Iterables.<Block<?, ?, ?>> concat(
+                    primaries, secondaries, searches)) {
+                block.delete();
+            }
+            for (String input : ids) {
+                manifest.remove(Database.PRIMARY_BLOCK_DIRECTORY, input);
+                manifest.remove(Database.SECONDARY_BLOCK_DIRECTORY, input);
+                manifest.remove(Database.SEARCH_BLOCK_DIRECTORY, input);
+            }
+            compactions.incrementAndGet();
+            blocksMerged.addAndGet(ids.size());
+            bytesMerged.addAndGet(total);
+            Logger.info("Compaction finished: merged {} into {}", ids, id);
+            return true;
+        }
+        finally {
+            current = null;
+            removeStagedBlocks(backingStore + File.separator
+                    + Database.PRIMARY_BLOCK_DIRECTORY);
+            removeStagedBlocks(backingStore + File.separator
+                    + Database.SECONDARY_BLOCK_DIRECTORY);
+            removeStagedBlocks(backingStore + File.separator
+                    + Database.SEARCH_BLOCK_DIRECTORY);
+        }
+    }
+
+    /**
+     * Add {@code block} to {@code directory} unless it is {@code null}.
+     * 
+     * @param directory
+     * @param block
+     */
+    private static void addToDirectory(LocatorDirectory directory,
+            @Nullable Block<?, ?, ?> block) {
+        if(block != null) {
+            directory.add(block);
+        }
+    }
+
+    /**
+     * Stream a k-way merge of the sorted revisions in each of the
+     * {@code inputs} straight into the block writer for the empty
+     * {@code merged} block while respecting the {@code limiter}. The inputs
+     * are read from disk one locator at a time, so the merge does not hold
+     * all of their revisions in memory. The block writer makes three passes
+     * over the merge, but only the first is charged to the {@code limiter},
+     * so each input byte is charged once.
+     * 
+     * @param merged
+     * @param inputs
+     * @param limiter
+     * @return {@code false} if the Compactor was stopped before the merged
+     *         block was synced
+     */
+    private <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> boolean sync(
+            Block<L, K, V> merged, List<? extends Block<L, K, V>> inputs,
+            @Nullable RateLimiter limiter) {
+        List<Iterable<Revision<L, K, V>>> scans = Lists.newArrayList();
+        for (Block<L, K, V> input : inputs) {
+            if(input.size() > 0) {
+                scans.add(input.scan(limiter));
+            }
+        }
+        final Iterable<Revision<L, K, V>> revisions = Block.merge(scans);
+        try {
+            merged.sync(new Iterable<Revision<L, K, V>>() {
+
+                @Override
+                public Iterator<Revision<L, K, V>> iterator() {
+                    final Iterator<Revision<L, K, V>> it = revisions
+                            .iterator();
+                    return new UnmodifiableIterator<Revision<L, K, V>>() {
+
+                        @Override
+                        public boolean hasNext() {
+                            if(!running) {
+                                throw new CancellationException();
+                            }
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Revision<L, K, V> next() {
+                            return it.next();
+                        }
+
+                    };
+                }
+
+            });
+            return true;
+        }
+        catch (CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Move the files for the synced {@code block} from the staging directory
+     * into {@code directory} and return a Block that is loaded from there. If
+     * the block is empty, there are no files to move so {@code null} is
+     * returned.
+     * 
+     * @param block
+     * @param directory
+     * @return the published block
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private <T extends Block<?, ?, ?>> T publish(T block, String directory) {
+        if(block.size() > 0) {
+            block.moveTo(directory);
+            if(block instanceof PrimaryBlock) {
+                return (T) new PrimaryBlock(block.getId(), directory, true);
+            }
+            else if(block instanceof SecondaryBlock) {
+                return (T) new SecondaryBlock(block.getId(), directory, true);
+            }
+            else {
+                return (T) new SearchBlock(block.getId(), directory, true);
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.Arrays;
+
+import org.cinchapi.concourse.server.io.Lz4;
+
+/**
+ * The codecs that can be used to compress the content of a {@link Block} when
+ * it is synced. Each codec has a stable id that is stored with a compressed
+ * Block so that Blocks that were compressed differently (or not at all) can
+ * coexist.
+ * 
+ * @author jnelson
+ */
+public enum Compression {
+
+    /**
+     * Store the content as is.
+     */
+    NONE(0) {
+
+        @Override
+        protected byte[] compress(byte[] src, int offset, int length) {
+            return Arrays.copyOfRange(src, offset, offset + length);
+        }
+
+        @Override
+        protected void decompress(byte[] src, int offset, int length,
+                byte[] dest) {
+            System.arraycopy(src, offset, dest, 0, length);
+        }
+
+    },
+
+    /**
+     * Compress the content using {@link Lz4}, which is fast enough to
+     * decompress on each seek.
+     */
+    LZ4(1) {
+
+        @Override
+        protected byte[] compress(byte[] src, int offset, int length) {
+            return Lz4.compress(src, offset, length);
+        }
+
+        @Override
+        protected void decompress(byte[] src, int offset, int length,
+                byte[] dest) {
+            Lz4.decompress(src, offset, length, dest);
+        }
+
+    };
+
+    /**
+     * Return the Compression whose {@link #getId() id} is {@code id}.
+     * 
+     * @param id
+     * @return the Compression
+     * @throws IllegalArgumentException if no Compression has the id
+     */
+    static Compression forId(int id) throws IllegalArgumentException {
+        for (Compression compression : values()) {
+            if(compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression id " + id);
+    }
+
+    /**
+     * The id that is stored with compressed content.
+     */
+    private final int id;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param id
+     */
+    private Compression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Return the id that is stored with content that is compressed using this
+     * codec.
+     * 
+     * @return the id
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Return the compressed form of the {@code length} bytes in {@code src}
+     * starting at {@code offset}.
+     * 
+     * @param src
+     * @param offset
+     * @param length
+     * @return the compressed bytes
+     */
+    protected abstract byte[] compress(byte[] src, int offset, int length);
+
+    /**
+     * Decompress the {@code length} bytes in {@code src} starting at
+     * {@code offset} into {@code dest}, which must be exactly as long as the
+     * original content.
+     * 
+     * @param src
+     * @param offset
+     * @param length
+     * @param dest
+     */
+    protected abstract void decompress(byte[] src, int offset, int length,
+            byte[] dest);
+
+}
@@ -31,15 +31,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import org.cinchapi.concourse.annotate.PackagePrivate;
 import org.cinchapi.concourse.annotate.Restricted;
 import org.cinchapi.concourse.server.GlobalState;
 import org.cinchapi.concourse.server.concurrent.ConcourseExecutors;
+import org.cinchapi.concourse.server.io.Byteable;
 import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.jmx.ManagedOperation;
@@ -63,15 +70,16 @@ import org.cinchapi.concourse.util.NaturalSorter;
 import org.cinchapi.concourse.util.TLists;
 import org.cinchapi.concourse.util.TStrings;
 import org.cinchapi.concourse.util.Transformers;
+import org.cinchapi.vendor.jsr166e.ForkJoinPool;
+import org.cinchapi.vendor.jsr166e.RecursiveTask;
 
 import com.google.common.base.Preconditions;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import static org.cinchapi.concourse.server.GlobalState.*;
 
@@ -89,16 +97,6 @@ public final class Database extends BaseStore implements
         PermanentStore,
         VersionGetter {
 
-    /**
-     * Return a cache for records of type {@code T}.
-     * 
-     * @return the cache
-     */
-    private static <T> Cache<Composite, T> buildCache() {
-        return CacheBuilder.newBuilder().maximumSize(100000).softValues()
-                .build();
-    }
-
     /**
      * Return the Block identified by {@code id} if it exists in {@code list},
      * otherwise {@code null}.
@@ -120,6 +118,20 @@ public final class Database extends BaseStore implements
         return null;
     }
 
+    /**
+     * Return the ids of all the {@code blocks}.
+     * 
+     * @param blocks
+     * @return the ids
+     */
+    private static List<String> getIds(List<? extends Block<?, ?, ?>> blocks) {
+        List<String> ids = Lists.newArrayListWithCapacity(blocks.size());
+        for (Block<?, ?, ?> block : blocks) {
+            ids.add(block.getId());
+        }
+        return ids;
+    }
+
     /*
      * BLOCK DIRECTORIES
      * -----------------
@@ -131,12 +143,40 @@ public final class Database extends BaseStore implements
      * Therefore, the only way to distinguish blocks of different types from one
      * another is by the directory in which they are stored.
      */
-    private static final String PRIMARY_BLOCK_DIRECTORY = "cpb";
-
-    private static final String SEARCH_BLOCK_DIRECTORY = "ctb";
-    private static final String SECONDARY_BLOCK_DIRECTORY = "csb";
+    @PackagePrivate
+    static final String PRIMARY_BLOCK_DIRECTORY = "cpb";
+    @PackagePrivate
+    static final String SEARCH_BLOCK_DIRECTORY = "ctb";
+    @PackagePrivate
+    static final String SECONDARY_BLOCK_DIRECTORY = "csb";
     private static final String threadNamePrefix = "database-write-thread";
 
+    /**
+     * The name of the file, within the backing store, that holds the
+     * {@link BlockManifest}.
+     */
+    private static final String MANIFEST_FILE = "blocks.manifest";
+
+    /**
+     * The work stealing pool that is used to seek blocks in parallel when a
+     * record that is not cached is loaded from a large number of blocks (see
+     * {@link GlobalState#PARALLEL_SEEK_THRESHOLD}). The pool is shared by
+     * every Database in the server.
+     */
+    private static final ForkJoinPool SEEK_POOL = new ForkJoinPool();
+
+    /**
+     * The maximum number of tasks that can be waiting in the queue for each
+     * {@link WriterStage} before callers of {@link #accept(Write)} block.
+     */
+    private static final int WRITER_STAGE_QUEUE_CAPACITY = 64;
+
+    /**
+     * The smallest number of keys in {@link #cspcRanges} at which the keys
+     * whose partial records have all been evicted are swept out.
+     */
+    private static final int MIN_CSPC_RANGES_SWEEP_SIZE = 1024;
+
     /**
      * A flag to indicate if the Database has verified the data it is seeing is
      * acceptable. We use this flag to handle the case where the server
@@ -173,19 +213,95 @@ public final class Database extends BaseStore implements
      * Records are cached in memory to reduce the number of seeks required. When
      * writing new revisions, we check the appropriate caches for relevant
      * records and append the new revision so that the cached data doesn't grow
-     * stale.
+     * stale. Each cache is bounded by the number of revisions in its records.
+     * If an off-heap budget is configured, it is split between the full record
+     * caches, which move the records they evict off-heap instead of dropping
+     * them.
      */
-    private final Cache<Composite, PrimaryRecord> cpc = buildCache();
-    private final Cache<Composite, PrimaryRecord> cppc = buildCache();
+    private final RecordCache<PrimaryRecord> cpc = new RecordCache<PrimaryRecord>(
+            GlobalState.PRIMARY_RECORD_CACHE_SIZE,
+            GlobalState.OFF_HEAP_RECORD_CACHE_SIZE > 0 ? OffHeapRecordCache
+                    .forPrimaryRecords(GlobalState.OFF_HEAP_RECORD_CACHE_SIZE / 2)
+                    : null);
+    private final RecordCache<PrimaryRecord> cppc = new RecordCache<PrimaryRecord>(
+            GlobalState.PARTIAL_PRIMARY_RECORD_CACHE_SIZE);
 
     private final transient List<SecondaryBlock> csb = Lists.newArrayList();
     private transient SecondaryBlock csb0;
-    private final Cache<Composite, SecondaryRecord> csc = buildCache();
+    private final RecordCache<SecondaryRecord> csc = new RecordCache<SecondaryRecord>(
+            GlobalState.SECONDARY_RECORD_CACHE_SIZE,
+            GlobalState.OFF_HEAP_RECORD_CACHE_SIZE > 0 ? OffHeapRecordCache
+                    .forSecondaryRecords(GlobalState.OFF_HEAP_RECORD_CACHE_SIZE / 2)
+                    : null);
+
+    /**
+     * The cache of partial SecondaryRecords that only contain the values in a
+     * {@link ValueRange}, along with the ranges that are cached for each key
+     * so that writes can find the partial records that contain their values.
+     * The ranges for records that have been evicted are pruned lazily, and
+     * the keys that no longer have any ranges are swept out whenever the
+     * number of keys reaches the sweep size, which is then set to twice the
+     * number of keys that remain.
+     */
+    private final RecordCache<SecondaryRecord> cspc = new RecordCache<SecondaryRecord>(
+            GlobalState.PARTIAL_SECONDARY_RECORD_CACHE_SIZE);
+    private final ConcurrentMap<Text, CachedRanges> cspcRanges = Maps
+            .newConcurrentMap();
+    private final AtomicInteger cspcRangesSweepSize = new AtomicInteger(
+            MIN_CSPC_RANGES_SWEEP_SIZE);
 
     private final transient List<SearchBlock> ctb = Lists.newArrayList();
 
     private transient SearchBlock ctb0;
 
+    /**
+     * The directories that map each locator to the primary and secondary
+     * blocks that contain it, so that a record that is not cached is only
+     * loaded from the blocks that might contain it.
+     */
+    private final transient LocatorDirectory primaryLocators = new LocatorDirectory();
+    private final transient LocatorDirectory secondaryLocators = new LocatorDirectory();
+
+    /*
+     * WRITER STAGES
+     * -------------
+     * Each block type has a long-lived writer thread that is fed from a
+     * bounded queue. Since each stage processes its tasks in FIFO order,
+     * revisions are inserted into each block in the same order that the Writes
+     * are accepted.
+     */
+    private final transient WriterStage primaryWriter = new WriterStage(
+            "primary");
+    private final transient WriterStage secondaryWriter = new WriterStage(
+            "secondary");
+    private final transient WriterStage searchWriter = new WriterStage(
+            "search");
+
+    /**
+     * The record of the size and checksum of every immutable block, which is
+     * used to detect duplicate blocks on startup without reading them.
+     */
+    private final transient BlockManifest manifest;
+
+    /**
+     * The service that merges runs of immutable blocks in the background.
+     */
+    private final transient Compactor compactor;
+
+    /**
+     * The service that verifies the checksums of the immutable blocks in the
+     * background.
+     */
+    private final transient BlockScrubber scrubber;
+
+    /**
+     * Lock that prevents the writer stages from being stopped while a caller
+     * is waiting on them. Callers of
+     * {@link #write(Runnable, Runnable, Runnable)} share the read lock and
+     * {@link #stop()} grabs the write lock.
+     */
+    private final transient ReentrantReadWriteLock writerLock = new ReentrantReadWriteLock();
+
     /**
      * Lock used to ensure the object is ThreadSafe. This lock provides access
      * to a masterLock.readLock()() and masterLock.writeLock()().
@@ -215,26 +331,26 @@ public final class Database extends BaseStore implements
      */
     public Database(String backingStore) {
         this.backingStore = backingStore;
+        this.manifest = new BlockManifest(backingStore + File.separator
+                + MANIFEST_FILE);
+        this.compactor = new Compactor(backingStore, cpb, csb, ctb,
+                primaryLocators, secondaryLocators, manifest, masterLock);
+        this.scrubber = new BlockScrubber(backingStore, cpb, csb, ctb,
+                manifest, masterLock);
     }
 
     @Override
     public void accept(Write write) {
         // CON-83: Keeping manually verifying writes until we find one that is
         // acceptable, after which assume all subsequent writes are acceptable.
-        if(!acceptable
-                && ((write.getType() == Action.ADD && !verify(write.getKey()
-                        .toString(), write.getValue().getTObject(), write
-                        .getRecord().longValue())) || (write.getType() == Action.REMOVE && verify(
-                        write.getKey().toString(), write.getValue()
-                                .getTObject(), write.getRecord().longValue())))) {
+        if(!acceptable && isAcceptable(write)) {
             acceptable = true;
         }
         if(acceptable) {
             // NOTE: Write locking happens in each individual Block, and
             // furthermore this method is only called from the Buffer, which
             // transports data serially.
-            ConcourseExecutors.executeAndAwaitTermination(threadNamePrefix,
-                    new BlockWriter(cpb0, write), new BlockWriter(csb0, write),
+            write(new BlockWriter(cpb0, write), new BlockWriter(csb0, write),
                     new BlockWriter(ctb0, write));
         }
         else {
@@ -245,6 +361,43 @@ public final class Database extends BaseStore implements
         }
     }
 
+    /**
+     * Process and store all of the {@code writes} as a single batch. This is
+     * equivalent to calling {@link #accept(Write)} for each Write, in order,
+     * but each Block sorts and inserts the entire batch in one pass and the
+     * record caches are updated in the same pass, so there is only one round
+     * of handoffs to the writer stages regardless of the batch size.
+     * 
+     * @param writes
+     */
+    public void accept(List<Write> writes) {
+        List<Write> accepted = writes;
+        if(!acceptable) {
+            // CON-83: Keeping manually verifying writes until we find one that
+            // is acceptable, after which assume all subsequent writes are
+            // acceptable.
+            accepted = Lists.newArrayListWithCapacity(writes.size());
+            for (Write write : writes) {
+                if(!acceptable && isAcceptable(write)) {
+                    acceptable = true;
+                }
+                if(acceptable) {
+                    accepted.add(write);
+                }
+                else {
+                    Logger.warn("The Engine refused to accept {} because "
+                            + "it appears that the data was already "
+                            + "transported. This indicates that the server "
+                            + "shutdown prematurely.", write);
+                }
+            }
+        }
+        if(!accepted.isEmpty()) {
+            write(new BatchBlockWriter(cpb0, accepted), new BatchBlockWriter(
+                    csb0, accepted), new BatchBlockWriter(ctb0, accepted));
+        }
+    }
+
     @Override
     public Map<Long, String> audit(long record) {
         return getPrimaryRecord(PrimaryKey.wrap(record)).audit();
@@ -267,7 +420,8 @@ public final class Database extends BaseStore implements
     @Override
     public Map<String, Set<TObject>> browse(long record, long timestamp) {
         return Transformers.transformTreeMapSet(
-                getPrimaryRecord(PrimaryKey.wrap(record)).browse(timestamp),
+                getPrimaryRecord(PrimaryKey.wrap(record), timestamp).browse(
+                        timestamp),
                 Functions.TEXT_TO_STRING, Functions.VALUE_TO_TOBJECT,
                 Comparators.CASE_INSENSITIVE_STRING_COMPARATOR);
     }
@@ -283,7 +437,8 @@ public final class Database extends BaseStore implements
     @Override
     public Map<TObject, Set<Long>> browse(String key, long timestamp) {
         return Transformers.transformTreeMapSet(
-                getSecondaryRecord(Text.wrapCached(key)).browse(timestamp),
+                getSecondaryRecord(Text.wrapCached(key), timestamp).browse(
+                        timestamp),
                 Functions.VALUE_TO_TOBJECT, Functions.PRIMARY_KEY_TO_LONG,
                 TObjectSorter.INSTANCE);
     }
@@ -291,10 +446,11 @@ public final class Database extends BaseStore implements
     @Override
     public Map<Long, Set<TObject>> doExplore(String key, Operator operator,
             TObject... values) {
-        SecondaryRecord record = getSecondaryRecord(Text.wrapCached(key));
-        Map<PrimaryKey, Set<Value>> map = record.explore(operator,
-                Transformers.transformArray(values, Functions.TOBJECT_TO_VALUE,
-                        Value.class));
+        Value[] vals = Transformers.transformArray(values,
+                Functions.TOBJECT_TO_VALUE, Value.class);
+        SecondaryRecord record = getSecondaryRecord(Text.wrapCached(key),
+                ValueRange.forQuery(operator, vals), Long.MAX_VALUE);
+        Map<PrimaryKey, Set<Value>> map = record.explore(operator, vals);
         return Transformers.transformTreeMapSet(map,
                 Functions.PRIMARY_KEY_TO_LONG, Functions.VALUE_TO_TOBJECT,
                 Comparators.LONG_COMPARATOR);
@@ -303,15 +459,27 @@ public final class Database extends BaseStore implements
     @Override
     public Map<Long, Set<TObject>> doExplore(long timestamp, String key,
             Operator operator, TObject... values) {
-        SecondaryRecord record = getSecondaryRecord(Text.wrapCached(key));
+        Value[] vals = Transformers.transformArray(values,
+                Functions.TOBJECT_TO_VALUE, Value.class);
+        SecondaryRecord record = getSecondaryRecord(Text.wrapCached(key),
+                ValueRange.forQuery(operator, vals), timestamp);
         Map<PrimaryKey, Set<Value>> map = record.explore(timestamp, operator,
-                Transformers.transformArray(values, Functions.TOBJECT_TO_VALUE,
-                        Value.class));
+                vals);
         return Transformers.transformTreeMapSet(map,
                 Functions.PRIMARY_KEY_TO_LONG, Functions.VALUE_TO_TOBJECT,
                 Comparators.LONG_COMPARATOR);
     }
 
+    /**
+     * Merge runs of immutable blocks that are eligible for compaction and
+     * block until there are no more. This happens periodically in the
+     * background, so it is only necessary to call this method to force a
+     * compaction.
+     */
+    public void compact() {
+        compactor.compact();
+    }
+
     /**
      * Return dumps for all the blocks identified by {@code id}. This method IS
      * NOT necessarily optimized for performance, so it should be used with
@@ -321,9 +489,18 @@ public final class Database extends BaseStore implements
      * @return the block dumps.
      */
     public String dump(String id) {
-        PrimaryBlock _cpb = findBlock(cpb, id);
-        SecondaryBlock _csb = findBlock(csb, id);
-        SearchBlock _ctb = findBlock(ctb, id);
+        PrimaryBlock _cpb;
+        SecondaryBlock _csb;
+        SearchBlock _ctb;
+        masterLock.readLock().lock();
+        try {
+            _cpb = findBlock(cpb, id);
+            _csb = findBlock(csb, id);
+            _ctb = findBlock(ctb, id);
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
         Preconditions.checkArgument(_cpb != null && _csb != null,
                 "Insufficient number of blocks identified by %s", id);
         StringBuilder sb = new StringBuilder();
@@ -347,8 +524,8 @@ public final class Database extends BaseStore implements
     public Set<TObject> fetch(String key, long record, long timestamp) {
         Text key0 = Text.wrapCached(key);
         return Transformers.transformSet(
-                getPrimaryRecord(PrimaryKey.wrap(record), key0).fetch(key0,
-                        timestamp), Functions.VALUE_TO_TOBJECT);
+                getPrimaryRecord(PrimaryKey.wrap(record), key0, timestamp)
+                        .fetch(key0, timestamp), Functions.VALUE_TO_TOBJECT);
     }
 
     /**
@@ -361,6 +538,84 @@ public final class Database extends BaseStore implements
         return backingStore;
     }
 
+    /**
+     * Return a description of the cache of block file mappings that is used
+     * for disk seeks. The cache is shared by every Database in the server.
+     * 
+     * @return the block file cache stats
+     */
+    public String getBlockFileCacheStats() {
+        return Block.getFileCacheStats();
+    }
+
+    /**
+     * Return a description of the observed false positive rate of the bloom
+     * filters for each type of block. A false positive is a seek where the
+     * filter indicated that a block might contain relevant revisions, but it
+     * did not.
+     * 
+     * @return the bloom filter stats
+     */
+    public String getBloomFilterStats() {
+        masterLock.readLock().lock();
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (List<? extends Block<?, ?, ?>> blocks : ImmutableList
+                    .<List<? extends Block<?, ?, ?>>> of(cpb, csb, ctb)) {
+                long positives = 0;
+                long falsePositives = 0;
+                String type = null;
+                for (Block<?, ?, ?> block : blocks) {
+                    positives += block.getFilterPositives();
+                    falsePositives += block.getFilterFalsePositives();
+                    type = block.getClass().getSimpleName();
+                }
+                if(type != null) {
+                    sb.append(String.format("%s: %d blocks, %d positives, "
+                            + "%d false positives (%.2f%%)%n", type,
+                            blocks.size(), positives, falsePositives,
+                            positives > 0 ? 100.0 * falsePositives / positives
+                                    : 0.0));
+                }
+            }
+            return sb.toString();
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return a description of the progress that the background compactor has
+     * made merging blocks.
+     * 
+     * @return the compaction status
+     */
+    public String getCompactionStatus() {
+        return compactor.getStatus();
+    }
+
+    /**
+     * Return a description of the size and the hit, miss, eviction, rejection
+     * and load time stats for each of the record caches.
+     * 
+     * @return the record cache stats
+     */
+    public String getRecordCacheStats() {
+        return "cpc: " + cpc.getStats() + "; cppc: " + cppc.getStats()
+                + "; csc: " + csc.getStats() + "; cspc: " + cspc.getStats();
+    }
+
+    /**
+     * Return a description of the background scrubber's progress and any
+     * block files that it has found to be corrupt.
+     * 
+     * @return the scrubber status
+     */
+    public String getScrubberStatus() {
+        return scrubber.getStatus();
+    }
+
     /**
      * Return a the list of ids for all the blocks that are currently in scope.
      * 
@@ -368,11 +623,17 @@ public final class Database extends BaseStore implements
      */
     @ManagedOperation
     public List<String> getDumpList() {
-        List<String> ids = Lists.newArrayList();
-        for (PrimaryBlock block : cpb) {
-            ids.add(block.getId());
+        masterLock.readLock().lock();
+        try {
+            List<String> ids = Lists.newArrayList();
+            for (PrimaryBlock block : cpb) {
+                ids.add(block.getId());
+            }
+            return ids;
+        }
+        finally {
+            masterLock.readLock().unlock();
         }
-        return ids;
     }
 
     @Override
@@ -406,6 +667,10 @@ public final class Database extends BaseStore implements
         if(!running) {
             running = true;
             Logger.info("Database configured to store data in {}", backingStore);
+            primaryWriter.start();
+            secondaryWriter.start();
+            searchWriter.start();
+            manifest.load();
             ConcourseExecutors.executeAndAwaitTermination("Database",
                     new BlockLoader<PrimaryBlock>(PrimaryBlock.class,
                             PRIMARY_BLOCK_DIRECTORY, cpb),
@@ -427,14 +692,48 @@ public final class Database extends BaseStore implements
             // missing to assume that the server crashed. :-/
             TLists.retainIntersection(cpb, csb);
             ctb.retainAll(cpb);
+
+            // Get rid of any blocks that were already merged into a larger
+            // block if the server crashed in the middle of a compaction.
+            Compactor.removeSubsumedBlocks(cpb);
+            Compactor.removeSubsumedBlocks(csb);
+            Compactor.removeSubsumedBlocks(ctb);
+
+            // Drop the manifest entries for any blocks that were not loaded
+            // and rewrite it so that it does not grow without bound.
+            manifest.retain(PRIMARY_BLOCK_DIRECTORY, getIds(cpb));
+            manifest.retain(SECONDARY_BLOCK_DIRECTORY, getIds(csb));
+            manifest.retain(SEARCH_BLOCK_DIRECTORY, getIds(ctb));
+            manifest.compact();
+            if(ENABLE_BLOCK_DIRECTORY) {
+                for (PrimaryBlock block : cpb) {
+                    primaryLocators.add(block);
+                }
+                for (SecondaryBlock block : csb) {
+                    secondaryLocators.add(block);
+                }
+            }
             triggerSync(false);
+            compactor.start();
+            scrubber.start();
         }
     }
 
     @Override
     public void stop() {
-        if(running) {
-            running = false;
+        writerLock.writeLock().lock();
+        try {
+            if(running) {
+                running = false;
+                scrubber.stop();
+                compactor.stop();
+                primaryWriter.stop();
+                secondaryWriter.stop();
+                searchWriter.stop();
+            }
+        }
+        finally {
+            writerLock.writeLock().unlock();
         }
     }
 
@@ -456,8 +755,8 @@ public final class Database extends BaseStore implements
     @Override
     public boolean verify(String key, TObject value, long record, long timestamp) {
         Text key0 = Text.wrapCached(key);
-        return getPrimaryRecord(PrimaryKey.wrap(record), key0).verify(key0,
-                Value.wrap(value), timestamp);
+        return getPrimaryRecord(PrimaryKey.wrap(record), key0, timestamp)
+                .verify(key0, Value.wrap(value), timestamp);
     }
 
     /**
@@ -467,16 +766,32 @@ public final class Database extends BaseStore implements
      * @return the PrimaryRecord
      */
     private PrimaryRecord getPrimaryRecord(PrimaryKey pkey) {
+        return getPrimaryRecord(pkey, Long.MAX_VALUE);
+    }
+
+    /**
+     * Return a PrimaryRecord identified by {@code primaryKey} that is suitable
+     * for reads at {@code timestamp}. If the record is not cached, the
+     * immutable blocks that only contain revisions after {@code timestamp} are
+     * skipped, in which case the record is not complete and is therefore not
+     * cached.
+     * 
+     * @param pkey
+     * @param timestamp
+     * @return the PrimaryRecord
+     */
+    private PrimaryRecord getPrimaryRecord(PrimaryKey pkey, long timestamp) {
         masterLock.readLock().lock();
         try {
             Composite composite = Composite.create(pkey);
-            PrimaryRecord record = cpc.getIfPresent(composite);
+            PrimaryRecord record = cpc.get(composite);
             if(record == null) {
+                long start = Time.now();
                 record = Record.createPrimaryRecord(pkey);
-                for (PrimaryBlock block : cpb) {
-                    block.seek(pkey, record);
+                if(seek(primaryLocators.select(pkey, cpb), record, timestamp,
+                        new Byteable[] { pkey })) {
+                    cpc.put(composite, record, Time.now() - start);
                 }
-                cpc.put(composite, record);
             }
             return record;
         }
@@ -494,16 +809,34 @@ public final class Database extends BaseStore implements
      * @return the PrimaryRecord
      */
     private PrimaryRecord getPrimaryRecord(PrimaryKey pkey, Text key) {
+        return getPrimaryRecord(pkey, key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Return a partial PrimaryRecord identified by {@code key} in
+     * {@code primaryKey} that is suitable for reads at {@code timestamp}. If
+     * the record is not cached, the immutable blocks that only contain
+     * revisions after {@code timestamp} are skipped, in which case the record
+     * is not complete and is therefore not cached.
+     * 
+     * @param pkey
+     * @param key
+     * @param timestamp
+     * @return the PrimaryRecord
+     */
+    private PrimaryRecord getPrimaryRecord(PrimaryKey pkey, Text key,
+            long timestamp) {
         masterLock.readLock().lock();
         try {
             Composite composite = Composite.create(pkey, key);
-            PrimaryRecord record = cppc.getIfPresent(composite);
+            PrimaryRecord record = cppc.get(composite);
             if(record == null) {
+                long start = Time.now();
                 record = Record.createPrimaryRecordPartial(pkey, key);
-                for (PrimaryBlock block : cpb) {
-                    block.seek(pkey, key, record);
+                if(seek(primaryLocators.select(pkey, cpb), record, timestamp,
+                        new Byteable[] { pkey, key })) {
+                    cppc.put(composite, record, Time.now() - start);
                 }
-                cppc.put(composite, record);
             }
             return record;
         }
@@ -526,17 +859,15 @@ public final class Database extends BaseStore implements
         masterLock.readLock().lock();
         try {
             SearchRecord record = Record.createSearchRecordPartial(key, query);
-            for (SearchBlock block : ctb) {
-                // Seek each word in the query to make sure that multi word
-                // search works.
-                String[] toks = query
-                        .toString()
-                        .toLowerCase()
-                        .split(TStrings.REGEX_GROUP_OF_ONE_OR_MORE_WHITESPACE_CHARS);
-                for (String tok : toks) {
-                    block.seek(key, Text.wrap(tok), record);
-                }
+            // Seek each word in the query to make sure that multi word
+            // search works.
+            String[] toks = query.toString().toLowerCase()
+                    .split(TStrings.REGEX_GROUP_OF_ONE_OR_MORE_WHITESPACE_CHARS);
+            Byteable[][] seeks = new Byteable[toks.length][];
+            for (int i = 0; i < toks.length; i++) {
+                seeks[i] = new Byteable[] { key, Text.wrap(toks[i]) };
             }
+            seek(ctb, record, Long.MAX_VALUE, seeks);
             return record;
         }
         finally {
@@ -551,16 +882,94 @@ public final class Database extends BaseStore implements
      * @return the SecondaryRecord
      */
     private SecondaryRecord getSecondaryRecord(Text key) {
+        return getSecondaryRecord(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * Return a SecondaryRecord identified by {@code key} that is suitable for
+     * reads at {@code timestamp}. If the record is not cached, the immutable
+     * blocks that only contain revisions after {@code timestamp} are skipped,
+     * in which case the record is not complete and is therefore not cached.
+     * 
+     * @param key
+     * @param timestamp
+     * @return the SecondaryRecord
+     */
+    private SecondaryRecord getSecondaryRecord(Text key, long timestamp) {
         masterLock.readLock().lock();
         try {
             Composite composite = Composite.create(key);
-            SecondaryRecord record = csc.getIfPresent(composite);
+            SecondaryRecord record = csc.get(composite);
             if(record == null) {
+                long start = Time.now();
                 record = Record.createSecondaryRecord(key);
-                for (SecondaryBlock block : csb) {
-                    block.seek(key, record);
+                if(seek(secondaryLocators.select(key, csb), record, timestamp,
+                        new Byteable[] { key })) {
+                    csc.put(composite, record, Time.now() - start);
+                }
+            }
+            return record;
+        }
+        finally {
+            masterLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return a SecondaryRecord identified by {@code key} that contains at
+     * least the values in {@code range} and is suitable for reads at
+     * {@code timestamp}. If the full record is cached or {@code range} is
+     * {@code null}, this is the full record. Otherwise, a cached partial
+     * record for an enclosing range is used, or a partial record for
+     * {@code range} is loaded by only seeking the part of each block that
+     * contains those values. Like a full record, the partial record is only
+     * cached if it is complete.
+     * 
+     * @param key
+     * @param range
+     * @param timestamp
+     * @return the SecondaryRecord
+     */
+    private SecondaryRecord getSecondaryRecord(Text key,
+            @Nullable ValueRange range, long timestamp) {
+        if(range == null) {
+            return getSecondaryRecord(key, timestamp);
+        }
+        masterLock.readLock().lock();
+        try {
+            SecondaryRecord record = csc.peek(Composite.create(key));
+            if(record == null) {
+                CachedRanges cached = cspcRanges.get(key);
+                if(cached != null) {
+                    for (ValueRange enclosing : cached.ranges) {
+                        if(enclosing.encloses(range)) {
+                            record = cspc.get(enclosing.getCacheKey(key));
+                            if(record != null) {
+                                return record;
+                            }
+                        }
+                    }
+                }
+                else {
+                    cached = new CachedRanges();
+                    CachedRanges existing = cspcRanges.putIfAbsent(key, cached);
+                    if(existing != null) {
+                        cached = existing;
+                    }
+                    else {
+                        sweepPartialSecondaryRanges(key);
+                    }
+                }
+                // The ranges must be registered before the seek so that any
+                // write that the seek might miss bumps the stamp
+                int stamp = cached.getStamp();
+                long start = Time.now();
+                record = Record.createSecondaryRecordPartial(key, range);
+                if(seek(secondaryLocators.select(key, csb), record, timestamp,
+                        range.getLow(), range.getHigh(), new Byteable[] { key })) {
+                    cached.publish(key, range, record, stamp, Time.now()
+                            - start);
                 }
-                csc.put(composite, record);
             }
             return record;
         }
@@ -569,6 +978,211 @@ public final class Database extends BaseStore implements
         }
     }
 
+    /**
+     * Append {@code revision} to the partial SecondaryRecords in
+     * {@link #cspc} whose ranges contain its value. This must be called after
+     * {@code revision} is inserted into a block.
+     * 
+     * @param revision
+     */
+    private void appendToPartialSecondaryRecords(SecondaryRevision revision) {
+        CachedRanges cached = cspcRanges.get(revision.getLocator());
+        if(cached != null) {
+            cached.append(revision);
+        }
+    }
+
+    /**
+     * Remove the keys, other than {@code loading}, from {@link #cspcRanges}
+     * whose partial records have all been evicted, if the number of keys has
+     * reached the sweep size. A load that is in progress for a key that is
+     * swept out does not cache its record.
+     * 
+     * @param loading - the key that the caller is about to load a partial
+     *            record for
+     */
+    private void sweepPartialSecondaryRanges(Text loading) {
+        int size = cspcRangesSweepSize.get();
+        if(cspcRanges.size() >= size
+                && cspcRangesSweepSize.compareAndSet(size, Integer.MAX_VALUE)) {
+            try {
+                for (Map.Entry<Text, CachedRanges> entry : cspcRanges
+                        .entrySet()) {
+                    if(!entry.getKey().equals(loading)
+                            && entry.getValue().retireIfEvicted(entry.getKey())) {
+                        cspcRanges.remove(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            finally {
+                cspcRangesSweepSize.set(Math.max(MIN_CSPC_RANGES_SWEEP_SIZE,
+                        cspcRanges.size() * 2));
+            }
+        }
+    }
+
+    /**
+     * Seek each of the {@code seeks} in the {@code blocks} and append the
+     * revisions that are found to {@code record}.
+     * <p>
+     * Blocks are created in time order, so if some of the immutable blocks
+     * only contain revisions after {@code timestamp}, those blocks are skipped
+     * along with the blocks whose index shows that the revisions for a seek
+     * are all after {@code timestamp}. In that case, the record only has
+     * enough history to be read at {@code timestamp} and this method returns
+     * {@code false}. Otherwise, every block is seeked and this method returns
+     * {@code true}. The mutable block is always seeked in full because it is
+     * in memory, so skipping it would save nothing and would keep a historical
+     * read from caching the record.
+     * </p>
+     * <p>
+     * If there are at least {@link GlobalState#PARALLEL_SEEK_THRESHOLD}
+     * blocks, the blocks are split into ranges that are seeked concurrently
+     * in the {@link #SEEK_POOL}. The runs of revisions from each range are
+     * concatenated in block order before they are appended, so the record
+     * sees the revisions in the same (version) order as it would if the
+     * blocks were seeked one after another.
+     * </p>
+     * 
+     * @param blocks
+     * @param record
+     * @param timestamp
+     * @param seeks
+     * @return {@code true} if the record is complete
+     */
+    @GuardedBy("masterLock.readLock()")
+    private static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> boolean seek(
+            List<? extends Block<L, K, V>> blocks, Record<L, K, V> record,
+            long timestamp, Byteable[]... seeks) {
+        return seek(blocks, record, timestamp, null, null, seeks);
+    }
+
+    /**
+     * Seek each of the {@code seeks} in the {@code blocks} like
+     * {@link #seek(List, Record, long, Byteable[]...)}, but if {@code low} and
+     * {@code high} are not {@code null}, each seek must be a single locator
+     * and only the revisions for the keys between {@code low} and
+     * {@code high} (both inclusive) are appended to {@code record}.
+     * 
+     * @param blocks
+     * @param record
+     * @param timestamp
+     * @param low
+     * @param high
+     * @param seeks
+     * @return {@code true} if the record is complete
+     */
+    @GuardedBy("masterLock.readLock()")
+    private static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> boolean seek(
+            List<? extends Block<L, K, V>> blocks, Record<L, K, V> record,
+            long timestamp, @Nullable K low, @Nullable K high,
+            Byteable[]... seeks) {
+        List<Block<L, K, V>> eligible = Lists
+                .newArrayListWithCapacity(blocks.size());
+        for (Block<L, K, V> block : blocks) {
+            if(block.isMutable() || block.getMinVersion() <= timestamp) {
+                eligible.add(block);
+            }
+        }
+        boolean complete = eligible.size() == blocks.size();
+        if(complete) {
+            timestamp = Long.MAX_VALUE; // don't prune within blocks
+        }
+        blocks = eligible;
+        if(PARALLEL_SEEK_THRESHOLD > 0
+                && blocks.size() >= PARALLEL_SEEK_THRESHOLD) {
+            int grain = Math.max(1,
+                    blocks.size() / (SEEK_POOL.getParallelism() * 4));
+            for (Revision<L, K, V> revision : SEEK_POOL
+                    .invoke(new SeekTask<L, K, V>(blocks, 0, blocks.size(),
+                            grain, timestamp, low, high, seeks))) {
+                record.append(revision);
+            }
+        }
+        else {
+            for (Block<L, K, V> block : blocks) {
+                for (Byteable[] seek : seeks) {
+                    for (Revision<L, K, V> revision : collect(block,
+                            timestamp, low, high, seek)) {
+                        record.append(revision);
+                    }
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Return the revisions for the {@code seek} in {@code block}, limited to
+     * the keys between {@code low} and {@code high} if they are not
+     * {@code null}.
+     * 
+     * @param block
+     * @param timestamp
+     * @param low
+     * @param high
+     * @param seek
+     * @return the revisions
+     */
+    @SuppressWarnings("unchecked")
+    private static <L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> List<Revision<L, K, V>> collect(
+            Block<L, K, V> block, long timestamp, @Nullable K low,
+            @Nullable K high, Byteable[] seek) {
+        return low != null ? block.collect(timestamp, (L) seek[0], low, high)
+                : block.collect(timestamp, seek);
+    }
+
+    /**
+     * Return {@code true} if {@code write} can be accepted because it is not
+     * a duplicate of data that was already transported (CON-83).
+     * 
+     * @param write
+     * @return {@code true} if the Write is acceptable
+     */
+    private boolean isAcceptable(Write write) {
+        return (write.getType() == Action.ADD && !verify(write.getKey()
+                .toString(), write.getValue().getTObject(), write.getRecord()
+                .longValue()))
+                || (write.getType() == Action.REMOVE && verify(write.getKey()
+                        .toString(), write.getValue().getTObject(), write
+                        .getRecord().longValue()));
+    }
+
+    /**
+     * Hand each of the {@code primary}, {@code secondary} and {@code search}
+     * tasks to the appropriate {@link WriterStage} and block until all three
+     * have completed. Since the caller does not return until its revisions
+     * are in every block, any subsequent {@link #triggerSync()} is guaranteed
+     * to see them.
+     * 
+     * @param primary
+     * @param secondary
+     * @param search
+     */
+    private void write(Runnable primary, Runnable secondary, Runnable search) {
+        writerLock.readLock().lock();
+        try {
+            if(running) {
+                CountDownLatch fence = new CountDownLatch(3);
+                primaryWriter.submit(primary, fence);
+                secondaryWriter.submit(secondary, fence);
+                searchWriter.submit(search, fence);
+                Uninterruptibles.awaitUninterruptibly(fence);
+            }
+            else {
+                // The writer stages only live while the Database is running,
+                // but a Buffer may still drain into a stopped Database, so do
+                // the work on the calling thread.
+                primary.run();
+                secondary.run();
+                search.run();
+            }
+        }
+        finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
     /**
      * Create new mutable blocks and sync the current blocks to disk if
      * {@code doSync} is {@code true}.
@@ -576,15 +1190,18 @@ public final class Database extends BaseStore implements
      * @param doSync
      */
     private void triggerSync(boolean doSync) {
+        PrimaryBlock primary;
+        SecondaryBlock secondary;
+        SearchBlock search;
+        // NOTE: Only swap in the new blocks while holding the masterLock so
+        // that readers are not blocked while the old blocks are synced. The old
+        // blocks stay in the block collections and are read from memory until
+        // their files are durable.
         masterLock.writeLock().lock();
         try {
-            if(doSync) {
-                // TODO we need a transactional file system to ensure that these
-                // blocks are written atomically (all or nothing)
-                ConcourseExecutors.executeAndAwaitTermination(threadNamePrefix,
-                        new BlockSyncer(cpb0), new BlockSyncer(csb0),
-                        new BlockSyncer(ctb0));
-            }
+            primary = cpb0;
+            secondary = csb0;
+            search = ctb0;
             String id = Long.toString(Time.now());
             cpb.add((cpb0 = Block.createPrimaryBlock(id, backingStore
                     + File.separator + PRIMARY_BLOCK_DIRECTORY)));
@@ -596,6 +1213,211 @@ public final class Database extends BaseStore implements
         finally {
             masterLock.writeLock().unlock();
         }
+        if(doSync) {
+            // TODO we need a transactional file system to ensure that these
+            // blocks are written atomically (all or nothing)
+            ConcourseExecutors.executeAndAwaitTermination(threadNamePrefix,
+                    new BlockSyncer(primary), new BlockSyncer(secondary),
+                    new BlockSyncer(search));
+            manifest.add(PRIMARY_BLOCK_DIRECTORY, primary.getManifestEntry());
+            manifest.add(SECONDARY_BLOCK_DIRECTORY,
+                    secondary.getManifestEntry());
+            manifest.add(SEARCH_BLOCK_DIRECTORY, search.getManifestEntry());
+            if(ENABLE_BLOCK_DIRECTORY) {
+                primaryLocators.add(primary);
+                secondaryLocators.add(secondary);
+            }
+        }
+    }
+
+    /**
+     * A long-lived thread that executes writer tasks for a single block type,
+     * one at a time, in the order they are submitted. Tasks are fed from a
+     * bounded queue so that a fast producer cannot overwhelm the stage.
+     * 
+     * @author jnelson
+     */
+    private final class WriterStage implements Runnable {
+
+        /**
+         * A task that signals the stage to stop running after all the
+         * previously submitted tasks have completed.
+         */
+        private final Runnable poison = new Runnable() {
+
+            @Override
+            public void run() {}
+
+        };
+
+        private final String name;
+        private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(
+                WRITER_STAGE_QUEUE_CAPACITY);
+        private Thread thread;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param name
+         */
+        public WriterStage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task = Uninterruptibles.takeUninterruptibly(queue);
+                if(task == poison) {
+                    break;
+                }
+                try {
+                    task.run();
+                }
+                catch (Throwable t) {
+                    // The fence has already been counted down, so the
+                    // stage must keep running; otherwise the queue would
+                    // fill and every subsequent write (and the stop) would
+                    // block forever.
+                    Logger.error("Uncaught error in thread '{}'",
+                            Thread.currentThread().getName());
+                    Logger.error("", t);
+                }
+            }
+        }
+
+        /**
+         * Start the thread for this stage.
+         */
+        public void start() {
+            thread = new Thread(this, threadNamePrefix + "-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Stop the thread for this stage once all the tasks that were
+         * previously submitted have completed.
+         */
+        public void stop() {
+            Uninterruptibles.putUninterruptibly(queue, poison);
+            Uninterruptibles.joinUninterruptibly(thread);
+            thread = null;
+        }
+
+        /**
+         * Queue {@code task} for execution and count down the {@code fence}
+         * once it has completed, regardless of whether it succeeds or not.
+         * 
+         * @param task
+         * @param fence
+         */
+        public void submit(final Runnable task, final CountDownLatch fence) {
+            Uninterruptibles.putUninterruptibly(queue, new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    }
+                    catch (Exception e) {
+                        // Exceptions will occur in the event that an attempt
+                        // is made to write a duplicate non-offset write when
+                        // the system shuts down in the middle of a buffer
+                        // flush. Those can be ignored, so we just log them.
+                        Logger.warn("Uncaught exception in thread '{}'. This "
+                                + "possibly indicates that the system "
+                                + "shutdown prematurely during a buffer "
+                                + "transport operation.", thread);
+                        Logger.warn("", e);
+                    }
+                    finally {
+                        fence.countDown();
+                    }
+                }
+
+            });
+        }
+    }
+
+    /**
+     * A runnable that will insert a batch of Writes into a block and then
+     * append the resulting revisions to any relevant cached records.
+     * 
+     * @author jnelson
+     */
+    private final class BatchBlockWriter implements Runnable {
+
+        private final Block<?, ?, ?> block;
+        private final List<Write> writes;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param block
+         * @param writes
+         */
+        public BatchBlockWriter(Block<?, ?, ?> block, List<Write> writes) {
+            this.block = block;
+            this.writes = writes;
+        }
+
+        @Override
+        public void run() {
+            Logger.debug("Writing batch of {} writes to {}", writes.size(),
+                    block);
+            if(block instanceof PrimaryBlock) {
+                PrimaryBlock primary = (PrimaryBlock) block;
+                List<PrimaryRevision> revisions = Lists
+                        .newArrayListWithCapacity(writes.size());
+                for (Write write : writes) {
+                    revisions.add(primary.makeRevision(write.getRecord(),
+                            write.getKey(), write.getValue(),
+                            write.getVersion(), write.getType()));
+                }
+                primary.insert(revisions);
+                // Revisions must be appended to cached records in version
+                // order, so we walk the batch in the order it was written. A
+                // record that is loaded after the insert already holds some of
+                // the batch, so the cache skips those revisions.
+                for (PrimaryRevision revision : revisions) {
+                    cpc.append(Composite.create(revision.getLocator()),
+                            revision);
+                    cppc.append(Composite.create(revision.getLocator(),
+                            revision.getKey()), revision);
+                }
+            }
+            else if(block instanceof SecondaryBlock) {
+                SecondaryBlock secondary = (SecondaryBlock) block;
+                List<SecondaryRevision> revisions = Lists
+                        .newArrayListWithCapacity(writes.size());
+                for (Write write : writes) {
+                    revisions.add(secondary.makeRevision(write.getKey(),
+                            write.getValue(), write.getRecord(),
+                            write.getVersion(), write.getType()));
+                }
+                secondary.insert(revisions);
+                for (SecondaryRevision revision : revisions) {
+                    csc.append(Composite.create(revision.getLocator()),
+                            revision);
+                    appendToPartialSecondaryRecords(revision);
+                }
+            }
+            else if(block instanceof SearchBlock) {
+                for (Write write : writes) {
+                    ((SearchBlock) block).insert(write.getKey(),
+                            write.getValue(), write.getRecord(),
+                            write.getVersion(), write.getType());
+                }
+                // NOTE: We do not cache SearchRecords because they have the
+                // potential to be VERY large. Holding references to them in a
+                // cache would prevent them from being garbage collected
+                // resulting in more OOMs.
+            }
+            else {
+                throw new IllegalArgumentException();
+            }
+        }
     }
 
     /**
@@ -631,9 +1453,10 @@ public final class Database extends BaseStore implements
             try {
                 final String path = backingStore + File.separator + directory;
                 FileSystem.mkdirs(path);
+                Compactor.removeStagedBlocks(path);
                 SortedMap<File, T> blockSorter = Maps
                         .newTreeMap(NaturalSorter.INSTANCE);
-                Set<String> checksums = Sets.newHashSet();
+                Set<HashCode> checksums = Sets.newHashSet();
                 for (File file : new File(path).listFiles(new FilenameFilter() {
 
                     @Override
@@ -649,8 +1472,7 @@ public final class Database extends BaseStore implements
                     Constructor<T> constructor = clazz.getDeclaredConstructor(
                             String.class, String.class, Boolean.TYPE);
                     constructor.setAccessible(true);
-                    String checksum = Files.hash(file, Hashing.md5())
-                            .toString();
+                    HashCode checksum = getChecksum(file, id);
                     if(!checksums.contains(checksum)) {
                         blockSorter.put(file, constructor.newInstance(id,
                                 path.toString(), true));
@@ -677,6 +1499,219 @@ public final class Database extends BaseStore implements
 
         }
 
+        /**
+         * Return the checksum of the block {@code file} with {@code id}. The
+         * checksum is taken from the {@link BlockManifest} if it has an entry
+         * for a file of the same size. Otherwise, the file is read and the
+         * checksum is added to the manifest so that it doesn't have to be read
+         * again on the next startup.
+         * 
+         * @param file
+         * @param id
+         * @return the checksum
+         * @throws IOException
+         */
+        private HashCode getChecksum(File file, String id) throws IOException {
+            BlockManifest.Entry entry = manifest.get(directory, id);
+            if(entry != null && entry.getSize() == file.length()) {
+                return entry.getChecksum();
+            }
+            else {
+                HashCode checksum = BlockManifest.checksum(file);
+                manifest.add(directory, new BlockManifest.Entry(id, file
+                        .length(), checksum));
+                return checksum;
+            }
+        }
+
+    }
+
+    /**
+     * The value ranges of the partial SecondaryRecords that are cached in
+     * {@link #cspc} for a single key, along with a stamp that every write to
+     * the key bumps. A partial record is only published (i.e. put into the
+     * cache and registered) if the stamp has not changed since before it was
+     * loaded, and writes append to the published records while holding the
+     * same monitor.
+     * <p>
+     * A write is inserted into its block before it is appended, so a load
+     * that reads the stamp in between sees the write and may still publish;
+     * the append then skips it because {@link RecordCache#append} ignores
+     * revisions that a record already holds. Otherwise, the write is either
+     * seen by the load, appended to the published record or causes the record
+     * to not be published at all.
+     * </p>
+     * <p>
+     * Once the instance is removed from {@link #cspcRanges} it is retired and
+     * never publishes again, because writes can no longer find it.
+     * </p>
+     * 
+     * @author jnelson
+     */
+    private final class CachedRanges {
+
+        /**
+         * The cached ranges, which can be read without holding the monitor.
+         */
+        private final Set<ValueRange> ranges = Sets.newSetFromMap(Maps
+                .<ValueRange, Boolean> newConcurrentMap());
+
+        @GuardedBy("this")
+        private int stamp = 0;
+
+        @GuardedBy("this")
+        private boolean retired = false;
+
+        /**
+         * Bump the stamp and append {@code revision} to each published record
+         * whose range contains its value.
+         * 
+         * @param revision
+         */
+        public synchronized void append(SecondaryRevision revision) {
+            ++stamp;
+            for (ValueRange range : ranges) {
+                if(range.contains(revision.getKey())) {
+                    cspc.append(range.getCacheKey(revision.getLocator()),
+                            revision);
+                }
+            }
+        }
+
+        /**
+         * Return the current stamp.
+         * 
+         * @return the stamp
+         */
+        public synchronized int getStamp() {
+            return stamp;
+        }
+
+        /**
+         * Offer {@code record}, which was loaded for {@code range} of
+         * {@code key} in {@code loadTime} microseconds, to {@link #cspc} and
+         * register its range if the stamp is still {@code expected} and the
+         * record is admitted. The ranges whose records have been evicted are
+         * pruned at the same time.
+         * 
+         * @param key
+         * @param range
+         * @param record
+         * @param expected
+         * @param loadTime
+         */
+        public synchronized void publish(Text key, ValueRange range,
+                SecondaryRecord record, int expected, long loadTime) {
+            if(!retired && stamp == expected
+                    && cspc.put(range.getCacheKey(key), record, loadTime)) {
+                prune(key);
+                ranges.add(range);
+            }
+        }
+
+        /**
+         * Prune the ranges for {@code key} whose records have been evicted
+         * and, if none are left, retire this instance so that it can be
+         * removed from {@link #cspcRanges}.
+         * 
+         * @param key
+         * @return {@code true} if this instance is retired
+         */
+        public synchronized boolean retireIfEvicted(Text key) {
+            prune(key);
+            retired = ranges.isEmpty();
+            return retired;
+        }
+
+        /**
+         * Remove the ranges for {@code key} whose records have been evicted
+         * from {@link #cspc}.
+         * 
+         * @param key
+         */
+        @GuardedBy("this")
+        private void prune(Text key) {
+            for (ValueRange cached : ranges) {
+                if(cspc.peek(cached.getCacheKey(key)) == null) {
+                    ranges.remove(cached);
+                }
+            }
+        }
+    }
+
+    /**
+     * A task that seeks a range of blocks and returns the revisions that are
+     * found in block order. Ranges that are larger than the {@code grain} are
+     * split in half and the halves are seeked concurrently.
+     * 
+     * @author jnelson
+     */
+    @SuppressWarnings("serial")
+    private static final class SeekTask<L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> extends
+            RecursiveTask<List<Revision<L, K, V>>> {
+
+        private final List<? extends Block<L, K, V>> blocks;
+        private final int start;
+        private final int end;
+        private final int grain;
+        private final long timestamp;
+        @Nullable
+        private final K low;
+        @Nullable
+        private final K high;
+        private final Byteable[][] seeks;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param blocks
+         * @param start - inclusive
+         * @param end - exclusive
+         * @param grain
+         * @param timestamp
+         * @param low
+         * @param high
+         * @param seeks
+         */
+        public SeekTask(List<? extends Block<L, K, V>> blocks, int start,
+                int end, int grain, long timestamp, @Nullable K low,
+                @Nullable K high, Byteable[][] seeks) {
+            this.blocks = blocks;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+            this.timestamp = timestamp;
+            this.low = low;
+            this.high = high;
+            this.seeks = seeks;
+        }
+
+        @Override
+        protected List<Revision<L, K, V>> compute() {
+            if(end - start <= grain) {
+                List<Revision<L, K, V>> revisions = Lists.newArrayList();
+                for (int i = start; i < end; i++) {
+                    for (Byteable[] seek : seeks) {
+                        revisions.addAll(collect(blocks.get(i), timestamp,
+                                low, high, seek));
+                    }
+                }
+                return revisions;
+            }
+            else {
+                int middle = (start + end) >>> 1;
+                SeekTask<L, K, V> left = new SeekTask<L, K, V>(blocks, start,
+                        middle, grain, timestamp, low, high, seeks);
+                left.fork();
+                List<Revision<L, K, V>> right = new SeekTask<L, K, V>(blocks,
+                        middle, end, grain, timestamp, low, high, seeks)
+                        .compute();
+                List<Revision<L, K, V>> revisions = left.join();
+                revisions.addAll(right);
+                return revisions;
+            }
+        }
+
     }
 
     /**
@@ -734,28 +1769,17 @@ public final class Database extends BaseStore implements
                         .insert(write.getRecord(), write.getKey(),
                                 write.getValue(), write.getVersion(),
                                 write.getType());
-                Record<PrimaryKey, Text, Value> record = cpc
-                        .getIfPresent(Composite.create(write.getRecord()));
-                Record<PrimaryKey, Text, Value> partialRecord = cppc
-                        .getIfPresent(Composite.create(write.getRecord(),
-                                write.getKey()));
-                if(record != null) {
-                    record.append(revision);
-                }
-                if(partialRecord != null) {
-                    partialRecord.append(revision);
-                }
+                cpc.append(Composite.create(write.getRecord()), revision);
+                cppc.append(Composite.create(write.getRecord(), write.getKey()),
+                        revision);
             }
             else if(block instanceof SecondaryBlock) {
                 SecondaryRevision revision = (SecondaryRevision) ((SecondaryBlock) block)
                         .insert(write.getKey(), write.getValue(),
                                 write.getRecord(), write.getVersion(),
                                 write.getType());
-                SecondaryRecord record = csc.getIfPresent(Composite
-                        .create(write.getKey()));
-                if(record != null) {
-                    record.append(revision);
-                }
+                csc.append(Composite.create(write.getKey()), revision);
+                appendToPartialSecondaryRecords(revision);
             }
             else if(block instanceof SearchBlock) {
                 ((SearchBlock) block).insert(write.getKey(), write.getValue(),
@@ -0,0 +1,297 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.Byteable;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.util.ByteBuffers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * A {@link LocatorDirectory} maps each locator to the {@link Block Blocks}
+ * that contain revisions for it, so that a record can be loaded by seeking
+ * exactly those blocks instead of consulting the bloom filter of every block.
+ * <p>
+ * Each locator is reduced to a {@code long} key (see {@link #key(Byteable)}):
+ * a {@link PrimaryKey} is used as is and any other locator is hashed. When a
+ * Block is synced, it stores the sorted keys for all of its locators in a
+ * small file that is mapped and added to the directory here, so the directory
+ * is built at startup without reading any block or index files.
+ * </p>
+ * <p>
+ * Blocks that have not been added (i.e. the mutable block, a block that is
+ * still being synced or a block that was written before locator files
+ * existed) are never excluded by the directory. A hashed key may collide, in
+ * which case an extra block is seeked, but a block that contains a locator is
+ * never skipped.
+ * </p>
+ * <p>
+ * The directory itself lives on the heap. A key that is contained in one
+ * block costs a {@code long} key, an {@code int} slot and a state byte in a
+ * hash map that is at most half full, so about 26 bytes, and a key that is
+ * contained in several blocks costs an {@code int[]} of its slots instead.
+ * The directory for the primary blocks has a key for each record, so it
+ * grows by about 26 MB per million records (more while the map is rehashed),
+ * while the directory for the secondary blocks only has a key for each
+ * distinct key name. A {@link #select(Byteable, List)} walks the blocks once
+ * and does an identity lookup for each, which is cheap next to the seeks
+ * that it saves.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class LocatorDirectory {
+
+    /**
+     * Return the directory key for {@code locator}.
+     * 
+     * @param locator
+     * @return the key
+     */
+    public static long key(Byteable locator) {
+        if(locator instanceof PrimaryKey) {
+            return ((PrimaryKey) locator).longValue();
+        }
+        else {
+            return Hashing.murmur3_128()
+                    .hashBytes(ByteBuffers.toByteArray(locator.getBytes()))
+                    .asLong();
+        }
+    }
+
+    /**
+     * The slot that is returned from {@link #single} for a missing key.
+     */
+    private static final int NO_SLOT = -1;
+
+    /**
+     * The slot for each key that is contained in exactly one block. Most
+     * locators are only written in one block, so this avoids an array for
+     * each of them.
+     */
+    private final TLongIntHashMap single = new TLongIntHashMap(
+            Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+            Constants.DEFAULT_LONG_NO_ENTRY_VALUE, NO_SLOT);
+
+    /**
+     * The slots for each key that is contained in more than one block.
+     */
+    private final TLongObjectHashMap<int[]> multiple = new TLongObjectHashMap<int[]>();
+
+    /**
+     * The blocks that have been added, in the order they were added. The slot
+     * for a block that is removed is set to {@code null} and is not reused.
+     */
+    private final List<Block<?, ?, ?>> slots = Lists.newArrayList();
+
+    /**
+     * The slot for each block that has been added.
+     */
+    private final Map<Block<?, ?, ?>, Integer> indexed = Maps
+            .newIdentityHashMap();
+
+    /**
+     * The lock that guards the directory.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Add the locators in the synced {@code block} to the directory. If the
+     * block does not have a locator file, it is not added, so it is never
+     * excluded from a {@link #select(Byteable, List)}.
+     * 
+     * @param block
+     */
+    public void add(Block<?, ?, ?> block) {
+        LongBuffer keys = block.getLocatorKeys();
+        if(keys != null) {
+            lock.writeLock().lock();
+            try {
+                if(!indexed.containsKey(block)) {
+                    int slot = slots.size();
+                    slots.add(block);
+                    indexed.put(block, slot);
+                    while (keys.hasRemaining()) {
+                        put(keys.get(), slot);
+                    }
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove the locators in {@code block} from the directory. This must be
+     * called before the files for the block are deleted.
+     * 
+     * @param block
+     */
+    public void remove(Block<?, ?, ?> block) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = indexed.remove(block);
+            if(slot != null) {
+                slots.set(slot, null);
+                LongBuffer keys = block.getLocatorKeys();
+                while (keys.hasRemaining()) {
+                    remove(keys.get(), slot);
+                }
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the {@code blocks}, in order, that might contain revisions for
+     * {@code locator}. This includes every block that has not been added to
+     * the directory.
+     * 
+     * @param locator
+     * @param blocks
+     * @return the blocks to seek
+     */
+    public <T extends Block<?, ?, ?>> List<T> select(Byteable locator,
+            List<T> blocks) {
+        long key = key(locator);
+        lock.readLock().lock();
+        try {
+            if(indexed.isEmpty()) {
+                return blocks;
+            }
+            int[] matches;
+            int slot = single.get(key);
+            if(slot != NO_SLOT) {
+                matches = new int[] { slot };
+            }
+            else {
+                matches = multiple.get(key);
+                matches = matches != null ? matches : new int[0];
+            }
+            List<T> selected = Lists.newArrayListWithCapacity(matches.length);
+            for (T block : blocks) {
+                Integer indexedSlot = indexed.get(block);
+                if(indexedSlot == null || contains(matches, indexedSlot)) {
+                    selected.add(block);
+                }
+            }
+            return selected;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return {@code true} if {@code slots} contains {@code slot}.
+     * 
+     * @param slots
+     * @param slot
+     * @return {@code true} if the slot is contained
+     */
+    private static boolean contains(int[] slots, int slot) {
+        for (int s : slots) {
+            if(s == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that the block in {@code slot} contains {@code key}.
+     * 
+     * @param key
+     * @param slot
+     */
+    private void put(long key, int slot) {
+        int existing = single.get(key);
+        if(existing != NO_SLOT) {
+            single.remove(key);
+            multiple.put(key, new int[] { existing, slot });
+        }
+        else {
+            int[] existings = multiple.get(key);
+            if(existings != null) {
+                existings = Arrays.copyOf(existings, existings.length + 1);
+                existings[existings.length - 1] = slot;
+                multiple.put(key, existings);
+            }
+            else {
+                single.put(key, slot);
+            }
+        }
+    }
+
+    /**
+     * Record that the block in {@code slot} no longer contains {@code key}.
+     * 
+     * @param key
+     * @param slot
+     */
+    private void remove(long key, int slot) {
+        if(single.get(key) == slot) {
+            single.remove(key);
+        }
+        else {
+            int[] existings = multiple.get(key);
+            if(existings != null) {
+                int[] remaining = new int[existings.length - 1];
+                int i = 0;
+                for (int s : existings) {
+                    if(s != slot && i < remaining.length) {
+                        remaining[i++] = s;
+                    }
+                }
+                if(remaining.length == 1) {
+                    multiple.remove(key);
+                    single.put(key, remaining[0]);
+                }
+                else {
+                    multiple.put(key, remaining);
+                }
+            }
+        }
+    }
+
+}
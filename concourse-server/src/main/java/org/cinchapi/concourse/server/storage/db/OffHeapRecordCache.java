@@ -0,0 +1,550 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.annotate.PackagePrivate;
+import org.cinchapi.concourse.server.io.Byteable;
+import org.cinchapi.concourse.server.io.Byteables;
+import org.cinchapi.concourse.server.io.Composite;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.util.ByteBuffers;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A second level cache that holds {@link Record records} outside of the Java
+ * heap after they are evicted from a {@link RecordCache}.
+ * <p>
+ * Each record is serialized (as its locator followed by the revisions for
+ * each key) into an arena of fixed size direct memory slabs. Records are
+ * appended to the current slab until it is full, at which point the next slab
+ * is used. Once the arena has reached its memory budget, the oldest slab is
+ * reused and every record that was written to it is evicted, so eviction is
+ * first in, first out by slab and never fragments the arena.
+ * </p>
+ * <p>
+ * A record is removed from this cache when it is read so that it can be
+ * rehydrated and promoted back to the on-heap tier, where new revisions can be
+ * appended to it. A serialized copy cannot be updated in place, so each record
+ * is stored with the write stamp that the {@link RecordCache} had for its key
+ * and it is only returned if the caller still has the same stamp.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+@PackagePrivate
+final class OffHeapRecordCache<T extends Record<?, ?, ?>> {
+
+    /**
+     * Return an OffHeapRecordCache for full {@link PrimaryRecord
+     * PrimaryRecords} that may use up to {@code maxBytes} of direct memory.
+     * 
+     * @param maxBytes
+     * @return the cache
+     */
+    public static OffHeapRecordCache<PrimaryRecord> forPrimaryRecords(
+            long maxBytes) {
+        return new OffHeapRecordCache<PrimaryRecord>(maxBytes,
+                new Serializer<PrimaryKey, Text, Value, PrimaryRecord>(
+                        PrimaryKey.class, Text.class, Value.class) {
+
+                    @Override
+                    protected PrimaryRecord createRecord(PrimaryKey locator) {
+                        return Record.createPrimaryRecord(locator);
+                    }
+
+                    @Override
+                    protected Revision<PrimaryKey, Text, Value> createRevision(
+                            PrimaryKey locator, Text key, Value value,
+                            long version, Action type) {
+                        return Revision.createPrimaryRevision(locator, key,
+                                value, version, type);
+                    }
+
+                });
+    }
+
+    /**
+     * Return an OffHeapRecordCache for full {@link SecondaryRecord
+     * SecondaryRecords} that may use up to {@code maxBytes} of direct memory.
+     * 
+     * @param maxBytes
+     * @return the cache
+     */
+    public static OffHeapRecordCache<SecondaryRecord> forSecondaryRecords(
+            long maxBytes) {
+        return new OffHeapRecordCache<SecondaryRecord>(maxBytes,
+                new Serializer<Text, Value, PrimaryKey, SecondaryRecord>(
+                        Text.class, Value.class, PrimaryKey.class) {
+
+                    @Override
+                    protected SecondaryRecord createRecord(Text locator) {
+                        return Record.createSecondaryRecord(locator);
+                    }
+
+                    @Override
+                    protected Revision<Text, Value, PrimaryKey> createRevision(
+                            Text locator, Value key, PrimaryKey value,
+                            long version, Action type) {
+                        return Revision.createSecondaryRevision(locator, key,
+                                value, version, type);
+                    }
+
+                });
+    }
+
+    /**
+     * The largest size of each slab in the arena. A record that serializes to
+     * more bytes than one slab is not cached.
+     */
+    @VisibleForTesting
+    static final int MAX_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The slabs that have been allocated, up to {@link #maxSlabs}.
+     */
+    private final List<Slab> slabs = Lists.newArrayList();
+
+    /**
+     * The location of each cached record.
+     */
+    private final ConcurrentMap<Composite, Location> index = Maps
+            .newConcurrentMap();
+
+    /**
+     * The number of slabs that fit within the memory budget.
+     */
+    private final int maxSlabs;
+
+    /**
+     * The size of each slab.
+     */
+    private final int slabSize;
+
+    /**
+     * The serializer for the type of record in this cache.
+     */
+    private final Serializer<?, ?, ?, T> serializer;
+
+    /**
+     * The index of the slab that records are currently written to, or
+     * {@code -1} if no slab has been allocated.
+     */
+    private int current = -1;
+
+    /**
+     * The number of bytes occupied by the records that are currently cached.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param maxBytes
+     * @param serializer
+     */
+    private OffHeapRecordCache(long maxBytes,
+            Serializer<?, ?, ?, T> serializer) {
+        this.slabSize = (int) Math.max(1, Math.min(MAX_SLAB_SIZE, maxBytes));
+        this.maxSlabs = (int) Math.max(1, maxBytes / slabSize);
+        this.serializer = serializer;
+    }
+
+    /**
+     * Return a description of the number of records that are cached, the
+     * bytes they use and the hit, miss, eviction, rejection and stale counts.
+     * 
+     * @return the stats
+     */
+    public String getStats() {
+        long hit = hits.get();
+        long miss = misses.get();
+        return String.format("%d records (%d of %d bytes), %d hits, "
+                + "%d misses (%.2f%% hit rate), %d evictions, "
+                + "%d rejections, %d stale", index.size(), bytes.get(),
+                (long) maxSlabs * slabSize, hit, miss,
+                hit + miss > 0 ? hit * 100.0 / (hit + miss) : 0.0,
+                evictions.get(), rejections.get(), stale.get());
+    }
+
+    /**
+     * Remove the record for {@code key}, if it is cached, to free its space
+     * after a revision is written to it.
+     * 
+     * @param key
+     */
+    public void invalidate(Composite key) {
+        Location location = index.remove(key);
+        if(location != null) {
+            bytes.addAndGet(-location.length);
+        }
+    }
+
+    /**
+     * Serialize {@code record} into the arena under {@code key} along with the
+     * write {@code stamp} for the key, evicting the records in the oldest slab
+     * if there is no room.
+     * 
+     * @param key
+     * @param record
+     * @param stamp
+     * @return {@code true} if the record was cached
+     */
+    public boolean put(Composite key, T record, int stamp) {
+        // Hold the record's read lock so that a concurrent append cannot
+        // change its size while it is being written
+        record.read.lock();
+        try {
+            int size = serializer.size(record);
+            if(size > slabSize) {
+                rejections.incrementAndGet();
+                return false;
+            }
+            synchronized (slabs) {
+                Slab slab = current >= 0 ? slabs.get(current) : null;
+                if(slab == null || slab.buffer.remaining() < size) {
+                    slab = next();
+                }
+                int position = slab.buffer.position();
+                serializer.serialize(record, slab.buffer);
+                slab.keys.add(key);
+                Location location = new Location(slab, slab.generation,
+                        position, size, stamp);
+                Location replaced = index.put(key, location);
+                if(replaced != null) {
+                    bytes.addAndGet(-replaced.length);
+                }
+                bytes.addAndGet(size);
+            }
+            return true;
+        }
+        finally {
+            record.read.unlock();
+        }
+    }
+
+    /**
+     * Remove the record for {@code key} and return it if it is cached with
+     * the write {@code stamp}, otherwise return {@code null}. A record that
+     * is cached with a different stamp may be missing revisions, so it is
+     * dropped.
+     * 
+     * @param key
+     * @param stamp
+     * @return the rehydrated record
+     */
+    @Nullable
+    public T remove(Composite key, int stamp) {
+        ByteBuffer copy = null;
+        synchronized (slabs) {
+            Location location = index.remove(key);
+            if(location != null && location.stamp != stamp) {
+                bytes.addAndGet(-location.length);
+                stale.incrementAndGet();
+            }
+            else if(location != null) {
+                // Copy the bytes while holding the lock, because the slab
+                // may be reused as soon as it is released
+                ByteBuffer source = location.slab.buffer.duplicate();
+                source.limit(location.position + location.length);
+                source.position(location.position);
+                copy = ByteBuffers.get(source, location.length);
+                bytes.addAndGet(-location.length);
+            }
+        }
+        if(copy != null) {
+            hits.incrementAndGet();
+            return serializer.deserialize(copy);
+        }
+        else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Return the slab that records should be written to next, allocating a
+     * new one if the budget allows, or otherwise evicting every record in the
+     * oldest slab so that it can be reused. The caller must hold the lock on
+     * {@link #slabs}.
+     * 
+     * @return the next slab
+     */
+    private Slab next() {
+        current = (current + 1) % maxSlabs;
+        Slab slab;
+        if(current == slabs.size()) {
+            slab = new Slab(ByteBuffer.allocateDirect(slabSize));
+            slabs.add(slab);
+        }
+        else {
+            slab = slabs.get(current);
+            for (Composite key : slab.keys) {
+                Location location = index.get(key);
+                if(location != null && location.slab == slab
+                        && location.generation == slab.generation
+                        && index.remove(key, location)) {
+                    bytes.addAndGet(-location.length);
+                    evictions.incrementAndGet();
+                }
+            }
+            slab.keys.clear();
+            slab.buffer.clear();
+            slab.generation++;
+        }
+        return slab;
+    }
+
+    /**
+     * A fixed size block of direct memory in the arena.
+     * 
+     * @author jnelson
+     */
+    private static final class Slab {
+
+        /**
+         * The memory, with the position at the end of the last record written.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The keys of the records that have been written to the slab since it
+         * was last reused. Some may have since been removed or rewritten
+         * elsewhere.
+         */
+        private final List<Composite> keys = Lists.newArrayList();
+
+        /**
+         * The number of times that the slab has been reused, which
+         * distinguishes a record's location from a later one at the same
+         * position.
+         */
+        private int generation = 0;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param buffer
+         */
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The position of a serialized record in the arena.
+     * 
+     * @author jnelson
+     */
+    private static final class Location {
+
+        private final Slab slab;
+        private final int generation;
+        private final int position;
+        private final int length;
+        private final int stamp;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param slab
+         * @param generation
+         * @param position
+         * @param length
+         * @param stamp
+         */
+        Location(Slab slab, int generation, int position, int length,
+                int stamp) {
+            this.slab = slab;
+            this.generation = generation;
+            this.position = position;
+            this.length = length;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Converts a type of record to and from its serialized form, which is the
+     * size prefixed locator followed by, for each key, the size prefixed key,
+     * the number of revisions and then the action, version and size prefixed
+     * value of each revision in the order they were appended. Appending the
+     * revisions in that order recreates an identical record.
+     * 
+     * @author jnelson
+     */
+    private static abstract class Serializer<L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>, T extends Record<?, ?, ?>> {
+
+        private final Class<L> locatorClass;
+        private final Class<K> keyClass;
+        private final Class<V> valueClass;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param locatorClass
+         * @param keyClass
+         * @param valueClass
+         */
+        protected Serializer(Class<L> locatorClass, Class<K> keyClass,
+                Class<V> valueClass) {
+            this.locatorClass = locatorClass;
+            this.keyClass = keyClass;
+            this.valueClass = valueClass;
+        }
+
+        /**
+         * Return the record that is serialized in {@code bytes}.
+         * 
+         * @param bytes
+         * @return the record
+         */
+        @SuppressWarnings("unchecked")
+        public T deserialize(ByteBuffer bytes) {
+            L locator = read(bytes, locatorClass);
+            Record<L, K, V> record = (Record<L, K, V>) createRecord(locator);
+            while (bytes.hasRemaining()) {
+                K key = read(bytes, keyClass);
+                int count = bytes.getInt();
+                for (int i = 0; i < count; ++i) {
+                    Action type = Action.values()[bytes.get()];
+                    long version = bytes.getLong();
+                    V value = read(bytes, valueClass);
+                    record.append(createRevision(locator, key, value, version,
+                            type));
+                }
+            }
+            return (T) record;
+        }
+
+        /**
+         * Write the serialized form of {@code record} to {@code buffer}.
+         * 
+         * @param record
+         * @param buffer
+         */
+        @SuppressWarnings("unchecked")
+        public void serialize(T record, ByteBuffer buffer) {
+            Record<L, K, V> typed = (Record<L, K, V>) record;
+            write(typed.locator, buffer);
+            for (Entry<K, RevisionHistory<V>> entry : typed.history
+                    .entrySet()) { /* Authorized */
+                write(entry.getKey(), buffer);
+                buffer.putInt(entry.getValue().size());
+                for (CompactRevision<V> revision : entry.getValue()) {
+                    buffer.put((byte) revision.getType().ordinal());
+                    buffer.putLong(revision.getVersion());
+                    write(revision.getValue(), buffer);
+                }
+            }
+        }
+
+        /**
+         * Return the number of bytes in the serialized form of
+         * {@code record}.
+         * 
+         * @param record
+         * @return the size
+         */
+        @SuppressWarnings("unchecked")
+        public int size(T record) {
+            Record<L, K, V> typed = (Record<L, K, V>) record;
+            long size = 4 + typed.locator.size();
+            for (Entry<K, RevisionHistory<V>> entry : typed.history
+                    .entrySet()) { /* Authorized */
+                size += 4 + entry.getKey().size() + 4;
+                for (CompactRevision<V> revision : entry.getValue()) {
+                    size += 1 + 8 + 4 + revision.getValue().size();
+                }
+            }
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+
+        /**
+         * Return a new, empty record for {@code locator}.
+         * 
+         * @param locator
+         * @return the record
+         */
+        protected abstract T createRecord(L locator);
+
+        /**
+         * Return a Revision of the type that is appended to the record.
+         * 
+         * @param locator
+         * @param key
+         * @param value
+         * @param version
+         * @param type
+         * @return the Revision
+         */
+        protected abstract Revision<L, K, V> createRevision(L locator, K key,
+                V value, long version, Action type);
+
+        /**
+         * Read a size prefixed {@link Byteable} of type {@code clazz} from
+         * {@code bytes}.
+         * 
+         * @param bytes
+         * @param clazz
+         * @return the Byteable
+         */
+        private static <B> B read(ByteBuffer bytes, Class<B> clazz) {
+            return Byteables.readStatic(
+                    ByteBuffers.get(bytes, bytes.getInt()), clazz);
+        }
+
+        /**
+         * Write {@code object} to {@code buffer} with a size prefix.
+         * 
+         * @param object
+         * @param buffer
+         */
+        private static void write(Byteable object, ByteBuffer buffer) {
+            buffer.putInt(object.size());
+            object.copyTo(buffer);
+        }
+    }
+
+}
@@ -68,9 +68,24 @@ final class PrimaryBlock extends Block<PrimaryKey, Text, Value> {
                 type);
     }
 
+    @Override
+    protected Class<Text> xKeyClass() {
+        return Text.class;
+    }
+
+    @Override
+    protected Class<PrimaryKey> xLocatorClass() {
+        return PrimaryKey.class;
+    }
+
     @Override
     protected Class<PrimaryRevision> xRevisionClass() {
         return PrimaryRevision.class;
     }
 
+    @Override
+    protected Class<Value> xValueClass() {
+        return Value.class;
+    }
+
 }
@@ -24,7 +24,6 @@
 package org.cinchapi.concourse.server.storage.db;
 
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -96,7 +95,7 @@ final class PrimaryRecord extends BrowsableRecord<PrimaryKey, Text, Value> {
         read.lock();
         try {
             Map<Long, String> audit = Maps.newLinkedHashMap();
-            List<CompactRevision<Value>> revisions = history.get(key); /* Authorized */
+            RevisionHistory<Value> revisions = history.get(key); /* Authorized */
             if(revisions != null) {
                 Iterator<CompactRevision<Value>> it = revisions.iterator();
                 while (it.hasNext()) {
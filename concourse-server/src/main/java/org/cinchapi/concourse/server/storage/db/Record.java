@@ -25,10 +25,9 @@ package org.cinchapi.concourse.server.storage.db;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -46,7 +45,6 @@ import org.cinchapi.concourse.server.model.Value;
 import org.cinchapi.concourse.server.storage.Action;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -115,7 +113,7 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
      * @return the SecondaryRecord
      */
     public static SecondaryRecord createSecondaryRecord(Text key) {
-        return new SecondaryRecord(key, null);
+        return new SecondaryRecord(key, (Value) null);
     }
 
     /**
@@ -130,6 +128,19 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
         return new SecondaryRecord(key, value);
     }
 
+    /**
+     * Return a partial SecondaryRecord for the values in {@code key} that are
+     * within {@code range}.
+     * 
+     * @param key
+     * @param range
+     * @return the SecondaryRecord
+     */
+    public static SecondaryRecord createSecondaryRecordPartial(Text key,
+            ValueRange range) {
+        return new SecondaryRecord(key, range);
+    }
+
     /**
      * The master lock for {@link #write} and {@link #read}. DO NOT use this
      * lock directly.
@@ -153,7 +164,9 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
     /**
      * The index is used to efficiently determine the set of values currently
      * mapped from a key. The subclass should specify the appropriate type of
-     * key sorting via the returned type for {@link #mapType()}.
+     * key sorting via the returned type for {@link #mapType()}. Each set is the
+     * {@link RevisionHistory#present() view} from the key's history, so the
+     * values are not stored a second time.
      */
     protected final transient Map<K, Set<V>> present = mapType();
 
@@ -161,16 +174,21 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
      * This index is used to efficiently handle historical reads. Given a
      * revision (e.g key/value pair), and historical timestamp, we can count the
      * number of times that the value appears <em>beforehand</em> at determine
-     * if the mapping existed or not.
+     * if the mapping existed or not. The subclass may specify a different type
+     * of key sorting via the returned type for {@link #historyType()}.
      */
-    protected final transient HashMap<K, List<CompactRevision<V>>> history = Maps
-            .newHashMap();
+    protected final transient Map<K, RevisionHistory<V>> history = historyType();
 
     /**
      * The version of the Record's most recently appended {@link Revision}.
      */
     private transient long version = 0;
 
+    /**
+     * The number of Revisions that have been appended to the Record.
+     */
+    private transient int count = 0;
+
     /**
      * The locator used to identify this Record.
      */
@@ -256,32 +274,26 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
                     + "involving a key, value and locator that has not "
                     + "been offset.", revision);
 
-            // Update present index
-            Set<V> values = present.get(revision.getKey());
-            if(values == null) {
-                values = Sets.<V> newLinkedHashSet();
-                present.put(revision.getKey(), values);
-            }
-            if(revision.getType() == Action.ADD) {
-                values.add(revision.getValue());
-            }
-            else {
-                values.remove(revision.getValue());
-                if(values.isEmpty()) {
-                    present.remove(revision.getKey());
-                }
-            }
-
             // Update history index
-            List<CompactRevision<V>> revisions = history.get(revision.getKey());
+            RevisionHistory<V> revisions = history.get(revision.getKey());
             if(revisions == null) {
-                revisions = Lists.newArrayList();
+                revisions = new RevisionHistory<V>();
                 history.put(revision.getKey(), revisions);
             }
-            revisions.add(revision.compact());
+            revisions.append(revision.compact());
+
+            // Update present index
+            Set<V> values = revisions.present();
+            if(values.isEmpty()) {
+                present.remove(revision.getKey());
+            }
+            else {
+                present.put(revision.getKey(), values);
+            }
 
             // Update metadata
             version = Math.max(version, revision.getVersion());
+            ++count;
 
             // Make revision eligible for GC
             revision = null;
@@ -302,6 +314,15 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
         return false;
     }
 
+    /**
+     * Return the number of Revisions that have been appended to the Record.
+     * 
+     * @return the revision count
+     */
+    public int getRevisionCount() {
+        return count;
+    }
+
     /**
      * Return the Record's version, which is equal to the largest version of an
      * appended Revision.
@@ -359,11 +380,9 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
         read.lock();
         try {
             Set<K> description = Sets.newLinkedHashSet();
-            Iterator<K> it = history.keySet().iterator(); /* Authorized */
-            while (it.hasNext()) {
-                K key = it.next();
-                if(!get(key, timestamp).isEmpty()) {
-                    description.add(key);
+            for (Entry<K, RevisionHistory<V>> entry : history.entrySet()) { /* Authorized */
+                if(!entry.getValue().get(timestamp).isEmpty()) {
+                    description.add(entry.getKey());
                 }
             }
             return description;
@@ -393,7 +412,9 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
 
     /**
      * Lazily retrieve the historical set of values for {@code key} at
-     * {@code timestamp}.
+     * {@code timestamp}. The {@link RevisionHistory} for the key binary
+     * searches its versions and replays from the nearest checkpoint, so this
+     * does not depend on the length of the key's history.
      * 
      * @param key
      * @param timestamp
@@ -402,33 +423,24 @@ abstract class Record<L extends Byteable & Comparable<L>, K extends Byteable & C
     protected Set<V> get(K key, long timestamp) {
         read.lock();
         try {
-            Set<V> values = emptyValues;
-            List<CompactRevision<V>> stored = history.get(key);
-            if(stored != null) {
-                values = Sets.newLinkedHashSet();
-                Iterator<CompactRevision<V>> it = stored.iterator();
-                while (it.hasNext()) {
-                    CompactRevision<V> revision = it.next();
-                    if(revision.getVersion() <= timestamp) {
-                        if(revision.getType() == Action.ADD) {
-                            values.add(revision.getValue());
-                        }
-                        else {
-                            values.remove(revision.getValue());
-                        }
-                    }
-                    else {
-                        break;
-                    }
-                }
-            }
-            return values;
+            RevisionHistory<V> stored = history.get(key);
+            return stored != null ? stored.get(timestamp) : emptyValues;
         }
         finally {
             read.unlock();
         }
     }
 
+    /**
+     * Initialize the appropriate data structure for the {@link #history}. By
+     * default, the history is not sorted by key.
+     * 
+     * @return the initialized mappings
+     */
+    protected Map<K, RevisionHistory<V>> historyType() {
+        return Maps.newHashMap();
+    }
+
     /**
      * Initialize the appropriate data structure for the {@link #present}.
      * 
@@ -0,0 +1,625 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.annotate.PackagePrivate;
+import org.cinchapi.concourse.server.io.Composite;
+import org.cinchapi.concourse.util.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * A bounded cache of the {@link Record records} that the {@link Database}
+ * has loaded from its blocks.
+ * <p>
+ * The cache is bounded by the total number of revisions in the cached records
+ * instead of by the number of records, so one huge record counts as much as
+ * many small ones. Once the cache is full, the least recently used records
+ * are evicted.
+ * </p>
+ * <p>
+ * A full cache does not admit every record that is loaded. A
+ * {@link FrequencySketch} (in the style of TinyLFU) estimates how often each
+ * record has recently been requested, and a record is only admitted if it has
+ * been requested at least {@link #ADMISSION_THRESHOLD} times. This keeps a
+ * scan over records that are only read once from flushing the records that are
+ * read over and over.
+ * </p>
+ * <p>
+ * The weight of a record is taken when it is admitted. Revisions that are
+ * later appended to a cached record are tracked, and once they add up to
+ * {@link #REWEIGH_FRACTION one eighth} of the weight that the record is
+ * charged, the record is put back with its current weight so that records
+ * that grow from writes are held to the budget too.
+ * </p>
+ * <p>
+ * The cache may be given an {@link OffHeapRecordCache} as an overflow tier,
+ * in which case the records that are evicted for size are moved there instead
+ * of being dropped, and a request for a record that is not on the heap
+ * promotes it back from the overflow tier, if possible, before it must be
+ * loaded from disk. Because writes to the {@link Database} do not block reads,
+ * each write bumps a stamp for its key and a record in the overflow tier is
+ * only promoted if the stamp for its key has not changed since it was last on
+ * the heap; otherwise the copy might be missing the write, so it is dropped.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+@PackagePrivate
+final class RecordCache<T extends Record<?, ?, ?>> {
+
+    /**
+     * The minimum estimated number of recent requests for a record before it
+     * can displace other records in a full cache.
+     */
+    @VisibleForTesting
+    static final int ADMISSION_THRESHOLD = 2;
+
+    /**
+     * The number of segments that the underlying cache is split into. Each
+     * segment gets an equal share of the maximum weight and evicts on its own,
+     * so the cache uses a single segment in order for one large record to be
+     * able to use the whole budget and for eviction to be globally least
+     * recently used. Reads do not lock the segment, and writes only happen
+     * after a record is loaded from disk or re-weighed, so there is little
+     * contention.
+     */
+    private static final int CONCURRENCY_LEVEL = 1;
+
+    /**
+     * The number of write stamps that are kept when there is an overflow
+     * tier. Keys that share a stamp only cause each other's overflow copies to
+     * be dropped more often.
+     */
+    private static final int NUM_STAMPS = 4096;
+
+    /**
+     * The average number of revisions per record that is assumed when sizing
+     * the {@link #sketch}, which only needs to track about as many keys as fit
+     * in the cache.
+     */
+    private static final int AVERAGE_RECORD_WEIGHT = 32;
+
+    /**
+     * A cached record is re-weighed once the number of revisions that have
+     * been appended to it since it was last weighed reaches its charged weight
+     * divided by this number.
+     */
+    private static final int REWEIGH_FRACTION = 8;
+
+    /**
+     * The cached records along with their weights.
+     */
+    private final Cache<Composite, Weighted<T>> cache;
+
+    /**
+     * The estimated recent request frequency of each record.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * The maximum total weight of the cached records.
+     */
+    private final long maxWeight;
+
+    /**
+     * The total weight of the cached records.
+     */
+    private final AtomicLong weight = new AtomicLong();
+
+    /**
+     * The number of records that were loaded but not admitted.
+     */
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * The number of records that were loaded.
+     */
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * The total time spent loading records, in microseconds.
+     */
+    private final AtomicLong loadTime = new AtomicLong();
+
+    /**
+     * The tier that evicted records are moved to, if any.
+     */
+    @Nullable
+    private final OffHeapRecordCache<T> overflow;
+
+    /**
+     * The write stamps, which are only kept if there is an {@link #overflow}
+     * tier.
+     */
+    @Nullable
+    private final AtomicIntegerArray stamps;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param maxWeight - the maximum total number of revisions in the cached
+     *            records
+     */
+    RecordCache(long maxWeight) {
+        this(maxWeight, null);
+    }
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param maxWeight - the maximum total number of revisions in the cached
+     *            records
+     * @param overflow - the tier that evicted records are moved to, or
+     *            {@code null} if they should be dropped
+     */
+    RecordCache(long maxWeight,
+            @Nullable final OffHeapRecordCache<T> overflow) {
+        this.maxWeight = maxWeight;
+        this.overflow = overflow;
+        this.stamps = overflow != null ? new AtomicIntegerArray(NUM_STAMPS)
+                : null;
+        this.sketch = new FrequencySketch(maxWeight / AVERAGE_RECORD_WEIGHT);
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(CONCURRENCY_LEVEL).maximumWeight(maxWeight)
+                .weigher(new Weigher<Composite, Weighted<T>>() {
+
+                    @Override
+                    public int weigh(Composite key, Weighted<T> value) {
+                        return value.weight;
+                    }
+
+                }).removalListener(new RemovalListener<Composite, Weighted<T>>() {
+
+                    @Override
+                    public void onRemoval(
+                            RemovalNotification<Composite, Weighted<T>> notification) {
+                        Weighted<T> value = notification.getValue();
+                        weight.addAndGet(-value.weight);
+                        if(overflow != null
+                                && notification.getCause() == RemovalCause.SIZE) {
+                            overflow.put(notification.getKey(), value.record,
+                                    value.stamp);
+                        }
+                    }
+
+                }).recordStats().build();
+    }
+
+    /**
+     * Append {@code revision} to the record that is cached for {@code key}, if
+     * there is one, so that it doesn't grow stale. This must be called for
+     * every revision that is written to the record's locator, even if it is
+     * not cached, and does not count as a request for the record.
+     * <p>
+     * A revision is inserted into its block before it is appended, so a
+     * record that is loaded in between already holds it and is skipped. If the
+     * append fails for any other reason, the record is dropped from the cache
+     * so that it is loaded again instead of going stale.
+     * </p>
+     * 
+     * @param key
+     * @param revision
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void append(Composite key, Revision<?, ?, ?> revision) {
+        Weighted<T> cached = cache.asMap().get(key);
+        if(cached != null) {
+            Record record = cached.record;
+            if(revision.getVersion() > record.getVersion()) {
+                try {
+                    record.append(revision);
+                    cached = reweigh(key, cached);
+                }
+                catch (RuntimeException e) {
+                    Logger.warn("Dropped the cached record for {} "
+                            + "because {} could not be appended to it", key,
+                            revision);
+                    Logger.warn("", e);
+                    cache.asMap().remove(key, cached);
+                    cached = null;
+                }
+            }
+        }
+        if(overflow != null) {
+            // The stamp is bumped after the append so that an overflow copy
+            // that was taken in between carries the old stamp and is dropped
+            int stamp = stamps.incrementAndGet(stamp(key));
+            if(cached != null) {
+                cached.stamp = stamp;
+            }
+            overflow.invalidate(key);
+        }
+    }
+
+    /**
+     * Return the record that is cached for {@code key} or {@code null} if it
+     * is not cached. This counts as a request for the record.
+     * 
+     * @param key
+     * @return the cached record
+     */
+    @Nullable
+    public T get(Composite key) {
+        sketch.increment(key.hashCode());
+        Weighted<T> cached = cache.getIfPresent(key);
+        if(cached != null) {
+            return cached.record;
+        }
+        if(overflow != null) {
+            int index = stamp(key);
+            int stamp = stamps.get(index);
+            T record = overflow.remove(key, stamp);
+            if(record != null) {
+                Weighted<T> promoted = new Weighted<T>(record, Math.max(1,
+                        record.getRevisionCount()), stamp);
+                weight.addAndGet(promoted.weight);
+                cache.put(key, promoted);
+                if(stamps.get(index) != stamp) {
+                    // A write for the key landed while the record was being
+                    // promoted and may not have been appended to it
+                    cache.asMap().remove(key, promoted);
+                }
+            }
+            return record;
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Return a description of the size of the cache, the hit, miss, eviction
+     * and rejection counts and the average time to load a record.
+     * 
+     * @return the stats
+     */
+    public String getStats() {
+        CacheStats stats = cache.stats();
+        long loaded = loads.get();
+        return String.format("%d records (%d of %d revisions), %d hits, "
+                + "%d misses (%.2f%% hit rate), %d evictions, "
+                + "%d rejections, %d loads (%.3f ms average load time)",
+                cache.size(), weight.get(), maxWeight, stats.hitCount(),
+                stats.missCount(), stats.hitRate() * 100,
+                stats.evictionCount(), rejections.get(), loaded,
+                loaded > 0 ? loadTime.get() / (loaded * 1000.0) : 0.0)
+                + (overflow != null ? " (off-heap: " + overflow.getStats()
+                        + ")" : "");
+    }
+
+    /**
+     * Return the record that is cached for {@code key} or {@code null} if it
+     * is on the heap, without counting it as a request or promoting it from
+     * the overflow tier.
+     * 
+     * @param key
+     * @return the cached record
+     */
+    @Nullable
+    public T peek(Composite key) {
+        Weighted<T> cached = cache.asMap().get(key);
+        return cached != null ? cached.record : null;
+    }
+
+    /**
+     * Offer {@code record}, which took {@code loadTime} microseconds to load,
+     * to the cache under {@code key}. The record is admitted if there is room
+     * for it or if it has been requested often enough to displace other
+     * records.
+     * 
+     * @param key
+     * @param record
+     * @param loadTime
+     * @return {@code true} if the record was admitted
+     */
+    public boolean put(Composite key, T record, long loadTime) {
+        loads.incrementAndGet();
+        this.loadTime.addAndGet(loadTime);
+        int weight = Math.max(1, record.getRevisionCount());
+        if(weight <= maxWeight
+                && (this.weight.get() + weight <= maxWeight || sketch
+                        .frequency(key.hashCode()) >= ADMISSION_THRESHOLD)) {
+            this.weight.addAndGet(weight);
+            cache.put(key, new Weighted<T>(record, weight,
+                    overflow != null ? stamps.get(stamp(key)) : 0));
+            return true;
+        }
+        else {
+            rejections.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Put the record in {@code cached} back under {@code key} with its current
+     * weight if enough revisions have been appended to it since it was last
+     * weighed, so that the cache evicts for its actual size. This is only
+     * called by the thread that appends to the record.
+     * 
+     * @param key
+     * @param cached
+     * @return the entry that is now cached for {@code key}, or {@code null} if
+     *         it was removed in the meantime
+     */
+    @Nullable
+    private Weighted<T> reweigh(Composite key, Weighted<T> cached) {
+        int current = Math.max(1, cached.record.getRevisionCount());
+        if(current - cached.weight < Math.max(1, cached.weight
+                / REWEIGH_FRACTION)) {
+            return cached;
+        }
+        Weighted<T> reweighed = new Weighted<T>(cached.record, current,
+                cached.stamp);
+        weight.addAndGet(current);
+        if(cache.asMap().replace(key, cached, reweighed)) {
+            return reweighed;
+        }
+        else {
+            weight.addAndGet(-current);
+            return null;
+        }
+    }
+
+    /**
+     * Return the index of the write stamp for {@code key}.
+     * 
+     * @param key
+     * @return the index in {@link #stamps}
+     */
+    private int stamp(Composite key) {
+        int hash = key.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % NUM_STAMPS;
+    }
+
+    /**
+     * A cached record along with the weight that it is charged, so that the
+     * same weight is released when it is removed, and the write stamp for its
+     * key as of the last revision that was appended to it.
+     * 
+     * @author jnelson
+     */
+    private static final class Weighted<T> {
+
+        private final T record;
+        private final int weight;
+        private volatile int stamp;
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param record
+         * @param weight
+         * @param stamp
+         */
+        Weighted(T record, int weight, int stamp) {
+            this.record = record;
+            this.weight = weight;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters that estimates how many times each
+     * key has recently been requested. Once the number of increments reaches
+     * ten times the number of counters, every counter is halved so that the
+     * estimates favor recent requests. The counters are not allocated until
+     * the first request, so an idle cache costs next to nothing.
+     * <p>
+     * The sketch is lock-free, because every read of the cache increments it.
+     * Counters are updated with compare-and-set, and an increment that races
+     * with the halving may be lost, which only makes an estimate slightly
+     * lower.
+     * </p>
+     * 
+     * @author jnelson
+     */
+    @ThreadSafe
+    @VisibleForTesting
+    static final class FrequencySketch {
+
+        /**
+         * The seeds for the hash of each row in the sketch.
+         */
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+                0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        /**
+         * The largest value that a counter can hold.
+         */
+        private static final int MAX_COUNT = 15;
+
+        /**
+         * A mask that clears the high bit of each counter after the counters
+         * are shifted right by one.
+         */
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        /**
+         * The smallest number of counters in a sketch.
+         */
+        private static final int MIN_COUNTERS = 1024;
+
+        /**
+         * The largest number of counters in a sketch.
+         */
+        private static final int MAX_COUNTERS = 1 << 16;
+
+        /**
+         * The counters, packed sixteen to a long, or {@code null} until the
+         * first increment.
+         */
+        private volatile AtomicLongArray table;
+
+        /**
+         * The number of counters minus one, which is used to mask hashes.
+         */
+        private final int mask;
+
+        /**
+         * The number of increments after which the counters are halved.
+         */
+        private final int sampleSize;
+
+        /**
+         * The number of increments since the counters were last halved.
+         */
+        private final AtomicInteger additions = new AtomicInteger();
+
+        /**
+         * Construct a new instance.
+         * 
+         * @param capacity - an estimate of the number of entries to track
+         */
+        FrequencySketch(long capacity) {
+            int counters = MIN_COUNTERS;
+            while (counters < capacity && counters < MAX_COUNTERS) {
+                counters <<= 1;
+            }
+            this.mask = counters - 1;
+            this.sampleSize = counters * 10;
+        }
+
+        /**
+         * Return the estimated number of recent requests for the key with
+         * {@code hash}.
+         * 
+         * @param hash
+         * @return the estimated frequency
+         */
+        public int frequency(int hash) {
+            AtomicLongArray table = this.table;
+            if(table == null) {
+                return 0;
+            }
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; ++i) {
+                int index = index(hash, i);
+                frequency = Math.min(frequency,
+                        (int) (table.get(index >>> 4) >>> shift(index))
+                                & MAX_COUNT);
+            }
+            return frequency;
+        }
+
+        /**
+         * Record a request for the key with {@code hash}.
+         * 
+         * @param hash
+         */
+        public void increment(int hash) {
+            AtomicLongArray table = table();
+            for (int i = 0; i < SEEDS.length; ++i) {
+                int index = index(hash, i);
+                int shift = shift(index);
+                long word;
+                do {
+                    word = table.get(index >>> 4);
+                    if(((word >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                        break;
+                    }
+                }
+                while (!table.compareAndSet(index >>> 4, word, word
+                        + (1L << shift)));
+            }
+            // Exactly one increment reaches the sample size, so only one
+            // thread halves the counters at a time
+            if(additions.incrementAndGet() == sampleSize) {
+                for (int i = 0; i < table.length(); ++i) {
+                    long word;
+                    do {
+                        word = table.get(i);
+                    }
+                    while (!table.compareAndSet(i, word, (word >>> 1)
+                            & RESET_MASK));
+                }
+                additions.addAndGet(-sampleSize / 2);
+            }
+        }
+
+        /**
+         * Return the counters, allocating them on the first call.
+         * 
+         * @return the table
+         */
+        private AtomicLongArray table() {
+            AtomicLongArray table = this.table;
+            if(table == null) {
+                synchronized (this) {
+                    table = this.table;
+                    if(table == null) {
+                        table = new AtomicLongArray((mask + 1) / 16);
+                        this.table = table;
+                    }
+                }
+            }
+            return table;
+        }
+
+        /**
+         * Return the index of the counter for the key with {@code hash} in
+         * {@code row}.
+         * 
+         * @param hash
+         * @param row
+         * @return the counter index
+         */
+        private int index(int hash, int row) {
+            // Mix the hash with the row's seed (using the finalizer from
+            // MurmurHash3) so that similar hashes use unrelated counters
+            long h = hash ^ SEEDS[row];
+            h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+            h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return (int) (h ^ (h >>> 33)) & mask;
+        }
+
+        /**
+         * Return the bit offset of the counter at {@code index} within its
+         * long.
+         * 
+         * @param index
+         * @return the shift
+         */
+        private int shift(int index) {
+            return (index & 15) << 2;
+        }
+    }
+
+}
@@ -0,0 +1,632 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.storage.Action;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * The history of a single field in a {@link Record}, indexed for point in
+ * time reads.
+ * <p>
+ * The revisions are stored in columns instead of as one object each: the
+ * versions in a {@code long[]}, the actions in a {@link BitSet} (which is only
+ * allocated once there is a removal) and the values as {@code int} ids into a
+ * dictionary that holds each distinct value once. The set of values that are
+ * present is another BitSet over the dictionary, along with a list of the
+ * present ids in the order that they were added that is linked through two
+ * {@code int[]} columns, so the housing Record can expose it through a
+ * {@link #present() view} instead of keeping its own copy.
+ * </p>
+ * <p>
+ * For historical reads, the history also materializes the ids of the values
+ * that are present at checkpoints. A read at a timestamp binary searches the
+ * versions for the last revision that happened at or before the timestamp and
+ * then only replays the revisions since the nearest checkpoint. A checkpoint
+ * is taken once there have been {@link GlobalState#RECORD_CHECKPOINT_INTERVAL}
+ * revisions since the last one, or as many revisions as there are present
+ * values if that is more. So the checkpoints never hold more ids than there
+ * are revisions (e.g. the history of a value that is held by many records in
+ * a SecondaryRecord), and a read replays no more revisions than the larger of
+ * the interval and the number of values that it could return.
+ * </p>
+ * <p>
+ * Revisions are expected to be appended in version order. If a revision is
+ * ever appended out of order, historical reads fall back to replaying
+ * everything from the beginning (which is what the Record used to do all the
+ * time).
+ * </p>
+ * <p>
+ * This class is not thread safe: the housing Record guards all access with
+ * its own locks.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@NotThreadSafe
+final class RevisionHistory<V extends Comparable<V>> implements
+        Iterable<CompactRevision<V>> {
+
+    /**
+     * The number of distinct values after which ids are looked up in a hash
+     * table instead of by scanning the {@link #dictionary}. Most fields only
+     * ever contain a handful of values, so they don't pay for the table.
+     */
+    private static final int DICTIONARY_SCAN_THRESHOLD = 8;
+
+    /**
+     * The id that is returned for a value that is not in the dictionary.
+     */
+    private static final int NO_ID = -1;
+
+    /**
+     * The number of revisions between each materialized checkpoint, or 0 if
+     * the history does not keep checkpoints.
+     */
+    private final int interval;
+
+    /**
+     * The number of revisions in the history.
+     */
+    private int size = 0;
+
+    /**
+     * The version of each revision, in the order that they were appended.
+     */
+    private long[] versions = new long[1];
+
+    /**
+     * The dictionary id of the value for each revision.
+     */
+    private int[] values = new int[1];
+
+    /**
+     * The indexes of the revisions that are removals. Every other revision is
+     * an addition. This is {@code null} until the first removal is appended.
+     */
+    @Nullable
+    private BitSet removals = null;
+
+    /**
+     * The distinct values in the history, in the order that they were first
+     * appended. The index of a value is its id.
+     */
+    private Object[] dictionary = new Object[1];
+
+    /**
+     * The number of values in the {@link #dictionary}.
+     */
+    private int distinct = 0;
+
+    /**
+     * A mapping from each value to its id, which is only built once the
+     * history contains more than {@link #DICTIONARY_SCAN_THRESHOLD} distinct
+     * values.
+     */
+    @Nullable
+    private TObjectIntHashMap<Object> ids = null;
+
+    /**
+     * The ids of the values that are currently present.
+     */
+    private final BitSet present = new BitSet(1);
+
+    /**
+     * The ids of the present values, linked in the order that they were
+     * added: {@code next[id]} and {@code prev[id]} hold the neighbors of a
+     * present id, or {@link #NO_ID} at the ends of the list.
+     */
+    private int[] next = new int[1];
+    private int[] prev = new int[1];
+
+    /**
+     * The first and last ids in the list of present values.
+     */
+    private int head = NO_ID;
+    private int tail = NO_ID;
+
+    /**
+     * The number of present values.
+     */
+    private int cardinality = 0;
+
+    /**
+     * The number of times that the set of present values has changed, which
+     * is used to fail fast when the {@link #present()} view is modified while
+     * it is iterated.
+     */
+    private int modCount = 0;
+
+    /**
+     * The ids of the values that are present at each checkpoint. This is
+     * {@code null} until the first checkpoint is taken.
+     */
+    @Nullable
+    private List<int[]> checkpoints = null;
+
+    /**
+     * The number of revisions that each checkpoint reflects, in ascending
+     * order.
+     */
+    private int[] checkpointSizes = new int[1];
+
+    /**
+     * The number of revisions that have been appended since the last
+     * checkpoint.
+     */
+    private int sinceCheckpoint = 0;
+
+    /**
+     * A flag that indicates whether the revisions were appended in version
+     * order, which is a precondition for using the index.
+     */
+    private boolean ordered = true;
+
+    /**
+     * The lazily created view that is returned from {@link #present()}.
+     */
+    @Nullable
+    private Set<V> view = null;
+
+    /**
+     * Construct a new instance that uses the configured
+     * {@link GlobalState#RECORD_CHECKPOINT_INTERVAL}.
+     */
+    RevisionHistory() {
+        this(GlobalState.RECORD_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param interval - the number of revisions between each checkpoint, or 0
+     *            to only binary search
+     */
+    RevisionHistory(int interval) {
+        this.interval = Math.max(0, interval);
+    }
+
+    /**
+     * Append {@code revision} to the history.
+     * 
+     * @param revision
+     */
+    public void append(CompactRevision<V> revision) {
+        if(size > 0 && revision.getVersion() < versions[size - 1]) {
+            ordered = false;
+        }
+        if(size == versions.length) {
+            versions = Arrays.copyOf(versions, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int id = id(revision.getValue());
+        if(id == NO_ID) {
+            id = define(revision.getValue());
+        }
+        versions[size] = revision.getVersion();
+        values[size] = id;
+        if(revision.getType() == Action.ADD) {
+            if(!present.get(id)) {
+                present.set(id);
+                link(id);
+            }
+        }
+        else {
+            if(removals == null) {
+                removals = new BitSet();
+            }
+            removals.set(size);
+            if(present.get(id)) {
+                present.clear(id);
+                unlink(id);
+            }
+        }
+        ++size;
+        if(ordered && interval > 0
+                && ++sinceCheckpoint >= Math.max(interval, cardinality)) {
+            if(checkpoints == null) {
+                checkpoints = Lists.newArrayListWithCapacity(1);
+            }
+            if(checkpoints.size() == checkpointSizes.length) {
+                checkpointSizes = Arrays.copyOf(checkpointSizes,
+                        checkpointSizes.length * 2);
+            }
+            checkpointSizes[checkpoints.size()] = size;
+            checkpoints.add(snapshot());
+            sinceCheckpoint = 0;
+        }
+    }
+
+    /**
+     * Return the set of values that were present at {@code timestamp}.
+     * 
+     * @param timestamp
+     * @return the values at {@code timestamp}
+     */
+    public Set<V> get(long timestamp) {
+        if(!ordered) {
+            Set<V> values = Sets.newLinkedHashSet();
+            for (int i = 0; i < size; ++i) {
+                if(versions[i] <= timestamp) {
+                    apply(i, values);
+                }
+                else {
+                    break;
+                }
+            }
+            return values;
+        }
+        else {
+            return replay(floor(timestamp));
+        }
+    }
+
+    /**
+     * Return {@code true} if the history does not contain any revisions.
+     * 
+     * @return {@code true} if the history is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<CompactRevision<V>> iterator() {
+        return new UnmodifiableIterator<CompactRevision<V>>() {
+
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public CompactRevision<V> next() {
+                CompactRevision<V> revision = new CompactRevision<V>(
+                        value(index), versions[index],
+                        isRemoval(index) ? Action.REMOVE : Action.ADD);
+                ++index;
+                return revision;
+            }
+
+        };
+    }
+
+    /**
+     * Return an unmodifiable view of the values that are currently present,
+     * in the order that they were added. The view walks the live list of
+     * present ids, so it always reflects the latest revision and iterating it
+     * does not allocate a copy. Like the set that a Record used to keep, the
+     * view fails fast if a revision is appended while it is iterated.
+     * 
+     * @return the present values
+     */
+    public Set<V> present() {
+        if(view == null) {
+            view = new PresentView();
+        }
+        return view;
+    }
+
+    /**
+     * Return the number of revisions in the history.
+     * 
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Apply the revision at {@code index} to the set of {@code values}.
+     * 
+     * @param index
+     * @param values
+     */
+    private void apply(int index, Set<V> values) {
+        if(isRemoval(index)) {
+            values.remove(value(index));
+        }
+        else {
+            values.add(value(index));
+        }
+    }
+
+    /**
+     * Return the index of the last checkpoint that reflects no more than
+     * {@code count} revisions, or {@code -1} if there is none.
+     * 
+     * @param count
+     * @return the index of the checkpoint
+     */
+    private int checkpoint(int count) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if(checkpointSizes[mid] <= count) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Add {@code value} to the dictionary and return its new id.
+     * 
+     * @param value
+     * @return the id
+     */
+    private int define(V value) {
+        if(distinct == dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, distinct * 2);
+            next = Arrays.copyOf(next, distinct * 2);
+            prev = Arrays.copyOf(prev, distinct * 2);
+        }
+        int id = distinct++;
+        dictionary[id] = value;
+        if(ids != null) {
+            ids.put(value, id);
+        }
+        else if(distinct > DICTIONARY_SCAN_THRESHOLD) {
+            ids = new TObjectIntHashMap<Object>(distinct * 2,
+                    Constants.DEFAULT_LOAD_FACTOR, NO_ID);
+            for (int i = 0; i < distinct; ++i) {
+                ids.put(dictionary[i], i);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Return the index of the last revision with a version that is less than
+     * or equal to {@code timestamp}, or {@code -1} if all the revisions
+     * happened after {@code timestamp}.
+     * 
+     * @param timestamp
+     * @return the index of the floor revision
+     */
+    private int floor(long timestamp) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if(versions[mid] <= timestamp) {
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Return the id of {@code value} or {@link #NO_ID} if the value is not in
+     * the dictionary.
+     * 
+     * @param value
+     * @return the id
+     */
+    private int id(Object value) {
+        if(ids != null) {
+            return ids.get(value);
+        }
+        else {
+            for (int i = 0; i < distinct; ++i) {
+                if(dictionary[i].equals(value)) {
+                    return i;
+                }
+            }
+            return NO_ID;
+        }
+    }
+
+    /**
+     * Return {@code true} if the revision at {@code index} is a removal.
+     * 
+     * @param index
+     * @return {@code true} if the revision removed its value
+     */
+    private boolean isRemoval(int index) {
+        return removals != null && removals.get(index);
+    }
+
+    /**
+     * Add {@code id} to the end of the list of present values.
+     * 
+     * @param id
+     */
+    private void link(int id) {
+        prev[id] = tail;
+        next[id] = NO_ID;
+        if(tail != NO_ID) {
+            next[tail] = id;
+        }
+        else {
+            head = id;
+        }
+        tail = id;
+        ++cardinality;
+        ++modCount;
+    }
+
+    /**
+     * Return the ids of the values that are currently present, in the order
+     * that they were added.
+     * 
+     * @return the present ids
+     */
+    private int[] snapshot() {
+        int[] ids = new int[cardinality];
+        int i = 0;
+        for (int id = head; id != NO_ID; id = next[id]) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Remove {@code id} from the list of present values.
+     * 
+     * @param id
+     */
+    private void unlink(int id) {
+        if(prev[id] != NO_ID) {
+            next[prev[id]] = next[id];
+        }
+        else {
+            head = next[id];
+        }
+        if(next[id] != NO_ID) {
+            prev[next[id]] = prev[id];
+        }
+        else {
+            tail = prev[id];
+        }
+        --cardinality;
+        ++modCount;
+    }
+
+    /**
+     * Return the set of values that are present after applying the revisions
+     * up to and including the one at {@code index}, starting from the nearest
+     * checkpoint.
+     * 
+     * @param index
+     * @return the values at {@code index}
+     */
+    @SuppressWarnings("unchecked")
+    private Set<V> replay(int index) {
+        Set<V> values = Sets.newLinkedHashSet();
+        if(index == size - 1) {
+            for (int id : snapshot()) {
+                values.add((V) dictionary[id]);
+            }
+            return values;
+        }
+        int checkpoint = checkpoints != null ? checkpoint(index + 1) : -1;
+        int start = 0;
+        if(checkpoint >= 0) {
+            for (int id : checkpoints.get(checkpoint)) {
+                values.add((V) dictionary[id]);
+            }
+            start = checkpointSizes[checkpoint];
+        }
+        for (int i = start; i <= index; ++i) {
+            apply(i, values);
+        }
+        return values;
+    }
+
+    /**
+     * Return the value of the revision at {@code index}.
+     * 
+     * @param index
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    private V value(int index) {
+        return (V) dictionary[values[index]];
+    }
+
+    /**
+     * The {@link RevisionHistory#present() view} of the values that are
+     * currently present.
+     * 
+     * @author jnelson
+     */
+    private final class PresentView extends AbstractSet<V> {
+
+        @Override
+        public boolean contains(Object o) {
+            int id = id(o);
+            return id != NO_ID && present.get(id);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return cardinality == 0;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new UnmodifiableIterator<V>() {
+
+                private int id = head;
+                private final int expectedModCount = modCount;
+
+                @Override
+                public boolean hasNext() {
+                    return id != NO_ID;
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public V next() {
+                    if(modCount != expectedModCount) {
+                        throw new ConcurrentModificationException();
+                    }
+                    if(id == NO_ID) {
+                        throw new NoSuchElementException();
+                    }
+                    V value = (V) dictionary[id];
+                    id = RevisionHistory.this.next[id];
+                    return value;
+                }
+
+            };
+        }
+
+        @Override
+        public int size() {
+            return cardinality;
+        }
+
+    }
+
+}
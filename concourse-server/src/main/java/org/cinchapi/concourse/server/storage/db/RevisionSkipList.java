@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.AbstractCollection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.cinchapi.concourse.server.io.Byteable;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Iterables;
+
+/**
+ * The sorted revisions in a mutable {@link Block}, stored in concurrent skip
+ * lists that are keyed by locator and then by key.
+ * <p>
+ * Iteration returns the revisions in the same order that the Block stores
+ * them on disk (locator, key, version, value), but a seek can jump directly
+ * to the run for a locator or locator/key with {@link #get(Comparable)} or
+ * {@link #get(Comparable, Comparable)} instead of scanning everything that
+ * sorts before it. Readers never block and are never blocked by a concurrent
+ * {@link #add(Revision) insert}; they see each revision either fully or not
+ * at all.
+ * </p>
+ * <p>
+ * A revision that is equal to one that is already stored (i.e. same locator,
+ * key, version and value) is not added again.
+ * </p>
+ * 
+ * @author jnelson
+ */
+@ThreadSafe
+final class RevisionSkipList<L extends Byteable & Comparable<L>, K extends Byteable & Comparable<K>, V extends Byteable & Comparable<V>> extends
+        AbstractCollection<Revision<L, K, V>> {
+
+    /**
+     * The revisions, grouped by locator and then by key.
+     */
+    private final ConcurrentNavigableMap<L, ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>>> locators = new ConcurrentSkipListMap<L, ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>>>();
+
+    /**
+     * The number of revisions.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public boolean add(Revision<L, K, V> revision) {
+        ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> keys = locators
+                .get(revision.getLocator());
+        if(keys == null) {
+            keys = new ConcurrentSkipListMap<K, ConcurrentSkipListSet<Revision<L, K, V>>>();
+            ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> existing = locators
+                    .putIfAbsent(revision.getLocator(), keys);
+            keys = existing != null ? existing : keys;
+        }
+        ConcurrentSkipListSet<Revision<L, K, V>> versions = keys.get(revision
+                .getKey());
+        if(versions == null) {
+            versions = new ConcurrentSkipListSet<Revision<L, K, V>>(
+                    VersionSorter.INSTANCE);
+            ConcurrentSkipListSet<Revision<L, K, V>> existing = keys
+                    .putIfAbsent(revision.getKey(), versions);
+            versions = existing != null ? existing : versions;
+        }
+        if(versions.add(revision)) {
+            size.incrementAndGet();
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Return the sorted revisions for {@code locator}.
+     * 
+     * @param locator
+     * @return the revisions
+     */
+    public Iterable<Revision<L, K, V>> get(L locator) {
+        ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> keys = locators
+                .get(locator);
+        return keys != null ? Iterables.concat(keys.values()) : Collections
+                .<Revision<L, K, V>> emptyList();
+    }
+
+    /**
+     * Return the sorted revisions for {@code key} in {@code locator}.
+     * 
+     * @param locator
+     * @param key
+     * @return the revisions
+     */
+    public Iterable<Revision<L, K, V>> get(L locator, K key) {
+        ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> keys = locators
+                .get(locator);
+        ConcurrentSkipListSet<Revision<L, K, V>> versions = keys != null ? keys
+                .get(key) : null;
+        return versions != null ? versions : Collections
+                .<Revision<L, K, V>> emptyList();
+    }
+
+    /**
+     * Return the sorted revisions for the keys in {@code locator} that are
+     * between {@code low} and {@code high} (both inclusive).
+     * 
+     * @param locator
+     * @param low
+     * @param high
+     * @return the revisions
+     */
+    public Iterable<Revision<L, K, V>> get(L locator, K low, K high) {
+        ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> keys = locators
+                .get(locator);
+        return keys != null && low.compareTo(high) <= 0 ? Iterables
+                .concat(keys.subMap(low, true, high, true).values())
+                : Collections.<Revision<L, K, V>> emptyList();
+    }
+
+    @Override
+    public Iterator<Revision<L, K, V>> iterator() {
+        return Iterables
+                .concat(Iterables.transform(
+                        locators.values(),
+                        new Function<ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>>, Iterable<Revision<L, K, V>>>() {
+
+                            @Override
+                            public Iterable<Revision<L, K, V>> apply(
+                                    ConcurrentNavigableMap<K, ConcurrentSkipListSet<Revision<L, K, V>>> keys) {
+                                return Iterables.concat(keys.values());
+                            }
+
+                        })).iterator();
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * A Comparator that sorts the revisions for the same locator and key by
+     * {@code version} followed by {@code value}.
+     * 
+     * @author jnelson
+     */
+    @SuppressWarnings("rawtypes")
+    private enum VersionSorter implements Comparator<Revision> {
+        INSTANCE;
+
+        @Override
+        public int compare(Revision o1, Revision o2) {
+            return ComparisonChain.start()
+                    .compare(o1.getVersion(), o2.getVersion())
+                    .compare(o1.getValue(), o2.getValue()).result();
+        }
+
+    }
+
+}
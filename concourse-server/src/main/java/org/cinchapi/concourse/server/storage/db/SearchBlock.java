@@ -25,6 +25,7 @@ package org.cinchapi.concourse.server.storage.db;
 
 import static org.cinchapi.concourse.server.GlobalState.STOPWORDS;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -86,6 +87,17 @@ final class SearchBlock extends Block<Text, Text, Position> {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * DO NOT CALL. Use {@link #insert(Text, Value, PrimaryKey, long, Action)}
+     * instead.
+     */
+    @Override
+    @DoNotInvoke
+    public final void insert(
+            List<? extends Revision<Text, Text, Position>> revisions) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Insert a revision for {@code key} as {@code value} in {@code record} at
      * {@code version}
@@ -129,11 +141,26 @@ final class SearchBlock extends Block<Text, Text, Position> {
                 .createSearchRevision(locator, key, value, version, type);
     }
 
+    @Override
+    protected Class<Text> xKeyClass() {
+        return Text.class;
+    }
+
+    @Override
+    protected Class<Text> xLocatorClass() {
+        return Text.class;
+    }
+
     @Override
     protected Class<SearchRevision> xRevisionClass() {
         return SearchRevision.class;
     }
 
+    @Override
+    protected Class<Position> xValueClass() {
+        return Position.class;
+    }
+
     /**
      * Call super.{@link #insert(Text, Text, Position, long)}
      * 
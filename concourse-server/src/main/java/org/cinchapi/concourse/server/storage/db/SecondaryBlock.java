@@ -68,8 +68,23 @@ final class SecondaryBlock extends Block<Text, Value, PrimaryKey> {
                 type);
     }
 
+    @Override
+    protected Class<Value> xKeyClass() {
+        return Value.class;
+    }
+
+    @Override
+    protected Class<Text> xLocatorClass() {
+        return Text.class;
+    }
+
     @Override
     protected Class<SecondaryRevision> xRevisionClass() {
         return SecondaryRevision.class;
     }
+
+    @Override
+    protected Class<PrimaryKey> xValueClass() {
+        return PrimaryKey.class;
+    }
 }
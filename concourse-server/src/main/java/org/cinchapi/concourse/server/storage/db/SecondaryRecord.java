@@ -56,6 +56,14 @@ import com.google.common.collect.Maps;
 @PackagePrivate
 final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
 
+    /**
+     * The range of values that this record contains, if it only contains the
+     * values in a range. A query against such a record is only correct if the
+     * values that can satisfy it are within the range.
+     */
+    @Nullable
+    private final ValueRange range;
+
     /**
      * DO NOT INVOKE. Use {@link Record#createSearchRecord(Text)} or
      * {@link Record#createSecondaryRecordPartial(Text, Value)} instead.
@@ -67,6 +75,30 @@ final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
     @PackagePrivate
     SecondaryRecord(Text locator, @Nullable Value key) {
         super(locator, key);
+        this.range = null;
+    }
+
+    /**
+     * DO NOT INVOKE. Use
+     * {@link Record#createSecondaryRecordPartial(Text, ValueRange)} instead.
+     * 
+     * @param locator
+     * @param range
+     */
+    @DoNotInvoke
+    @PackagePrivate
+    SecondaryRecord(Text locator, ValueRange range) {
+        super(locator, null);
+        this.range = range;
+    }
+
+    @Override
+    public void append(Revision<Text, Value, PrimaryKey> revision) {
+        Preconditions.checkArgument(range == null
+                || range.contains(revision.getKey()),
+                "Cannot append %s because it does not belong to %s",
+                revision, this);
+        super.append(revision);
     }
 
     /**
@@ -126,6 +158,33 @@ final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
         return explore(false, 0, operator, values);
     }
 
+    /**
+     * Return the range of values that this record contains, or {@code null}
+     * if it is not limited to a range.
+     * 
+     * @return the range
+     */
+    @Nullable
+    public ValueRange getRange() {
+        return range;
+    }
+
+    @Override
+    public boolean isPartial() {
+        return range != null || super.isPartial();
+    }
+
+    @Override
+    public String toString() {
+        return range != null ? getClass().getSimpleName() + " " + range
+                + " IN " + locator : super.toString();
+    }
+
+    @Override
+    protected Map<Value, RevisionHistory<PrimaryKey>> historyType() {
+        return Maps.newTreeMap(Value.Sorter.INSTANCE);
+    }
+
     @Override
     protected Map<Value, Set<PrimaryKey>> mapType() {
         return Maps.newTreeMap(Value.Sorter.INSTANCE);
@@ -136,6 +195,13 @@ final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
      * that cause the corresponding records to satisfy {@code operator} in
      * relation to the specified {@code values} (and at the specified
      * {@code timestamp} if {@code historical} is {@code true}).
+     * <p>
+     * Both the {@link #present} and {@link #history} indices are sorted by
+     * value, so range operators only visit the values that are within the
+     * range. For a historical query, the PrimaryKeys for each visited value
+     * are read from its {@link RevisionHistory} instead of replaying every
+     * revision.
+     * </p>
      * 
      * @param historical - if {@code true} query the history, otherwise query
      *            the current state
@@ -152,111 +218,62 @@ final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
         read.lock();
         try {
             Map<PrimaryKey, Set<Value>> data = Maps.newHashMap();
+            NavigableSet<Value> stored = (NavigableSet<Value>) (historical ? history
+                    .keySet() : present.keySet());
             Value value = values[0];
             if(operator == Operator.EQUALS) {
-                for (PrimaryKey record : historical ? get(value, timestamp)
-                        : get(value)) {
-                    MultimapViews.put(data, record, value);
-                }
+                explore(data, historical, timestamp, value);
             }
             else if(operator == Operator.NOT_EQUALS) {
-                for (Value stored : historical ? history.keySet() : present
-                        .keySet()) {
-                    if(!value.equals(stored)) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
+                for (Value candidate : stored) {
+                    if(!value.equals(candidate)) {
+                        explore(data, historical, timestamp, candidate);
                     }
                 }
             }
             else if(operator == Operator.GREATER_THAN) {
-                for (Value stored : historical ? history.keySet()
-                        : ((NavigableSet<Value>) present.keySet()).tailSet(
-                                value, false)) {
-                    if(!historical || stored.compareTo(value) > 0) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
-                    }
+                for (Value candidate : stored.tailSet(value, false)) {
+                    explore(data, historical, timestamp, candidate);
                 }
             }
             else if(operator == Operator.GREATER_THAN_OR_EQUALS) {
-                for (Value stored : historical ? history.keySet()
-                        : ((NavigableSet<Value>) present.keySet()).tailSet(
-                                value, true)) {
-                    if(!historical || stored.compareTo(value) >= 0) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
-                    }
+                for (Value candidate : stored.tailSet(value, true)) {
+                    explore(data, historical, timestamp, candidate);
                 }
             }
             else if(operator == Operator.LESS_THAN) {
-                for (Value stored : historical ? history.keySet()
-                        : ((NavigableSet<Value>) present.keySet()).headSet(
-                                value, false)) {
-                    if(!historical || stored.compareTo(value) < 0) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
-                    }
+                for (Value candidate : stored.headSet(value, false)) {
+                    explore(data, historical, timestamp, candidate);
                 }
             }
             else if(operator == Operator.LESS_THAN_OR_EQUALS) {
-                for (Value stored : historical ? history.keySet()
-                        : ((NavigableSet<Value>) present.keySet()).headSet(
-                                value, true)) {
-                    if(!historical || stored.compareTo(value) <= 0) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
-                    }
+                for (Value candidate : stored.headSet(value, true)) {
+                    explore(data, historical, timestamp, candidate);
                 }
             }
             else if(operator == Operator.BETWEEN) {
                 Preconditions.checkArgument(values.length > 1);
                 Value value2 = values[1];
-                for (Value stored : historical ? history.keySet()
-                        : ((NavigableSet<Value>) present.keySet()).subSet(
-                                value, true, value2, false)) {
-                    if(!historical
-                            || (stored.compareTo(value) >= 0 && stored
-                                    .compareTo(value2) < 0)) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
-                    }
+                for (Value candidate : stored
+                        .subSet(value, true, value2, false)) {
+                    explore(data, historical, timestamp, candidate);
                 }
             }
             else if(operator == Operator.REGEX) {
                 Pattern p = Pattern.compile(value.getObject().toString());
-                for (Value stored : historical ? history.keySet() : present
-                        .keySet()) {
-                    Matcher m = p.matcher(stored.getObject().toString());
+                for (Value candidate : stored) {
+                    Matcher m = p.matcher(candidate.getObject().toString());
                     if(m.matches()) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
+                        explore(data, historical, timestamp, candidate);
                     }
                 }
             }
             else if(operator == Operator.NOT_REGEX) {
                 Pattern p = Pattern.compile(value.getObject().toString());
-                for (Value stored : historical ? history.keySet() : present
-                        .keySet()) {
-                    Matcher m = p.matcher(stored.getObject().toString());
+                for (Value candidate : stored) {
+                    Matcher m = p.matcher(candidate.getObject().toString());
                     if(!m.matches()) {
-                        for (PrimaryKey record : historical ? get(stored,
-                                timestamp) : get(stored)) {
-                            MultimapViews.put(data, record, stored);
-                        }
+                        explore(data, historical, timestamp, candidate);
                     }
                 }
             }
@@ -270,4 +287,32 @@ final class SecondaryRecord extends BrowsableRecord<Text, Value, PrimaryKey> {
         }
     }
 
+    /**
+     * Add a mapping from each PrimaryKey that contains {@code value} (at
+     * {@code timestamp} if {@code historical} is {@code true}) to
+     * {@code value} in {@code data}. The caller must hold the {@link #read}
+     * lock.
+     * 
+     * @param data
+     * @param historical
+     * @param timestamp
+     * @param value
+     */
+    private void explore(Map<PrimaryKey, Set<Value>> data, boolean historical,
+            long timestamp, Value value) {
+        Set<PrimaryKey> records;
+        if(historical) {
+            RevisionHistory<PrimaryKey> revisions = history.get(value);
+            records = revisions != null ? revisions.get(timestamp) : null;
+        }
+        else {
+            records = present.get(value);
+        }
+        if(records != null) {
+            for (PrimaryKey record : records) {
+                MultimapViews.put(data, record, value);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.cinchapi.concourse.annotate.PackagePrivate;
+import org.cinchapi.concourse.server.io.Composite;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.thrift.Operator;
+
+/**
+ * An inclusive range of {@link Value Values} that identifies the part of a
+ * {@link SecondaryRecord} that is loaded to answer a query. Either end may be
+ * {@link Value#NEGATIVE_INFINITY} or {@link Value#POSITIVE_INFINITY} to
+ * indicate that the range is unbounded.
+ * 
+ * @author jnelson
+ */
+@Immutable
+@PackagePrivate
+final class ValueRange {
+
+    /**
+     * Return the range of values that a SecondaryRecord must contain in order
+     * to determine which records satisfy {@code operator} in relation to
+     * {@code values}, or {@code null} if the operator may be satisfied by any
+     * value (i.e. {@link Operator#NOT_EQUALS} or a regex). The range includes
+     * its ends even if the operator excludes them, so that queries with
+     * either operator can share it.
+     * 
+     * @param operator
+     * @param values
+     * @return the ValueRange
+     */
+    @Nullable
+    public static ValueRange forQuery(Operator operator, Value... values) {
+        if(operator == Operator.EQUALS) {
+            return new ValueRange(values[0], values[0]);
+        }
+        else if(operator == Operator.GREATER_THAN
+                || operator == Operator.GREATER_THAN_OR_EQUALS) {
+            return new ValueRange(values[0], Value.POSITIVE_INFINITY);
+        }
+        else if(operator == Operator.LESS_THAN
+                || operator == Operator.LESS_THAN_OR_EQUALS) {
+            return new ValueRange(Value.NEGATIVE_INFINITY, values[0]);
+        }
+        else if(operator == Operator.BETWEEN && values.length > 1) {
+            return new ValueRange(values[0], values[1]);
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * The size that is written for an infinite end in a cache key.
+     */
+    private static final int INFINITE = -1;
+
+    /**
+     * The low end of the range.
+     */
+    private final Value low;
+
+    /**
+     * The high end of the range.
+     */
+    private final Value high;
+
+    /**
+     * Construct a new instance.
+     * 
+     * @param low
+     * @param high
+     */
+    private ValueRange(Value low, Value high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Return {@code true} if {@code value} is within this range.
+     * 
+     * @param value
+     * @return {@code true} if the value is in the range
+     */
+    public boolean contains(Value value) {
+        return Value.Sorter.INSTANCE.compare(low, value) <= 0
+                && Value.Sorter.INSTANCE.compare(value, high) <= 0;
+    }
+
+    /**
+     * Return {@code true} if every value in {@code other} is also within this
+     * range.
+     * 
+     * @param other
+     * @return {@code true} if this range encloses the other
+     */
+    public boolean encloses(ValueRange other) {
+        return Value.Sorter.INSTANCE.compare(low, other.low) <= 0
+                && Value.Sorter.INSTANCE.compare(other.high, high) <= 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(obj instanceof ValueRange) {
+            ValueRange other = (ValueRange) obj;
+            return equals(low, other.low) && equals(high, other.high);
+        }
+        return false;
+    }
+
+    /**
+     * Return the key that identifies the partial SecondaryRecord for this
+     * range of values in {@code locator} in a {@link RecordCache}. Each
+     * component is prefixed with its size so that different ranges can't
+     * produce the same key.
+     * 
+     * @param locator
+     * @return the cache key
+     */
+    public Composite getCacheKey(Text locator) {
+        ByteBuffer bytes = ByteBuffer.allocate(12 + locator.size()
+                + (isInfinite(low) ? 0 : low.size())
+                + (isInfinite(high) ? 0 : high.size()));
+        bytes.putInt(locator.size());
+        locator.copyTo(bytes);
+        putEnd(low, bytes);
+        putEnd(high, bytes);
+        bytes.flip();
+        return Composite.fromByteBuffer(bytes);
+    }
+
+    /**
+     * Return the high end of the range.
+     * 
+     * @return the high value
+     */
+    public Value getHigh() {
+        return high;
+    }
+
+    /**
+     * Return the low end of the range.
+     * 
+     * @return the low value
+     */
+    public Value getLow() {
+        return low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(isInfinite(low) ? null : low,
+                isInfinite(high) ? null : high);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (low == Value.NEGATIVE_INFINITY ? "-INF" : low) + ", "
+                + (high == Value.POSITIVE_INFINITY ? "+INF" : high) + "]";
+    }
+
+    /**
+     * Return {@code true} if {@code a} and {@code b} are the same end of a
+     * range, which requires that they are either both infinite or both
+     * finite and equal.
+     * 
+     * @param a
+     * @param b
+     * @return {@code true} if the ends are equal
+     */
+    private static boolean equals(Value a, Value b) {
+        return isInfinite(a) || isInfinite(b) ? a == b : a.equals(b);
+    }
+
+    /**
+     * Return {@code true} if {@code value} is one of the infinite Values,
+     * which are distinguished by identity.
+     * 
+     * @param value
+     * @return {@code true} if the value is infinite
+     */
+    private static boolean isInfinite(Value value) {
+        return value == Value.NEGATIVE_INFINITY
+                || value == Value.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Write the size prefixed {@code end} to {@code bytes}.
+     * 
+     * @param end
+     * @param bytes
+     */
+    private static void putEnd(Value end, ByteBuffer bytes) {
+        if(isInfinite(end)) {
+            bytes.putInt(INFINITE);
+        }
+        else {
+            bytes.putInt(end.size());
+            end.copyTo(bytes);
+        }
+    }
+
+}
@@ -28,16 +28,23 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -48,7 +55,10 @@ import org.cinchapi.concourse.server.concurrent.ConcourseExecutors;
 import org.cinchapi.concourse.server.concurrent.PriorityReadWriteLock;
 import org.cinchapi.concourse.server.concurrent.Locks;
 import org.cinchapi.concourse.server.io.ByteableCollections;
+import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
 import org.cinchapi.concourse.server.model.Value;
 import org.cinchapi.concourse.server.storage.Inventory;
 import org.cinchapi.concourse.server.storage.PermanentStore;
@@ -62,7 +72,11 @@ import org.cinchapi.concourse.util.Convert;
 import org.cinchapi.concourse.util.Logger;
 import org.cinchapi.concourse.util.NaturalSorter;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -78,6 +92,13 @@ import static org.cinchapi.concourse.server.GlobalState.*;
  * is minimal and writes are fast because the entire backing store is memory
  * mapped and the writes are always appended.
  * </p>
+ * <p>
+ * Unlike a generic Limbo, each Page in the Buffer indexes its Writes by record
+ * and by key/record, so point reads only touch the relevant Writes instead of
+ * scanning everything that has not been transported. Each Page also keeps a
+ * value-ordered index for each key so that finds only touch the Writes whose
+ * values can match.
+ * </p>
  * 
  * @author jnelson
  */
@@ -250,14 +271,71 @@ public final class Buffer extends Limbo {
     private Inventory inventory = null;
 
     /**
-     * A runnable instance that flushes the content the current buffer page to
-     * disk.
+     * The Pages that have received appends that are not yet known to be
+     * durable. A Page is added the first time it is appended after a group
+     * commit and is drained by the thread that performs the next group commit.
+     */
+    @GuardedBy("writeLock")
+    private final List<Page> unsyncedPages = Lists.newArrayListWithCapacity(2);
+
+    /**
+     * A monotonically increasing counter that is incremented each time a Write
+     * is appended to a Page. Each inserting thread holds on to the value
+     * assigned to its Write so it can tell when a group commit has covered
+     * it.
+     */
+    @GuardedBy("writeLock")
+    private long appended = 0;
+
+    /**
+     * The number of bytes that have been appended since the last group commit.
+     */
+    private final AtomicLong unsyncedBytes = new AtomicLong(0);
+
+    /**
+     * The policy that determines when appended data is forced to disk.
+     */
+    private Durability durability = BUFFER_DURABILITY;
+
+    /**
+     * The {@link Timer} that performs background syncs when the
+     * {@link #durability} is {@link Durability#INTERVAL}.
+     */
+    @Nullable
+    private Timer syncer = null;
+
+    /**
+     * The largest {@link #appended} counter value whose bytes have been forced
+     * to disk.
+     */
+    @GuardedBy("syncLock")
+    private long durable = 0;
+
+    /**
+     * The lock that serializes group commits. An inserting thread that cannot
+     * immediately grab this lock waits for the in progress commit to finish,
+     * at which point it will usually find that its Write has already been
+     * made durable and it can return without forcing anything to disk.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * The Pages that are forced to disk by the current group commit.
+     */
+    @GuardedBy("syncLock")
+    private List<Page> syncingPages = null;
+
+    /**
+     * A runnable instance that flushes the content of each Page involved in
+     * the current group commit to disk.
      */
     private Runnable pageSync = new Runnable() {
 
         @Override
         public void run() {
-            currentPage.content.force();
+            for (Page page : syncingPages) {
+                page.content.force();
+            }
         }
 
     };
@@ -585,24 +663,34 @@ public final class Buffer extends Limbo {
         }
     }
 
+    /**
+     * Return the {@link Durability} policy that determines when the Buffer
+     * forces appended data to disk.
+     * 
+     * @return the Durability policy
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The Write is appended to the current Page under the Buffer's writeLock,
+     * but the fsync happens afterwards as part of a group commit so that
+     * concurrent inserters can share a single flush. If the
+     * {@link #getDurability() durability} is {@link Durability#PER_WRITE}, this
+     * method does not return until the bytes for {@code write} have been forced
+     * to disk. Otherwise, the sync may happen later.
+     * </p>
+     */
     @Override
     public boolean insert(Write write) {
-        writeLock.lock();
-        try {
-            boolean notify = pages.size() == 2 && currentPage.size == 0;
-            currentPage.append(write);
-            if(notify) {
-                synchronized (transportable) {
-                    transportable.notify();
-                }
-            }
-        }
-        catch (CapacityException e) {
-            addPage();
-            insert(write);
-        }
-        finally {
-            writeLock.unlock();
+        long sequence = append(write);
+        if(durability == Durability.PER_WRITE
+                || (durability == Durability.INTERVAL && unsyncedBytes
+                        .get() >= BUFFER_SYNC_SIZE)) {
+            sync(sequence);
         }
         return true;
     }
@@ -657,6 +745,44 @@ public final class Buffer extends Limbo {
         };
     }
 
+    @Override
+    protected Iterator<Write> iterator(final long record) {
+        return iterator(new Function<Page, List<Write>>() {
+
+            @Override
+            public List<Write> apply(Page page) {
+                return page.lookup(PrimaryKey.wrap(record));
+            }
+
+        });
+    }
+
+    @Override
+    protected Iterator<Write> iterator(final String key, final long record) {
+        return iterator(new Function<Page, List<Write>>() {
+
+            @Override
+            public List<Write> apply(Page page) {
+                return page.lookup(Text.wrapCached(key),
+                        PrimaryKey.wrap(record));
+            }
+
+        });
+    }
+
+    @Override
+    protected Iterator<Write> iterator(final String key,
+            final Operator operator, final Value... values) {
+        return iterator(new Function<Page, List<Write>>() {
+
+            @Override
+            public List<Write> apply(Page page) {
+                return page.lookup(Text.wrapCached(key), operator, values);
+            }
+
+        });
+    }
+
     @Override
     public Iterator<Write> reverseIterator() {
         return new Iterator<Write>() {
@@ -707,6 +833,32 @@ public final class Buffer extends Limbo {
         };
     }
 
+    @Override
+    protected Iterator<Write> reverseIterator(final long record) {
+        return reverseIterator(new Function<Page, List<Write>>() {
+
+            @Override
+            public List<Write> apply(Page page) {
+                return page.lookup(PrimaryKey.wrap(record));
+            }
+
+        });
+    }
+
+    @Override
+    protected Iterator<Write> reverseIterator(final String key,
+            final long record) {
+        return reverseIterator(new Function<Page, List<Write>>() {
+
+            @Override
+            public List<Write> apply(Page page) {
+                return page.lookup(Text.wrapCached(key),
+                        PrimaryKey.wrap(record));
+            }
+
+        });
+    }
+
     @Override
     public Set<Long> search(String key, String query) {
         transportLock.readLock().lock();
@@ -719,6 +871,23 @@ public final class Buffer extends Limbo {
         }
     }
 
+    /**
+     * <p>
+     * <strong>DO NOT CALL!!!</strong>
+     * </p>
+     * <p>
+     * Called by the parent {@link Engine} to set the {@link Durability} policy
+     * for the environment before the Buffer is started.
+     * </p>
+     * 
+     * @param durability
+     */
+    public void setDurability(Durability durability) {
+        Preconditions.checkState(!running,
+                "Cannot change the durability of a running Buffer");
+        this.durability = durability;
+    }
+
     /**
      * <p>
      * <strong>DO NOT CALL!!!</strong>
@@ -770,6 +939,20 @@ public final class Buffer extends Limbo {
             else {
                 currentPage = pages.get(pages.size() - 1);
             }
+            Logger.info("Buffer configured with {} durability", durability);
+            if(durability == Durability.INTERVAL) {
+                syncer = new Timer(threadNamePrefix + "-syncer", true);
+                syncer.scheduleAtFixedRate(new TimerTask() {
+
+                    @Override
+                    public void run() {
+                        if(unsyncedBytes.get() > 0) {
+                            sync();
+                        }
+                    }
+
+                }, BUFFER_SYNC_INTERVAL, BUFFER_SYNC_INTERVAL);
+            }
         }
     }
 
@@ -777,6 +960,13 @@ public final class Buffer extends Limbo {
     public void stop() {
         if(running) {
             running = false;
+            if(syncer != null) {
+                syncer.cancel();
+                syncer = null;
+            }
+            if(durability != Durability.PER_WRITE) {
+                sync();
+            }
             synchronized (transportable) {
                 transportable.notifyAll(); // notify to allow any waiting
                                            // threads to terminate
@@ -784,6 +974,15 @@ public final class Buffer extends Limbo {
         }
     }
 
+    /**
+     * Force all the data that has been appended to the Buffer to disk. This is
+     * only necessary if the {@link #getDurability() durability} is not
+     * {@link Durability#PER_WRITE}.
+     */
+    public void sync() {
+        sync(Long.MAX_VALUE);
+    }
+
     /**
      * {@inheritDoc} This method will transport at least one write from the
      * buffer, in chronological order.
@@ -795,17 +994,33 @@ public final class Buffer extends Limbo {
                 && transportLock.writeLock().tryLock()) {
             try {
                 Page page = pages.get(0);
-                int i = 0;
-                while (i < transportRate) {
-                    if(page.hasNext()) {
-                        destination.accept(page.next());
-                        page.remove();
-                        ++i;
+                if(destination instanceof Database) {
+                    // Hand the Database an entire batch so that it can index
+                    // all of the Writes with a single round of block inserts
+                    // instead of one round per Write.
+                    List<Write> batch = page.peek(transportRate);
+                    if(!batch.isEmpty()) {
+                        ((Database) destination).accept(batch);
+                        page.remove(batch.size());
                     }
-                    else {
+                    if(batch.size() < transportRate) {
                         ((Database) destination).triggerSync();
                         removePage();
-                        break;
+                    }
+                }
+                else {
+                    int i = 0;
+                    while (i < transportRate) {
+                        if(page.hasNext()) {
+                            destination.accept(page.next());
+                            page.remove();
+                            ++i;
+                        }
+                        else {
+                            ((Database) destination).triggerSync();
+                            removePage();
+                            break;
+                        }
                     }
                 }
                 timeOfLastTransport.set(Time.now());
@@ -877,6 +1092,33 @@ public final class Buffer extends Limbo {
         return pages.size() > 1 && pages.get(0).hasNext();
     }
 
+    /**
+     * Return the number of Writes, counting from the first one that was
+     * inserted since the Buffer started, that a group commit has forced to
+     * disk.
+     * 
+     * @return the number of durable Writes
+     */
+    protected long getDurableCount() { // visible for testing
+        syncLock.lock();
+        try {
+            return durable;
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of bytes that have been appended since the last group
+     * commit.
+     * 
+     * @return the number of unsynced bytes
+     */
+    protected long getUnsyncedBytes() { // visible for testing
+        return unsyncedBytes.get();
+    }
+
     @Override
     protected Map<Long, Set<TObject>> doExplore(long timestamp, String key,
             Operator operator, TObject... values) {
@@ -920,18 +1162,104 @@ public final class Buffer extends Limbo {
     }
 
     /**
-     * Remove the first page in the Buffer.
+     * Append {@code write} to the current Page, adding a new Page if
+     * necessary, and return the sequence number that must be made durable
+     * before the insert can be acknowledged.
+     * 
+     * @param write
+     * @return the sequence number for {@code write}
      */
-    private void removePage() {
+    private long append(Write write) {
         writeLock.lock();
         try {
-            pages.remove(0).delete();
+            boolean notify = pages.size() == 2 && currentPage.size == 0;
+            currentPage.append(write);
+            if(!unsyncedPages.contains(currentPage)) {
+                unsyncedPages.add(currentPage);
+            }
+            if(notify) {
+                synchronized (transportable) {
+                    transportable.notify();
+                }
+            }
+            unsyncedBytes.addAndGet(write.size() + 4);
+            return ++appended;
+        }
+        catch (CapacityException e) {
+            addPage();
+            return append(write);
         }
         finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Return an iterator that traverses, in chronological order, the Writes
+     * that each Page returns from the {@code lookup} function. Since each Page
+     * indexes its Writes, this lets point reads avoid touching Writes that are
+     * not relevant.
+     * 
+     * @param lookup
+     * @return the iterator
+     */
+    private Iterator<Write> iterator(final Function<Page, List<Write>> lookup) {
+        return Iterators.concat(Iterators.transform(pages.iterator(),
+                new Function<Page, Iterator<Write>>() {
+
+                    @Override
+                    public Iterator<Write> apply(Page page) {
+                        return lookup.apply(page).iterator();
+                    }
+
+                }));
+    }
+
+    /**
+     * Return the reverse order equivalent of {@link #iterator(Function)}.
+     * 
+     * @param lookup
+     * @return the iterator
+     */
+    private Iterator<Write> reverseIterator(
+            final Function<Page, List<Write>> lookup) {
+        return Iterators.concat(Iterators.transform(Lists.reverse(pages)
+                .iterator(), new Function<Page, Iterator<Write>>() {
+
+            @Override
+            public Iterator<Write> apply(Page page) {
+                return Lists.reverse(lookup.apply(page)).iterator();
+            }
+
+        }));
+    }
+
+    /**
+     * Remove the first page in the Buffer.
+     */
+    private void removePage() {
+        // NOTE: The syncLock must be grabbed before the writeLock to match the
+        // lock order in #sync(long) and to prevent a group commit from forcing
+        // the content of a page that has already been unmapped.
+        syncLock.lock();
+        try {
+            writeLock.lock();
+            try {
+                Page page = pages.remove(0);
+                unsyncedPages.remove(page); // all of its writes have been
+                                            // transported and synced into the
+                                            // Database
+                page.delete();
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
     /**
      * Scale back the number of items that are transported in a single cycle.
      */
@@ -940,6 +1268,42 @@ public final class Buffer extends Limbo {
         transportThreadSleepTimeInMs = MAX_TRANSPORT_THREAD_SLEEP_TIME_IN_MS;
     }
 
+    /**
+     * Block until all the Writes up to and including the {@code sequence}
+     * number returned from {@link #append(Write)} are durable. Passing
+     * {@link Long#MAX_VALUE} forces everything that has been appended so far.
+     * If no other thread is already doing so, the calling thread performs a
+     * group commit that forces every unsynced Page and the {@link #inventory}
+     * to disk on behalf of all the Writes that have been appended so far.
+     * 
+     * @param sequence
+     */
+    private void sync(long sequence) {
+        syncLock.lock();
+        try {
+            if(sequence > durable) {
+                long target;
+                writeLock.lock();
+                try {
+                    target = appended;
+                    syncingPages = Lists.newArrayList(unsyncedPages);
+                    unsyncedPages.clear();
+                    unsyncedBytes.set(0);
+                }
+                finally {
+                    writeLock.unlock();
+                }
+                ConcourseExecutors.executeAndAwaitTermination(
+                        threadNamePrefix, pageSync, inventorySync);
+                syncingPages = null;
+                durable = target;
+            }
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
     /**
      * A {@link Page} represents a granular section of the {@link Buffer}. Pages
      * are an append-only iterator over a sequence of {@link Write} objects.
@@ -972,6 +1336,32 @@ public final class Buffer extends Limbo {
         private final BloomFilter filter = BloomFilter
                 .create(PER_PAGE_BLOOM_FILTER_CAPACITY);
 
+        /**
+         * An index from each record to the positions in {@link #writes} of the
+         * Writes that involve the record. Since the Page is append-only, the
+         * positions for each record are always in chronological order.
+         */
+        private final ListMultimap<PrimaryKey, Integer> recordIndex = ArrayListMultimap
+                .create();
+
+        /**
+         * An index from each key/record composite to the positions in
+         * {@link #writes} of the Writes that involve the key in the record.
+         * Since the Page is append-only, the positions for each composite are
+         * always in chronological order.
+         */
+        private final ListMultimap<Composite, Integer> keyRecordIndex = ArrayListMultimap
+                .create();
+
+        /**
+         * An index from each key to a map, sorted by value, from each value
+         * stored for the key to the positions in {@link #writes} of the Writes
+         * that involve the key and value. This lets finds jump directly to the
+         * slice of values that match a range operator.
+         */
+        private final Map<Text, NavigableMap<Value, List<Integer>>> valueIndex = Maps
+                .newHashMap();
+
         /**
          * The append-only buffer that contains the content of the backing file.
          * Data is never deleted from the buffer, until the entire Page is
@@ -1053,6 +1443,11 @@ public final class Buffer extends Limbo {
          * routed to this method, we grab a writeLock so that we don't have a
          * situation where the currentPage is ever changed in the middle of a
          * read.
+         * <p>
+         * This method does not force the content to disk. The caller is
+         * responsible for making the write durable using the Buffer's group
+         * commit.
+         * </p>
          * 
          * @param write
          * @throws CapacityException - if the size of {@code write} is
@@ -1068,8 +1463,6 @@ public final class Buffer extends Limbo {
                     content.putInt(write.size());
                     write.copyTo(content);
                     inventory.add(write.getRecord().longValue());
-                    ConcourseExecutors.executeAndAwaitTermination(
-                            threadNamePrefix, pageSync, inventorySync);
                 }
                 else {
                     throw CapacityException.INSTANCE;
@@ -1211,7 +1604,8 @@ public final class Buffer extends Limbo {
             Locks.lockIfCondition(pageLock.readLock(), this == currentPage);
             try {
                 boolean exists = false;
-                Iterator<Write> it = iterator();
+                Iterator<Write> it = lookup(write.getKey(), write.getRecord())
+                        .iterator();
                 while (it.hasNext()) {
                     Write current = it.next();
                     if(timestamp >= current.getVersion()) {
@@ -1231,6 +1625,93 @@ public final class Buffer extends Limbo {
             }
         }
 
+        /**
+         * Return, in chronological order, the Writes on this Page that involve
+         * {@code record} and have not been removed.
+         * 
+         * @param record
+         * @return the Writes
+         */
+        public List<Write> lookup(PrimaryKey record) {
+            return lookup(recordIndex, record);
+        }
+
+        /**
+         * Return, in chronological order, the Writes on this Page that involve
+         * {@code key} in {@code record} and have not been removed.
+         * 
+         * @param key
+         * @param record
+         * @return the Writes
+         */
+        public List<Write> lookup(Text key, PrimaryKey record) {
+            return lookup(keyRecordIndex, Composite.create(key, record));
+        }
+
+        /**
+         * Return the Writes on this Page for {@code key} whose values might
+         * match {@code operator} in relation to {@code values} and have not
+         * been removed. The Writes for each distinct value are returned in
+         * chronological order.
+         * 
+         * @param key
+         * @param operator
+         * @param values
+         * @return the Writes
+         */
+        public List<Write> lookup(Text key, Operator operator,
+                Value... values) {
+            Locks.lockIfCondition(pageLock.readLock(), this == currentPage);
+            try {
+                NavigableMap<Value, List<Integer>> index = valueIndex.get(key);
+                if(index == null) {
+                    return Collections.emptyList();
+                }
+                Map<Value, List<Integer>> slice;
+                Value v1 = values[0];
+                switch (operator) {
+                case EQUALS:
+                    slice = index.subMap(v1, true, v1, true);
+                    break;
+                case GREATER_THAN:
+                    slice = index.tailMap(v1, false);
+                    break;
+                case GREATER_THAN_OR_EQUALS:
+                    slice = index.tailMap(v1, true);
+                    break;
+                case LESS_THAN:
+                    slice = index.headMap(v1, false);
+                    break;
+                case LESS_THAN_OR_EQUALS:
+                    slice = index.headMap(v1, true);
+                    break;
+                case BETWEEN:
+                    Preconditions.checkArgument(values.length > 1);
+                    Value v2 = values[1];
+                    slice = v1.compareTo(v2) <= 0 ? index.subMap(v1, true, v2,
+                            false) : Collections
+                            .<Value, List<Integer>> emptyMap();
+                    break;
+                default:
+                    slice = index;
+                    break;
+                }
+                List<Write> snapshot = Lists.newArrayList();
+                for (List<Integer> positions : slice.values()) {
+                    for (int position : positions) {
+                        if(position >= head) {
+                            snapshot.add(writes[position]);
+                        }
+                    }
+                }
+                return snapshot;
+            }
+            finally {
+                Locks.unlockIfCondition(pageLock.readLock(),
+                        this == currentPage);
+            }
+        }
+
         /**
          * Return {@code true} if the Page <em>might</em> have a Write equal to
          * {@code write}. If this function returns true, the caller should check
@@ -1305,6 +1786,46 @@ public final class Buffer extends Limbo {
             }
         }
 
+        /**
+         * Return up to {@code count} Writes starting at index {@link #head} in
+         * {@link #writes}. Like {@link #next()}, this method does not advance
+         * the head, so the same Writes are returned until
+         * {@link #remove(int)} is called.
+         * 
+         * @param count
+         * @return the Writes at the head of the Page
+         */
+        public List<Write> peek(int count) {
+            Locks.lockIfCondition(pageLock.readLock(), this == currentPage);
+            try {
+                int end = Math.min(size, head + count);
+                return Lists.newArrayList(Arrays.asList(writes).subList(head,
+                        Math.max(head, end)));
+            }
+            finally {
+                Locks.unlockIfCondition(pageLock.readLock(),
+                        this == currentPage);
+            }
+        }
+
+        /**
+         * Simulates the removal of {@code count} Writes from the head of the
+         * Page in a single step.
+         * 
+         * @param count
+         * @see #remove()
+         */
+        public void remove(int count) {
+            Locks.lockIfCondition(pageLock.writeLock(), this == currentPage);
+            try {
+                head = Math.min(size, head + count);
+            }
+            finally {
+                Locks.unlockIfCondition(pageLock.writeLock(),
+                        this == currentPage);
+            }
+        }
+
         /**
          * Return an iterator that traverses the writes on the Page in reverse.
          * 
@@ -1409,8 +1930,37 @@ public final class Buffer extends Limbo {
         }
 
         /**
-         * Insert {@code write} into the list of {@link #writes} and increment
-         * the {@link #size} counter.
+         * Return a snapshot of the Writes whose positions are mapped from
+         * {@code token} in {@code index}, ignoring those that have already
+         * been removed from the Page.
+         * 
+         * @param index
+         * @param token
+         * @return the Writes
+         */
+        private <K> List<Write> lookup(ListMultimap<K, Integer> index, K token) {
+            Locks.lockIfCondition(pageLock.readLock(), this == currentPage);
+            try {
+                List<Integer> positions = index.get(token);
+                List<Write> snapshot = Lists
+                        .newArrayListWithCapacity(positions.size());
+                for (int position : positions) {
+                    if(position >= head) {
+                        snapshot.add(writes[position]);
+                    }
+                }
+                return snapshot;
+            }
+            finally {
+                Locks.unlockIfCondition(pageLock.readLock(),
+                        this == currentPage);
+            }
+        }
+
+        /**
+         * Insert {@code write} into the list of {@link #writes}, add its
+         * position to the {@link #recordIndex}, {@link #keyRecordIndex} and
+         * {@link #valueIndex}, and increment the {@link #size} counter.
          * 
          * @param write
          * @throws CapacityException
@@ -1423,6 +1973,22 @@ public final class Buffer extends Limbo {
                 // the bloom filter hashing
                 filter.putCached(write.getRecord(), write.getKey(),
                         write.getValue());
+                recordIndex.put(write.getRecord(), size);
+                keyRecordIndex.put(
+                        Composite.create(write.getKey(), write.getRecord()),
+                        size);
+                NavigableMap<Value, List<Integer>> values = valueIndex
+                        .get(write.getKey());
+                if(values == null) {
+                    values = Maps.newTreeMap(Value.Sorter.INSTANCE);
+                    valueIndex.put(write.getKey(), values);
+                }
+                List<Integer> positions = values.get(write.getValue());
+                if(positions == null) {
+                    positions = Lists.newArrayListWithCapacity(1);
+                    values.put(write.getValue(), positions);
+                }
+                positions.add(size);
                 writes[size] = write;
                 ++size;
             }
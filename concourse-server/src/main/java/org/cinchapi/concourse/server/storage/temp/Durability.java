@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.temp;
+
+/**
+ * The policies that determine when the {@link Buffer} forces appended data
+ * (and the inventory) to disk.
+ * 
+ * @author jnelson
+ */
+public enum Durability {
+
+    /**
+     * Force data to disk before acknowledging each write. Concurrent writers
+     * share fsyncs using a group commit, but no write is ever acknowledged
+     * before it is durable.
+     */
+    PER_WRITE,
+
+    /**
+     * Force data to disk in the background every
+     * {@link org.cinchapi.concourse.server.GlobalState#BUFFER_SYNC_INTERVAL
+     * BUFFER_SYNC_INTERVAL} milliseconds or as soon as
+     * {@link org.cinchapi.concourse.server.GlobalState#BUFFER_SYNC_SIZE
+     * BUFFER_SYNC_SIZE} bytes have been appended since the last sync,
+     * whichever comes first. A crash may lose the writes that were appended
+     * since the last sync.
+     */
+    INTERVAL,
+
+    /**
+     * Never explicitly force data to disk and leave flushing to the operating
+     * system. Data is only forced when the Buffer is stopped or when
+     * {@link Buffer#sync()} is called (i.e. from JMX).
+     */
+    OS
+}
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -86,16 +87,19 @@ public abstract class Limbo extends BaseStore implements
 
     /**
      * Return {@code true} if {@code input} matches {@code operator} in relation
-     * to {@code values}.
+     * to {@code values}. The {@code values} should be wrapped (and the
+     * {@code regex} compiled) once per query instead of once per comparison.
      * 
      * @param input
      * @param operator
      * @param values
+     * @param regex the compiled pattern if {@code operator} is
+     *            {@link Operator#REGEX} or {@link Operator#NOT_REGEX}
      * @return {@code true} if {@code input} matches
      */
     private static boolean matches(Value input, Operator operator,
-            TObject... values) {
-        Value v1 = Value.wrap(values[0]);
+            Value[] values, @Nullable Pattern regex) {
+        Value v1 = values[0];
         switch (operator) {
         case EQUALS:
             return v1.equals(input);
@@ -111,14 +115,12 @@ public abstract class Limbo extends BaseStore implements
             return v1.compareTo(input) >= 0;
         case BETWEEN:
             Preconditions.checkArgument(values.length > 1);
-            Value v2 = Value.wrap(values[1]);
+            Value v2 = values[1];
             return v1.compareTo(input) <= 0 && v2.compareTo(input) > 0;
         case REGEX:
-            return input.getObject().toString()
-                    .matches(v1.getObject().toString());
+            return regex.matcher(input.getObject().toString()).matches();
         case NOT_REGEX:
-            return !input.getObject().toString()
-                    .matches(v1.getObject().toString());
+            return !regex.matcher(input.getObject().toString()).matches();
         default:
             throw new UnsupportedOperationException();
         }
@@ -146,7 +148,7 @@ public abstract class Limbo extends BaseStore implements
     @Override
     public Map<Long, String> audit(long record) {
         Map<Long, String> audit = Maps.newTreeMap();
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(record);
         while (it.hasNext()) {
             Write write = it.next();
             if(write.getRecord().longValue() == record) {
@@ -160,7 +162,7 @@ public abstract class Limbo extends BaseStore implements
     @Override
     public Map<Long, String> audit(String key, long record) {
         Map<Long, String> audit = Maps.newTreeMap();
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(key, record);
         while (it.hasNext()) {
             Write write = it.next();
             if(write.getKey().toString().equals(key)
@@ -202,7 +204,7 @@ public abstract class Limbo extends BaseStore implements
      */
     public Map<String, Set<TObject>> browse(long record, long timestamp,
             Map<String, Set<TObject>> context) {
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(record);
         while (it.hasNext()) {
             Write write = it.next();
             if(write.getRecord().longValue() == record
@@ -293,7 +295,7 @@ public abstract class Limbo extends BaseStore implements
      */
     public Set<String> describe(long record, long timestamp,
             Map<String, Set<TObject>> context) {
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(record);
         while (it.hasNext()) {
             Write write = it.next();
             if(write.getRecord().longValue() == record
@@ -338,25 +340,31 @@ public abstract class Limbo extends BaseStore implements
      */
     public Map<Long, Set<TObject>> explore(Map<Long, Set<TObject>> context,
             long timestamp, String key, Operator operator, TObject... values) {
-        Iterator<Write> it = iterator();
+        Value[] wrapped = new Value[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            wrapped[i] = Value.wrap(values[i]);
+        }
+        Pattern regex = operator == Operator.REGEX
+                || operator == Operator.NOT_REGEX ? Pattern.compile(wrapped[0]
+                .getObject().toString()) : null;
+        Iterator<Write> it = iterator(key, operator, wrapped);
         while (it.hasNext()) {
             Write write = it.next();
             long record = write.getRecord().longValue();
-            if(write.getVersion() <= timestamp) {
-                if(write.getKey().toString().equals(key)
-                        && matches(write.getValue(), operator, values)) {
-                    if(write.getType() == Action.ADD) {
-                        MultimapViews.put(context, record, write.getValue()
-                                .getTObject());
-                    }
-                    else {
-                        MultimapViews.remove(context, record, write.getValue()
-                                .getTObject());
-                    }
+            // NOTE: The iterator is only chronological for each distinct
+            // value, so we cannot stop at the first Write that is newer than
+            // the timestamp
+            if(write.getVersion() <= timestamp
+                    && write.getKey().toString().equals(key)
+                    && matches(write.getValue(), operator, wrapped, regex)) {
+                if(write.getType() == Action.ADD) {
+                    MultimapViews.put(context, record, write.getValue()
+                            .getTObject());
+                }
+                else {
+                    MultimapViews.remove(context, record, write.getValue()
+                            .getTObject());
                 }
-            }
-            else {
-                break;
             }
         }
         return TMaps.asSortedMap(context);
@@ -385,7 +393,7 @@ public abstract class Limbo extends BaseStore implements
      */
     public Set<TObject> fetch(String key, long record, long timestamp,
             Set<TObject> context) {
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(key, record);
         while (it.hasNext()) {
             Write write = it.next();
             if(write.getVersion() <= timestamp) {
@@ -426,7 +434,8 @@ public abstract class Limbo extends BaseStore implements
     @Override
     public long getVersion(String key, long record) {
         key = Strings.nullToEmpty(key);
-        Iterator<Write> it = reverseIterator();
+        Iterator<Write> it = Strings.isNullOrEmpty(key) ? reverseIterator(record)
+                : reverseIterator(key, record);
         while (it.hasNext()) {
             Write write = it.next();
             if(record == write.getRecord().longValue()
@@ -469,6 +478,87 @@ public abstract class Limbo extends BaseStore implements
      */
     public abstract Iterator<Write> reverseIterator();
 
+    /**
+     * Return an iterator that traverses, in chronological order, a sequence
+     * of Writes that is guaranteed to include every Write for
+     * {@code record}. The iterator may also return Writes that do not involve
+     * {@code record}, so callers must still filter.
+     * <p>
+     * By default, this method returns the {@link #iterator()} for the entire
+     * store, but a subclass that indexes its Writes should override it so
+     * that point reads only touch the relevant data.
+     * </p>
+     * 
+     * @param record
+     * @return the iterator
+     */
+    protected Iterator<Write> iterator(long record) {
+        return iterator();
+    }
+
+    /**
+     * Return an iterator that traverses, in chronological order, a sequence
+     * of Writes that is guaranteed to include every Write for {@code key} in
+     * {@code record}. The iterator may also return Writes that do not involve
+     * {@code key} in {@code record}, so callers must still filter.
+     * <p>
+     * By default, this method returns the {@link #iterator()} for the entire
+     * store, but a subclass that indexes its Writes should override it so
+     * that point reads only touch the relevant data.
+     * </p>
+     * 
+     * @param key
+     * @param record
+     * @return the iterator
+     */
+    protected Iterator<Write> iterator(String key, long record) {
+        return iterator();
+    }
+
+    /**
+     * Return an iterator that traverses a sequence of Writes that is
+     * guaranteed to include every Write for {@code key} with a value that
+     * matches {@code operator} in relation to {@code values}. The Writes for
+     * each distinct value are returned in chronological order, but there is no
+     * ordering guarantee across values. The iterator may also return Writes
+     * that do not match, so callers must still filter.
+     * <p>
+     * By default, this method returns the {@link #iterator()} for the entire
+     * store, but a subclass that indexes its Writes should override it so
+     * that finds only touch the relevant data.
+     * </p>
+     * 
+     * @param key
+     * @param operator
+     * @param values
+     * @return the iterator
+     */
+    protected Iterator<Write> iterator(String key, Operator operator,
+            Value... values) {
+        return iterator();
+    }
+
+    /**
+     * Return the reverse order equivalent of {@link #iterator(long)}.
+     * 
+     * @param record
+     * @return the iterator
+     */
+    protected Iterator<Write> reverseIterator(long record) {
+        return reverseIterator();
+    }
+
+    /**
+     * Return the reverse order equivalent of {@link #iterator(String, long)}.
+     * 
+     * @param key
+     * @param record
+     * @return the iterator
+     */
+    protected Iterator<Write> reverseIterator(String key, long record) {
+        return reverseIterator();
+    }
+
     @Override
     public Set<Long> search(String key, String query) {
         Map<Long, Set<Value>> rtv = Maps.newHashMap();
@@ -589,7 +679,8 @@ public abstract class Limbo extends BaseStore implements
      *         {@code timestamp}
      */
     public boolean verify(Write write, long timestamp, boolean exists) {
-        Iterator<Write> it = iterator();
+        Iterator<Write> it = iterator(write.getKey().toString(), write
+                .getRecord().longValue());
         while (it.hasNext()) {
             Write stored = it.next();
             if(stored.getVersion() <= timestamp) {
@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.cache;
+
+import org.cinchapi.concourse.ConcourseBaseTest;
+import org.cinchapi.concourse.server.io.Byteable;
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.storage.cache.BloomFilter;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BloomFilter}.
+ * 
+ * @author jnelson
+ */
+public class BloomFilterTest extends ConcourseBaseTest {
+
+    private String file;
+
+    @Override
+    protected void beforeEachTest() {
+        super.beforeEachTest();
+        file = TestData.getTemporaryTestFile();
+    }
+
+    @Override
+    protected void afterEachTest() {
+        super.afterEachTest();
+        if(FileSystem.hasFile(file)) {
+            FileSystem.deleteFile(file);
+        }
+    }
+
+    @Test
+    public void testBlockedFilterHasNoFalseNegativesAfterOpen() {
+        int insertions = TestData.getScaleCount() * 10;
+        BloomFilter filter = BloomFilter.createBlocked(file, insertions);
+        for (int i = 0; i < insertions; i++) {
+            filter.put(PrimaryKey.wrap(i), TestData.getText());
+            filter.put(PrimaryKey.wrap(i));
+        }
+        filter.sync();
+        filter = BloomFilter.open(file);
+        for (int i = 0; i < insertions; i++) {
+            Assert.assertTrue(filter.mightContain(PrimaryKey.wrap(i)));
+        }
+    }
+
+    @Test
+    public void testBlockedFilterFalsePositiveRate() {
+        int insertions = 10000;
+        BloomFilter filter = BloomFilter.createBlocked(file, insertions);
+        for (int i = 0; i < insertions; i++) {
+            filter.put(PrimaryKey.wrap(i));
+        }
+        filter.sync();
+        filter = BloomFilter.open(file);
+        int falsePositives = 0;
+        for (int i = insertions; i < insertions * 2; i++) {
+            if(filter.mightContain(PrimaryKey.wrap(i))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue(falsePositives < insertions * 0.05);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotPutIntoMappedFilter() {
+        BloomFilter filter = BloomFilter.createBlocked(file, 10);
+        filter.put(PrimaryKey.wrap(1));
+        filter.sync();
+        BloomFilter.open(file).put(PrimaryKey.wrap(2));
+    }
+
+    @Test
+    public void testOpenSerializedFilter() {
+        Byteable[] byteables = new Byteable[] { TestData.getText(),
+                TestData.getValue(), TestData.getPrimaryKey() };
+        BloomFilter filter = BloomFilter.create(file, 100);
+        filter.put(byteables);
+        filter.sync();
+        filter = BloomFilter.open(file);
+        Assert.assertTrue(filter.mightContain(byteables));
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ChannelWriter}.
+ * 
+ * @author jnelson
+ */
+public class ChannelWriterTest {
+
+    @Test
+    public void testWritesSameBytesAsHeapBuffer() {
+        byte[] bytes = new byte[ChannelWriter.BUFFER_SIZE * 3 + 17];
+        new Random().nextBytes(bytes);
+        Text text = Text.wrap(TestData.getString());
+        ByteBuffer expected = ByteBuffer.allocate(bytes.length + text.size()
+                + 13);
+        expected.put((byte) 7);
+        expected.put(bytes);
+        expected.putInt(42);
+        expected.put(text.getBytes());
+        expected.putLong(Long.MAX_VALUE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(out));
+        writer.put((byte) 7);
+        writer.put(bytes, 0, bytes.length);
+        writer.putInt(42);
+        writer.put(text);
+        writer.putLong(Long.MAX_VALUE);
+        Assert.assertEquals(expected.capacity(), writer.position());
+        writer.release();
+        Assert.assertArrayEquals(expected.array(), out.toByteArray());
+    }
+
+    @Test
+    public void testWriteByteableLargerThanBuffer() {
+        Text text = Text.wrap(TestData.getString());
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() <= ChannelWriter.BUFFER_SIZE) {
+            sb.append(text);
+        }
+        Text large = Text.wrap(sb.toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(out));
+        writer.putInt(1);
+        writer.put(large);
+        writer.release();
+        ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray());
+        Assert.assertEquals(1, bytes.getInt());
+        Assert.assertEquals(large, Text.fromByteBuffer(bytes.slice()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotWriteAfterRelease() {
+        ChannelWriter writer = new ChannelWriter(
+                Channels.newChannel(new ByteArrayOutputStream()));
+        writer.release();
+        writer.putInt(1);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.io;
+
+import java.util.Random;
+
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Lz4}.
+ * 
+ * @author jnelson
+ */
+public class Lz4Test {
+
+    @Test
+    public void testRoundTripEmpty() {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void testRoundTripRandomBytes() {
+        byte[] bytes = new byte[TestData.getScaleCount() * 100];
+        new Random().nextBytes(bytes);
+        assertRoundTrip(bytes);
+    }
+
+    @Test
+    public void testRoundTripRepetitiveBytes() {
+        String[] words = { TestData.getString(), TestData.getString(),
+                TestData.getString() };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < TestData.getScaleCount() * 10; i++) {
+            sb.append(words[i % words.length]).append(i % 7);
+        }
+        byte[] bytes = sb.toString().getBytes();
+        byte[] compressed = assertRoundTrip(bytes);
+        Assert.assertTrue(compressed.length < bytes.length);
+    }
+
+    @Test
+    public void testRoundTripLongRun() {
+        byte[] bytes = new byte[100000]; // exercises multi-byte match lengths
+        bytes[50000] = 1;
+        byte[] compressed = assertRoundTrip(bytes);
+        Assert.assertTrue(compressed.length < 1000);
+    }
+
+    @Test
+    public void testCompressOffset() {
+        byte[] bytes = "xxxxxthe quick brown fox jumps over the quick brown dog"
+                .getBytes();
+        byte[] compressed = Lz4.compress(bytes, 5, bytes.length - 5);
+        byte[] decompressed = new byte[bytes.length - 5];
+        Lz4.decompress(compressed, 0, compressed.length, decompressed);
+        Assert.assertEquals(new String(bytes).substring(5), new String(
+                decompressed));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecompressIntoWrongSizeFails() {
+        byte[] bytes = "the quick brown fox jumps over the lazy dog".getBytes();
+        byte[] compressed = Lz4.compress(bytes, 0, bytes.length);
+        Lz4.decompress(compressed, 0, compressed.length,
+                new byte[bytes.length + 1]);
+    }
+
+    /**
+     * Assert that {@code bytes} are the same after they are compressed and
+     * decompressed.
+     * 
+     * @param bytes
+     * @return the compressed bytes
+     */
+    private static byte[] assertRoundTrip(byte[] bytes) {
+        byte[] compressed = Lz4.compress(bytes, 0, bytes.length);
+        byte[] decompressed = new byte[bytes.length];
+        Lz4.decompress(compressed, 0, compressed.length, decompressed);
+        Assert.assertArrayEquals(bytes, decompressed);
+        return compressed;
+    }
+
+}
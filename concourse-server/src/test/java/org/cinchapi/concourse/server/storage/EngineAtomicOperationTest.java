@@ -143,6 +143,7 @@ public class EngineAtomicOperationTest extends AtomicOperationTest {
 
     @Override
     protected void cleanup(Store store) {
+        destination.stop();
         FileSystem.deleteDirectory(directory);
     }
 
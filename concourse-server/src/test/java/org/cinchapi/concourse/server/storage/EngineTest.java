@@ -154,6 +154,7 @@ public class EngineTest extends BufferedStoreTest {
                     Convert.javaToThrift(i)).contains(
                     Integer.valueOf(i).longValue()));
         }
+        engine.stop();
     }
 
     @Test
@@ -246,6 +247,7 @@ public class EngineTest extends BufferedStoreTest {
 
     @Override
     protected void cleanup(Store store) {
+        store.stop();
         FileSystem.deleteDirectory(directory);
 
     }
@@ -53,6 +53,7 @@ public class TransactionTest extends AtomicOperationTest {
 
     @Override
     protected void cleanup(Store store) {
+        destination.stop();
         FileSystem.deleteDirectory(directory);
     }
 
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Unit tests for the {@link BlockFileCache}.
+ * 
+ * @author jnelson
+ */
+public class BlockFileCacheTest {
+
+    private BlockFileCache cache;
+    private String file;
+
+    @Rule
+    public TestWatcher watcher = new TestWatcher() {
+
+        @Override
+        protected void finished(Description desc) {
+            FileSystem.deleteFile(file);
+        }
+
+        @Override
+        protected void starting(Description desc) {
+            file = TestData.getTemporaryTestFile();
+            cache = new BlockFileCache(1024 * 1024);
+        }
+
+    };
+
+    @Test
+    public void testReadSlice() {
+        write(file, 100);
+        ByteBuffer bytes = cache.read(file, 10, 5);
+        Assert.assertEquals(5, bytes.remaining());
+        for (int i = 10; i < 15; i++) {
+            Assert.assertEquals(i, bytes.get());
+        }
+    }
+
+    @Test
+    public void testRepeatedReadsShareMapping() {
+        write(file, 100);
+        cache.read(file, 0, 10);
+        cache.read(file, 50, 10);
+        cache.read(file, 90, 10);
+        Assert.assertTrue(cache.getStats().contains("2 hits, 1 misses"));
+    }
+
+    @Test
+    public void testReadAfterInvalidateSeesNewContent() {
+        write(file, 100);
+        Assert.assertEquals(100, cache.read(file).remaining());
+        cache.invalidate(file);
+        FileSystem.deleteFile(file);
+        write(file, 50);
+        Assert.assertEquals(50, cache.read(file).remaining());
+    }
+
+    /**
+     * Write {@code count} bytes, each of which is equal to its position, to
+     * {@code file}.
+     * 
+     * @param file
+     * @param count
+     */
+    private static void write(String file, int count) {
+        ByteBuffer bytes = ByteBuffer.allocate(count);
+        for (int i = 0; i < count; i++) {
+            bytes.put((byte) i);
+        }
+        bytes.flip();
+        FileChannel channel = FileSystem.getFileChannel(file);
+        try {
+            channel.write(bytes);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            FileSystem.closeFileChannel(channel);
+        }
+    }
+
+}
@@ -24,10 +24,14 @@
 package org.cinchapi.concourse.server.storage.db;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.cinchapi.concourse.ConcourseBaseTest;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
 import org.cinchapi.concourse.time.Time;
 import org.cinchapi.concourse.util.TestData;
 import org.junit.Assert;
@@ -36,6 +40,8 @@ import org.junit.Test;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
 
+import com.google.common.base.Throwables;
+
 /**
  * Unit tests for {@link BlockIndex}.
  * 
@@ -92,6 +98,123 @@ public class BlockIndexTest extends ConcourseBaseTest {
         }
     }
 
+    @Test
+    public void testBlockIndexFindsAllEntriesAfterReopen() {
+        int count = TestData.getScaleCount() * 2;
+        BlockIndex index = BlockIndex.create(file, count);
+        for (int i = 0; i < count; i++) {
+            PrimaryKey key = PrimaryKey.wrap(i);
+            Text text = Text.wrap(Integer.toString(i));
+            index.putStart(i, key);
+            index.putEnd(i * 2, key);
+            index.putStart(i * 3, key, text);
+            index.putEnd(i * 4, key, text);
+        }
+        index.sync();
+        index = BlockIndex.open(file);
+        for (int i = 0; i < count; i++) {
+            PrimaryKey key = PrimaryKey.wrap(i);
+            Text text = Text.wrap(Integer.toString(i));
+            Assert.assertEquals(i, index.getStart(key));
+            Assert.assertEquals(i * 2, index.getEnd(key));
+            Assert.assertEquals(i * 3, index.getStart(key, text));
+            Assert.assertEquals(i * 4, index.getEnd(key, text));
+        }
+        Assert.assertEquals(BlockIndex.NO_ENTRY,
+                index.getStart(PrimaryKey.wrap(count)));
+        Assert.assertEquals(BlockIndex.NO_ENTRY,
+                index.getEnd(PrimaryKey.wrap(count)));
+    }
+
+    @Test
+    public void testBlockIndexVersionRanges() {
+        BlockIndex index = BlockIndex.create(file, 2);
+        PrimaryKey a = PrimaryKey.wrap(1);
+        PrimaryKey b = PrimaryKey.wrap(2);
+        index.putStart(0, a);
+        index.putVersion(10, a);
+        index.putVersion(20, a);
+        index.putEnd(9, a);
+        index.putStart(10, b);
+        index.putVersion(30, b);
+        index.putEnd(19, b);
+        index.sync();
+        index = BlockIndex.open(file);
+        Assert.assertEquals(10, index.getMinVersion());
+        Assert.assertEquals(30, index.getMaxVersion());
+        Assert.assertEquals(10, index.getMinVersion(a));
+        Assert.assertEquals(20, index.getMaxVersion(a));
+        Assert.assertEquals(30, index.getMinVersion(b));
+        Assert.assertEquals(30, index.getMaxVersion(b));
+        Assert.assertEquals(Long.MAX_VALUE,
+                index.getMinVersion(PrimaryKey.wrap(3)));
+    }
+
+    @Test
+    public void testBlockIndexFindsNestedEntriesInPositionOrder() {
+        BlockIndex index = BlockIndex.create(file, 5);
+        Text a = Text.wrap("a");
+        Text b = Text.wrap("b");
+        PrimaryKey k1 = PrimaryKey.wrap(1);
+        PrimaryKey k2 = PrimaryKey.wrap(2);
+        index.putStart(0, a);
+        index.putStart(5, a, k1);
+        index.putEnd(19, a, k1);
+        index.putStart(20, a, k2);
+        index.putEnd(49, a, k2);
+        index.putEnd(49, a);
+        index.putStart(50, b);
+        index.putStart(55, b, k1);
+        index.putEnd(99, b, k1);
+        index.putEnd(99, b);
+        Assert.assertNull(index.getNested(a));
+        index.sync();
+        index = BlockIndex.open(file);
+        BlockIndex.Nested nested = index.getNested(a);
+        Assert.assertEquals(2, nested.size());
+        Assert.assertEquals(5, nested.getStart(0));
+        Assert.assertEquals(19, nested.getEnd(0));
+        Assert.assertEquals(20, nested.getStart(1));
+        Assert.assertEquals(49, nested.getEnd(1));
+        nested = index.getNested(b);
+        Assert.assertEquals(1, nested.size());
+        Assert.assertEquals(55, nested.getStart(0));
+        Assert.assertEquals(99, nested.getEnd(0));
+        Assert.assertEquals(0, index.getNested(Text.wrap("c")).size());
+    }
+
+    @Test
+    public void testBlockIndexReadsLegacyFormat() {
+        int count = TestData.getScaleCount() * 2;
+        ByteBuffer bytes = ByteBuffer.allocate(count * 20);
+        for (int i = 0; i < count; i++) {
+            PrimaryKey key = PrimaryKey.wrap(i);
+            bytes.putInt(8 + key.size());
+            bytes.putInt(i);
+            bytes.putInt(i * 2);
+            key.copyTo(bytes);
+        }
+        bytes.flip();
+        FileChannel channel = FileSystem.getFileChannel(file);
+        try {
+            channel.write(bytes);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            FileSystem.closeFileChannel(channel);
+        }
+        BlockIndex index = BlockIndex.open(file);
+        for (int i = 0; i < count; i++) {
+            PrimaryKey key = PrimaryKey.wrap(i);
+            Assert.assertEquals(i, index.getStart(key));
+            Assert.assertEquals(i * 2, index.getEnd(key));
+            Assert.assertEquals(Long.MIN_VALUE, index.getMinVersion(key));
+        }
+        Assert.assertEquals(Long.MIN_VALUE, index.getMinVersion());
+    }
+
     @Test
     public void testBlockWorksAfterBeingSynced() {
         // basically check that we can sync to disk and the block index still
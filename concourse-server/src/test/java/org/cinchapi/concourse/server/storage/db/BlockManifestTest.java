@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+/**
+ * Unit tests for the {@link BlockManifest}.
+ * 
+ * @author jnelson
+ */
+public class BlockManifestTest {
+
+    private String dir;
+    private String file;
+
+    @Rule
+    public TestWatcher watcher = new TestWatcher() {
+
+        @Override
+        protected void finished(Description desc) {
+            FileSystem.deleteDirectory(dir);
+        }
+
+        @Override
+        protected void starting(Description desc) {
+            dir = TestData.DATA_DIR + File.separator + Time.now();
+            file = dir + File.separator + "blocks.manifest";
+        }
+
+    };
+
+    @Test
+    public void testSyncedBlockChecksumMatchesFile() throws IOException {
+        PrimaryBlock block = getSyncedPrimaryBlock();
+        BlockManifest.Entry entry = block.getManifestEntry();
+        File blk = new File(dir, block.getId() + Block.BLOCK_NAME_EXTENSION);
+        Assert.assertEquals(block.getId(), entry.getId());
+        Assert.assertEquals(blk.length(), entry.getSize());
+        Assert.assertEquals(BlockManifest.checksum(blk), entry.getChecksum());
+    }
+
+    @Test
+    public void testCompressedBlockChecksumMatchesFile() throws IOException {
+        Compression compression = GlobalState.BLOCK_COMPRESSION;
+        GlobalState.BLOCK_COMPRESSION = Compression.LZ4;
+        try {
+            testSyncedBlockChecksumMatchesFile();
+        }
+        finally {
+            GlobalState.BLOCK_COMPRESSION = compression;
+        }
+    }
+
+    @Test
+    public void testEntriesAreReloaded() {
+        BlockManifest manifest = new BlockManifest(file);
+        manifest.load();
+        BlockManifest.Entry a = getEntry("1");
+        BlockManifest.Entry b = getEntry("2");
+        manifest.add("cpb", a);
+        manifest.add("cpb", b);
+        manifest.add("csb", a);
+        manifest.remove("cpb", "1");
+        manifest = new BlockManifest(file);
+        manifest.load();
+        Assert.assertNull(manifest.get("cpb", "1"));
+        Assert.assertEquals(b.getChecksum(), manifest.get("cpb", "2")
+                .getChecksum());
+        Assert.assertEquals(a.getSize(), manifest.get("csb", "1").getSize());
+    }
+
+    @Test
+    public void testPartialRecordIsDiscarded() throws IOException {
+        BlockManifest manifest = new BlockManifest(file);
+        manifest.load();
+        manifest.add("cpb", getEntry("1"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(100); // a record that was cut off by a crash
+            raf.write(new byte[] { 1, 0, 3 });
+        }
+        manifest = new BlockManifest(file);
+        manifest.load();
+        Assert.assertEquals(1, manifest.size("cpb"));
+        Assert.assertNotNull(manifest.get("cpb", "1"));
+    }
+
+    @Test
+    public void testCompactOnlyKeepsRetainedEntries() {
+        BlockManifest manifest = new BlockManifest(file);
+        manifest.load();
+        for (int i = 0; i < 10; i++) {
+            manifest.add("cpb", getEntry(Integer.toString(i)));
+        }
+        long size = FileSystem.getFileSize(file);
+        manifest.retain("cpb", ImmutableList.of("3", "7"));
+        manifest.compact();
+        Assert.assertTrue(FileSystem.getFileSize(file) < size);
+        manifest = new BlockManifest(file);
+        manifest.load();
+        Assert.assertEquals(2, manifest.size("cpb"));
+        Assert.assertNotNull(manifest.get("cpb", "3"));
+        Assert.assertNotNull(manifest.get("cpb", "7"));
+    }
+
+    /**
+     * Return an entry for {@code id} with a random size and checksum.
+     * 
+     * @param id
+     * @return the entry
+     */
+    private BlockManifest.Entry getEntry(String id) {
+        return new BlockManifest.Entry(id, Math.abs(TestData.getInt()),
+                HashCode.fromLong(TestData.getLong()));
+    }
+
+    /**
+     * Return a synced PrimaryBlock that contains some random revisions.
+     * 
+     * @return the PrimaryBlock
+     */
+    private PrimaryBlock getSyncedPrimaryBlock() {
+        PrimaryBlock block = Block.createPrimaryBlock(
+                Long.toString(Time.now()), dir);
+        for (int i = 0; i < TestData.getScaleCount(); i++) {
+            block.insert(PrimaryKey.wrap(i), TestData.getText(),
+                    TestData.getValue(), Time.now(), Action.ADD);
+        }
+        block.sync();
+        return block;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for the {@link BlockScrubber}.
+ * 
+ * @author jnelson
+ */
+public class BlockScrubberTest {
+
+    private String dir;
+    private BlockManifest manifest;
+    private BlockScrubber scrubber;
+    private List<PrimaryBlock> cpb;
+
+    @Rule
+    public TestWatcher watcher = new TestWatcher() {
+
+        @Override
+        protected void finished(Description desc) {
+            scrubber.stop();
+            FileSystem.deleteDirectory(dir);
+        }
+
+        @Override
+        protected void starting(Description desc) {
+            dir = TestData.DATA_DIR + File.separator + Time.now();
+            manifest = new BlockManifest(dir + File.separator
+                    + "blocks.manifest");
+            manifest.load();
+            cpb = Lists.newArrayList();
+            scrubber = new BlockScrubber(dir, cpb,
+                    Lists.<SecondaryBlock> newArrayList(),
+                    Lists.<SearchBlock> newArrayList(), manifest,
+                    new ReentrantReadWriteLock());
+            scrubber.start();
+        }
+
+    };
+
+    @Test
+    public void testScrubDetectsCorruptBlock() throws IOException {
+        PrimaryBlock a = addSyncedPrimaryBlock();
+        PrimaryBlock b = addSyncedPrimaryBlock();
+        scrubber.scrub();
+        Assert.assertTrue(scrubber.getCorruptBlocks().isEmpty());
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir
+                + File.separator + Database.PRIMARY_BLOCK_DIRECTORY,
+                b.getId() + Block.BLOCK_NAME_EXTENSION), "rw")) {
+            raf.seek(raf.length() / 2);
+            int current = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(current ^ 0xFF);
+        }
+        scrubber.scrub();
+        Assert.assertEquals(ImmutableSet.of(Database.PRIMARY_BLOCK_DIRECTORY
+                + File.separator + b.getId()), scrubber.getCorruptBlocks());
+        Assert.assertFalse(scrubber.getCorruptBlocks().contains(
+                Database.PRIMARY_BLOCK_DIRECTORY + File.separator + a.getId()));
+    }
+
+    @Test
+    public void testScrubSkipsMutableAndUnknownBlocks() {
+        PrimaryBlock unknown = Block.createPrimaryBlock(
+                Long.toString(Time.now()), dir + File.separator
+                        + Database.PRIMARY_BLOCK_DIRECTORY);
+        unknown.insert(PrimaryKey.wrap(1), TestData.getText(),
+                TestData.getValue(), Time.now(), Action.ADD);
+        cpb.add(unknown);
+        scrubber.scrub();
+        unknown.sync(); // not added to the manifest
+        scrubber.scrub();
+        Assert.assertTrue(scrubber.getCorruptBlocks().isEmpty());
+        Assert.assertTrue(scrubber.getStatus().contains("Passes: 2"));
+    }
+
+    /**
+     * Add a synced PrimaryBlock with some random revisions to the blocks and
+     * the manifest.
+     * 
+     * @return the PrimaryBlock
+     */
+    private PrimaryBlock addSyncedPrimaryBlock() {
+        PrimaryBlock block = Block.createPrimaryBlock(
+                Long.toString(Time.now()), dir + File.separator
+                        + Database.PRIMARY_BLOCK_DIRECTORY);
+        for (int i = 0; i < TestData.getScaleCount(); i++) {
+            block.insert(PrimaryKey.wrap(i), TestData.getText(),
+                    TestData.getValue(), Time.now(), Action.ADD);
+        }
+        block.sync();
+        manifest.add(Database.PRIMARY_BLOCK_DIRECTORY,
+                block.getManifestEntry());
+        cpb.add(block);
+        return block;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.util.List;
+
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.storage.temp.Write;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.Convert;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the latency of loading records that are not cached when the
+ * {@link Database} seeks its blocks one after another against seeking them in
+ * parallel, for an increasing number of blocks.
+ * 
+ * @author jnelson
+ */
+public class ColdReadBenchmark extends AbstractBenchmark {
+
+    /**
+     * The numbers of blocks for which the cold read latency is measured.
+     */
+    private static final int[] BLOCK_COUNTS = { 16, 64, 256 };
+
+    /**
+     * The number of records that are written to each block and then read.
+     */
+    private static final int RECORDS = 100;
+
+    private int compactionMinBlocks;
+    private String directory;
+    private int parallelSeekThreshold;
+
+    @Before
+    public void setUp() {
+        compactionMinBlocks = GlobalState.COMPACTION_MIN_BLOCKS;
+        parallelSeekThreshold = GlobalState.PARALLEL_SEEK_THRESHOLD;
+        GlobalState.COMPACTION_MIN_BLOCKS = 0; // keep every block around
+        directory = TestData.DATA_DIR + File.separator + Time.now();
+    }
+
+    @After
+    public void tearDown() {
+        GlobalState.COMPACTION_MIN_BLOCKS = compactionMinBlocks;
+        GlobalState.PARALLEL_SEEK_THRESHOLD = parallelSeekThreshold;
+        FileSystem.deleteDirectory(directory);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+    public void benchmarkColdReads() {
+        int populated = populate(0, BLOCK_COUNTS[0]);
+        read(); // warm up
+        for (int blocks : BLOCK_COUNTS) {
+            populated = populate(populated, blocks);
+            GlobalState.PARALLEL_SEEK_THRESHOLD = 0;
+            long serial = read();
+            GlobalState.PARALLEL_SEEK_THRESHOLD = 1;
+            long parallel = read();
+            System.out.println(blocks + " blocks: serial " + serial
+                    + " us/record, parallel " + parallel + " us/record");
+        }
+    }
+
+    /**
+     * Add blocks to the Database in {@link #directory} until there are
+     * {@code blocks} of them, each with a revision for every record.
+     * 
+     * @param populated the number of blocks that already exist
+     * @param blocks
+     * @return the number of blocks that exist
+     */
+    private int populate(int populated, int blocks) {
+        Database db = new Database(directory);
+        db.start();
+        try {
+            for (int i = populated; i < blocks; i++) {
+                List<Write> writes = Lists.newArrayList();
+                for (int record = 0; record < RECORDS; record++) {
+                    writes.add(Write.add("key" + i,
+                            Convert.javaToThrift("value " + i), record));
+                }
+                db.accept(writes);
+                db.triggerSync();
+            }
+        }
+        finally {
+            db.stop();
+        }
+        return blocks;
+    }
+
+    /**
+     * Open the Database in {@link #directory}, so that nothing is cached, and
+     * return the average number of microseconds that it takes to load each
+     * record.
+     * 
+     * @return the average latency
+     */
+    private long read() {
+        Database db = new Database(directory);
+        db.start();
+        try {
+            long start = Time.now();
+            for (int record = 0; record < RECORDS; record++) {
+                db.browse(record);
+            }
+            return (Time.now() - start) / RECORDS;
+        }
+        finally {
+            db.stop();
+        }
+    }
+
+}
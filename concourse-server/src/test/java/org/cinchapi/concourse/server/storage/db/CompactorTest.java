@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.util.List;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.storage.temp.Write;
+import org.cinchapi.concourse.thrift.Operator;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.Convert;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for the {@link Compactor}.
+ * 
+ * @author jnelson
+ */
+public class CompactorTest {
+
+    private static final int NUM_BLOCKS = 5;
+
+    private Database db;
+    private String directory;
+
+    @Rule
+    public TestWatcher watcher = new TestWatcher() {
+
+        @Override
+        protected void finished(Description desc) {
+            db.stop();
+            FileSystem.deleteDirectory(directory);
+        }
+
+        @Override
+        protected void starting(Description desc) {
+            directory = TestData.DATA_DIR + File.separator + Time.now();
+            db = new Database(directory);
+            db.start();
+        }
+
+    };
+
+    @Test
+    public void testCompactionMergesBlocks() {
+        int count = populate();
+        Assert.assertEquals(NUM_BLOCKS + 1, db.getDumpList().size());
+        db.compact();
+        Assert.assertEquals(2, db.getDumpList().size());
+        verify(count);
+    }
+
+    @Test
+    public void testCompactedBlocksAreLoadedOnRestart() {
+        int count = populate();
+        db.compact();
+        db.stop();
+        db = new Database(directory);
+        db.start();
+        Assert.assertEquals(2, db.getDumpList().size());
+        verify(count);
+    }
+
+    @Test
+    public void testMergedBlocksAreRemovedIfCrashBeforeDelete() {
+        int count = populate();
+        List<String> ids = db.getDumpList().subList(0, NUM_BLOCKS);
+        String backup = directory + "-backup";
+        for (String type : new String[] { Database.PRIMARY_BLOCK_DIRECTORY,
+                Database.SECONDARY_BLOCK_DIRECTORY,
+                Database.SEARCH_BLOCK_DIRECTORY }) {
+            copy(directory + File.separator + type, backup + File.separator
+                    + type, ids);
+        }
+        db.compact();
+        db.stop();
+        for (String type : new String[] { Database.PRIMARY_BLOCK_DIRECTORY,
+                Database.SECONDARY_BLOCK_DIRECTORY,
+                Database.SEARCH_BLOCK_DIRECTORY }) {
+            copy(backup + File.separator + type, directory + File.separator
+                    + type, ids);
+        }
+        FileSystem.deleteDirectory(backup);
+        db = new Database(directory);
+        db.start(); // simulate restart after a crash
+        Assert.assertEquals(2, db.getDumpList().size());
+        verify(count);
+    }
+
+    @Test
+    public void testNoCompactionIfTooFewBlocks() {
+        db.accept(Write.add("name", Convert.javaToThrift("foo"), 1));
+        db.triggerSync();
+        db.compact();
+        Assert.assertEquals(2, db.getDumpList().size());
+    }
+
+    /**
+     * Copy the block, filter and index files for each of the block
+     * {@code ids} from the {@code from} directory to the {@code to} directory.
+     * 
+     * @param from
+     * @param to
+     * @param ids
+     */
+    private void copy(String from, String to, List<String> ids) {
+        FileSystem.mkdirs(to);
+        for (String id : ids) {
+            for (String ext : new String[] { ".blk", ".fltr", ".indx" }) {
+                String file = File.separator + id + ext;
+                if(FileSystem.hasFile(from + file)) {
+                    FileSystem.copyBytes(from + file, to + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a similar number of writes to each of {@link #NUM_BLOCKS} blocks so
+     * that they are in the same compaction tier.
+     * 
+     * @return the total number of writes
+     */
+    private int populate() {
+        int count = 0;
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            List<Write> writes = Lists.newArrayList();
+            for (int j = 0; j < 10; j++) {
+                writes.add(Write.add("name",
+                        Convert.javaToThrift("value " + count), count));
+                count++;
+            }
+            db.accept(writes);
+            db.triggerSync();
+        }
+        return count;
+    }
+
+    /**
+     * Verify that all the writes added by {@link #populate()} can be read.
+     * 
+     * @param count
+     */
+    private void verify(int count) {
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(1, db.fetch("name", i).size());
+            Assert.assertTrue(db.fetch("name", i).contains(
+                    Convert.javaToThrift("value " + i)));
+            Assert.assertEquals(1,
+                    db.find("name", Operator.EQUALS,
+                            Convert.javaToThrift("value " + i)).size());
+        }
+        Assert.assertEquals(count, db.search("name", "value").size());
+    }
+
+}
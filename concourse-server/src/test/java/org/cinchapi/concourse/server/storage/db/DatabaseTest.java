@@ -26,8 +26,14 @@ package org.cinchapi.concourse.server.storage.db;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
 import org.cinchapi.concourse.server.storage.Store;
 import org.cinchapi.concourse.server.storage.StoreTest;
 import org.cinchapi.concourse.server.storage.temp.Write;
@@ -39,6 +45,9 @@ import org.cinchapi.concourse.util.TestData;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 /**
  * Unit tests for the {@link Database}.
  * 
@@ -68,6 +77,119 @@ public class DatabaseTest extends StoreTest {
         Assert.assertEquals(1, ((List<?>) ctb.get(db)).size());
         Assert.assertEquals(1, ((List<?>) csb.get(db)).size());
         Assert.assertEquals(1, ((List<?>) cpb.get(db)).size());
+        db.stop();
+    }
+
+    @Test
+    public void testDuplicateBlocksAreNotLoaded() throws Exception {
+        Database db = (Database) store;
+        db.accept(Write.add(TestData.getString(), TestData.getTObject(),
+                TestData.getLong()));
+        db.triggerSync();
+        String id = db.getDumpList().get(0);
+        db.stop();
+        String copy = Long.toString(Time.now());
+        for (String type : new String[] { "cpb", "csb", "ctb" }) {
+            File directory = new File(current + File.separator + type);
+            for (File file : directory.listFiles()) {
+                if(file.getName().startsWith(id + ".")) {
+                    FileSystem.copyBytes(file.getPath(), directory.getPath()
+                            + File.separator
+                            + file.getName().replace(id, copy));
+                }
+            }
+        }
+        db = new Database(db.getBackingStore()); // simulate server restart
+        db.start();
+        Field cpb = db.getClass().getDeclaredField("cpb");
+        Field csb = db.getClass().getDeclaredField("csb");
+        cpb.setAccessible(true);
+        csb.setAccessible(true);
+        Assert.assertEquals(2, ((List<?>) cpb.get(db)).size());
+        Assert.assertEquals(2, ((List<?>) csb.get(db)).size());
+        db.stop();
+    }
+
+    @Test
+    public void testHistoricalReadsSkipNewerBlocks() {
+        Database db = (Database) store;
+        String key = TestData.getString();
+        long record = TestData.getLong();
+        int count = TestData.getScaleCount();
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            db.accept(Write.add(key, Convert.javaToThrift(i), record));
+            db.triggerSync();
+            timestamps[i] = Time.now();
+        }
+        db.stop();
+        db = new Database(db.getBackingStore());
+        db.start();
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i + 1, db.fetch(key, record, timestamps[i])
+                    .size());
+            Assert.assertEquals(i + 1, db.browse(record, timestamps[i])
+                    .get(key).size());
+            Assert.assertTrue(db.find(timestamps[i], key,
+                    Operator.EQUALS, Convert.javaToThrift(i)).contains(record));
+        }
+        Assert.assertEquals(count, db.fetch(key, record).size());
+        db.stop();
+    }
+
+    @Test
+    public void testHistoricalReadCachesRecordWhenNoImmutableBlockIsSkipped()
+            throws Exception {
+        Database db = (Database) store;
+        String key = TestData.getString();
+        long record = TestData.getLong();
+        db.accept(Write.add(key, TestData.getTObject(), record));
+        db.triggerSync();
+        long timestamp = Time.now();
+        db.stop();
+        db = new Database(db.getBackingStore()); // start with an empty cache
+        db.start();
+        db.browse(record, timestamp);
+        Field cpc = db.getClass().getDeclaredField("cpc");
+        cpc.setAccessible(true);
+        Assert.assertNotNull(((RecordCache<?>) cpc.get(db)).peek(Composite
+                .create(PrimaryKey.wrap(record))));
+        db.stop();
+    }
+
+    @Test
+    public void testParallelSeekLoadsSameRecordsAsSerialSeek() {
+        Database db = (Database) store;
+        String key = TestData.getString();
+        long record = TestData.getLong();
+        TObject value = TestData.getTObject();
+        int count = TestData.getScaleCount();
+        for (int i = 0; i < count; i++) {
+            db.accept(Write.add(key, Convert.javaToThrift(i), record));
+            db.accept(Write.add(key, value, i));
+            db.triggerSync();
+        }
+        db.stop();
+        int threshold = GlobalState.PARALLEL_SEEK_THRESHOLD;
+        try {
+            GlobalState.PARALLEL_SEEK_THRESHOLD = 0;
+            db = new Database(db.getBackingStore());
+            db.start();
+            Map<String, Set<TObject>> serialRecord = db.browse(record);
+            Set<Long> serialFind = db.find(key, Operator.EQUALS, value);
+            db.stop();
+            GlobalState.PARALLEL_SEEK_THRESHOLD = 1;
+            db = new Database(db.getBackingStore());
+            db.start();
+            Assert.assertEquals(serialRecord, db.browse(record));
+            Assert.assertEquals(serialFind,
+                    db.find(key, Operator.EQUALS, value));
+            Assert.assertEquals(count, serialFind.size());
+            db.stop();
+        }
+        finally {
+            GlobalState.PARALLEL_SEEK_THRESHOLD = threshold;
+        }
     }
 
     @Test
@@ -102,6 +224,91 @@ public class DatabaseTest extends StoreTest {
                 (long) count * increase)); 
     }
 
+    @Test
+    public void testDatabaseFindsValueRangesFromPartialSecondaryRecords() {
+        Database db = (Database) store;
+        String key = TestData.getString();
+        for (int i = 0; i < 100; i++) {
+            db.accept(Write.add(key, Convert.javaToThrift(i), i));
+        }
+        db.triggerSync();
+        TObject low = Convert.javaToThrift(20);
+        TObject high = Convert.javaToThrift(30);
+        Set<Long> between = db.find(key, Operator.BETWEEN, low, high);
+        Assert.assertEquals(10, between.size());
+        for (long i = 20; i < 30; i++) {
+            Assert.assertTrue(between.contains(i));
+        }
+        Assert.assertEquals(Sets.newHashSet(50L), db.find(key,
+                Operator.EQUALS, Convert.javaToThrift(50)));
+        db.accept(Write.add(key, Convert.javaToThrift(25), 1000));
+        db.accept(Write.add(key, Convert.javaToThrift(500), 2000));
+        Assert.assertTrue(db.find(key, Operator.BETWEEN, low, high).contains(
+                1000L));
+        Assert.assertFalse(db.find(key, Operator.BETWEEN, low, high)
+                .contains(2000L));
+        Assert.assertEquals(
+                db.find(key, Operator.NOT_EQUALS, Convert.javaToThrift(-1)),
+                db.find(key, Operator.GREATER_THAN_OR_EQUALS,
+                        Convert.javaToThrift(0)));
+    }
+
+    @Test
+    public void testDatabaseAcceptsBatchAndAppendsToCachedRecords() {
+        Database db = (Database) store;
+        String key = TestData.getString();
+        long record = TestData.getLong();
+        TObject value = TestData.getTObject();
+        db.accept(Write.add(key, value, record));
+        db.fetch(key, record);
+        db.find(key, Operator.EQUALS, value);
+        int count = TestData.getScaleCount();
+        List<Write> batch = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            batch.add(Write.add(key, Convert.javaToThrift(i), record));
+            batch.add(Write.add(key, value, record + i + 1));
+        }
+        db.accept(batch);
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(db.fetch(key, record).contains(
+                    Convert.javaToThrift(i)));
+            Assert.assertTrue(db.find(key, Operator.EQUALS, value).contains(
+                    record + i + 1));
+        }
+    }
+
+    @Test
+    public void testReadsDuringTriggerSyncSeeAllData()
+            throws InterruptedException {
+        final Database db = (Database) store;
+        final String key = TestData.getString();
+        final long record = TestData.getLong();
+        final int count = TestData.getScaleCount();
+        for (int i = 0; i < count; i++) {
+            db.accept(Write.add(key, Convert.javaToThrift(i), record));
+        }
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicBoolean passed = new AtomicBoolean(true);
+        Thread reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    if(db.fetch(key, record).size() != count) {
+                        passed.set(false);
+                    }
+                }
+            }
+
+        });
+        reader.start();
+        db.triggerSync();
+        done.set(true);
+        reader.join();
+        Assert.assertTrue(passed.get());
+        Assert.assertEquals(count, db.fetch(key, record).size());
+    }
+
     @Override
     protected void add(String key, TObject value, long record) {
         if(!store.verify(key, value, record)) {
@@ -111,6 +318,7 @@ public class DatabaseTest extends StoreTest {
 
     @Override
     protected void cleanup(Store store) {
+        store.stop();
         FileSystem.deleteDirectory(current);
     }
 
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.nio.LongBuffer;
+import java.util.List;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for the {@link LocatorDirectory}.
+ * 
+ * @author jnelson
+ */
+public class LocatorDirectoryTest {
+
+    private LocatorDirectory directory;
+    private String dir;
+
+    @Rule
+    public TestWatcher watcher = new TestWatcher() {
+
+        @Override
+        protected void finished(Description desc) {
+            FileSystem.deleteDirectory(dir);
+        }
+
+        @Override
+        protected void starting(Description desc) {
+            dir = TestData.DATA_DIR + File.separator + Time.now();
+            directory = new LocatorDirectory();
+        }
+
+    };
+
+    @Test
+    public void testSelectOnlyReturnsBlocksThatContainLocator() {
+        PrimaryBlock a = getSyncedPrimaryBlock(1, 2);
+        PrimaryBlock b = getSyncedPrimaryBlock(2);
+        PrimaryBlock c = getSyncedPrimaryBlock(3);
+        List<PrimaryBlock> blocks = ImmutableList.of(a, b, c);
+        for (PrimaryBlock block : blocks) {
+            directory.add(block);
+        }
+        Assert.assertEquals(ImmutableList.of(a),
+                directory.select(PrimaryKey.wrap(1), blocks));
+        Assert.assertEquals(ImmutableList.of(a, b),
+                directory.select(PrimaryKey.wrap(2), blocks));
+        Assert.assertEquals(ImmutableList.of(c),
+                directory.select(PrimaryKey.wrap(3), blocks));
+        Assert.assertTrue(directory.select(PrimaryKey.wrap(4), blocks)
+                .isEmpty());
+    }
+
+    @Test
+    public void testSelectReturnsBlocksThatAreNotInDirectory() {
+        PrimaryBlock a = getSyncedPrimaryBlock(1);
+        PrimaryBlock b = getSyncedPrimaryBlock(2);
+        PrimaryBlock c = Block.createPrimaryBlock(Long.toString(Time.now()),
+                dir);
+        c.insert(PrimaryKey.wrap(1), TestData.getText(), TestData.getValue(),
+                Time.now(), Action.ADD);
+        directory.add(a);
+        directory.add(b);
+        directory.add(c);
+        Assert.assertEquals(ImmutableList.of(a, c), directory.select(
+                PrimaryKey.wrap(1), ImmutableList.of(a, b, c)));
+    }
+
+    @Test
+    public void testRemovedBlockIsNoLongerTargeted() {
+        PrimaryBlock a = getSyncedPrimaryBlock(1, 2);
+        PrimaryBlock b = getSyncedPrimaryBlock(1);
+        PrimaryBlock c = getSyncedPrimaryBlock(1, 2);
+        for (PrimaryBlock block : ImmutableList.of(a, b, c)) {
+            directory.add(block);
+        }
+        directory.remove(a);
+        directory.remove(b);
+        Assert.assertEquals(ImmutableList.of(c),
+                directory.select(PrimaryKey.wrap(1), ImmutableList.of(c)));
+        Assert.assertEquals(ImmutableList.of(c),
+                directory.select(PrimaryKey.wrap(2), ImmutableList.of(c)));
+        directory.remove(c);
+        Assert.assertEquals(ImmutableList.of(c),
+                directory.select(PrimaryKey.wrap(1), ImmutableList.of(c)));
+    }
+
+    @Test
+    public void testLocatorKeysCanBeReadRepeatedly() {
+        PrimaryBlock block = getSyncedPrimaryBlock(2, 1);
+        for (int i = 0; i < 2; i++) {
+            LongBuffer keys = block.getLocatorKeys();
+            Assert.assertEquals(2, keys.remaining());
+            Assert.assertEquals(1, keys.get());
+            Assert.assertEquals(2, keys.get());
+        }
+    }
+
+    @Test
+    public void testSelectTextLocators() {
+        List<SecondaryBlock> blocks = Lists.newArrayList();
+        List<Text> keys = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            Text key = Text.wrap(TestData.getString() + i);
+            SecondaryBlock block = Block.createSecondaryBlock(
+                    Long.toString(Time.now()), dir);
+            block.insert(key, TestData.getValue(), TestData.getPrimaryKey(),
+                    Time.now(), Action.ADD);
+            block.sync();
+            directory.add(block);
+            blocks.add(block);
+            keys.add(key);
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            Assert.assertEquals(ImmutableList.of(blocks.get(i)),
+                    directory.select(keys.get(i), blocks));
+        }
+    }
+
+    /**
+     * Return a synced PrimaryBlock that contains a revision for each of the
+     * {@code records}.
+     * 
+     * @param records
+     * @return the PrimaryBlock
+     */
+    private PrimaryBlock getSyncedPrimaryBlock(long... records) {
+        PrimaryBlock block = Block.createPrimaryBlock(
+                Long.toString(Time.now()), dir);
+        for (long record : records) {
+            block.insert(PrimaryKey.wrap(record), TestData.getText(),
+                    TestData.getValue(), Time.now(), Action.ADD);
+        }
+        block.sync();
+        return block;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import org.cinchapi.concourse.server.io.Composite;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.thrift.Operator;
+import org.cinchapi.concourse.util.Convert;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OffHeapRecordCache}.
+ * 
+ * @author jnelson
+ */
+public class OffHeapRecordCacheTest {
+
+    @Test
+    public void testPrimaryRecordRoundTrip() {
+        OffHeapRecordCache<PrimaryRecord> cache = OffHeapRecordCache
+                .forPrimaryRecords(1024 * 1024);
+        PrimaryRecord record = getPrimaryRecord(1, 100);
+        Composite key = Composite.create(PrimaryKey.wrap(1));
+        Assert.assertTrue(cache.put(key, record, 0));
+        PrimaryRecord rehydrated = cache.remove(key, 0);
+        Assert.assertEquals(record, rehydrated);
+        Assert.assertEquals(record.browse(), rehydrated.browse());
+        Assert.assertEquals(record.browse(50), rehydrated.browse(50));
+        Assert.assertEquals(record.audit(), rehydrated.audit());
+        Assert.assertEquals(record.getRevisionCount(),
+                rehydrated.getRevisionCount());
+        Assert.assertEquals(record.getVersion(), rehydrated.getVersion());
+        Assert.assertNull(cache.remove(key, 0));
+    }
+
+    @Test
+    public void testSecondaryRecordRoundTrip() {
+        OffHeapRecordCache<SecondaryRecord> cache = OffHeapRecordCache
+                .forSecondaryRecords(1024 * 1024);
+        Text locator = Text.wrap("age");
+        SecondaryRecord record = Record.createSecondaryRecord(locator);
+        for (int i = 0; i < 100; i++) {
+            record.append(Revision.createSecondaryRevision(locator,
+                    Value.wrap(Convert.javaToThrift(i % 10)),
+                    PrimaryKey.wrap(i), i, Action.ADD));
+        }
+        record.append(Revision.createSecondaryRevision(locator,
+                Value.wrap(Convert.javaToThrift(3)), PrimaryKey.wrap(3), 100,
+                Action.REMOVE));
+        Composite key = Composite.create(locator);
+        Assert.assertTrue(cache.put(key, record, 0));
+        SecondaryRecord rehydrated = cache.remove(key, 0);
+        Value value = Value.wrap(Convert.javaToThrift(5));
+        Assert.assertEquals(record.find(Operator.GREATER_THAN, value),
+                rehydrated.find(Operator.GREATER_THAN, value));
+        Assert.assertEquals(record.find(100, Operator.EQUALS, value),
+                rehydrated.find(100, Operator.EQUALS, value));
+        Assert.assertEquals(record.find(Operator.EQUALS,
+                Value.wrap(Convert.javaToThrift(3))), rehydrated.find(
+                Operator.EQUALS, Value.wrap(Convert.javaToThrift(3))));
+    }
+
+    @Test
+    public void testStaleRecordIsDropped() {
+        OffHeapRecordCache<PrimaryRecord> cache = OffHeapRecordCache
+                .forPrimaryRecords(1024 * 1024);
+        Composite key = Composite.create(PrimaryKey.wrap(1));
+        Assert.assertTrue(cache.put(key, getPrimaryRecord(1, 10), 1));
+        Assert.assertNull(cache.remove(key, 2));
+        Assert.assertNull(cache.remove(key, 1));
+    }
+
+    @Test
+    public void testInvalidate() {
+        OffHeapRecordCache<PrimaryRecord> cache = OffHeapRecordCache
+                .forPrimaryRecords(1024 * 1024);
+        Composite key = Composite.create(PrimaryKey.wrap(1));
+        Assert.assertTrue(cache.put(key, getPrimaryRecord(1, 10), 0));
+        cache.invalidate(key);
+        Assert.assertNull(cache.remove(key, 0));
+    }
+
+    @Test
+    public void testRejectRecordLargerThanSlab() {
+        OffHeapRecordCache<PrimaryRecord> cache = OffHeapRecordCache
+                .forPrimaryRecords(1024);
+        Composite key = Composite.create(PrimaryKey.wrap(1));
+        Assert.assertFalse(cache.put(key, getPrimaryRecord(1, 100), 0));
+        Assert.assertNull(cache.remove(key, 0));
+    }
+
+    @Test
+    public void testEvictOldestRecordsWhenFull() {
+        // Each record is a few hundred bytes, so the first records are
+        // evicted long before the last is written
+        OffHeapRecordCache<PrimaryRecord> cache = OffHeapRecordCache
+                .forPrimaryRecords(4096);
+        int count = 100;
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(cache.put(Composite.create(PrimaryKey.wrap(i)),
+                    getPrimaryRecord(i, 10), 0));
+        }
+        Assert.assertNull(cache.remove(Composite.create(PrimaryKey.wrap(0)),
+                0));
+        Assert.assertNotNull(cache.remove(
+                Composite.create(PrimaryKey.wrap(count - 1)), 0));
+    }
+
+    /**
+     * Return a PrimaryRecord with {@code revisions} revisions, some of which
+     * remove earlier values.
+     * 
+     * @param record
+     * @param revisions
+     * @return the record
+     */
+    private static PrimaryRecord getPrimaryRecord(long record, int revisions) {
+        PrimaryKey pkey = PrimaryKey.wrap(record);
+        PrimaryRecord primary = Record.createPrimaryRecord(pkey);
+        for (int i = 0; i < revisions; i++) {
+            Action type = i % 7 == 6 ? Action.REMOVE : Action.ADD;
+            int value = type == Action.REMOVE ? i - 1 : i;
+            primary.append(Revision.createPrimaryRevision(pkey,
+                    Text.wrap("key" + (value % 5)),
+                    Value.wrap(Convert.javaToThrift(value)), i, type));
+        }
+        return primary;
+    }
+
+}
@@ -23,10 +23,19 @@
  */
 package org.cinchapi.concourse.server.storage.db;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.model.PrimaryKey;
 import org.cinchapi.concourse.server.model.Text;
 import org.cinchapi.concourse.server.model.Value;
 import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.server.storage.cache.BloomFilter;
 import org.cinchapi.concourse.server.storage.db.Block;
 import org.cinchapi.concourse.server.storage.db.PrimaryBlock;
 import org.cinchapi.concourse.time.Time;
@@ -35,6 +44,9 @@ import org.cinchapi.concourse.util.TestData;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
 /**
  * 
  * 
@@ -54,6 +66,168 @@ public class PrimaryBlockTest extends BlockTest<PrimaryKey, Text, Value> {
         Assert.assertTrue(record.get(key).contains(value));
     }
 
+    @Test
+    public void testCompressedBlockSeeksSameRevisions() {
+        Compression compression = GlobalState.BLOCK_COMPRESSION;
+        try {
+            GlobalState.BLOCK_COMPRESSION = Compression.LZ4;
+            List<PrimaryKey> locators = Lists.newArrayList();
+            List<Text> keys = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                locators.add(PrimaryKey.wrap(i));
+                keys.add(Text.wrap("key" + i));
+            }
+            for (PrimaryKey locator : locators) {
+                for (Text key : keys) {
+                    for (int i = 0; i < 10; i++) {
+                        block.insert(locator, key,
+                                Value.wrap(Convert.javaToThrift("value" + i)),
+                                Time.now(), Action.ADD);
+                    }
+                }
+            }
+            List<List<Revision<PrimaryKey, Text, Value>>> expected = Lists
+                    .newArrayList();
+            for (PrimaryKey locator : locators) {
+                expected.add(block.collect(locator));
+                for (Text key : keys) {
+                    expected.add(block.collect(locator, key));
+                }
+            }
+            block.sync();
+            PrimaryBlock loaded = new PrimaryBlock(block.getId(), directory,
+                    true);
+            Assert.assertTrue(FileSystem.getFileSize(directory + File.separator
+                    + block.getId() + Block.BLOCK_NAME_EXTENSION) < loaded
+                    .size());
+            int i = 0;
+            for (PrimaryKey locator : locators) {
+                Assert.assertEquals(expected.get(i++), loaded.collect(locator));
+                for (Text key : keys) {
+                    Assert.assertEquals(expected.get(i++),
+                            loaded.collect(locator, key));
+                }
+            }
+        }
+        finally {
+            GlobalState.BLOCK_COMPRESSION = compression;
+        }
+    }
+
+    @Test
+    public void testMergedBlockSeeksSameRevisions() {
+        PrimaryBlock a = Block.createPrimaryBlock("a", directory);
+        PrimaryBlock b = Block.createPrimaryBlock("b", directory);
+        List<PrimaryKey> locators = Lists.newArrayList();
+        List<Text> keys = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            locators.add(PrimaryKey.wrap(i));
+            keys.add(Text.wrap("key" + i));
+        }
+        int count = 0;
+        for (PrimaryKey locator : locators) {
+            for (Text key : keys) {
+                for (int i = 0; i < 5; i++) {
+                    Value value = Value.wrap(Convert.javaToThrift("value" + i));
+                    long version = Time.now();
+                    block.insert(locator, key, value, version, Action.ADD);
+                    if(count % 3 != 0) {
+                        a.insert(locator, key, value, version, Action.ADD);
+                    }
+                    if(count % 3 != 1) { // some revisions are in both blocks
+                        b.insert(locator, key, value, version, Action.ADD);
+                    }
+                    count++;
+                }
+            }
+        }
+        a.sync();
+        b.sync();
+        List<PrimaryBlock> inputs = Lists.newArrayList(new PrimaryBlock("a",
+                directory, true), new PrimaryBlock("b", directory, true));
+        List<Iterable<Revision<PrimaryKey, Text, Value>>> scans = Lists
+                .newArrayList();
+        for (PrimaryBlock input : inputs) {
+            scans.add(input.scan(null));
+        }
+        PrimaryBlock merged = Block.createPrimaryBlock("merged", directory);
+        merged.sync(Block.merge(scans));
+        PrimaryBlock loaded = new PrimaryBlock("merged", directory, true);
+        for (PrimaryKey locator : locators) {
+            Assert.assertEquals(block.collect(locator),
+                    loaded.collect(locator));
+            for (Text key : keys) {
+                Assert.assertEquals(block.collect(locator, key),
+                        loaded.collect(locator, key));
+            }
+        }
+    }
+
+    @Test
+    public void testEncodedBlockIsSmallerThanRevisions() {
+        PrimaryKey locator = PrimaryKey.wrap(1);
+        Text key = Text.wrap("status");
+        int size = 0;
+        for (int i = 0; i < 100; i++) {
+            size += block.insert(locator, key,
+                    Value.wrap(Convert.javaToThrift(i % 2 == 0)), Time.now(),
+                    i % 2 == 0 ? Action.ADD : Action.REMOVE).size() + 4;
+        }
+        block.sync();
+        Assert.assertTrue(block.size() * 4 < size);
+        PrimaryBlock loaded = new PrimaryBlock(block.getId(), directory, true);
+        Assert.assertEquals(100, loaded.collect(locator, key).size());
+    }
+
+    @Test
+    public void testReadOriginalBlockFormat() {
+        String id = Long.toString(Time.now());
+        String base = directory + File.separator + id;
+        PrimaryKey locator = PrimaryKey.wrap(1);
+        Text key = Text.wrap("name");
+        List<Revision<PrimaryKey, Text, Value>> revisions = Lists
+                .newArrayList();
+        int size = 0;
+        for (int i = 0; i < 10; i++) {
+            Revision<PrimaryKey, Text, Value> revision = Revision
+                    .createPrimaryRevision(locator, key,
+                            Value.wrap(Convert.javaToThrift("value" + i)),
+                            i + 1, Action.ADD);
+            revisions.add(revision);
+            size += revision.size() + 4;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        for (Revision<PrimaryKey, Text, Value> revision : revisions) {
+            bytes.putInt(revision.size());
+            revision.copyTo(bytes);
+        }
+        bytes.flip();
+        FileChannel channel = FileSystem.getFileChannel(base
+                + Block.BLOCK_NAME_EXTENSION);
+        try {
+            channel.write(bytes);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        finally {
+            FileSystem.closeFileChannel(channel);
+        }
+        BlockIndex index = BlockIndex.create(base + ".indx", 2);
+        index.putStart(0, locator);
+        index.putEnd(size - 1, locator);
+        index.putStart(0, locator, key);
+        index.putEnd(size - 1, locator, key);
+        index.sync();
+        BloomFilter filter = BloomFilter.createBlocked(base + ".fltr", 2);
+        filter.put(locator);
+        filter.put(locator, key);
+        filter.sync();
+        PrimaryBlock loaded = new PrimaryBlock(id, directory, true);
+        Assert.assertEquals(revisions, loaded.collect(locator));
+        Assert.assertEquals(revisions, loaded.collect(locator, key));
+    }
+
     @Override
     protected PrimaryKey getLocator() {
         return TestData.getPrimaryKey();
@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import org.cinchapi.concourse.server.io.Composite;
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.util.Convert;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RecordCache}.
+ * 
+ * @author jnelson
+ */
+public class RecordCacheTest {
+
+    /**
+     * The maximum weight of the caches in each test.
+     */
+    private static final int MAX_WEIGHT = 400;
+
+    /**
+     * The weight of each record in each test.
+     */
+    private static final int WEIGHT = 60;
+
+    @Test
+    public void testAdmitWhenThereIsRoom() {
+        RecordCache<PrimaryRecord> cache = new RecordCache<PrimaryRecord>(
+                MAX_WEIGHT);
+        for (int i = 0; i < MAX_WEIGHT / WEIGHT; i++) {
+            Composite key = Composite.create(PrimaryKey.wrap(i));
+            Assert.assertNull(cache.get(key));
+            Assert.assertTrue(cache.put(key, getRecord(i, WEIGHT), 0));
+            Assert.assertNotNull(cache.get(key));
+        }
+    }
+
+    @Test
+    public void testRejectRecordRequestedOnceWhenFull() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(MAX_WEIGHT));
+        Assert.assertNull(cache.get(key));
+        Assert.assertFalse(cache.put(key, getRecord(MAX_WEIGHT, WEIGHT), 0));
+        Assert.assertNull(cache.peek(key));
+    }
+
+    @Test
+    public void testAdmitFrequentlyRequestedRecordWhenFull() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(MAX_WEIGHT));
+        for (int i = 0; i < RecordCache.ADMISSION_THRESHOLD; i++) {
+            Assert.assertNull(cache.get(key));
+        }
+        Assert.assertTrue(cache.put(key, getRecord(MAX_WEIGHT, WEIGHT), 0));
+        Assert.assertNotNull(cache.peek(key));
+    }
+
+    @Test
+    public void testPeekIsNotARequest() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(MAX_WEIGHT));
+        for (int i = 0; i < TestData.getScaleCount(); i++) {
+            Assert.assertNull(cache.peek(key));
+        }
+        Assert.assertNull(cache.get(key));
+        Assert.assertFalse(cache.put(key, getRecord(MAX_WEIGHT, WEIGHT), 0));
+    }
+
+    @Test
+    public void testRejectRecordHeavierThanCache() {
+        RecordCache<PrimaryRecord> cache = new RecordCache<PrimaryRecord>(
+                MAX_WEIGHT);
+        Composite key = Composite.create(PrimaryKey.wrap(1));
+        Assert.assertFalse(cache.put(key, getRecord(1, MAX_WEIGHT + 1), 0));
+        Assert.assertTrue(cache.put(key, getRecord(1, MAX_WEIGHT), 0));
+    }
+
+    @Test
+    public void testPromoteEvictedRecordFromOverflow() {
+        RecordCache<PrimaryRecord> cache = fillWithOverflow();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        Assert.assertNull(cache.peek(key));
+        PrimaryRecord record = cache.get(key);
+        Assert.assertEquals(getRecord(0, WEIGHT).browse(), record.browse());
+        Assert.assertNotNull(cache.peek(key));
+    }
+
+    @Test
+    public void testDropOverflowRecordAfterWrite() {
+        RecordCache<PrimaryRecord> cache = fillWithOverflow();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        cache.append(key, Revision.createPrimaryRevision(PrimaryKey.wrap(0),
+                Text.wrap("foo"), Value.wrap(Convert.javaToThrift("bar")),
+                WEIGHT, Action.ADD));
+        Assert.assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testAppendToCachedRecord() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        Text text = Text.wrap("foo");
+        Value value = Value.wrap(Convert.javaToThrift("bar"));
+        cache.append(key, Revision.createPrimaryRevision(PrimaryKey.wrap(0),
+                text, value, WEIGHT, Action.ADD));
+        Assert.assertTrue(cache.peek(key).verify(text, value));
+    }
+
+    @Test
+    public void testSkipAppendOfRevisionRecordAlreadyHolds() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        int count = cache.peek(key).getRevisionCount();
+        cache.append(key, Revision.createPrimaryRevision(PrimaryKey.wrap(0),
+                Text.wrap("key" + (WEIGHT - 1)),
+                Value.wrap(Convert.javaToThrift(WEIGHT - 1)), WEIGHT - 1,
+                Action.ADD));
+        Assert.assertEquals(count, cache.peek(key).getRevisionCount());
+    }
+
+    @Test
+    public void testDropCachedRecordIfAppendFails() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        cache.append(key, Revision.createPrimaryRevision(PrimaryKey.wrap(0),
+                Text.wrap("key0"), Value.wrap(Convert.javaToThrift(0)),
+                WEIGHT, Action.ADD)); // not offset
+        Assert.assertNull(cache.peek(key));
+        Assert.assertNotNull(cache.peek(Composite.create(PrimaryKey.wrap(1))));
+    }
+
+    @Test
+    public void testAppendsCountTowardsWeight() {
+        RecordCache<PrimaryRecord> cache = fill();
+        Composite key = Composite.create(PrimaryKey.wrap(0));
+        for (int i = 0; i < WEIGHT; i++) {
+            cache.append(key, Revision.createPrimaryRevision(
+                    PrimaryKey.wrap(0), Text.wrap("foo"),
+                    Value.wrap(Convert.javaToThrift(i)), WEIGHT + i,
+                    Action.ADD));
+        }
+        int cached = 0;
+        for (int i = 0; i < MAX_WEIGHT / WEIGHT; i++) {
+            if(cache.peek(Composite.create(PrimaryKey.wrap(i))) != null) {
+                cached++;
+            }
+        }
+        Assert.assertTrue(cached < MAX_WEIGHT / WEIGHT);
+    }
+
+    @Test
+    public void testSketchEstimatesFrequency() {
+        RecordCache.FrequencySketch sketch = new RecordCache.FrequencySketch(
+                1024);
+        int hash = TestData.getInt();
+        Assert.assertEquals(0, sketch.frequency(hash));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(hash);
+        }
+        Assert.assertEquals(5, sketch.frequency(hash));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(hash);
+        }
+        Assert.assertEquals(15, sketch.frequency(hash));
+    }
+
+    @Test
+    public void testSketchAgesCounters() {
+        RecordCache.FrequencySketch sketch = new RecordCache.FrequencySketch(
+                1024);
+        int hash = 17;
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(hash);
+        }
+        // Enough increments of a few other keys to trigger a reset
+        for (int i = 0; i < 1024 * 10; i++) {
+            sketch.increment(1000 + (i % 4));
+        }
+        Assert.assertTrue(sketch.frequency(hash) <= 4);
+    }
+
+    /**
+     * Return a cache that is filled with records up to its maximum weight.
+     * 
+     * @return the cache
+     */
+    private static RecordCache<PrimaryRecord> fill() {
+        RecordCache<PrimaryRecord> cache = new RecordCache<PrimaryRecord>(
+                MAX_WEIGHT);
+        for (int i = 0; i < MAX_WEIGHT / WEIGHT; i++) {
+            Assert.assertTrue(cache.put(Composite.create(PrimaryKey.wrap(i)),
+                    getRecord(i, WEIGHT), 0));
+        }
+        return cache;
+    }
+
+    /**
+     * Return a cache with an overflow tier that has been filled with records
+     * up to its maximum weight and then forced to evict the first record by
+     * admitting a frequently requested one.
+     * 
+     * @return the cache
+     */
+    private static RecordCache<PrimaryRecord> fillWithOverflow() {
+        RecordCache<PrimaryRecord> cache = new RecordCache<PrimaryRecord>(
+                MAX_WEIGHT, OffHeapRecordCache.forPrimaryRecords(1024 * 1024));
+        for (int i = 0; i < MAX_WEIGHT / WEIGHT; i++) {
+            Assert.assertTrue(cache.put(Composite.create(PrimaryKey.wrap(i)),
+                    getRecord(i, WEIGHT), 0));
+        }
+        Composite key = Composite.create(PrimaryKey.wrap(MAX_WEIGHT));
+        for (int i = 0; i < RecordCache.ADMISSION_THRESHOLD; i++) {
+            Assert.assertNull(cache.get(key));
+        }
+        Assert.assertTrue(cache.put(key, getRecord(MAX_WEIGHT, WEIGHT), 0));
+        return cache;
+    }
+
+    /**
+     * Return a PrimaryRecord with {@code revisions} revisions.
+     * 
+     * @param record
+     * @param revisions
+     * @return the record
+     */
+    private static PrimaryRecord getRecord(long record, int revisions) {
+        PrimaryKey pkey = PrimaryKey.wrap(record);
+        PrimaryRecord primary = Record.createPrimaryRecord(pkey);
+        for (int i = 0; i < revisions; i++) {
+            primary.append(Revision.createPrimaryRevision(pkey,
+                    Text.wrap("key" + i), Value.wrap(Convert.javaToThrift(i)),
+                    i, Action.ADD));
+        }
+        return primary;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.util.Convert;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares the heap footprint of cached {@link PrimaryRecord PrimaryRecords}
+ * against the layout that Records used before they stored their history in
+ * columns (a list of {@link CompactRevision} objects and a separate set of
+ * present values for each key), along with the time it takes to iterate the
+ * present values of a wide field in each layout.
+ * 
+ * @author jnelson
+ */
+public class RecordFootprintBenchmark extends AbstractBenchmark {
+
+    /**
+     * The number of records that are loaded in each round.
+     */
+    private static final int RECORDS = 200;
+
+    /**
+     * The number of keys in each record.
+     */
+    private static final int KEYS = 100;
+
+    /**
+     * The number of times that the value in each field is changed. Each change
+     * is a removal and an addition.
+     */
+    private static final int CHANGES = 10;
+
+    /**
+     * The number of present values in the wide field that is iterated.
+     */
+    private static final int PRESENT = 10000;
+
+    /**
+     * The number of times that the present values are iterated in each round.
+     */
+    private static final int READS = 1000;
+
+    /**
+     * The wide field in the columnar layout.
+     */
+    private static final RevisionHistory<PrimaryKey> COLUMNAR_PRESENT = new RevisionHistory<PrimaryKey>();
+
+    /**
+     * The wide field in the legacy layout.
+     */
+    private static final Set<PrimaryKey> LEGACY_PRESENT = Sets
+            .newLinkedHashSet();
+    static {
+        for (int i = 0; i < PRESENT; i++) {
+            COLUMNAR_PRESENT.append(new CompactRevision<PrimaryKey>(
+                    PrimaryKey.wrap(i), i, Action.ADD));
+            LEGACY_PRESENT.add(PrimaryKey.wrap(i));
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void benchmarkColumnarFootprint() {
+        long before = usedMemory();
+        List<PrimaryRecord> records = Lists.newArrayListWithCapacity(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            PrimaryRecord record = Record.createPrimaryRecord(PrimaryKey
+                    .wrap(i));
+            for (Revision<PrimaryKey, Text, Value> revision : revisions(i)) {
+                record.append(revision);
+            }
+            records.add(record);
+        }
+        report("columnar", usedMemory() - before, records.size());
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void benchmarkLegacyFootprint() {
+        long before = usedMemory();
+        List<LegacyLayout> records = Lists.newArrayListWithCapacity(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            LegacyLayout record = new LegacyLayout();
+            for (Revision<PrimaryKey, Text, Value> revision : revisions(i)) {
+                record.append(revision);
+            }
+            records.add(record);
+        }
+        report("legacy", usedMemory() - before, records.size());
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void benchmarkColumnarPresentReads() {
+        Set<PrimaryKey> present = COLUMNAR_PRESENT.present();
+        for (int i = 0; i < READS; i++) {
+            for (PrimaryKey record : present) {
+                record.hashCode();
+            }
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void benchmarkLegacyPresentReads() {
+        for (int i = 0; i < READS; i++) {
+            for (PrimaryKey record : LEGACY_PRESENT) {
+                record.hashCode();
+            }
+        }
+    }
+
+    /**
+     * Print the heap footprint per revision.
+     * 
+     * @param layout
+     * @param bytes
+     * @param records
+     */
+    private void report(String layout, long bytes, int records) {
+        long revisions = (long) records * KEYS * (1 + 2 * CHANGES);
+        System.out.println(layout + " footprint: " + bytes / revisions
+                + " bytes/revision (" + bytes / 1024 + " KB total)");
+    }
+
+    /**
+     * Return the revisions for a wide record where the value in each field is
+     * repeatedly replaced, like a status field or a counter.
+     * 
+     * @param record
+     * @return the revisions
+     */
+    private static List<Revision<PrimaryKey, Text, Value>> revisions(
+            long record) {
+        List<Revision<PrimaryKey, Text, Value>> revisions = Lists
+                .newArrayList();
+        long version = 0;
+        PrimaryKey locator = PrimaryKey.wrap(record);
+        for (int k = 0; k < KEYS; k++) {
+            Text key = Text.wrap("key" + k);
+            int value = 0;
+            revisions.add(Revision.createPrimaryRevision(locator, key,
+                    Value.wrap(Convert.javaToThrift(value)), ++version,
+                    Action.ADD));
+            for (int c = 0; c < CHANGES; c++) {
+                revisions.add(Revision.createPrimaryRevision(locator, key,
+                        Value.wrap(Convert.javaToThrift(value)), ++version,
+                        Action.REMOVE));
+                value = (value + 1) % 3;
+                revisions.add(Revision.createPrimaryRevision(locator, key,
+                        Value.wrap(Convert.javaToThrift(value)), ++version,
+                        Action.ADD));
+            }
+        }
+        return revisions;
+    }
+
+    /**
+     * Return the number of bytes that are used on the heap after collecting
+     * garbage.
+     * 
+     * @return the used memory
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The in-memory layout that a Record used to have: one
+     * {@link CompactRevision} per revision and a separate set of present
+     * values for each key.
+     * 
+     * @author jnelson
+     */
+    private static final class LegacyLayout {
+
+        private final Map<Text, Set<Value>> present = Maps.newHashMap();
+        private final Map<Text, List<CompactRevision<Value>>> history = Maps
+                .newHashMap();
+
+        /**
+         * Append {@code revision}.
+         * 
+         * @param revision
+         */
+        public void append(Revision<PrimaryKey, Text, Value> revision) {
+            Set<Value> values = present.get(revision.getKey());
+            if(values == null) {
+                values = Sets.newLinkedHashSet();
+                present.put(revision.getKey(), values);
+            }
+            if(revision.getType() == Action.ADD) {
+                values.add(revision.getValue());
+            }
+            else {
+                values.remove(revision.getValue());
+                if(values.isEmpty()) {
+                    present.remove(revision.getKey());
+                }
+            }
+            List<CompactRevision<Value>> revisions = history.get(revision
+                    .getKey());
+            if(revisions == null) {
+                revisions = Lists.newArrayList();
+                history.put(revision.getKey(), revisions);
+            }
+            revisions.add(revision.compact());
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ package org.cinchapi.concourse.server.storage.db;
 import java.util.Map;
 import java.util.Set;
 
+import org.cinchapi.concourse.server.GlobalState;
 import org.cinchapi.concourse.server.io.Byteable;
 import org.cinchapi.concourse.server.io.Composite;
 import org.cinchapi.concourse.server.storage.Action;
@@ -218,6 +219,25 @@ public abstract class RecordTest<L extends Byteable & Comparable<L>, K extends B
         Assert.assertEquals(values, record.get(key, timestamp));
     }
 
+    @Test
+    public void testGetWithTimeAcrossCheckpoints() {
+        L locator = getLocator();
+        K key = getKey();
+        V value = getValue();
+        record = getRecord(locator, key);
+        int count = GlobalState.RECORD_CHECKPOINT_INTERVAL * 3
+                + TestData.getScaleCount();
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            record.append(getRevision(locator, key, value));
+            timestamps[i] = Time.now();
+        }
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(Numbers.isEven(i),
+                    record.get(key, timestamps[i]).contains(value));
+        }
+    }
+
     @Test
     public void testIsPartialIfCreatedWithKey() {
         record = getRecord(getLocator(), getKey());
@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.List;
+import java.util.Set;
+
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Unit tests for {@link RevisionHistory}.
+ * 
+ * @author jnelson
+ */
+public class RevisionHistoryTest {
+
+    /**
+     * The checkpoint interval to use for each test.
+     */
+    private static final int INTERVAL = 16;
+
+    @Test
+    public void testGetMatchesReplay() {
+        assertGetMatchesReplay(new RevisionHistory<PrimaryKey>(INTERVAL));
+    }
+
+    @Test
+    public void testGetMatchesReplayWithoutCheckpoints() {
+        assertGetMatchesReplay(new RevisionHistory<PrimaryKey>(0));
+    }
+
+    @Test
+    public void testGetMatchesReplayWithManyPresentValues() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(
+                INTERVAL);
+        List<CompactRevision<PrimaryKey>> revisions = Lists.newArrayList();
+        int count = INTERVAL * 8;
+        for (int i = 0; i < count * 2; i++) {
+            CompactRevision<PrimaryKey> revision = new CompactRevision<PrimaryKey>(
+                    PrimaryKey.wrap(i < count ? i : (i - count) * 3 % count),
+                    i, i < count ? Action.ADD : Action.REMOVE);
+            if(i < count || (i - count) * 3 < count) {
+                history.append(revision);
+                revisions.add(revision);
+            }
+        }
+        for (long timestamp = -1; timestamp <= count * 2; timestamp++) {
+            Assert.assertEquals(replay(revisions, timestamp),
+                    history.get(timestamp));
+        }
+    }
+
+    @Test
+    public void testGetPreservesInsertionOrder() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(INTERVAL);
+        List<CompactRevision<PrimaryKey>> revisions = Lists.newArrayList();
+        int count = INTERVAL * 3;
+        for (int i = 0; i < count; i++) {
+            CompactRevision<PrimaryKey> revision = new CompactRevision<PrimaryKey>(
+                    PrimaryKey.wrap(count - i), i, Action.ADD);
+            history.append(revision);
+            revisions.add(revision);
+        }
+        Assert.assertEquals(
+                Lists.newArrayList(replay(revisions, count + 1)),
+                Lists.newArrayList(history.get(count + 1)));
+    }
+
+    @Test
+    public void testGetWithRevisionsAppendedOutOfOrder() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(INTERVAL);
+        List<CompactRevision<PrimaryKey>> revisions = Lists.newArrayList();
+        int count = INTERVAL * 2;
+        for (int i = 0; i < count; i++) {
+            CompactRevision<PrimaryKey> revision = new CompactRevision<PrimaryKey>(
+                    PrimaryKey.wrap(i), i % 2 == 0 ? i : count - i, Action.ADD);
+            history.append(revision);
+            revisions.add(revision);
+        }
+        for (long timestamp = 0; timestamp <= count; timestamp++) {
+            Assert.assertEquals(replay(revisions, timestamp),
+                    history.get(timestamp));
+        }
+    }
+
+    @Test
+    public void testPresentMatchesLatest() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(
+                INTERVAL);
+        Set<PrimaryKey> expected = Sets.newLinkedHashSet();
+        int count = INTERVAL * 3 + TestData.getScaleCount();
+        for (int i = 0; i < count; i++) {
+            // Use enough distinct values to switch from scanning the
+            // dictionary to looking up ids in a table
+            PrimaryKey record = PrimaryKey.wrap(Math.abs(TestData.getInt()) % 50);
+            Action action = expected.add(record) ? Action.ADD : Action.REMOVE;
+            if(action == Action.REMOVE) {
+                expected.remove(record);
+            }
+            history.append(new CompactRevision<PrimaryKey>(record, i, action));
+            Set<PrimaryKey> present = history.present();
+            Assert.assertEquals(expected.size(), present.size());
+            Assert.assertEquals(Lists.newArrayList(expected),
+                    Lists.newArrayList(present));
+            Assert.assertTrue(present.contains(record) == (action == Action.ADD));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCannotModifyPresent() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(
+                INTERVAL);
+        history.append(new CompactRevision<PrimaryKey>(PrimaryKey.wrap(1), 1,
+                Action.ADD));
+        history.present().add(PrimaryKey.wrap(2));
+    }
+
+    @Test
+    public void testIteratorMatchesAppendedRevisions() {
+        RevisionHistory<PrimaryKey> history = new RevisionHistory<PrimaryKey>(
+                INTERVAL);
+        List<CompactRevision<PrimaryKey>> revisions = Lists.newArrayList();
+        for (int i = 0; i < INTERVAL * 2; i++) {
+            CompactRevision<PrimaryKey> revision = new CompactRevision<PrimaryKey>(
+                    PrimaryKey.wrap(i / 2), i, i % 2 == 0 ? Action.ADD
+                            : Action.REMOVE);
+            history.append(revision);
+            revisions.add(revision);
+        }
+        int i = 0;
+        for (CompactRevision<PrimaryKey> revision : history) {
+            CompactRevision<PrimaryKey> expected = revisions.get(i++);
+            Assert.assertEquals(expected.getValue(), revision.getValue());
+            Assert.assertEquals(expected.getVersion(), revision.getVersion());
+            Assert.assertEquals(expected.getType(), revision.getType());
+        }
+        Assert.assertEquals(revisions.size(), i);
+    }
+
+    /**
+     * Append random revisions to {@code history} and assert that a read at
+     * every timestamp matches a replay from the beginning.
+     * 
+     * @param history
+     */
+    private static void assertGetMatchesReplay(
+            RevisionHistory<PrimaryKey> history) {
+        List<CompactRevision<PrimaryKey>> revisions = Lists.newArrayList();
+        Set<PrimaryKey> present = Sets.newHashSet();
+        int count = INTERVAL * 5 + TestData.getScaleCount();
+        long version = 0;
+        for (int i = 0; i < count; i++) {
+            PrimaryKey record = PrimaryKey.wrap(Math.abs(TestData.getInt()) % 20);
+            Action action = present.add(record) ? Action.ADD : Action.REMOVE;
+            if(action == Action.REMOVE) {
+                present.remove(record);
+            }
+            version += TestData.getScaleCount() % 3 == 0 ? 0 : 2;
+            CompactRevision<PrimaryKey> revision = new CompactRevision<PrimaryKey>(
+                    record, version, action);
+            history.append(revision);
+            revisions.add(revision);
+        }
+        for (long timestamp = -1; timestamp <= version + 1; timestamp++) {
+            Assert.assertEquals(replay(revisions, timestamp),
+                    history.get(timestamp));
+        }
+    }
+
+    /**
+     * Return the values that are present at {@code timestamp} by replaying
+     * {@code revisions} from the beginning.
+     * 
+     * @param revisions
+     * @param timestamp
+     * @return the values
+     */
+    private static Set<PrimaryKey> replay(
+            List<CompactRevision<PrimaryKey>> revisions, long timestamp) {
+        Set<PrimaryKey> values = Sets.newLinkedHashSet();
+        for (CompactRevision<PrimaryKey> revision : revisions) {
+            if(revision.getVersion() > timestamp) {
+                break;
+            }
+            else if(revision.getType() == Action.ADD) {
+                values.add(revision.getValue());
+            }
+            else {
+                values.remove(revision.getValue());
+            }
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.cinchapi.concourse.server.model.PrimaryKey;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.Convert;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * Unit tests for {@link RevisionSkipList}.
+ * 
+ * @author jnelson
+ */
+public class RevisionSkipListTest {
+
+    @Test
+    public void testIterationIsSortedLikeBlock() {
+        RevisionSkipList<PrimaryKey, Text, Value> revisions = new RevisionSkipList<PrimaryKey, Text, Value>();
+        for (int i = 0; i < TestData.getScaleCount(); i++) {
+            revisions.add(TestData.getPrimaryRevision());
+        }
+        Assert.assertTrue(new Ordering<Revision<PrimaryKey, Text, Value>>() {
+
+            @Override
+            public int compare(Revision<PrimaryKey, Text, Value> o1,
+                    Revision<PrimaryKey, Text, Value> o2) {
+                return ComparisonChain.start()
+                        .compare(o1.getLocator(), o2.getLocator())
+                        .compare(o1.getKey(), o2.getKey())
+                        .compare(o1.getVersion(), o2.getVersion())
+                        .compare(o1.getValue(), o2.getValue()).result();
+            }
+
+        }.isOrdered(revisions));
+        Assert.assertEquals(Lists.newArrayList(revisions).size(),
+                revisions.size());
+    }
+
+    @Test
+    public void testGetLocatorAndKey() {
+        RevisionSkipList<PrimaryKey, Text, Value> revisions = new RevisionSkipList<PrimaryKey, Text, Value>();
+        PrimaryKey record = PrimaryKey.wrap(1);
+        Text key = Text.wrap("name");
+        List<Revision<PrimaryKey, Text, Value>> expected = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            Revision<PrimaryKey, Text, Value> revision = Revision
+                    .createPrimaryRevision(record, key,
+                            Value.wrap(Convert.javaToThrift(i)), Time.now(),
+                            Action.ADD);
+            expected.add(revision);
+            revisions.add(revision);
+            revisions.add(Revision.createPrimaryRevision(PrimaryKey.wrap(2),
+                    key, Value.wrap(Convert.javaToThrift(i)), Time.now(),
+                    Action.ADD));
+            revisions.add(Revision.createPrimaryRevision(record,
+                    Text.wrap("age"), Value.wrap(Convert.javaToThrift(i)),
+                    Time.now(), Action.ADD));
+        }
+        Assert.assertEquals(expected, Lists.newArrayList(revisions.get(record,
+                key)));
+        Assert.assertEquals(20, Lists.newArrayList(revisions.get(record))
+                .size());
+        Assert.assertFalse(revisions.get(PrimaryKey.wrap(3)).iterator()
+                .hasNext());
+        Assert.assertFalse(revisions.get(record, Text.wrap("foo")).iterator()
+                .hasNext());
+    }
+
+    @Test
+    public void testDuplicateRevisionIsNotAdded() {
+        RevisionSkipList<PrimaryKey, Text, Value> revisions = new RevisionSkipList<PrimaryKey, Text, Value>();
+        Revision<PrimaryKey, Text, Value> revision = TestData
+                .getPrimaryRevision();
+        Assert.assertTrue(revisions.add(revision));
+        Assert.assertFalse(revisions.add(revision));
+        Assert.assertEquals(1, revisions.size());
+    }
+
+    @Test
+    public void testReadDuringConcurrentInserts() throws InterruptedException {
+        final RevisionSkipList<PrimaryKey, Text, Value> revisions = new RevisionSkipList<PrimaryKey, Text, Value>();
+        final PrimaryKey record = PrimaryKey.wrap(1);
+        final Text key = Text.wrap("count");
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (latch.getCount() > 0) {
+                    long last = Long.MIN_VALUE;
+                    for (Revision<PrimaryKey, Text, Value> revision : revisions
+                            .get(record, key)) {
+                        if(revision.getVersion() <= last) {
+                            failed.set(true);
+                        }
+                        last = revision.getVersion();
+                    }
+                }
+            }
+
+        });
+        reader.start();
+        for (int i = 0; i < 1000; i++) {
+            revisions.add(Revision.createPrimaryRevision(record, key,
+                    Value.wrap(Convert.javaToThrift(i)), Time.now(),
+                    Action.ADD));
+        }
+        latch.countDown();
+        reader.join();
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(1000, revisions.size());
+    }
+
+}
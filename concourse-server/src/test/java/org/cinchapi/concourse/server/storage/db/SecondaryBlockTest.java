@@ -23,13 +23,19 @@
  */
 package org.cinchapi.concourse.server.storage.db;
 
+import java.util.List;
+
 import org.cinchapi.concourse.server.model.PrimaryKey;
 import org.cinchapi.concourse.server.model.Text;
 import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.server.storage.Action;
 import org.cinchapi.concourse.server.storage.db.Block;
 import org.cinchapi.concourse.server.storage.db.SecondaryBlock;
 import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.Convert;
 import org.cinchapi.concourse.util.TestData;
+import org.junit.Assert;
+import org.junit.Test;
 
 /**
  * 
@@ -38,6 +44,64 @@ import org.cinchapi.concourse.util.TestData;
  */
 public class SecondaryBlockTest extends BlockTest<Text, Value, PrimaryKey> {
 
+    @Test
+    public void testCollectValueRangeInMutableBlock() {
+        Text locator = Text.wrap("age");
+        insertValueRange(locator);
+        assertCollectsValueRange(block, locator);
+    }
+
+    @Test
+    public void testCollectValueRangeInImmutableBlock() {
+        Text locator = Text.wrap("age");
+        insertValueRange(locator);
+        block.sync();
+        assertCollectsValueRange(block, locator);
+        assertCollectsValueRange(new SecondaryBlock(block.getId(), directory,
+                true), locator);
+    }
+
+    /**
+     * Assert that {@code block} collects exactly the revisions for
+     * {@code locator} whose values are between 20 and 30.
+     * 
+     * @param block
+     * @param locator
+     */
+    private void assertCollectsValueRange(Block<Text, Value, PrimaryKey> block,
+            Text locator) {
+        Value low = Value.wrap(Convert.javaToThrift(20));
+        Value high = Value.wrap(Convert.javaToThrift(30));
+        List<Revision<Text, Value, PrimaryKey>> revisions = block.collect(
+                Long.MAX_VALUE, locator, low, high);
+        Assert.assertEquals(22, revisions.size());
+        for (Revision<Text, Value, PrimaryKey> revision : revisions) {
+            Assert.assertEquals(locator, revision.getLocator());
+            Assert.assertTrue(revision.getKey().compareTo(low) >= 0);
+            Assert.assertTrue(revision.getKey().compareTo(high) <= 0);
+        }
+        Assert.assertTrue(block.collect(Long.MAX_VALUE, locator, high, low)
+                .isEmpty());
+    }
+
+    /**
+     * Insert the values 0 through 99 for {@code locator}, twice each and out
+     * of order, along with some noise under other locators.
+     * 
+     * @param locator
+     */
+    private void insertValueRange(Text locator) {
+        for (int i = 0; i < 100; i++) {
+            Value value = Value.wrap(Convert.javaToThrift((i * 37) % 100));
+            block.insert(locator, value, PrimaryKey.wrap(i), Time.now(),
+                    Action.ADD);
+            block.insert(locator, value, PrimaryKey.wrap(i + 100),
+                    Time.now(), Action.ADD);
+            block.insert(Text.wrap("noise" + (i % 3)), value,
+                    PrimaryKey.wrap(i), Time.now(), Action.ADD);
+        }
+    }
+
     @Override
     protected Text getLocator() {
         return TestData.getText();
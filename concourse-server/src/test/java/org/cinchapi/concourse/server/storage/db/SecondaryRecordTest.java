@@ -108,4 +108,29 @@ public class SecondaryRecordTest extends
 
         }
     }
+
+    @Test
+    public void testFindRangeWithTime() {
+        Text locator = TestData.getText();
+        record = getRecord(locator);
+        for (int i = 0; i < 100; i++) {
+            record.append(getRevision(locator,
+                    Value.wrap(Convert.javaToThrift(i)), PrimaryKey.wrap(i)));
+        }
+        long timestamp = Time.now();
+        for (int i = 0; i < 100; i += 2) {
+            record.append(getRevision(locator,
+                    Value.wrap(Convert.javaToThrift(i)), PrimaryKey.wrap(i)));
+        }
+        Value fifty = Value.wrap(Convert.javaToThrift(50));
+        Set<PrimaryKey> historical = ((SecondaryRecord) record).find(
+                timestamp, Operator.GREATER_THAN_OR_EQUALS, fifty);
+        Set<PrimaryKey> present = ((SecondaryRecord) record).find(
+                Operator.GREATER_THAN_OR_EQUALS, fifty);
+        for (int i = 0; i < 100; i++) {
+            PrimaryKey pk = PrimaryKey.wrap(i);
+            Assert.assertEquals(i >= 50, historical.contains(pk));
+            Assert.assertEquals(i >= 50 && i % 2 != 0, present.contains(pk));
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import java.io.File;
+import java.util.List;
+
+import org.cinchapi.concourse.server.io.FileSystem;
+import org.cinchapi.concourse.server.storage.temp.Write;
+import org.cinchapi.concourse.time.Time;
+import org.cinchapi.concourse.util.Convert;
+import org.cinchapi.concourse.util.TestData;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the throughput of transporting Writes into the {@link Database}
+ * one at a time against transporting them in batches. The Writes use a short
+ * key and numeric values, which the search blocks don't index, so that the
+ * cost of indexing doesn't hide the cost of the transport itself.
+ * 
+ * @author jnelson
+ */
+public class TransportBenchmark extends AbstractBenchmark {
+
+    /**
+     * The number of Writes that are transported in each round.
+     */
+    private static final int WRITES_PER_ROUND = 5000;
+
+    private static Database db;
+    private static String directory;
+    private static List<Write> writes;
+
+    @BeforeClass
+    public static void setUp() {
+        directory = TestData.DATA_DIR + File.separator + Time.now();
+        db = new Database(directory);
+        db.start();
+        writes = Lists.newArrayListWithCapacity(WRITES_PER_ROUND);
+        for (int i = 0; i < WRITES_PER_ROUND; i++) {
+            writes.add(Write.add("key", Convert.javaToThrift(i),
+                    TestData.getLong()));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.stop();
+        FileSystem.deleteDirectory(directory);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+    public void benchmarkTransportWriteAtATime() {
+        for (Write write : writes) {
+            db.accept(write);
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+    public void benchmarkTransportBatch() {
+        db.accept(writes);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2013-2015 Jeff Nelson, Cinchapi Software Collective
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.cinchapi.concourse.server.storage.db;
+
+import org.cinchapi.concourse.ConcourseBaseTest;
+import org.cinchapi.concourse.server.model.Text;
+import org.cinchapi.concourse.server.model.Value;
+import org.cinchapi.concourse.thrift.Operator;
+import org.cinchapi.concourse.util.Convert;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ValueRange}.
+ * 
+ * @author jnelson
+ */
+public class ValueRangeTest extends ConcourseBaseTest {
+
+    @Test
+    public void testRangeForQuery() {
+        ValueRange range = ValueRange.forQuery(Operator.BETWEEN, value(10),
+                value(20));
+        Assert.assertTrue(range.contains(value(10)));
+        Assert.assertTrue(range.contains(value(20)));
+        Assert.assertFalse(range.contains(value(21)));
+        range = ValueRange.forQuery(Operator.GREATER_THAN, value(10));
+        Assert.assertTrue(range.contains(value(Long.MAX_VALUE)));
+        Assert.assertFalse(range.contains(value(9)));
+        Assert.assertNull(ValueRange.forQuery(Operator.NOT_EQUALS, value(10)));
+        Assert.assertNull(ValueRange.forQuery(Operator.BETWEEN, value(10)));
+    }
+
+    @Test
+    public void testRangeEnclosesNarrowerRange() {
+        ValueRange wide = ValueRange.forQuery(Operator.LESS_THAN, value(50));
+        ValueRange narrow = ValueRange.forQuery(Operator.BETWEEN, value(10),
+                value(20));
+        Assert.assertTrue(wide.encloses(narrow));
+        Assert.assertFalse(narrow.encloses(wide));
+        Assert.assertTrue(narrow.encloses(ValueRange.forQuery(
+                Operator.EQUALS, value(15))));
+    }
+
+    @Test
+    public void testInfiniteEndIsNotEqualToLargestValue() {
+        Text locator = Text.wrap("foo");
+        ValueRange infinite = ValueRange.forQuery(Operator.GREATER_THAN,
+                value(10));
+        ValueRange finite = ValueRange.forQuery(Operator.BETWEEN, value(10),
+                value(Long.MAX_VALUE));
+        Assert.assertNotEquals(infinite, finite);
+        Assert.assertNotEquals(infinite.getCacheKey(locator),
+                finite.getCacheKey(locator));
+        Assert.assertEquals(infinite, ValueRange.forQuery(
+                Operator.GREATER_THAN_OR_EQUALS, value(10)));
+        Assert.assertEquals(infinite.getCacheKey(locator), ValueRange
+                .forQuery(Operator.GREATER_THAN_OR_EQUALS, value(10))
+                .getCacheKey(locator));
+    }
+
+    /**
+     * Return a {@link Value} that wraps {@code number}.
+     * 
+     * @param number
+     * @return the Value
+     */
+    private static Value value(long number) {
+        return Value.wrap(Convert.javaToThrift(number));
+    }
+
+}
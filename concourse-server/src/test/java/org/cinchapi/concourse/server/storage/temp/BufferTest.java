@@ -24,18 +24,24 @@
 package org.cinchapi.concourse.server.storage.temp;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.cinchapi.concourse.server.GlobalState;
+import org.cinchapi.concourse.server.concurrent.Threads;
 import org.cinchapi.concourse.server.io.FileSystem;
 import org.cinchapi.concourse.server.storage.PermanentStore;
 import org.cinchapi.concourse.server.storage.Store;
 import org.cinchapi.concourse.server.storage.temp.Buffer;
 import org.cinchapi.concourse.server.storage.temp.Limbo;
 import org.cinchapi.concourse.testing.Variables;
+import org.cinchapi.concourse.thrift.Operator;
+import org.cinchapi.concourse.thrift.TObject;
 import org.cinchapi.concourse.time.Time;
 import org.cinchapi.concourse.util.Convert;
 import org.cinchapi.concourse.util.TestData;
@@ -43,6 +49,9 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 /**
  * Unit tests for {@link Buffer}.
  * 
@@ -125,6 +134,151 @@ public class BufferTest extends LimboTest {
         Assert.assertFalse(caughtException.get());
     }
 
+    @Test
+    public void testConcurrentInsertsAreDurable() throws InterruptedException {
+        final List<Write> writes = Collections
+                .synchronizedList(Lists.<Write> newArrayList());
+        List<Thread> threads = Lists.newArrayList();
+        int count = Variables.register("count", TestData.getScaleCount() % 8 + 2);
+        for (int i = 0; i < count; i++) {
+            threads.add(new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        Write write = TestData.getWriteAdd();
+                        ((Buffer) store).insert(write);
+                        writes.add(write);
+                    }
+                }
+
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Buffer buffer = new Buffer(current);
+        buffer.start();
+        Set<Write> stored = Sets.newHashSet(buffer.iterator());
+        Assert.assertEquals(Sets.newHashSet(writes), stored);
+        buffer.stop();
+    }
+
+    @Test
+    public void testRecoverAfterCrash() {
+        String directory = TestData.DATA_DIR + File.separator + Time.now();
+        Buffer buffer = new Buffer(directory);
+        buffer.start();
+        try {
+            List<Write> writes = getWrites();
+            for (Write write : writes) {
+                buffer.insert(write);
+            }
+            // NOTE: The new Buffer reads the same files through the OS page
+            // cache, so this only checks that unstopped Pages are reloaded.
+            // The durability policies are checked by the tests below.
+            Buffer recovered = new Buffer(directory);
+            recovered.start();
+            Iterator<Write> it0 = recovered.iterator();
+            Iterator<Write> it1 = writes.iterator();
+            while (it1.hasNext()) {
+                Assert.assertTrue(it0.hasNext());
+                Assert.assertEquals(it1.next(), it0.next());
+            }
+            Assert.assertFalse(it0.hasNext());
+            recovered.stop();
+        }
+        finally {
+            buffer.stop();
+            FileSystem.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testPerWriteDurabilitySyncsEachInsert() {
+        Buffer buffer = startBuffer(Durability.PER_WRITE);
+        try {
+            List<Write> writes = getWrites();
+            for (int i = 0; i < writes.size(); i++) {
+                buffer.insert(writes.get(i));
+                Assert.assertEquals(i + 1, buffer.getDurableCount());
+                Assert.assertEquals(0, buffer.getUnsyncedBytes());
+            }
+        }
+        finally {
+            stopBuffer(buffer);
+        }
+    }
+
+    @Test
+    public void testOsDurabilityOnlySyncsOnDemand() {
+        Buffer buffer = startBuffer(Durability.OS);
+        try {
+            List<Write> writes = getWrites();
+            for (Write write : writes) {
+                buffer.insert(write);
+            }
+            Threads.sleep(GlobalState.BUFFER_SYNC_INTERVAL * 2);
+            Assert.assertEquals(0, buffer.getDurableCount());
+            Assert.assertTrue(buffer.getUnsyncedBytes() > 0);
+            buffer.sync();
+            Assert.assertEquals(writes.size(), buffer.getDurableCount());
+            Assert.assertEquals(0, buffer.getUnsyncedBytes());
+        }
+        finally {
+            stopBuffer(buffer);
+        }
+    }
+
+    @Test
+    public void testIntervalDurabilitySyncsInBackground() {
+        Buffer buffer = startBuffer(Durability.INTERVAL);
+        try {
+            List<Write> writes = getWrites();
+            for (Write write : writes) {
+                buffer.insert(write);
+            }
+            long deadline = System.currentTimeMillis()
+                    + (GlobalState.BUFFER_SYNC_INTERVAL * 50);
+            while (buffer.getDurableCount() < writes.size()
+                    && System.currentTimeMillis() < deadline) {
+                Threads.sleep(GlobalState.BUFFER_SYNC_INTERVAL / 2);
+            }
+            Assert.assertEquals(writes.size(), buffer.getDurableCount());
+            Assert.assertEquals(0, buffer.getUnsyncedBytes());
+        }
+        finally {
+            stopBuffer(buffer);
+        }
+    }
+
+    @Test
+    public void testIntervalDurabilitySyncsInsertOnceSyncSizeIsReached() {
+        int interval = GlobalState.BUFFER_SYNC_INTERVAL;
+        long size = GlobalState.BUFFER_SYNC_SIZE;
+        GlobalState.BUFFER_SYNC_INTERVAL = 60000; // keep the syncer out of it
+        Buffer buffer = startBuffer(Durability.INTERVAL);
+        try {
+            Write write = Write.add("foo", Convert.javaToThrift("bar"), 1);
+            GlobalState.BUFFER_SYNC_SIZE = Long.MAX_VALUE;
+            buffer.insert(write);
+            Assert.assertEquals(0, buffer.getDurableCount());
+            Assert.assertTrue(buffer.getUnsyncedBytes() > 0);
+            GlobalState.BUFFER_SYNC_SIZE = 2 * (write.size() + 4);
+            buffer.insert(Write.add("foo", Convert.javaToThrift("baz"), 1));
+            Assert.assertEquals(2, buffer.getDurableCount());
+            Assert.assertEquals(0, buffer.getUnsyncedBytes());
+        }
+        finally {
+            stopBuffer(buffer);
+            GlobalState.BUFFER_SYNC_INTERVAL = interval;
+            GlobalState.BUFFER_SYNC_SIZE = size;
+        }
+    }
+
     @Test
     public void testIteratorAfterTransport() {
         ((Buffer) store).transportRateMultiplier = 1;
@@ -160,6 +314,56 @@ public class BufferTest extends LimboTest {
         Assert.assertFalse(it0.hasNext());
     }
 
+    @Test
+    public void testFetchAfterTransport() {
+        ((Buffer) store).transportRateMultiplier = 1;
+        String key = TestData.getString();
+        long record = TestData.getLong();
+        List<TObject> values = Lists.newArrayList();
+        int count = 0;
+        while (!((Buffer) store).canTransport()) {
+            TObject value = Convert.javaToThrift(count);
+            add(key, value, record);
+            values.add(value);
+            count++;
+        }
+        int transports = Variables.register("transports",
+                TestData.getScaleCount() % count);
+        for (int i = 0; i < transports; i++) {
+            ((Buffer) store).transport(MOCK_DESTINATION);
+            values.remove(0);
+        }
+        Assert.assertEquals(Sets.newHashSet(values), store.fetch(key, record));
+    }
+
+    @Test
+    public void testFindAfterTransport() {
+        ((Buffer) store).transportRateMultiplier = 1;
+        String key = TestData.getString();
+        List<Long> records = Lists.newArrayList();
+        int count = 0;
+        while (!((Buffer) store).canTransport()) {
+            add(key, Convert.javaToThrift(count), count);
+            records.add((long) count);
+            count++;
+        }
+        int transports = Variables.register("transports",
+                TestData.getScaleCount() % count);
+        for (int i = 0; i < transports; i++) {
+            ((Buffer) store).transport(MOCK_DESTINATION);
+            records.remove(0);
+        }
+        int min = Variables.register("min", TestData.getScaleCount() % count);
+        Set<Long> expected = Sets.newHashSet();
+        for (long record : records) {
+            if(record > min) {
+                expected.add(record);
+            }
+        }
+        Assert.assertEquals(expected, store.find(key, Operator.GREATER_THAN,
+                Convert.javaToThrift(min)));
+    }
+
     @Test
     public void testReverseIteratorAfterTransport() {
         ((Buffer) store).transportRateMultiplier = 1;
@@ -190,6 +394,31 @@ public class BufferTest extends LimboTest {
         Assert.assertEquals(-1, index);
     }
 
+    /**
+     * Return a started Buffer in a new directory that uses the
+     * {@code durability} policy.
+     * 
+     * @param durability
+     * @return the Buffer
+     */
+    private Buffer startBuffer(Durability durability) {
+        Buffer buffer = new Buffer(TestData.DATA_DIR + File.separator
+                + Time.now());
+        buffer.setDurability(durability);
+        buffer.start();
+        return buffer;
+    }
+
+    /**
+     * Stop {@code buffer} and delete its directory.
+     * 
+     * @param buffer
+     */
+    private void stopBuffer(Buffer buffer) {
+        buffer.stop();
+        FileSystem.deleteDirectory(buffer.getBackingStore());
+    }
+
     @Test
     public void testWaitUntilTransportable() throws InterruptedException {
         final AtomicLong later = new AtomicLong(0);